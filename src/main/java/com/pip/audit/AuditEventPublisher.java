@@ -0,0 +1,335 @@
+package com.pip.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.dto.AuditEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline assíncrono de publicação dos eventos de auditoria de segurança
+ *
+ * A thread da requisição apenas enfileira o evento. Uma thread dedicada serializa
+ * cada evento uma única vez em um buffer reutilizado; os mesmos bytes alimentam a
+ * linha do log SECURITY_AUDIT, o armazenamento local encadeado (AuditSegmentStore)
+ * e a mensagem do Kafka, enviada pelo producer de auditoria (linger, lote e
+ * compressão configurados em AuditKafkaConfig).
+ *
+ * Eventos que o broker não confirma são gravados no spool local em disco e
+ * reenviados periodicamente. Após uma falha, novos eventos vão direto para o
+ * spool durante a pausa configurada, sem esperar o timeout do producer. Com o
+ * buffer cheio, o evento é processado de forma síncrona na thread chamadora.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class AuditEventPublisher {
+
+    private static final Logger securityLogger = LoggerFactory.getLogger("SECURITY_AUDIT");
+    private static final Logger logger = LoggerFactory.getLogger(AuditEventPublisher.class);
+
+    @Autowired
+    @Qualifier("auditKafkaTemplate")
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Autowired
+    private AuditSegmentStore auditSegmentStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${audit.kafka.topico:security-events}")
+    private String topico;
+
+    @Value("${audit.buffer.capacidade:20000}")
+    private int capacidadeBuffer;
+
+    @Value("${audit.flush.tamanho:500}")
+    private int tamanhoLote;
+
+    @Value("${audit.flush.intervalo-ms:50}")
+    private long intervaloFlushMs;
+
+    @Value("${audit.spool.diretorio:/var/lib/pip/audit-spool}")
+    private String diretorioSpool;
+
+    @Value("${audit.spool.max-mb:1024}")
+    private long tamanhoMaximoSpoolMb;
+
+    @Value("${audit.spool.pausa-apos-falha-ms:30000}")
+    private long pausaAposFalhaMs;
+
+    @Value("${audit.spool.reenvio-timeout-ms:30000}")
+    private long timeoutReenvioMs;
+
+    private ArrayBlockingQueue<AuditEvent> buffer;
+    private AuditSpool spool;
+    private Thread threadPublicacao;
+    private volatile boolean ativo;
+    private volatile long brokerIndisponivelAte;
+
+    private Counter contadorPublicados;
+    private Counter contadorSincronos;
+    private Counter contadorSpool;
+    private Counter contadorReenviados;
+    private Counter contadorDescartados;
+
+    @PostConstruct
+    public void iniciar() {
+        this.buffer = new ArrayBlockingQueue<>(capacidadeBuffer);
+        this.spool = new AuditSpool(Paths.get(diretorioSpool), tamanhoMaximoSpoolMb * 1024 * 1024);
+
+        Gauge.builder("pip.audit.buffer.tamanho", buffer, ArrayBlockingQueue::size)
+            .description("Eventos de auditoria aguardando publicação")
+            .register(meterRegistry);
+        Gauge.builder("pip.audit.buffer.ocupacao", buffer, b -> (double) b.size() / capacidadeBuffer)
+            .description("Fração ocupada do buffer de eventos de auditoria")
+            .register(meterRegistry);
+        Gauge.builder("pip.audit.spool.bytes", spool, AuditSpool::getTamanhoBytes)
+            .description("Bytes de eventos de auditoria no spool local aguardando reenvio")
+            .register(meterRegistry);
+        this.contadorPublicados = Counter.builder("pip.audit.publicados")
+            .description("Eventos de auditoria confirmados pelo Kafka")
+            .register(meterRegistry);
+        this.contadorSincronos = Counter.builder("pip.audit.sincronos")
+            .description("Eventos de auditoria processados na thread chamadora por buffer cheio")
+            .register(meterRegistry);
+        this.contadorSpool = Counter.builder("pip.audit.spool.gravados")
+            .description("Eventos de auditoria gravados no spool local")
+            .register(meterRegistry);
+        this.contadorReenviados = Counter.builder("pip.audit.spool.reenviados")
+            .description("Eventos de auditoria reenviados a partir do spool local")
+            .register(meterRegistry);
+        this.contadorDescartados = Counter.builder("pip.audit.descartados")
+            .description("Eventos de auditoria perdidos por spool cheio ou erro de serialização")
+            .register(meterRegistry);
+
+        this.ativo = true;
+        this.threadPublicacao = new Thread(this::loopPublicacao, "audit-publisher");
+        this.threadPublicacao.setDaemon(true);
+        this.threadPublicacao.start();
+
+        logger.info("AuditEventPublisher iniciado - tópico: {}, capacidade: {}, spool: {}",
+            topico, capacidadeBuffer, diretorioSpool);
+    }
+
+    /**
+     * Enfileira o evento para publicação assíncrona
+     */
+    public void publicar(AuditEvent event) {
+        if (!buffer.offer(event)) {
+            contadorSincronos.increment();
+            processar(event, new ByteArrayOutputStream(1024));
+        }
+    }
+
+    /**
+     * Laço da thread de publicação: aguarda o primeiro evento até o intervalo de
+     * flush e drena o buffer até o tamanho do lote, reutilizando o mesmo buffer de serialização
+     */
+    private void loopPublicacao() {
+        List<AuditEvent> lote = new ArrayList<>(tamanhoLote);
+        ByteArrayOutputStream bufferSerializacao = new ByteArrayOutputStream(4096);
+
+        while (ativo) {
+            try {
+                AuditEvent primeiro = buffer.poll(intervaloFlushMs, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+
+                lote.add(primeiro);
+                buffer.drainTo(lote, tamanhoLote - 1);
+
+                for (AuditEvent event : lote) {
+                    processar(event, bufferSerializacao);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Erro inesperado na publicação de eventos de auditoria: {}", e.getMessage(), e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Serializa o evento uma única vez e usa os mesmos bytes no log local, no
+     * armazenamento encadeado e no Kafka
+     */
+    private void processar(AuditEvent event, ByteArrayOutputStream bufferSerializacao) {
+        byte[] valor;
+        try {
+            bufferSerializacao.reset();
+            objectMapper.writeValue(bufferSerializacao, event);
+            valor = bufferSerializacao.toByteArray();
+        } catch (IOException e) {
+            contadorDescartados.increment();
+            logger.error("Falha ao serializar evento de auditoria {}: {}", event.getEventId(), e.getMessage());
+            return;
+        }
+
+        try {
+            MDC.put("eventId", event.getEventId());
+            MDC.put("eventType", String.valueOf(event.getEventType()));
+            MDC.put("merchantId", event.getMerchantId());
+            MDC.put("timestamp", String.valueOf(event.getTimestamp()));
+
+            securityLogger.info("SECURITY_EVENT: {}", new String(valor, StandardCharsets.UTF_8));
+        } finally {
+            MDC.clear();
+        }
+
+        try {
+            auditSegmentStore.anexar(event.getMerchantId(), String.valueOf(event.getEventType()), valor);
+        } catch (Exception e) {
+            logger.error("Falha ao anexar evento de auditoria {} ao armazenamento local: {}",
+                event.getEventId(), e.getMessage());
+        }
+
+        enviar(event.getEventId(), valor);
+    }
+
+    /**
+     * Envia ao Kafka; eventos não confirmados vão para o spool local
+     */
+    void enviar(String chave, byte[] valor) {
+        if (System.currentTimeMillis() < brokerIndisponivelAte) {
+            gravarSpool(chave, valor);
+            return;
+        }
+
+        try {
+            kafkaTemplate.send(topico, chave, valor).whenComplete((resultado, erro) -> {
+                if (erro == null) {
+                    contadorPublicados.increment();
+                } else {
+                    marcarBrokerIndisponivel(erro);
+                    gravarSpool(chave, valor);
+                }
+            });
+        } catch (Exception e) {
+            // max.block.ms esgotado (sem metadados do broker) ou buffer do producer cheio
+            marcarBrokerIndisponivel(e);
+            gravarSpool(chave, valor);
+        }
+    }
+
+    private void gravarSpool(String chave, byte[] valor) {
+        if (spool.gravar(chave, valor)) {
+            contadorSpool.increment();
+        } else {
+            contadorDescartados.increment();
+            logger.error("Evento de auditoria {} descartado: spool local cheio ou indisponível", chave);
+        }
+    }
+
+    private void marcarBrokerIndisponivel(Throwable erro) {
+        if (System.currentTimeMillis() >= brokerIndisponivelAte) {
+            logger.warn("Kafka indisponível para eventos de auditoria, usando spool local por {}ms: {}",
+                pausaAposFalhaMs, erro.getMessage());
+        }
+        brokerIndisponivelAte = System.currentTimeMillis() + pausaAposFalhaMs;
+    }
+
+    /**
+     * Reenvia os arquivos do spool local, do mais antigo ao mais novo. Um arquivo só é
+     * removido quando todos os seus eventos são confirmados; em caso de falha o reenvio
+     * para e o arquivo é tentado novamente no próximo ciclo (a chave do evento permite
+     * deduplicação no consumidor).
+     */
+    @Scheduled(fixedDelayString = "${audit.spool.reenvio-intervalo-ms:30000}")
+    public void reenviarSpool() {
+        if (System.currentTimeMillis() < brokerIndisponivelAte || spool.getTamanhoBytes() == 0) {
+            return;
+        }
+
+        for (Path arquivo : spool.rotacionar()) {
+            List<CompletableFuture<?>> envios = new ArrayList<>();
+            try {
+                spool.ler(arquivo, (chave, valor) -> envios.add(kafkaTemplate.send(topico, chave, valor)));
+                kafkaTemplate.flush();
+                CompletableFuture.allOf(envios.toArray(new CompletableFuture[0]))
+                    .get(timeoutReenvioMs, TimeUnit.MILLISECONDS);
+
+                spool.remover(arquivo);
+                contadorReenviados.increment(envios.size());
+                logger.info("Reenviados {} eventos de auditoria do spool {}", envios.size(), arquivo.getFileName());
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                marcarBrokerIndisponivel(e);
+                logger.warn("Reenvio do spool de auditoria interrompido em {}: {}", arquivo.getFileName(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publica os eventos pendentes no desligamento da aplicação
+     */
+    @PreDestroy
+    public void encerrar() {
+        logger.info("Encerrando AuditEventPublisher - {} eventos pendentes", buffer.size());
+
+        ativo = false;
+        threadPublicacao.interrupt();
+        try {
+            threadPublicacao.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        ByteArrayOutputStream bufferSerializacao = new ByteArrayOutputStream(4096);
+        AuditEvent event;
+        while ((event = buffer.poll()) != null) {
+            processar(event, bufferSerializacao);
+        }
+
+        try {
+            kafkaTemplate.flush();
+        } catch (Exception e) {
+            logger.warn("Falha no flush final do producer de auditoria: {}", e.getMessage());
+        }
+        spool.fechar();
+
+        logger.info("AuditEventPublisher encerrado");
+    }
+
+    /**
+     * Retorna o número de eventos aguardando publicação
+     */
+    public int getPendentes() {
+        return buffer.size();
+    }
+}
@@ -0,0 +1,623 @@
+package com.pip.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arquivo de segmento do armazenamento local de auditoria
+ *
+ * O segmento é um arquivo de tamanho fixo mapeado em memória, escrito apenas por
+ * anexação. Cabeçalho (64 bytes): mágico, versão, primeira sequência e o hash do
+ * último registro do segmento anterior. Cada registro tem o formato
+ * [tamanho do payload][sequência][timestamp][tam. merchantId][tam. eventType]
+ * [merchantId][eventType][payload][hash], onde
+ * hash = SHA-256(hash do registro anterior || bytes do registro sem o hash).
+ *
+ * A cada N registros é fechado um checkpoint com a raiz Merkle dos hashes do
+ * bloco e o hash que antecede o bloco, o que permite verificar os blocos em
+ * paralelo. Ao ser selado, o segmento grava um arquivo .idx com os metadados,
+ * os checkpoints e o índice de offsets por merchantId e eventType. O cabeçalho do
+ * .idx basta para resumir um segmento selado ({@link Resumo}) sem mapeá-lo.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+final class AuditSegment {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditSegment.class);
+
+    static final int MAGICO = 0x50495041;
+    static final int VERSAO = 1;
+    static final int TAMANHO_CABECALHO = 64;
+    static final int TAMANHO_HASH = 32;
+    static final int TAMANHO_CABECALHO_REGISTRO = 24;
+    static final byte[] HASH_GENESE = new byte[TAMANHO_HASH];
+
+    private static final String PREFIXO = "audit-";
+    static final String SUFIXO_SEGMENTO = ".seg";
+    private static final String SUFIXO_INDICE = ".idx";
+    private static final String PREFIXO_MERCHANT = "m:";
+    private static final String PREFIXO_TIPO = "t:";
+
+    private final Path arquivo;
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+    private final long primeiraSequencia;
+    private final byte[] hashInicial;
+    private final int registrosPorCheckpoint;
+
+    private int fim;
+    private long ultimaSequencia;
+    private long timestampMinimo = Long.MAX_VALUE;
+    private long timestampMaximo = Long.MIN_VALUE;
+    private byte[] hashFinal;
+    private boolean selado;
+    private int offsetCaudaInvalida = -1;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    // Índice em memória do segmento ativo; segmentos selados leem do .idx
+    private Map<String, ListaOffsets> indice;
+
+    // Bloco corrente, ainda sem checkpoint
+    private List<byte[]> hashesBloco = new ArrayList<>();
+    private int offsetBloco;
+    private long sequenciaBloco;
+    private byte[] hashAnteriorBloco;
+
+    private AuditSegment(Path arquivo, FileChannel canal, MappedByteBuffer mapa, long primeiraSequencia,
+                         byte[] hashInicial, int registrosPorCheckpoint) {
+        this.arquivo = arquivo;
+        this.canal = canal;
+        this.mapa = mapa;
+        this.primeiraSequencia = primeiraSequencia;
+        this.hashInicial = hashInicial;
+        this.registrosPorCheckpoint = registrosPorCheckpoint;
+        this.fim = TAMANHO_CABECALHO;
+        this.ultimaSequencia = primeiraSequencia - 1;
+        this.hashFinal = hashInicial;
+    }
+
+    /**
+     * Cria um novo segmento ativo encadeado ao hash final do segmento anterior
+     */
+    static AuditSegment criar(Path diretorio, long primeiraSequencia, byte[] hashAnterior,
+                              int tamanhoBytes, int registrosPorCheckpoint) throws IOException {
+        Path arquivo = diretorio.resolve(String.format("%s%020d%s", PREFIXO, primeiraSequencia, SUFIXO_SEGMENTO));
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanhoBytes);
+
+        mapa.putInt(0, MAGICO);
+        mapa.putInt(4, VERSAO);
+        mapa.putLong(8, primeiraSequencia);
+        mapa.put(16, hashAnterior);
+        mapa.force();
+
+        AuditSegment segmento = new AuditSegment(arquivo, canal, mapa, primeiraSequencia,
+            hashAnterior.clone(), registrosPorCheckpoint);
+        segmento.indice = new HashMap<>();
+        return segmento;
+    }
+
+    /**
+     * Abre um segmento existente. Segmentos selados carregam os metadados do .idx;
+     * os demais são recuperados por varredura, validando o encadeamento até o
+     * último registro íntegro.
+     */
+    static AuditSegment abrir(Path arquivo, boolean escrita, int registrosPorCheckpoint) throws IOException {
+        FileChannel canal = escrita
+            ? FileChannel.open(arquivo, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            : FileChannel.open(arquivo, StandardOpenOption.READ);
+        MappedByteBuffer mapa = canal.map(escrita ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+            0, canal.size());
+
+        if (mapa.capacity() < TAMANHO_CABECALHO || mapa.getInt(0) != MAGICO || mapa.getInt(4) != VERSAO) {
+            canal.close();
+            throw new IOException("Segmento de auditoria inválido: " + arquivo);
+        }
+
+        byte[] hashInicial = new byte[TAMANHO_HASH];
+        mapa.get(16, hashInicial);
+        AuditSegment segmento = new AuditSegment(arquivo, canal, mapa, mapa.getLong(8), hashInicial,
+            registrosPorCheckpoint);
+
+        if (Files.exists(segmento.arquivoIndice())) {
+            segmento.carregarMetadados();
+        } else {
+            segmento.recuperar(novoDigest());
+        }
+        return segmento;
+    }
+
+    static int tamanhoRegistro(byte[] merchant, byte[] tipo, byte[] payload) {
+        return TAMANHO_CABECALHO_REGISTRO + merchant.length + tipo.length + payload.length + TAMANHO_HASH;
+    }
+
+    boolean cabe(int tamanhoRegistro) {
+        return !selado && (long) fim + tamanhoRegistro <= mapa.capacity();
+    }
+
+    /**
+     * Anexa um registro ao segmento
+     *
+     * @return Checkpoint fechado por este registro, ou null
+     */
+    Checkpoint anexar(long sequencia, long timestamp, byte[] merchant, byte[] tipo, byte[] payload,
+                      MessageDigest digest) {
+        int inicio = fim;
+        mapa.putInt(inicio, payload.length);
+        mapa.putLong(inicio + 4, sequencia);
+        mapa.putLong(inicio + 12, timestamp);
+        mapa.putShort(inicio + 20, (short) merchant.length);
+        mapa.putShort(inicio + 22, (short) tipo.length);
+
+        int posicao = inicio + TAMANHO_CABECALHO_REGISTRO;
+        mapa.put(posicao, merchant);
+        posicao += merchant.length;
+        mapa.put(posicao, tipo);
+        posicao += tipo.length;
+        mapa.put(posicao, payload);
+        posicao += payload.length;
+
+        byte[] hash = calcularHash(digest, hashFinal, mapa, inicio, posicao);
+        mapa.put(posicao, hash);
+
+        return registrar(inicio, sequencia, timestamp, new String(merchant, StandardCharsets.UTF_8),
+            new String(tipo, StandardCharsets.UTF_8), hash, posicao + TAMANHO_HASH);
+    }
+
+    private Checkpoint registrar(int inicio, long sequencia, long timestamp, String merchant, String tipo,
+                                 byte[] hash, int novoFim) {
+        if (hashesBloco.isEmpty()) {
+            offsetBloco = inicio;
+            sequenciaBloco = sequencia;
+            hashAnteriorBloco = hashFinal;
+        }
+        hashesBloco.add(hash);
+        indice.computeIfAbsent(PREFIXO_MERCHANT + merchant, k -> new ListaOffsets()).adicionar(inicio);
+        indice.computeIfAbsent(PREFIXO_TIPO + tipo, k -> new ListaOffsets()).adicionar(inicio);
+
+        ultimaSequencia = sequencia;
+        timestampMinimo = Math.min(timestampMinimo, timestamp);
+        timestampMaximo = Math.max(timestampMaximo, timestamp);
+        hashFinal = hash;
+        fim = novoFim;
+
+        return hashesBloco.size() >= registrosPorCheckpoint ? fecharBloco() : null;
+    }
+
+    private Checkpoint fecharBloco() {
+        Checkpoint checkpoint = new Checkpoint(sequenciaBloco, offsetBloco, hashesBloco.size(),
+            hashAnteriorBloco, raizMerkle(hashesBloco, novoDigest()));
+        checkpoints.add(checkpoint);
+        hashesBloco = new ArrayList<>();
+        return checkpoint;
+    }
+
+    /**
+     * Reconstrói o estado de um segmento não selado a partir dos registros íntegros
+     */
+    private void recuperar(MessageDigest digest) {
+        indice = new HashMap<>();
+        int inicio = fim;
+
+        while (inicio + TAMANHO_CABECALHO_REGISTRO <= mapa.capacity()) {
+            int tamanhoPayload = mapa.getInt(inicio);
+            if (tamanhoPayload <= 0) {
+                break;
+            }
+
+            int tamanhoMerchant = Short.toUnsignedInt(mapa.getShort(inicio + 20));
+            int tamanhoTipo = Short.toUnsignedInt(mapa.getShort(inicio + 22));
+            long fimDados = (long) inicio + TAMANHO_CABECALHO_REGISTRO + tamanhoMerchant + tamanhoTipo + tamanhoPayload;
+            long sequencia = mapa.getLong(inicio + 4);
+            if (fimDados + TAMANHO_HASH > mapa.capacity() || sequencia != ultimaSequencia + 1) {
+                offsetCaudaInvalida = inicio;
+                break;
+            }
+
+            byte[] hash = calcularHash(digest, hashFinal, mapa, inicio, (int) fimDados);
+            byte[] armazenado = new byte[TAMANHO_HASH];
+            mapa.get((int) fimDados, armazenado);
+            if (!MessageDigest.isEqual(hash, armazenado)) {
+                offsetCaudaInvalida = inicio;
+                break;
+            }
+
+            registrar(inicio, sequencia, mapa.getLong(inicio + 12),
+                lerTexto(inicio + TAMANHO_CABECALHO_REGISTRO, tamanhoMerchant),
+                lerTexto(inicio + TAMANHO_CABECALHO_REGISTRO + tamanhoMerchant, tamanhoTipo),
+                hash, (int) fimDados + TAMANHO_HASH);
+            inicio = fim;
+        }
+
+        if (offsetCaudaInvalida >= 0) {
+            logger.warn("Segmento de auditoria {} com registro incompleto ou inválido no offset {} - " +
+                "considerando {} registros íntegros", arquivo.getFileName(), offsetCaudaInvalida,
+                ultimaSequencia - primeiraSequencia + 1);
+        }
+    }
+
+    /**
+     * Fecha o bloco corrente, grava o .idx e sincroniza o arquivo em disco
+     *
+     * @return Checkpoint do último bloco parcial, ou null
+     */
+    Checkpoint selar() throws IOException {
+        if (selado) {
+            return null;
+        }
+        Checkpoint ultimo = hashesBloco.isEmpty() ? null : fecharBloco();
+
+        mapa.force();
+        Path temporario = arquivoIndice().resolveSibling(arquivoIndice().getFileName() + ".tmp");
+        try (DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporario)))) {
+            saida.writeInt(MAGICO);
+            saida.writeInt(VERSAO);
+            saida.writeLong(primeiraSequencia);
+            saida.writeLong(ultimaSequencia);
+            saida.writeLong(timestampMinimo);
+            saida.writeLong(timestampMaximo);
+            saida.writeInt(fim);
+            saida.write(hashFinal);
+
+            saida.writeInt(checkpoints.size());
+            for (Checkpoint checkpoint : checkpoints) {
+                saida.writeLong(checkpoint.sequenciaInicial);
+                saida.writeInt(checkpoint.offset);
+                saida.writeInt(checkpoint.quantidade);
+                saida.write(checkpoint.hashAnterior);
+                saida.write(checkpoint.raizMerkle);
+            }
+
+            saida.writeInt(indice.size());
+            for (Map.Entry<String, ListaOffsets> entrada : indice.entrySet()) {
+                saida.writeUTF(entrada.getKey());
+                ListaOffsets offsets = entrada.getValue();
+                saida.writeInt(offsets.tamanho);
+                for (int i = 0; i < offsets.tamanho; i++) {
+                    saida.writeInt(offsets.valores[i]);
+                }
+            }
+        }
+        Files.move(temporario, arquivoIndice(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        selado = true;
+        indice = null;
+        return ultimo;
+    }
+
+    /**
+     * Resumo de um segmento selado lido apenas do cabeçalho do .idx, sem abrir nem mapear o segmento
+     *
+     * @return Resumo ou null se o segmento ainda não foi selado
+     */
+    static Resumo lerResumo(Path arquivo) throws IOException {
+        Path indiceArquivo = arquivoIndice(arquivo);
+        if (!Files.exists(indiceArquivo)) {
+            return null;
+        }
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(indiceArquivo)))) {
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSAO) {
+                throw new IOException("Índice de auditoria inválido: " + indiceArquivo);
+            }
+            long primeira = entrada.readLong();
+            long ultima = entrada.readLong();
+            long minimo = entrada.readLong();
+            long maximo = entrada.readLong();
+            entrada.readInt();
+            return new Resumo(arquivo, primeira, ultima, minimo, maximo, lerHash(entrada));
+        }
+    }
+
+    /**
+     * Resumo do segmento (para segmentos selados mantidos fora da memória)
+     */
+    Resumo resumo() {
+        return new Resumo(arquivo, primeiraSequencia, ultimaSequencia, timestampMinimo, timestampMaximo, hashFinal);
+    }
+
+    private void carregarMetadados() throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivoIndice())))) {
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSAO || entrada.readLong() != primeiraSequencia) {
+                throw new IOException("Índice de auditoria inconsistente com o segmento: " + arquivoIndice());
+            }
+            ultimaSequencia = entrada.readLong();
+            timestampMinimo = entrada.readLong();
+            timestampMaximo = entrada.readLong();
+            fim = entrada.readInt();
+            hashFinal = lerHash(entrada);
+
+            int quantidade = entrada.readInt();
+            for (int i = 0; i < quantidade; i++) {
+                checkpoints.add(new Checkpoint(entrada.readLong(), entrada.readInt(), entrada.readInt(),
+                    lerHash(entrada), lerHash(entrada)));
+            }
+        }
+        selado = true;
+    }
+
+    /**
+     * Offsets dos registros de uma chave do índice (m:merchantId ou t:eventType)
+     */
+    private int[] offsetsPorChave(String chave) throws IOException {
+        if (!selado) {
+            ListaOffsets offsets = indice.get(chave);
+            return offsets != null ? Arrays.copyOf(offsets.valores, offsets.tamanho) : new int[0];
+        }
+
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivoIndice())))) {
+            // Cabeçalho (44 bytes) + hash final + checkpoints de tamanho fixo
+            entrada.skipNBytes(44L + TAMANHO_HASH);
+            int quantidadeCheckpoints = entrada.readInt();
+            entrada.skipNBytes((long) quantidadeCheckpoints * (16 + 2 * TAMANHO_HASH));
+
+            int quantidadeChaves = entrada.readInt();
+            for (int i = 0; i < quantidadeChaves; i++) {
+                String atual = entrada.readUTF();
+                int tamanho = entrada.readInt();
+                if (!atual.equals(chave)) {
+                    entrada.skipNBytes(4L * tamanho);
+                    continue;
+                }
+                int[] offsets = new int[tamanho];
+                for (int j = 0; j < tamanho; j++) {
+                    offsets[j] = entrada.readInt();
+                }
+                return offsets;
+            }
+        }
+        return new int[0];
+    }
+
+    /**
+     * Busca registros pelo índice do segmento; ao menos merchantId ou eventType deve ser informado
+     */
+    List<AuditSegmentStore.RegistroAuditoria> buscar(String merchantId, String eventType, long de, long ate)
+            throws IOException {
+        if (ultimaSequencia < primeiraSequencia || timestampMaximo < de || timestampMinimo > ate) {
+            return List.of();
+        }
+
+        int[] offsets = merchantId != null
+            ? offsetsPorChave(PREFIXO_MERCHANT + merchantId)
+            : offsetsPorChave(PREFIXO_TIPO + eventType);
+
+        List<AuditSegmentStore.RegistroAuditoria> registros = new ArrayList<>();
+        for (int offset : offsets) {
+            AuditSegmentStore.RegistroAuditoria registro = ler(offset);
+            if (registro.getTimestamp().toEpochMilli() >= de && registro.getTimestamp().toEpochMilli() <= ate
+                    && (eventType == null || eventType.equals(registro.getEventType()))) {
+                registros.add(registro);
+            }
+        }
+        return registros;
+    }
+
+    AuditSegmentStore.RegistroAuditoria ler(int offset) {
+        int tamanhoPayload = mapa.getInt(offset);
+        int tamanhoMerchant = Short.toUnsignedInt(mapa.getShort(offset + 20));
+        int tamanhoTipo = Short.toUnsignedInt(mapa.getShort(offset + 22));
+        int inicioMerchant = offset + TAMANHO_CABECALHO_REGISTRO;
+
+        return new AuditSegmentStore.RegistroAuditoria(
+            mapa.getLong(offset + 4),
+            mapa.getLong(offset + 12),
+            lerTexto(inicioMerchant, tamanhoMerchant),
+            lerTexto(inicioMerchant + tamanhoMerchant, tamanhoTipo),
+            lerTexto(inicioMerchant + tamanhoMerchant + tamanhoTipo, tamanhoPayload));
+    }
+
+    /**
+     * Estado consistente do segmento para verificação fora do lock de escrita: os bytes
+     * até o fim informado não mudam mais (escrita somente por anexação)
+     */
+    Visao visao() {
+        List<Checkpoint> blocos = new ArrayList<>(checkpoints);
+        if (!hashesBloco.isEmpty()) {
+            blocos.add(new Checkpoint(sequenciaBloco, offsetBloco, hashesBloco.size(), hashAnteriorBloco, null));
+        }
+        return new Visao(this, fim, ultimaSequencia, hashFinal, blocos, selado, offsetCaudaInvalida);
+    }
+
+    void forcar() {
+        mapa.force();
+    }
+
+    void fechar() {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            logger.warn("Falha ao fechar segmento de auditoria {}: {}", arquivo.getFileName(), e.getMessage());
+        }
+    }
+
+    private String lerTexto(int offset, int tamanho) {
+        byte[] bytes = new byte[tamanho];
+        mapa.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path arquivoIndice() {
+        return arquivoIndice(arquivo);
+    }
+
+    static Path arquivoIndice(Path arquivoSegmento) {
+        String nome = arquivoSegmento.getFileName().toString();
+        return arquivoSegmento.resolveSibling(nome.substring(0, nome.length() - SUFIXO_SEGMENTO.length()) + SUFIXO_INDICE);
+    }
+
+    private static byte[] lerHash(DataInputStream entrada) throws IOException {
+        byte[] hash = new byte[TAMANHO_HASH];
+        entrada.readFully(hash);
+        return hash;
+    }
+
+    static byte[] calcularHash(MessageDigest digest, byte[] anterior, ByteBuffer mapa, int inicio, int fim) {
+        ByteBuffer fatia = mapa.duplicate();
+        fatia.limit(fim).position(inicio);
+        digest.reset();
+        digest.update(anterior);
+        digest.update(fatia);
+        return digest.digest();
+    }
+
+    /**
+     * Raiz Merkle dos hashes do bloco; nós internos usam o prefixo 0x01 e um nó
+     * sem par sobe inalterado para o nível seguinte
+     */
+    static byte[] raizMerkle(List<byte[]> folhas, MessageDigest digest) {
+        List<byte[]> nivel = folhas;
+        while (nivel.size() > 1) {
+            List<byte[]> proximo = new ArrayList<>((nivel.size() + 1) / 2);
+            for (int i = 0; i < nivel.size(); i += 2) {
+                if (i + 1 == nivel.size()) {
+                    proximo.add(nivel.get(i));
+                    continue;
+                }
+                digest.reset();
+                digest.update((byte) 0x01);
+                digest.update(nivel.get(i));
+                digest.update(nivel.get(i + 1));
+                proximo.add(digest.digest());
+            }
+            nivel = proximo;
+        }
+        return nivel.isEmpty() ? HASH_GENESE : nivel.get(0);
+    }
+
+    static MessageDigest novoDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    ByteBuffer getMapa() {
+        return mapa;
+    }
+
+    Path getArquivo() {
+        return arquivo;
+    }
+
+    long getPrimeiraSequencia() {
+        return primeiraSequencia;
+    }
+
+    long getUltimaSequencia() {
+        return ultimaSequencia;
+    }
+
+    byte[] getHashInicial() {
+        return hashInicial;
+    }
+
+    byte[] getHashFinal() {
+        return hashFinal;
+    }
+
+    boolean isSelado() {
+        return selado;
+    }
+
+    /**
+     * Checkpoint de um bloco de registros consecutivos
+     */
+    static final class Checkpoint {
+        final long sequenciaInicial;
+        final int offset;
+        final int quantidade;
+        final byte[] hashAnterior;
+        final byte[] raizMerkle;
+
+        Checkpoint(long sequenciaInicial, int offset, int quantidade, byte[] hashAnterior, byte[] raizMerkle) {
+            this.sequenciaInicial = sequenciaInicial;
+            this.offset = offset;
+            this.quantidade = quantidade;
+            this.hashAnterior = hashAnterior;
+            this.raizMerkle = raizMerkle;
+        }
+    }
+
+    /**
+     * Metadados de um segmento selado: intervalo de sequência e de tempo e hash final
+     */
+    static final class Resumo {
+        final Path arquivo;
+        final long primeiraSequencia;
+        final long ultimaSequencia;
+        final long timestampMinimo;
+        final long timestampMaximo;
+        final byte[] hashFinal;
+
+        Resumo(Path arquivo, long primeiraSequencia, long ultimaSequencia, long timestampMinimo,
+               long timestampMaximo, byte[] hashFinal) {
+            this.arquivo = arquivo;
+            this.primeiraSequencia = primeiraSequencia;
+            this.ultimaSequencia = ultimaSequencia;
+            this.timestampMinimo = timestampMinimo;
+            this.timestampMaximo = timestampMaximo;
+            this.hashFinal = hashFinal;
+        }
+    }
+
+    /**
+     * Estado imutável de um segmento usado na verificação
+     */
+    static final class Visao {
+        final AuditSegment segmento;
+        final int fim;
+        final long ultimaSequencia;
+        final byte[] hashFinal;
+        final List<Checkpoint> blocos;
+        final boolean selado;
+        final int offsetCaudaInvalida;
+
+        Visao(AuditSegment segmento, int fim, long ultimaSequencia, byte[] hashFinal, List<Checkpoint> blocos,
+              boolean selado, int offsetCaudaInvalida) {
+            this.segmento = segmento;
+            this.fim = fim;
+            this.ultimaSequencia = ultimaSequencia;
+            this.hashFinal = hashFinal;
+            this.blocos = blocos;
+            this.selado = selado;
+            this.offsetCaudaInvalida = offsetCaudaInvalida;
+        }
+    }
+
+    /**
+     * Lista de offsets crescente sem boxing
+     */
+    private static final class ListaOffsets {
+        private int[] valores = new int[8];
+        private int tamanho;
+
+        void adicionar(int offset) {
+            if (tamanho == valores.length) {
+                valores = Arrays.copyOf(valores, tamanho * 2);
+            }
+            valores[tamanho++] = offset;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.pip.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Armazenamento local e encadeado dos eventos de auditoria de segurança
+ *
+ * Os eventos publicados pelo AuditEventPublisher são anexados a segmentos
+ * mapeados em memória (AuditSegment), encadeados por hash registro a registro e
+ * entre segmentos. Cada checkpoint Merkle fechado é registrado no log
+ * SECURITY_AUDIT, ancorando a raiz fora do arquivo.
+ *
+ * A escrita é serializada por um único ReentrantLock (na prática vem da thread do
+ * publisher); como ele é mantido durante escrita no mapa, force e criação de
+ * segmentos, não se usa synchronized, que prenderia threads virtuais à portadora.
+ * Verificação e consultas em segmentos selados não bloqueiam a escrita; no
+ * segmento ativo a consulta usa o índice em memória.
+ *
+ * Apenas o segmento ativo fica aberto permanentemente. Dos selados o armazenamento
+ * guarda só o resumo (intervalo de sequência e de tempo, hash final), lido do .idx;
+ * as consultas mapeiam sob demanda os segmentos do intervalo pedido, mantendo no
+ * máximo {@code audit.store.max-segmentos-abertos} em um cache LRU. Segmentos
+ * selados mais antigos que a retenção são movidos para o diretório de arquivo (ou
+ * removidos, se não houver um), sempre a partir do início da cadeia; a remoção é
+ * registrada no log SECURITY_AUDIT com o hash final, que ancora o segmento seguinte.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class AuditSegmentStore {
+
+    private static final Logger securityLogger = LoggerFactory.getLogger("SECURITY_AUDIT");
+    private static final Logger logger = LoggerFactory.getLogger(AuditSegmentStore.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${audit.store.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${audit.store.diretorio:/var/lib/pip/audit-store}")
+    private String diretorio;
+
+    @Value("${audit.store.segmento-mb:64}")
+    private int tamanhoSegmentoMb;
+
+    @Value("${audit.store.checkpoint-registros:4096}")
+    private int registrosPorCheckpoint;
+
+    @Value("${audit.store.max-segmentos-abertos:8}")
+    private int maxSegmentosAbertos;
+
+    @Value("${audit.store.retencao-dias:90}")
+    private long retencaoDias;
+
+    @Value("${audit.store.diretorio-arquivo:}")
+    private String diretorioArquivo;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<AuditSegment.Resumo> selados = new ArrayList<>();
+
+    // Segmentos selados mapeados para consulta (LRU por ordem de acesso), com lock próprio
+    private final ReentrantLock lockAbertos = new ReentrantLock();
+    private final LinkedHashMap<Path, AuditSegment> abertos = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final MessageDigest digest = AuditSegment.novoDigest();
+    private volatile AuditSegment ativo;
+
+    private Counter contadorRegistros;
+    private Counter contadorRejeitados;
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            logger.info("Armazenamento local de auditoria desabilitado");
+            return;
+        }
+
+        this.contadorRegistros = Counter.builder("pip.audit.store.registros")
+            .description("Eventos de auditoria anexados ao armazenamento local")
+            .register(meterRegistry);
+        this.contadorRejeitados = Counter.builder("pip.audit.store.rejeitados")
+            .description("Eventos de auditoria não anexados (tamanho ou erro de E/S)")
+            .register(meterRegistry);
+
+        try {
+            Path raiz = Paths.get(diretorio);
+            Files.createDirectories(raiz);
+
+            // Selados entram apenas pelo resumo do .idx, sem mapear o segmento
+            List<Path> arquivos = AuditVerifier.listarSegmentos(raiz);
+            for (int i = 0; i < arquivos.size(); i++) {
+                Path arquivo = arquivos.get(i);
+                AuditSegment.Resumo resumo = AuditSegment.lerResumo(arquivo);
+                boolean ultimo = i == arquivos.size() - 1;
+                if (resumo == null && !ultimo) {
+                    // Rotação interrompida antes de selar: recupera e sela o segmento anterior
+                    AuditSegment segmento = AuditSegment.abrir(arquivo, false, registrosPorCheckpoint);
+                    segmento.selar();
+                    resumo = segmento.resumo();
+                    segmento.fechar();
+                }
+                if (resumo != null) {
+                    selados.add(resumo);
+                } else {
+                    // Reabre para escrita o segmento interrompido, já recuperado até o último registro íntegro
+                    ativo = AuditSegment.abrir(arquivo, true, registrosPorCheckpoint);
+                }
+            }
+
+            if (ativo == null && selados.isEmpty()) {
+                ativo = AuditSegment.criar(raiz, 1, AuditSegment.HASH_GENESE, tamanhoSegmentoBytes(), registrosPorCheckpoint);
+            } else if (ativo == null) {
+                AuditSegment.Resumo anterior = selados.get(selados.size() - 1);
+                ativo = novoSegmento(raiz, anterior.ultimaSequencia, anterior.hashFinal);
+            }
+
+            logger.info("Armazenamento de auditoria iniciado - diretório: {}, segmentos selados: {}, próxima sequência: {}",
+                diretorio, selados.size(), ativo.getUltimaSequencia() + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível iniciar o armazenamento de auditoria em " + diretorio, e);
+        }
+    }
+
+    /**
+     * Anexa um evento já serializado, encadeado ao anterior
+     */
+    public void anexar(String merchantId, String eventType, byte[] payload) {
+        if (ativo == null) {
+            return;
+        }
+
+        byte[] merchant = (merchantId != null ? merchantId : "").getBytes(StandardCharsets.UTF_8);
+        byte[] tipo = (eventType != null ? eventType : "").getBytes(StandardCharsets.UTF_8);
+        int tamanho = AuditSegment.tamanhoRegistro(merchant, tipo, payload);
+        if (merchant.length > 0xFFFF || tipo.length > 0xFFFF || payload.length == 0
+                || tamanho > tamanhoSegmentoBytes() - AuditSegment.TAMANHO_CABECALHO) {
+            contadorRejeitados.increment();
+            logger.error("Evento de auditoria de {} bytes não pode ser anexado ao armazenamento local", payload.length);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!ativo.cabe(tamanho)) {
+                AuditSegment anterior = ativo;
+                registrarCheckpoint(anterior, anterior.selar());
+                ativo = novoSegmento(anterior.getArquivo().getParent(), anterior.getUltimaSequencia(),
+                    anterior.getHashFinal());
+                selados.add(anterior.resumo());
+                // Consultas e verificações em andamento mantêm a referência ao mapa
+                anterior.fechar();
+            }
+
+            long sequencia = ativo.getUltimaSequencia() + 1;
+            registrarCheckpoint(ativo, ativo.anexar(sequencia, System.currentTimeMillis(), merchant, tipo, payload, digest));
+            contadorRegistros.increment();
+
+        } catch (IOException e) {
+            contadorRejeitados.increment();
+            logger.error("Falha ao rotacionar segmento de auditoria: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Eventos de um merchant no intervalo, opcionalmente filtrados pelo tipo, usando
+     * os índices por segmento (sem varredura completa). Só são mapeados os segmentos
+     * selados cujo intervalo de tempo cruza o pedido.
+     */
+    public List<RegistroAuditoria> buscar(String merchantId, String eventType, Instant de, Instant ate) throws IOException {
+        if (merchantId == null && eventType == null) {
+            throw new IllegalArgumentException("Informe merchantId ou eventType");
+        }
+
+        List<AuditSegment.Resumo> segmentos;
+        AuditSegment corrente;
+        lock.lock();
+        try {
+            segmentos = new ArrayList<>(selados);
+            corrente = ativo;
+        } finally {
+            lock.unlock();
+        }
+
+        List<RegistroAuditoria> registros = new ArrayList<>();
+        for (AuditSegment.Resumo resumo : segmentos) {
+            if (resumo.timestampMaximo < de.toEpochMilli() || resumo.timestampMinimo > ate.toEpochMilli()) {
+                continue;
+            }
+            registros.addAll(segmentoSelado(resumo).buscar(merchantId, eventType, de.toEpochMilli(), ate.toEpochMilli()));
+        }
+        if (corrente != null) {
+            lock.lock();
+            try {
+                registros.addAll(corrente.buscar(merchantId, eventType, de.toEpochMilli(), ate.toEpochMilli()));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return registros;
+    }
+
+    /**
+     * Verifica a integridade de todo o armazenamento local (encadeamento e checkpoints Merkle)
+     *
+     * Os segmentos selados são mapeados somente durante a verificação, fora do cache de consultas.
+     */
+    public AuditVerifier.ResultadoVerificacao verificar() {
+        List<AuditSegment.Resumo> resumos;
+        AuditSegment.Visao visaoAtiva = null;
+        lock.lock();
+        try {
+            resumos = new ArrayList<>(selados);
+            if (ativo != null) {
+                visaoAtiva = ativo.visao();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        List<AuditSegment> segmentos = new ArrayList<>(resumos.size());
+        AuditVerifier.ResultadoVerificacao resultado;
+        try {
+            List<AuditSegment.Visao> visoes = new ArrayList<>(resumos.size() + 1);
+            for (AuditSegment.Resumo resumo : resumos) {
+                AuditSegment segmento = AuditSegment.abrir(resumo.arquivo, false, registrosPorCheckpoint);
+                segmentos.add(segmento);
+                visoes.add(segmento.visao());
+            }
+            if (visaoAtiva != null) {
+                visoes.add(visaoAtiva);
+            }
+            resultado = AuditVerifier.verificar(visoes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao abrir segmento de auditoria para verificação", e);
+        } finally {
+            segmentos.forEach(AuditSegment::fechar);
+        }
+
+        if (resultado.isValido()) {
+            logger.info("Verificação do armazenamento de auditoria concluída: {}", resultado);
+        } else {
+            logger.error("Verificação do armazenamento de auditoria encontrou falhas: {} - {}",
+                resultado, resultado.getFalhas());
+        }
+        return resultado;
+    }
+
+    /**
+     * Sincroniza periodicamente o segmento ativo em disco
+     */
+    @Scheduled(fixedDelayString = "${audit.store.force-intervalo-ms:1000}")
+    public void sincronizar() {
+        AuditSegment segmento = ativo;
+        if (segmento != null) {
+            segmento.forcar();
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        lock.lock();
+        try {
+            if (ativo != null) {
+                ativo.forcar();
+                ativo.fechar();
+            }
+        } finally {
+            lock.unlock();
+        }
+        lockAbertos.lock();
+        try {
+            abertos.values().forEach(AuditSegment::fechar);
+            abertos.clear();
+        } finally {
+            lockAbertos.unlock();
+        }
+    }
+
+    /**
+     * Aplica a retenção: segmentos selados cujo evento mais recente é anterior a
+     * {@code audit.store.retencao-dias} saem do diretório ativo, do mais antigo ao mais novo
+     */
+    @Scheduled(fixedDelayString = "${audit.store.retencao-intervalo-ms:3600000}")
+    public void aplicarRetencao() {
+        if (retencaoDias <= 0) {
+            return;
+        }
+        aplicarRetencao(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retencaoDias));
+    }
+
+    void aplicarRetencao(long limite) {
+        if (ativo == null) {
+            return;
+        }
+
+        List<AuditSegment.Resumo> expirados = new ArrayList<>();
+        lock.lock();
+        try {
+            // Somente o início da cadeia, para que os segmentos restantes continuem contíguos
+            while (!selados.isEmpty() && selados.get(0).timestampMaximo < limite) {
+                expirados.add(selados.remove(0));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (int i = 0; i < expirados.size(); i++) {
+            AuditSegment.Resumo resumo = expirados.get(i);
+            try {
+                descartarAberto(resumo.arquivo);
+                String destino = retirar(resumo.arquivo);
+                securityLogger.info("AUDIT_RETENCAO: segmento={} sequencia={}-{} hashFinal={} destino={}",
+                    resumo.arquivo.getFileName(), resumo.primeiraSequencia, resumo.ultimaSequencia,
+                    HexFormat.of().formatHex(resumo.hashFinal), destino);
+            } catch (IOException e) {
+                logger.error("Falha ao aplicar retenção ao segmento de auditoria {}: {}",
+                    resumo.arquivo.getFileName(), e.getMessage());
+                // Devolve o segmento e os seguintes ao início da cadeia para a próxima execução
+                lock.lock();
+                try {
+                    selados.addAll(0, expirados.subList(i, expirados.size()));
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move o segmento e o .idx para o diretório de arquivo, ou os remove se não houver um
+     *
+     * @return Destino registrado no log de auditoria
+     */
+    private String retirar(Path arquivo) throws IOException {
+        Path indice = AuditSegment.arquivoIndice(arquivo);
+        if (diretorioArquivo == null || diretorioArquivo.isBlank()) {
+            Files.deleteIfExists(indice);
+            Files.delete(arquivo);
+            return "removido";
+        }
+
+        Path destino = Paths.get(diretorioArquivo);
+        Files.createDirectories(destino);
+        // Segmento primeiro: um .idx órfão no diretório ativo não é listado como segmento
+        Files.move(arquivo, destino.resolve(arquivo.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        if (Files.exists(indice)) {
+            Files.move(indice, destino.resolve(indice.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return destino.toString();
+    }
+
+    /**
+     * Segmento selado mapeado para consulta, aberto sob demanda e mantido no cache LRU
+     */
+    private AuditSegment segmentoSelado(AuditSegment.Resumo resumo) throws IOException {
+        lockAbertos.lock();
+        try {
+            AuditSegment segmento = abertos.get(resumo.arquivo);
+            if (segmento != null) {
+                return segmento;
+            }
+            segmento = AuditSegment.abrir(resumo.arquivo, false, registrosPorCheckpoint);
+            abertos.put(resumo.arquivo, segmento);
+
+            // O mapa de um segmento removido do cache continua válido para quem já o referencia
+            Iterator<Map.Entry<Path, AuditSegment>> iterator = abertos.entrySet().iterator();
+            while (abertos.size() > Math.max(1, maxSegmentosAbertos) && iterator.hasNext()) {
+                iterator.next().getValue().fechar();
+                iterator.remove();
+            }
+            return segmento;
+        } finally {
+            lockAbertos.unlock();
+        }
+    }
+
+    private void descartarAberto(Path arquivo) {
+        lockAbertos.lock();
+        try {
+            AuditSegment segmento = abertos.remove(arquivo);
+            if (segmento != null) {
+                segmento.fechar();
+            }
+        } finally {
+            lockAbertos.unlock();
+        }
+    }
+
+    private AuditSegment novoSegmento(Path raiz, long ultimaSequencia, byte[] hashFinal) throws IOException {
+        return AuditSegment.criar(raiz, ultimaSequencia + 1, hashFinal, tamanhoSegmentoBytes(), registrosPorCheckpoint);
+    }
+
+    private void registrarCheckpoint(AuditSegment segmento, AuditSegment.Checkpoint checkpoint) {
+        if (checkpoint != null) {
+            securityLogger.info("AUDIT_CHECKPOINT: segmento={} sequencia={}-{} raizMerkle={}",
+                segmento.getArquivo().getFileName(), checkpoint.sequenciaInicial,
+                checkpoint.sequenciaInicial + checkpoint.quantidade - 1, HexFormat.of().formatHex(checkpoint.raizMerkle));
+        }
+    }
+
+    private int tamanhoSegmentoBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, (long) tamanhoSegmentoMb * 1024 * 1024);
+    }
+
+    /**
+     * Evento lido do armazenamento local
+     */
+    public static final class RegistroAuditoria {
+        private final long sequencia;
+        private final Instant timestamp;
+        private final String merchantId;
+        private final String eventType;
+        private final String payload;
+
+        RegistroAuditoria(long sequencia, long timestamp, String merchantId, String eventType, String payload) {
+            this.sequencia = sequencia;
+            this.timestamp = Instant.ofEpochMilli(timestamp);
+            this.merchantId = merchantId;
+            this.eventType = eventType;
+            this.payload = payload;
+        }
+
+        public long getSequencia() {
+            return sequencia;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        public String getMerchantId() {
+            return merchantId;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
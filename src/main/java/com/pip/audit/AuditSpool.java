@@ -0,0 +1,199 @@
+package com.pip.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Spool local em disco para eventos de auditoria não entregues ao Kafka
+ *
+ * Os eventos são anexados ao arquivo corrente no formato
+ * [tamanho da chave][chave][tamanho do valor][valor], já serializados. Para
+ * o reenvio o arquivo corrente é fechado (rotacionado) e os arquivos fechados
+ * são lidos em ordem; cada arquivo só é removido depois que todos os seus
+ * registros foram confirmados pelo broker.
+ *
+ * Um registro truncado no fim do arquivo (queda do processo durante a escrita)
+ * é ignorado na leitura.
+ *
+ * A escrita ocorre também no callback do producer Kafka; o acesso ao arquivo corrente é
+ * serializado por um ReentrantLock (sem pinning de threads virtuais durante o I/O) e o
+ * tamanho acumulado é lido sem lock pela métrica.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+class AuditSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditSpool.class);
+
+    private static final String PREFIXO = "audit-spool-";
+    private static final String SUFIXO = ".bin";
+
+    private final Path diretorio;
+    private final long tamanhoMaximoBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private DataOutputStream arquivoCorrente;
+    private long sequencia;
+    private volatile long tamanhoBytes;
+
+    AuditSpool(Path diretorio, long tamanhoMaximoBytes) {
+        this.diretorio = diretorio;
+        this.tamanhoMaximoBytes = tamanhoMaximoBytes;
+        try {
+            Files.createDirectories(diretorio);
+            for (Path arquivo : listarArquivos()) {
+                tamanhoBytes += Files.size(arquivo);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível inicializar o spool de auditoria em " + diretorio, e);
+        }
+    }
+
+    /**
+     * Anexa um evento ao arquivo corrente
+     *
+     * @return false se o spool atingiu o tamanho máximo ou a escrita falhou
+     */
+    boolean gravar(String chave, byte[] valor) {
+        byte[] chaveBytes = chave != null ? chave.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int tamanhoRegistro = 8 + chaveBytes.length + valor.length;
+
+        lock.lock();
+        try {
+            if (tamanhoBytes + tamanhoRegistro > tamanhoMaximoBytes) {
+                return false;
+            }
+            if (arquivoCorrente == null) {
+                Path arquivo = diretorio.resolve(PREFIXO + System.currentTimeMillis() + "-" + (sequencia++) + SUFIXO);
+                arquivoCorrente = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(arquivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.APPEND)));
+            }
+            arquivoCorrente.writeInt(chaveBytes.length);
+            arquivoCorrente.write(chaveBytes);
+            arquivoCorrente.writeInt(valor.length);
+            arquivoCorrente.write(valor);
+            arquivoCorrente.flush();
+            tamanhoBytes += tamanhoRegistro;
+            return true;
+        } catch (IOException e) {
+            logger.error("Falha ao gravar evento de auditoria no spool: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fecha o arquivo corrente e retorna os arquivos prontos para reenvio, do mais antigo ao mais novo
+     */
+    List<Path> rotacionar() {
+        lock.lock();
+        try {
+            fecharCorrente();
+            return listarArquivos();
+        } catch (IOException e) {
+            logger.error("Falha ao listar o spool de auditoria: {}", e.getMessage());
+            return List.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lê os registros de um arquivo fechado do spool
+     */
+    void ler(Path arquivo, BiConsumer<String, byte[]> consumidor) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivo)))) {
+            while (true) {
+                String chave;
+                byte[] valor;
+                try {
+                    byte[] chaveBytes = new byte[entrada.readInt()];
+                    entrada.readFully(chaveBytes);
+                    valor = new byte[entrada.readInt()];
+                    entrada.readFully(valor);
+                    chave = chaveBytes.length > 0 ? new String(chaveBytes, StandardCharsets.UTF_8) : null;
+                } catch (EOFException e) {
+                    return;
+                }
+                consumidor.accept(chave, valor);
+            }
+        }
+    }
+
+    /**
+     * Remove um arquivo cujos registros foram todos reenviados
+     */
+    void remover(Path arquivo) throws IOException {
+        lock.lock();
+        try {
+            long tamanho = Files.size(arquivo);
+            Files.delete(arquivo);
+            tamanhoBytes = Math.max(0, tamanhoBytes - tamanho);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getTamanhoBytes() {
+        return tamanhoBytes;
+    }
+
+    void fechar() {
+        lock.lock();
+        try {
+            fecharCorrente();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fecharCorrente() {
+        if (arquivoCorrente == null) {
+            return;
+        }
+        try {
+            arquivoCorrente.close();
+        } catch (IOException e) {
+            logger.warn("Falha ao fechar arquivo do spool de auditoria: {}", e.getMessage());
+        }
+        arquivoCorrente = null;
+    }
+
+    private List<Path> listarArquivos() throws IOException {
+        List<Path> arquivos = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diretorio, PREFIXO + "*" + SUFIXO)) {
+            stream.forEach(arquivos::add);
+        }
+        arquivos.sort((a, b) -> compararPorCriacao(a.getFileName().toString(), b.getFileName().toString()));
+        return arquivos;
+    }
+
+    /**
+     * Ordena por timestamp e sequência numéricos (o nome não tem largura fixa)
+     */
+    private static int compararPorCriacao(String a, String b) {
+        String[] partesA = a.substring(PREFIXO.length(), a.length() - SUFIXO.length()).split("-");
+        String[] partesB = b.substring(PREFIXO.length(), b.length() - SUFIXO.length()).split("-");
+        int comparacao = Long.compare(Long.parseLong(partesA[0]), Long.parseLong(partesB[0]));
+        return comparacao != 0 ? comparacao : Long.compare(Long.parseLong(partesA[1]), Long.parseLong(partesB[1]));
+    }
+}
@@ -0,0 +1,305 @@
+package com.pip.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Verificação de conformidade do armazenamento local de auditoria
+ *
+ * Cada bloco de checkpoint é verificado de forma independente e em paralelo
+ * (recalcula o encadeamento a partir do hash anterior do bloco e a raiz Merkle);
+ * em seguida os blocos e segmentos são ligados em sequência: o hash final de um
+ * bloco deve ser o hash anterior do próximo, sem lacunas de sequência ou offset.
+ *
+ * Também pode ser executada fora da aplicação, sobre uma cópia do diretório:
+ * java -cp pip.jar -Dloader.main=com.pip.audit.AuditVerifier
+ *   org.springframework.boot.loader.launch.PropertiesLauncher diretorio [merchantId de ate]
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public final class AuditVerifier {
+
+    private AuditVerifier() {
+    }
+
+    /**
+     * Verifica o encadeamento e os checkpoints das visões de segmento, em ordem de sequência
+     */
+    static ResultadoVerificacao verificar(List<AuditSegment.Visao> visoes) {
+        long inicio = System.nanoTime();
+
+        List<Tarefa> tarefas = new ArrayList<>();
+        for (AuditSegment.Visao visao : visoes) {
+            for (AuditSegment.Checkpoint bloco : visao.blocos) {
+                tarefas.add(new Tarefa(visao, bloco));
+            }
+        }
+        List<ResultadoBloco> resultados = tarefas.parallelStream()
+            .map(AuditVerifier::verificarBloco)
+            .collect(Collectors.toList());
+
+        List<String> falhas = new ArrayList<>();
+        List<String> avisos = new ArrayList<>();
+        long registros = 0;
+        int indice = 0;
+        AuditSegment.Visao anterior = null;
+
+        for (AuditSegment.Visao visao : visoes) {
+            String nome = visao.segmento.getArquivo().getFileName().toString();
+
+            if (anterior != null) {
+                if (!Arrays.equals(visao.segmento.getHashInicial(), anterior.hashFinal)) {
+                    falhas.add(nome + ": hash inicial não corresponde ao hash final do segmento anterior");
+                }
+                if (visao.segmento.getPrimeiraSequencia() != anterior.ultimaSequencia + 1) {
+                    falhas.add(nome + ": lacuna de sequência entre segmentos");
+                }
+            } else if (!Arrays.equals(visao.segmento.getHashInicial(), AuditSegment.HASH_GENESE)) {
+                avisos.add(nome + ": primeiro segmento disponível não é o início da cadeia");
+            }
+
+            byte[] hashEsperado = visao.segmento.getHashInicial();
+            long sequenciaEsperada = visao.segmento.getPrimeiraSequencia();
+            int offsetEsperado = AuditSegment.TAMANHO_CABECALHO;
+
+            for (int i = 0; i < visao.blocos.size(); i++, indice++) {
+                ResultadoBloco resultado = resultados.get(indice);
+                AuditSegment.Checkpoint bloco = visao.blocos.get(i);
+                registros += resultado.registros;
+
+                if (resultado.falha != null) {
+                    falhas.add(nome + ": " + resultado.falha);
+                }
+                if (!Arrays.equals(bloco.hashAnterior, hashEsperado) || bloco.offset != offsetEsperado
+                        || bloco.sequenciaInicial != sequenciaEsperada) {
+                    falhas.add(nome + ": checkpoint da sequência " + bloco.sequenciaInicial
+                        + " não se liga ao bloco anterior");
+                }
+                hashEsperado = resultado.hashFinal;
+                sequenciaEsperada = resultado.proximaSequencia;
+                offsetEsperado = resultado.proximoOffset;
+            }
+
+            if (!Arrays.equals(hashEsperado, visao.hashFinal) || offsetEsperado != visao.fim) {
+                falhas.add(nome + ": hash final ou fim dos dados não confere com os checkpoints");
+            }
+            if (visao.offsetCaudaInvalida >= 0) {
+                avisos.add(nome + ": registro incompleto ou inválido após o último registro íntegro (offset "
+                    + visao.offsetCaudaInvalida + ")");
+            }
+            anterior = visao;
+        }
+
+        long duracaoMs = (System.nanoTime() - inicio) / 1_000_000;
+        return new ResultadoVerificacao(falhas.isEmpty(), visoes.size(), registros, duracaoMs,
+            Collections.unmodifiableList(falhas), Collections.unmodifiableList(avisos));
+    }
+
+    private static ResultadoBloco verificarBloco(Tarefa tarefa) {
+        AuditSegment.Checkpoint bloco = tarefa.bloco;
+        ByteBuffer mapa = tarefa.visao.segmento.getMapa();
+        int limite = tarefa.visao.fim;
+        MessageDigest digest = AuditSegment.novoDigest();
+
+        List<byte[]> hashes = new ArrayList<>(bloco.quantidade);
+        byte[] anterior = bloco.hashAnterior;
+        long sequencia = bloco.sequenciaInicial;
+        int offset = bloco.offset;
+
+        for (int i = 0; i < bloco.quantidade; i++, sequencia++) {
+            if (offset + AuditSegment.TAMANHO_CABECALHO_REGISTRO > limite) {
+                return ResultadoBloco.falha(i, anterior, sequencia, offset, "bloco ultrapassa o fim dos dados");
+            }
+            int tamanhoPayload = mapa.getInt(offset);
+            long fimDados = (long) offset + AuditSegment.TAMANHO_CABECALHO_REGISTRO
+                + Short.toUnsignedInt(mapa.getShort(offset + 20))
+                + Short.toUnsignedInt(mapa.getShort(offset + 22)) + tamanhoPayload;
+            if (tamanhoPayload <= 0 || fimDados + AuditSegment.TAMANHO_HASH > limite) {
+                return ResultadoBloco.falha(i, anterior, sequencia, offset, "registro inválido no offset " + offset);
+            }
+            if (mapa.getLong(offset + 4) != sequencia) {
+                return ResultadoBloco.falha(i, anterior, sequencia, offset, "sequência fora de ordem no offset " + offset);
+            }
+
+            byte[] hash = AuditSegment.calcularHash(digest, anterior, mapa, offset, (int) fimDados);
+            byte[] armazenado = new byte[AuditSegment.TAMANHO_HASH];
+            mapa.get((int) fimDados, armazenado);
+            if (!MessageDigest.isEqual(hash, armazenado)) {
+                return ResultadoBloco.falha(i, anterior, sequencia, offset,
+                    "hash divergente no registro de sequência " + sequencia);
+            }
+
+            hashes.add(hash);
+            anterior = hash;
+            offset = (int) fimDados + AuditSegment.TAMANHO_HASH;
+        }
+
+        if (bloco.raizMerkle != null
+                && !MessageDigest.isEqual(bloco.raizMerkle, AuditSegment.raizMerkle(hashes, digest))) {
+            return ResultadoBloco.falha(bloco.quantidade, anterior, sequencia, offset,
+                "raiz Merkle divergente no checkpoint da sequência " + bloco.sequenciaInicial);
+        }
+        return new ResultadoBloco(bloco.quantidade, anterior, sequencia, offset, null);
+    }
+
+    /**
+     * Abre os segmentos de um diretório somente para leitura, em ordem de sequência
+     */
+    static List<AuditSegment> abrirSegmentos(Path diretorio, int registrosPorCheckpoint) throws IOException {
+        List<Path> arquivos = listarSegmentos(diretorio);
+
+        List<AuditSegment> segmentos = new ArrayList<>(arquivos.size());
+        for (Path arquivo : arquivos) {
+            segmentos.add(AuditSegment.abrir(arquivo, false, registrosPorCheckpoint));
+        }
+        return segmentos;
+    }
+
+    /**
+     * Arquivos de segmento de um diretório, em ordem de sequência (o nome tem largura fixa)
+     */
+    static List<Path> listarSegmentos(Path diretorio) throws IOException {
+        List<Path> arquivos = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diretorio, "audit-*" + AuditSegment.SUFIXO_SEGMENTO)) {
+            stream.forEach(arquivos::add);
+        }
+        Collections.sort(arquivos);
+        return arquivos;
+    }
+
+    /**
+     * Ferramenta de linha de comando: verifica o diretório e, opcionalmente, lista
+     * os eventos de um merchant no intervalo informado (ISO-8601)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 4) {
+            System.err.println("Uso: AuditVerifier <diretorio> [merchantId <de> <ate>]");
+            System.exit(2);
+        }
+
+        List<AuditSegment> segmentos = abrirSegmentos(Paths.get(args[0]), 4096);
+        try {
+            ResultadoVerificacao resultado = verificar(segmentos.stream()
+                .map(AuditSegment::visao)
+                .collect(Collectors.toList()));
+
+            System.out.println(resultado);
+            resultado.getFalhas().forEach(falha -> System.out.println("FALHA: " + falha));
+            resultado.getAvisos().forEach(aviso -> System.out.println("AVISO: " + aviso));
+
+            if (args.length == 4) {
+                long de = Instant.parse(args[2]).toEpochMilli();
+                long ate = Instant.parse(args[3]).toEpochMilli();
+                for (AuditSegment segmento : segmentos) {
+                    for (AuditSegmentStore.RegistroAuditoria registro : segmento.buscar(args[1], null, de, ate)) {
+                        System.out.println(registro.getPayload());
+                    }
+                }
+            }
+
+            System.exit(resultado.isValido() ? 0 : 1);
+        } finally {
+            segmentos.forEach(AuditSegment::fechar);
+        }
+    }
+
+    private static final class Tarefa {
+        final AuditSegment.Visao visao;
+        final AuditSegment.Checkpoint bloco;
+
+        Tarefa(AuditSegment.Visao visao, AuditSegment.Checkpoint bloco) {
+            this.visao = visao;
+            this.bloco = bloco;
+        }
+    }
+
+    private static final class ResultadoBloco {
+        final int registros;
+        final byte[] hashFinal;
+        final long proximaSequencia;
+        final int proximoOffset;
+        final String falha;
+
+        ResultadoBloco(int registros, byte[] hashFinal, long proximaSequencia, int proximoOffset, String falha) {
+            this.registros = registros;
+            this.hashFinal = hashFinal;
+            this.proximaSequencia = proximaSequencia;
+            this.proximoOffset = proximoOffset;
+            this.falha = falha;
+        }
+
+        static ResultadoBloco falha(int registros, byte[] hashFinal, long proximaSequencia, int proximoOffset,
+                                    String falha) {
+            return new ResultadoBloco(registros, hashFinal, proximaSequencia, proximoOffset, falha);
+        }
+    }
+
+    /**
+     * Resultado da verificação de integridade do armazenamento de auditoria
+     */
+    public static final class ResultadoVerificacao {
+        private final boolean valido;
+        private final int segmentos;
+        private final long registros;
+        private final long duracaoMs;
+        private final List<String> falhas;
+        private final List<String> avisos;
+
+        ResultadoVerificacao(boolean valido, int segmentos, long registros, long duracaoMs,
+                             List<String> falhas, List<String> avisos) {
+            this.valido = valido;
+            this.segmentos = segmentos;
+            this.registros = registros;
+            this.duracaoMs = duracaoMs;
+            this.falhas = falhas;
+            this.avisos = avisos;
+        }
+
+        public boolean isValido() {
+            return valido;
+        }
+
+        public int getSegmentos() {
+            return segmentos;
+        }
+
+        public long getRegistros() {
+            return registros;
+        }
+
+        public long getDuracaoMs() {
+            return duracaoMs;
+        }
+
+        public List<String> getFalhas() {
+            return falhas;
+        }
+
+        public List<String> getAvisos() {
+            return avisos;
+        }
+
+        @Override
+        public String toString() {
+            return "ResultadoVerificacao{" +
+                    "valido=" + valido +
+                    ", segmentos=" + segmentos +
+                    ", registros=" + registros +
+                    ", duracaoMs=" + duracaoMs +
+                    ", falhas=" + falhas.size() +
+                    ", avisos=" + avisos.size() +
+                    '}';
+        }
+    }
+}
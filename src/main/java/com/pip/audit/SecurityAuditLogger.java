@@ -1,36 +1,44 @@
 package com.pip.audit;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pip.dto.AuditEvent;
 import com.pip.dto.SecurityEventType;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 /**
  * Sistema centralizado de auditoria e logging de segurança
  * Implementa conformidade PCI DSS para rastreamento de eventos
+ *
+ * Os eventos são publicados de forma assíncrona pelo AuditEventPublisher
+ * (log local e Kafka), fora do caminho da requisição.
  */
 @Service
 public class SecurityAuditLogger {
     
-    private static final Logger securityLogger = LoggerFactory.getLogger("SECURITY_AUDIT");
     private static final Logger logger = LoggerFactory.getLogger(SecurityAuditLogger.class);
     
-    @Autowired
-    private KafkaTemplate<String, AuditEvent> kafkaTemplate;
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    });
     
     @Autowired
-    private ObjectMapper objectMapper;
+    private AuditEventPublisher auditEventPublisher;
     
     /**
      * Log de início de tokenização
@@ -85,6 +93,28 @@ public class SecurityAuditLogger {
         logSecurityEvent(event);
     }
     
+    /**
+     * Registro agregado de um lote de tokenização (um evento por lote, não por item)
+     */
+    public void logBatchTokenization(String batchId, String merchantId, int total, int succeeded,
+                                     Map<String, Integer> failuresByCode, long durationMs) {
+        AuditEvent event = createAuditEvent(
+            SecurityEventType.TOKENIZATION_BATCH,
+            merchantId,
+            Map.of(
+                "batchId", batchId,
+                "action", "BATCH_TOKENIZATION_COMPLETED",
+                "total", total,
+                "succeeded", succeeded,
+                "failed", total - succeeded,
+                "failuresByCode", failuresByCode,
+                "durationMs", durationMs
+            )
+        );
+        
+        logSecurityEvent(event);
+    }
+    
     /**
      * Log de início de destokenização
      */
@@ -140,6 +170,29 @@ public class SecurityAuditLogger {
         logSecurityEvent(event);
     }
     
+    /**
+     * Registro agregado de um lote de destokenização (um evento por lote, não por item)
+     */
+    public void logBatchDetokenization(String batchId, String merchantId, String purpose, int total, int succeeded,
+                                       Map<String, Integer> failuresByCode, long durationMs) {
+        AuditEvent event = createAuditEvent(
+            SecurityEventType.DETOKENIZATION_BATCH,
+            merchantId,
+            Map.of(
+                "batchId", batchId,
+                "purpose", purpose,
+                "action", "BATCH_DETOKENIZATION_COMPLETED",
+                "total", total,
+                "succeeded", succeeded,
+                "failed", total - succeeded,
+                "failuresByCode", failuresByCode,
+                "durationMs", durationMs
+            )
+        );
+        
+        logSecurityEvent(event);
+    }
+    
     /**
      * Log de tentativa de destokenização não autorizada
      */
@@ -418,23 +471,11 @@ public class SecurityAuditLogger {
     
     private void logSecurityEvent(AuditEvent event) {
         try {
-            // Configurar MDC para logging estruturado
-            MDC.put("eventId", event.getEventId());
-            MDC.put("eventType", event.getEventType().toString());
-            MDC.put("merchantId", event.getMerchantId());
-            MDC.put("timestamp", event.getTimestamp().toString());
-            
-            // Log local estruturado
-            securityLogger.info("SECURITY_EVENT: {}", objectMapper.writeValueAsString(event));
-            
-            // Enviar para Kafka para processamento assíncrono
-            kafkaTemplate.send("security-events", event.getEventId(), event);
+            // Log local estruturado e envio ao Kafka na thread do publisher
+            auditEventPublisher.publicar(event);
             
         } catch (Exception e) {
             logger.error("Failed to log security event", e);
-        } finally {
-            // Limpar MDC
-            MDC.clear();
         }
     }
     
@@ -457,22 +498,14 @@ public class SecurityAuditLogger {
     private String calculateChecksum(String eventId, Instant timestamp, SecurityEventType eventType, 
                                    String merchantId, Map<String, Object> data) {
         try {
+            // Chaves ordenadas: o toString de um HashMap não tem ordem estável
             String input = eventId + timestamp.toString() + eventType.toString() + 
-                          merchantId + data.toString();
-            
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
+                          merchantId + new TreeMap<>(data);
             
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
+            MessageDigest digest = SHA256.get();
+            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
             
-            return "sha256:" + hexString.toString();
+            return "sha256:" + HexFormat.of().formatHex(hash);
             
         } catch (Exception e) {
             logger.error("Failed to calculate checksum", e);
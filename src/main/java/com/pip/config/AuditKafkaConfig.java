@@ -0,0 +1,76 @@
+package com.pip.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuração do producer Kafka dos eventos de auditoria de segurança
+ *
+ * Os eventos chegam já serializados (byte[]), então o producer não serializa de
+ * novo. O envio é agrupado por linger/batch e comprimido; max.block.ms curto evita
+ * que a thread de publicação fique presa quando o broker está fora (o evento vai
+ * para o spool local).
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Configuration
+public class AuditKafkaConfig {
+
+    @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
+    private String bootstrapServers;
+
+    @Value("${audit.kafka.linger-ms:20}")
+    private int lingerMs;
+
+    @Value("${audit.kafka.batch-size:131072}")
+    private int batchSize;
+
+    @Value("${audit.kafka.compression:lz4}")
+    private String compression;
+
+    @Value("${audit.kafka.buffer-memory:33554432}")
+    private long bufferMemory;
+
+    @Value("${audit.kafka.max-block-ms:500}")
+    private long maxBlockMs;
+
+    @Value("${audit.kafka.request-timeout-ms:10000}")
+    private int requestTimeoutMs;
+
+    // Deve ser >= linger.ms + request.timeout.ms
+    @Value("${audit.kafka.delivery-timeout-ms:30000}")
+    private int deliveryTimeoutMs;
+
+    @Bean
+    public ProducerFactory<String, byte[]> auditProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+        props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, requestTimeoutMs);
+        props.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, deliveryTimeoutMs);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(props);
+    }
+
+    @Bean
+    public KafkaTemplate<String, byte[]> auditKafkaTemplate(ProducerFactory<String, byte[]> auditProducerFactory) {
+        return new KafkaTemplate<>(auditProducerFactory);
+    }
+}
@@ -0,0 +1,402 @@
+package com.pip.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fábrica de clientes HTTP por gateway
+ *
+ * Cada gateway recebe seu próprio RestTemplate sobre um pool de conexões
+ * dedicado, evitando que um adquirente lento esgote as conexões dos demais.
+ *
+ * Características:
+ * - Pool por gateway com limite total e por rota (Apache HttpClient 5)
+ * - Keep-alive com remoção de conexões ociosas e expiradas
+ * - Reuso de sessão TLS via cache de sessões do SSLContext
+ * - HTTP/2 opcional (cliente HTTP do JDK)
+ * - Métricas do pool por gateway (httpcomponents.httpclient.pool.*); no HTTP/2, que
+ *   não expõe pool, requisições em andamento (pip.gateway.http2.requisicoes.ativas)
+ *   e o executor dedicado do cliente (executor.*)
+ *
+ * Os valores padrão vêm de gateway.http.* e podem ser sobrescritos por
+ * gateway em gateway.http.{codigo}.*, por exemplo gateway.http.cielo.max-conexoes-por-rota.
+ *
+ * O timeout de resposta pode ser ajustado em tempo de execução por
+ * {@link #definirTimeoutResposta(String, long)}; o novo valor vale para as próximas requisições.
+ *
+ * As sondas de saúde usam {@link #obterRestTemplateSonda(String)}: o mesmo pool (ou cliente
+ * HTTP/2) do gateway, com timeout de resposta curto (gateway.health.probe-timeout-ms).
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class GatewayHttpClientFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayHttpClientFactory.class);
+
+    /**
+     * Código usado para o cliente compartilhado (webhooks, antifraude, etc.)
+     */
+    public static final String CLIENTE_PADRAO = "default";
+
+    private static final String PREFIXO = "gateway.http.";
+
+    @Autowired
+    private RestTemplateBuilder restTemplateBuilder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${gateway.http.max-conexoes-total:200}")
+    private int maxConexoesTotal;
+
+    @Value("${gateway.http.max-conexoes-por-rota:50}")
+    private int maxConexoesPorRota;
+
+    @Value("${gateway.http.connect-timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${gateway.http.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${gateway.http.pool-timeout-ms:2000}")
+    private long poolTimeoutMs;
+
+    @Value("${gateway.http.idle-eviction-seconds:30}")
+    private long idleEvictionSeconds;
+
+    @Value("${gateway.http.ttl-conexao-seconds:300}")
+    private long ttlConexaoSeconds;
+
+    @Value("${gateway.http.tls-session-cache-size:1000}")
+    private int tlsSessionCacheSize;
+
+    @Value("${gateway.http.tls-session-timeout-seconds:3600}")
+    private int tlsSessionTimeoutSeconds;
+
+    @Value("${gateway.http.http2:false}")
+    private boolean http2;
+
+    @Value("${gateway.health.probe-timeout-ms:3000}")
+    private long timeoutSondaMs;
+
+    private final Map<String, RestTemplate> restTemplates = new ConcurrentHashMap<>();
+    private final Map<String, RestTemplate> restTemplatesSonda = new ConcurrentHashMap<>();
+    private final Map<String, CloseableHttpClient> clientesPool = new ConcurrentHashMap<>();
+    private final Map<String, JdkClientHttpRequestFactory> fabricasHttp2 = new ConcurrentHashMap<>();
+    private final Map<String, HttpClient> clientesHttp2 = new ConcurrentHashMap<>();
+    private final Map<String, ExecutorService> executoresHttp2 = new ConcurrentHashMap<>();
+    private final Map<String, Long> timeoutsResposta = new ConcurrentHashMap<>();
+
+    /**
+     * Retorna o RestTemplate dedicado ao gateway, criando o pool na primeira chamada
+     *
+     * @param codigoGateway Código do gateway (ex: CIELO)
+     * @return RestTemplate com pool de conexões próprio
+     */
+    public RestTemplate obterRestTemplate(String codigoGateway) {
+        String codigo = normalizar(codigoGateway);
+        return restTemplates.computeIfAbsent(codigo, this::criarRestTemplate);
+    }
+
+    /**
+     * Retorna o RestTemplate das sondas de saúde do gateway
+     *
+     * Compartilha o pool de conexões do gateway, mas com timeout de resposta e de
+     * espera por conexão limitados ao timeout da sonda: um adquirente que aceita a
+     * conexão e não responde não prende a thread da sonda pelo timeout de leitura.
+     *
+     * @param codigoGateway Código do gateway (ex: CIELO)
+     * @return RestTemplate com timeout curto sobre o pool do gateway
+     */
+    public RestTemplate obterRestTemplateSonda(String codigoGateway) {
+        String codigo = normalizar(codigoGateway);
+        // Garante o pool (ou o cliente HTTP/2) do gateway antes de criar o da sonda
+        obterRestTemplate(codigo);
+        return restTemplatesSonda.computeIfAbsent(codigo, this::criarRestTemplateSonda);
+    }
+
+    /**
+     * Substitui o timeout de resposta configurado para o gateway
+     *
+     * @param codigoGateway Código do gateway (ex: CIELO)
+     * @param timeoutMs Novo timeout de resposta em milissegundos
+     */
+    public void definirTimeoutResposta(String codigoGateway, long timeoutMs) {
+        String codigo = normalizar(codigoGateway);
+        timeoutsResposta.put(codigo, timeoutMs);
+
+        JdkClientHttpRequestFactory fabricaHttp2 = fabricasHttp2.get(codigo);
+        if (fabricaHttp2 != null) {
+            fabricaHttp2.setReadTimeout(Duration.ofMillis(timeoutMs));
+        }
+    }
+
+    private RestTemplate criarRestTemplate(String codigo) {
+        if (propriedade(codigo, "http2", Boolean.class, http2)) {
+            AtomicInteger emAndamento = new AtomicInteger();
+            Gauge.builder("pip.gateway.http2.requisicoes.ativas", emAndamento, AtomicInteger::get)
+                .description("Requisições HTTP/2 em andamento por gateway")
+                .tag("gateway", codigo)
+                .register(meterRegistry);
+
+            return restTemplateBuilder
+                .requestFactory(() -> criarRequestFactoryHttp2(codigo, criarSslContext(codigo)))
+                .additionalInterceptors(contarEmAndamento(emAndamento))
+                .build();
+        }
+
+        return restTemplateBuilder
+            .requestFactory(() -> criarRequestFactory(codigo))
+            .build();
+    }
+
+    private RestTemplate criarRestTemplateSonda(String codigo) {
+        HttpClient clienteHttp2 = clientesHttp2.get(codigo);
+        if (clienteHttp2 != null) {
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(clienteHttp2);
+            factory.setReadTimeout(Duration.ofMillis(timeoutSondaMs));
+            return restTemplateBuilder.requestFactory(() -> factory).build();
+        }
+
+        long poolTimeout = Math.min(timeoutSondaMs,
+            propriedade(codigo, "pool-timeout-ms", Long.class, poolTimeoutMs));
+        HttpComponentsClientHttpRequestFactory factory =
+            new HttpComponentsClientHttpRequestFactory(clientesPool.get(codigo));
+        factory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeoutSondaMs))
+                .build());
+            return context;
+        });
+        return restTemplateBuilder.requestFactory(() -> factory).build();
+    }
+
+    private ClientHttpRequestFactory criarRequestFactory(String codigo) {
+        SSLContext sslContext = criarSslContext(codigo);
+
+        int total = propriedade(codigo, "max-conexoes-total", Integer.class, maxConexoesTotal);
+        int porRota = propriedade(codigo, "max-conexoes-por-rota", Integer.class, maxConexoesPorRota);
+        long connectTimeout = propriedade(codigo, "connect-timeout-ms", Long.class, connectTimeoutMs);
+        long readTimeout = propriedade(codigo, "read-timeout-ms", Long.class, readTimeoutMs);
+        long poolTimeout = propriedade(codigo, "pool-timeout-ms", Long.class, poolTimeoutMs);
+        long idleEviction = propriedade(codigo, "idle-eviction-seconds", Long.class, idleEvictionSeconds);
+        long ttlConexao = propriedade(codigo, "ttl-conexao-seconds", Long.class, ttlConexaoSeconds);
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                .setSslContext(sslContext)
+                .build())
+            .setMaxConnTotal(total)
+            .setMaxConnPerRoute(porRota)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                .setTimeToLive(TimeValue.ofSeconds(ttlConexao))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build())
+            .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                .build())
+            .evictIdleConnections(TimeValue.ofSeconds(idleEviction))
+            .evictExpiredConnections()
+            // Conexões com certificado de cliente (mTLS) recebem estado do principal e
+            // não seriam reaproveitadas por requisições sem contexto; o pool já é por gateway
+            .disableConnectionState()
+            .build();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "gateway-" + codigo,
+            Tags.of("gateway", codigo)).bindTo(meterRegistry);
+
+        clientesPool.put(codigo, httpClient);
+
+        logger.info("Pool HTTP criado para gateway {} - total: {}, por rota: {}, ocioso: {}s, ttl: {}s",
+            codigo, total, porRota, idleEviction, ttlConexao);
+
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        factory.setHttpContextFactory((method, uri) -> criarContexto(codigo, poolTimeout));
+        return factory;
+    }
+
+    /**
+     * Contexto da requisição com o timeout de resposta ajustado, se houver;
+     * sem ajuste, vale a configuração padrão do cliente
+     */
+    private HttpClientContext criarContexto(String codigo, long poolTimeout) {
+        Long timeoutResposta = timeoutsResposta.get(codigo);
+        if (timeoutResposta == null) {
+            return null;
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeout))
+            .setResponseTimeout(Timeout.ofMilliseconds(timeoutResposta))
+            .build());
+        return context;
+    }
+
+    /**
+     * Cliente HTTP/2 do JDK: multiplexa as requisições em poucas conexões por destino
+     *
+     * O cliente não expõe o estado das conexões; as métricas por gateway vêm do
+     * executor dedicado (encerrado no desligamento) e do contador de requisições
+     * em andamento.
+     */
+    private ClientHttpRequestFactory criarRequestFactoryHttp2(String codigo, SSLContext sslContext) {
+        long connectTimeout = propriedade(codigo, "connect-timeout-ms", Long.class, connectTimeoutMs);
+        long readTimeout = propriedade(codigo, "read-timeout-ms", Long.class, readTimeoutMs);
+
+        ExecutorService executor = Executors.newCachedThreadPool(tarefa -> {
+            Thread thread = new Thread(tarefa, "gateway-http2-" + codigo);
+            thread.setDaemon(true);
+            return thread;
+        });
+        new ExecutorServiceMetrics(executor, "gateway-http2-" + codigo, Tags.of("gateway", codigo))
+            .bindTo(meterRegistry);
+
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeout))
+            .sslContext(sslContext)
+            .executor(executor)
+            .build();
+
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(timeoutsResposta.getOrDefault(codigo, readTimeout)));
+        fabricasHttp2.put(codigo, factory);
+        clientesHttp2.put(codigo, httpClient);
+        executoresHttp2.put(codigo, executor);
+
+        logger.info("Cliente HTTP/2 criado para gateway {}", codigo);
+
+        return factory;
+    }
+
+    /**
+     * Mantém o contador de requisições HTTP/2 em andamento até a resposta do gateway
+     */
+    private ClientHttpRequestInterceptor contarEmAndamento(AtomicInteger emAndamento) {
+        return (request, body, execution) -> {
+            emAndamento.incrementAndGet();
+            try {
+                return execution.execute(request, body);
+            } finally {
+                emAndamento.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * SSLContext próprio por gateway, com cache de sessões para retomada de
+     * handshake TLS em novas conexões ao mesmo adquirente
+     *
+     * Cada chamada cria uma instância nova: o contexto padrão da JVM é compartilhado
+     * e os ajustes de cache de sessão não podem vazar para outros clientes.
+     */
+    private SSLContext criarSslContext(String codigo) {
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContexts.custom().build();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Falha ao criar SSLContext do gateway " + codigo, e);
+        }
+        sslContext.getClientSessionContext().setSessionCacheSize(
+            propriedade(codigo, "tls-session-cache-size", Integer.class, tlsSessionCacheSize));
+        sslContext.getClientSessionContext().setSessionTimeout(
+            propriedade(codigo, "tls-session-timeout-seconds", Integer.class, tlsSessionTimeoutSeconds));
+        return sslContext;
+    }
+
+    private <T> T propriedade(String codigo, String nome, Class<T> tipo, T padrao) {
+        return environment.getProperty(PREFIXO + codigo + "." + nome, tipo, padrao);
+    }
+
+    private String normalizar(String codigoGateway) {
+        if (codigoGateway == null || codigoGateway.isBlank()) {
+            return CLIENTE_PADRAO;
+        }
+        return codigoGateway.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Fecha os pools de conexão e os clientes HTTP/2 no desligamento da aplicação
+     *
+     * O HttpClient do JDK só implementa close() a partir do Java 21; antes disso o
+     * encerramento do executor dedicado interrompe o processamento das respostas e
+     * a thread de seleção termina quando o cliente deixa de ser referenciado.
+     */
+    @PreDestroy
+    public void encerrar() {
+        clientesPool.forEach((codigo, cliente) -> {
+            cliente.close(CloseMode.GRACEFUL);
+            logger.debug("Pool HTTP do gateway {} encerrado", codigo);
+        });
+        clientesHttp2.forEach((codigo, cliente) -> {
+            if (cliente instanceof AutoCloseable fechavel) {
+                try {
+                    fechavel.close();
+                } catch (Exception e) {
+                    logger.warn("Erro ao encerrar cliente HTTP/2 do gateway {}: {}", codigo, e.getMessage());
+                }
+            }
+            executoresHttp2.get(codigo).shutdown();
+            logger.debug("Cliente HTTP/2 do gateway {} encerrado", codigo);
+        });
+        clientesPool.clear();
+        clientesHttp2.clear();
+        executoresHttp2.clear();
+        fabricasHttp2.clear();
+        restTemplates.clear();
+        restTemplatesSonda.clear();
+    }
+}
@@ -8,12 +8,17 @@ import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Configuração do RabbitMQ para processamento assíncrono de webhooks
  * 
  * Define as filas, exchanges e bindings para o sistema de webhooks:
  * - webhook.queue: Fila principal para webhooks pendentes
- * - webhook.retry.queue: Fila para retry de webhooks falhados
+ * - webhook.retry.{10s,1m,5m,30m,2h}: Filas de atraso por faixa de retry; a faixa é
+ *   escolhida pelo número da tentativa e, ao expirar, a mensagem volta à fila principal
  * - webhook.dlq: Dead Letter Queue para webhooks que falharam todas as tentativas
  * 
  * @author Luiz Gustavo Finotello
@@ -23,7 +28,6 @@ public class RabbitMQConfig {
 
     // Nomes das filas
     public static final String WEBHOOK_QUEUE = "webhook.queue";
-    public static final String WEBHOOK_RETRY_QUEUE = "webhook.retry.queue";
     public static final String WEBHOOK_DLQ = "webhook.dlq";
     
     // Nomes dos exchanges
@@ -33,7 +37,6 @@ public class RabbitMQConfig {
     
     // Routing keys
     public static final String WEBHOOK_ROUTING_KEY = "webhook.send";
-    public static final String WEBHOOK_RETRY_ROUTING_KEY = "webhook.retry";
     public static final String WEBHOOK_DLQ_ROUTING_KEY = "webhook.dlq";
 
     /**
@@ -48,15 +51,81 @@ public class RabbitMQConfig {
     }
 
     /**
-     * Fila de retry de webhooks
+     * Faixas de atraso do retry de webhooks (backoff exponencial aproximado)
+     *
+     * Cada faixa tem a sua fila de atraso. A expiração é definida por mensagem, com
+     * jitter, para que retries de eventos que falharam juntos não voltem juntos ao
+     * endpoint do lojista. Como o RabbitMQ só expira mensagens no início da fila, uma
+     * mensagem pode esperar além do próprio atraso no máximo a amplitude do jitter.
+     */
+    public enum FaixaRetry {
+        S10("10s", 10_000L),
+        M1("1m", 60_000L),
+        M5("5m", 300_000L),
+        M30("30m", 1_800_000L),
+        H2("2h", 7_200_000L);
+
+        private final String sufixo;
+        private final long atrasoMs;
+
+        FaixaRetry(String sufixo, long atrasoMs) {
+            this.sufixo = sufixo;
+            this.atrasoMs = atrasoMs;
+        }
+
+        /**
+         * Faixa da tentativa informada: a 2ª tentativa espera 10s, a 3ª 1m e assim
+         * por diante; a partir da última faixa o atraso não cresce mais
+         *
+         * @param tentativa Número da próxima tentativa (a primeira é 1)
+         */
+        public static FaixaRetry paraTentativa(int tentativa) {
+            FaixaRetry[] faixas = values();
+            return faixas[Math.max(0, Math.min(tentativa - 2, faixas.length - 1))];
+        }
+
+        public String getFila() {
+            return "webhook.retry." + sufixo;
+        }
+
+        public String getRoutingKey() {
+            return "webhook.retry." + sufixo;
+        }
+
+        public long getAtrasoMs() {
+            return atrasoMs;
+        }
+
+        /**
+         * Atraso da faixa com jitter uniforme de ±jitter (fração do atraso)
+         */
+        public long atrasoComJitterMs(double jitter) {
+            if (jitter <= 0) {
+                return atrasoMs;
+            }
+            double fator = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            return Math.max(1, Math.round(atrasoMs * fator));
+        }
+    }
+
+    /**
+     * Filas de atraso do retry de webhooks, uma por faixa
+     *
+     * Sem TTL fixo na fila (a expiração vem de cada mensagem); ao expirar, a mensagem
+     * é encaminhada de volta para a fila principal.
      */
     @Bean
-    public Queue webhookRetryQueue() {
-        return QueueBuilder.durable(WEBHOOK_RETRY_QUEUE)
-            .withArgument("x-dead-letter-exchange", WEBHOOK_EXCHANGE)
-            .withArgument("x-dead-letter-routing-key", WEBHOOK_ROUTING_KEY)
-            .withArgument("x-message-ttl", 60000) // 1 minuto de espera antes de reprocessar
-            .build();
+    public Declarables webhookRetryQueues(DirectExchange webhookRetryExchange) {
+        List<Declarable> declaraveis = new ArrayList<>();
+        for (FaixaRetry faixa : FaixaRetry.values()) {
+            Queue fila = QueueBuilder.durable(faixa.getFila())
+                .withArgument("x-dead-letter-exchange", WEBHOOK_EXCHANGE)
+                .withArgument("x-dead-letter-routing-key", WEBHOOK_ROUTING_KEY)
+                .build();
+            declaraveis.add(fila);
+            declaraveis.add(BindingBuilder.bind(fila).to(webhookRetryExchange).with(faixa.getRoutingKey()));
+        }
+        return new Declarables(declaraveis);
     }
 
     /**
@@ -102,16 +171,6 @@ public class RabbitMQConfig {
             .with(WEBHOOK_ROUTING_KEY);
     }
 
-    /**
-     * Binding da fila de retry
-     */
-    @Bean
-    public Binding webhookRetryBinding(Queue webhookRetryQueue, DirectExchange webhookRetryExchange) {
-        return BindingBuilder.bind(webhookRetryQueue)
-            .to(webhookRetryExchange)
-            .with(WEBHOOK_RETRY_ROUTING_KEY);
-    }
-
     /**
      * Binding da DLQ
      */
@@ -1,18 +1,15 @@
 package com.pip.config;
 
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.Duration;
-
 /**
  * Configuração do RestTemplate para comunicação com gateways
  * 
- * Define timeouts e configurações de conexão para garantir resiliência
+ * Expõe o RestTemplate compartilhado (webhooks, antifraude, marketplace),
+ * apoiado no pool de conexões padrão da {@link GatewayHttpClientFactory}.
+ * Os adapters de gateway obtêm um RestTemplate dedicado da fábrica.
  * 
  * @author Luiz Gustavo Finotello
  */
@@ -20,24 +17,10 @@ import java.time.Duration;
 public class RestTemplateConfig {
 
     /**
-     * Bean do RestTemplate com configurações de timeout
+     * Bean do RestTemplate com pool de conexões e timeouts configurados
      */
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder) {
-        return builder
-            .setConnectTimeout(Duration.ofSeconds(10))  // Timeout de conexão
-            .setReadTimeout(Duration.ofSeconds(30))     // Timeout de leitura
-            .requestFactory(this::clientHttpRequestFactory)
-            .build();
-    }
-
-    /**
-     * Factory para configurar detalhes da requisição HTTP
-     */
-    private ClientHttpRequestFactory clientHttpRequestFactory() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(10000);  // 10 segundos
-        factory.setReadTimeout(30000);     // 30 segundos
-        return factory;
+    public RestTemplate restTemplate(GatewayHttpClientFactory gatewayHttpClientFactory) {
+        return gatewayHttpClientFactory.obterRestTemplate(GatewayHttpClientFactory.CLIENTE_PADRAO);
     }
 }
@@ -0,0 +1,99 @@
+package com.pip.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.SimpleAsyncTaskScheduler;
+
+/**
+ * Configuração do modo de threads virtuais
+ *
+ * Quando pip.threads.virtual.enabled=true e a JVM de execução suporta threads
+ * virtuais (Java 21+), passam a rodar em threads virtuais:
+ * - Requisições HTTP do Tomcat (chamadas bloqueantes aos gateways)
+ * - Containers dos @RabbitListener (entrega de webhooks)
+ * - Tarefas @Scheduled
+ *
+ * O projeto continua compilando para Java 17; em uma JVM anterior à 21 o modo
+ * é ignorado com um aviso e as threads de plataforma são mantidas.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Configuration
+@ConditionalOnProperty(name = "pip.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    /**
+     * Verifica se a JVM em execução suporta threads virtuais
+     */
+    static boolean virtualThreadsSuportadas() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Executor do Tomcat: uma thread virtual por requisição
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadTomcatCustomizer() {
+        if (!virtualThreadsSuportadas()) {
+            logger.warn("Threads virtuais solicitadas, mas a JVM {} não as suporta (requer Java 21+). " +
+                "Tomcat mantido em threads de plataforma.", Runtime.version());
+            return protocolHandler -> { };
+        }
+
+        logger.info("Tomcat configurado com threads virtuais");
+        return protocolHandler -> protocolHandler.setExecutor(criarExecutor("tomcat-vt-"));
+    }
+
+    /**
+     * Containers de @RabbitListener com consumidores em threads virtuais
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory) {
+
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+
+        if (virtualThreadsSuportadas()) {
+            factory.setTaskExecutor(criarExecutor("rabbit-vt-"));
+            logger.info("Listeners RabbitMQ configurados com threads virtuais");
+        }
+
+        return factory;
+    }
+
+    /**
+     * Scheduler das tarefas @Scheduled: cada execução em uma thread virtual
+     */
+    @Bean
+    public TaskScheduler taskScheduler() {
+        SimpleAsyncTaskScheduler scheduler = new SimpleAsyncTaskScheduler();
+        scheduler.setThreadNamePrefix("scheduler-vt-");
+
+        if (virtualThreadsSuportadas()) {
+            scheduler.setVirtualThreads(true);
+            logger.info("Tarefas agendadas configuradas com threads virtuais");
+        }
+
+        return scheduler;
+    }
+
+    private SimpleAsyncTaskExecutor criarExecutor(String prefixo) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefixo);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
@@ -0,0 +1,97 @@
+package com.pip.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Diagnóstico de pinning de threads virtuais
+ *
+ * Uma thread virtual fica presa (pinned) à thread portadora quando bloqueia dentro
+ * de um bloco synchronized ou de código nativo, anulando o ganho de escalabilidade.
+ * Este monitor assina o evento JFR jdk.VirtualThreadPinned e registra no log a pilha
+ * do ponto de bloqueio, além da métrica pip.virtual_threads.pinned.
+ *
+ * Código novo deve usar ReentrantLock em vez de synchronized em trechos que fazem I/O.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+@ConditionalOnProperty(name = {"pip.threads.virtual.enabled", "pip.threads.virtual.pinning-diagnostico.enabled"},
+    havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String EVENTO_PINNED = "jdk.VirtualThreadPinned";
+    private static final int MAX_FRAMES_LOG = 8;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${pip.threads.virtual.pinning-diagnostico.limiar-ms:20}")
+    private long limiarMs;
+
+    private RecordingStream stream;
+    private Counter contadorPinned;
+
+    @PostConstruct
+    public void iniciar() {
+        if (!VirtualThreadConfig.virtualThreadsSuportadas()) {
+            return;
+        }
+
+        this.contadorPinned = Counter.builder("pip.virtual_threads.pinned")
+            .description("Ocorrências de threads virtuais presas à thread portadora")
+            .register(meterRegistry);
+
+        this.stream = new RecordingStream();
+        stream.enable(EVENTO_PINNED).withThreshold(Duration.ofMillis(limiarMs)).withStackTrace();
+        stream.onEvent(EVENTO_PINNED, this::registrarPinning);
+        stream.startAsync();
+
+        logger.info("Diagnóstico de pinning de threads virtuais ativo (limiar: {}ms)", limiarMs);
+    }
+
+    private void registrarPinning(RecordedEvent evento) {
+        contadorPinned.increment();
+
+        StringBuilder pilha = new StringBuilder();
+        RecordedStackTrace stackTrace = evento.getStackTrace();
+        if (stackTrace != null) {
+            List<RecordedFrame> frames = stackTrace.getFrames();
+            for (int i = 0; i < Math.min(MAX_FRAMES_LOG, frames.size()); i++) {
+                RecordedFrame frame = frames.get(i);
+                pilha.append("\n\tat ")
+                    .append(frame.getMethod().getType().getName())
+                    .append('.')
+                    .append(frame.getMethod().getName())
+                    .append(':')
+                    .append(frame.getLineNumber());
+            }
+        }
+
+        logger.warn("Thread virtual presa por {}ms{}", evento.getDuration().toMillis(), pilha);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
@@ -7,11 +7,14 @@ import com.pip.dto.PaymentResponse;
 import com.pip.model.Lojista;
 import com.pip.model.Transacao;
 import com.pip.model.TransactionStatus;
+import com.pip.security.ApiKeyCache;
+import com.pip.service.IdempotenciaService;
+import com.pip.service.LoteAutorizacaoService;
 import com.pip.service.PagamentoService;
-import com.pip.repository.LojistaRepository;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,9 +25,12 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.ZonedDateTime;
 import java.util.UUID;
 
@@ -33,11 +39,15 @@ import java.util.UUID;
  * 
  * Implementa todos os endpoints do ciclo de vida de pagamentos:
  * - POST /authorize: Autorização de pagamento
+ * - POST /batch: Autorização em lote (NDJSON)
  * - POST /{id}/capture: Captura de pagamento
  * - POST /{id}/void: Cancelamento de pagamento
  * - GET /{id}: Consulta de transação por ID
  * - GET /: Lista de transações com filtros
  * 
+ * Autorização, captura e cancelamento aceitam o header Idempotency-Key
+ * (ver {@link IdempotenciaService}).
+ * 
  * @author Luiz Gustavo Finotello
  */
 @RestController
@@ -47,11 +57,20 @@ public class PagamentoController {
 
     private static final Logger logger = LoggerFactory.getLogger(PagamentoController.class);
 
+    private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+    private static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Autowired
     private PagamentoService pagamentoService;
 
     @Autowired
-    private LojistaRepository lojistaRepository;
+    private LoteAutorizacaoService loteAutorizacaoService;
+
+    @Autowired
+    private ApiKeyCache apiKeyCache;
+
+    @Autowired
+    private IdempotenciaService idempotenciaService;
 
     /**
      * Autoriza um novo pagamento
@@ -61,16 +80,27 @@ public class PagamentoController {
                description = "Submete uma transação para autorização junto ao gateway de pagamento selecionado automaticamente")
     public ResponseEntity<PaymentResponse> autorizarPagamento(
             @Valid @RequestBody AuthorizationRequest request,
-            @RequestHeader("X-Api-Key") String apiKey) {
+            @RequestHeader("X-Api-Key") String apiKey,
+            @Parameter(description = "Chave de idempotência; retries com a mesma chave devolvem a resposta original")
+            @RequestHeader(value = HEADER_IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
         
         logger.info("Recebida requisição de autorização - Valor: {} {}", 
                    request.getAmount(), request.getCurrency());
         
-        try {
-            // Buscar lojista pela API Key
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
-                .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
+        // Buscar lojista pela API Key (a chave de idempotência é escopada por lojista)
+        Lojista lojista = apiKeyCache.resolveMerchant(apiKey).orElse(null);
+        if (lojista == null) {
+            logger.warn("Erro de validação: API Key inválida");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(createErrorResponse("VALIDATION_ERROR", "API Key inválida"));
+        }
+
+        return idempotenciaService.executar(lojista.getId(), idempotencyKey, "authorize", request,
+            () -> processarAutorizacao(request, lojista));
+    }
 
+    private ResponseEntity<PaymentResponse> processarAutorizacao(AuthorizationRequest request, Lojista lojista) {
+        try {
             // Processar autorização
             PaymentResponse response = pagamentoService.autorizarPagamento(request, lojista);
             
@@ -92,6 +122,47 @@ public class PagamentoController {
         }
     }
 
+    /**
+     * Autoriza pagamentos em lote
+     * 
+     * Aceita NDJSON (uma autorização por linha) ou um array JSON e responde em NDJSON,
+     * com um resultado por item na ordem de entrada, enviado à medida que cada bloco
+     * é concluído. Reenviar o lote com o mesmo X-Batch-Id retoma o processamento:
+     * itens já processados são devolvidos com "resumed": true, sem nova cobrança.
+     */
+    @PostMapping(value = "/batch", consumes = {MEDIA_TYPE_NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    @Operation(summary = "Autoriza pagamentos em lote",
+               description = "Processa autorizações em NDJSON ou array JSON e devolve um resultado NDJSON por item")
+    public void autorizarLote(
+            InputStream corpo,
+            @RequestHeader("X-Api-Key") String apiKey,
+            @Parameter(description = "ID do lote para retomada; gerado se ausente")
+            @RequestHeader(value = "X-Batch-Id", required = false) String loteId,
+            HttpServletResponse response) throws IOException {
+
+        Lojista lojista = apiKeyCache.resolveMerchant(apiKey).orElse(null);
+        if (lojista == null) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "API Key inválida");
+            return;
+        }
+
+        if (loteId == null || loteId.isBlank()) {
+            loteId = "LOTE-" + UUID.randomUUID();
+        } else if (loteId.length() > 100) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "X-Batch-Id deve ter no máximo 100 caracteres");
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MEDIA_TYPE_NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("X-Batch-Id", loteId);
+
+        int itens = loteAutorizacaoService.processarLote(lojista, loteId, corpo, response.getOutputStream());
+
+        logger.info("Lote {} processado - Itens: {}", loteId, itens);
+    }
+
     /**
      * Captura um pagamento autorizado
      */
@@ -101,16 +172,27 @@ public class PagamentoController {
     public ResponseEntity<PaymentResponse> capturarPagamento(
             @PathVariable String transactionId, 
             @Valid @RequestBody CaptureRequest request,
-            @RequestHeader("X-Api-Key") String apiKey) {
+            @RequestHeader("X-Api-Key") String apiKey,
+            @Parameter(description = "Chave de idempotência; retries com a mesma chave devolvem a resposta original")
+            @RequestHeader(value = HEADER_IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
         
         logger.info("Requisição de captura recebida para transação: {}, Valor: {}", 
                    transactionId, request.getAmount());
         
-        try {
-            // Validar API Key
-            lojistaRepository.findByApiKey(apiKey)
-                .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
+        // Validar API Key
+        Lojista lojista = apiKeyCache.resolveMerchant(apiKey).orElse(null);
+        if (lojista == null) {
+            logger.warn("Erro ao capturar: API Key inválida");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(createErrorResponse("CAPTURE_ERROR", "API Key inválida"));
+        }
+
+        return idempotenciaService.executar(lojista.getId(), idempotencyKey, "capture:" + transactionId, request,
+            () -> processarCaptura(transactionId, request));
+    }
 
+    private ResponseEntity<PaymentResponse> processarCaptura(String transactionId, CaptureRequest request) {
+        try {
             // Processar captura
             PaymentResponse response = pagamentoService.capturarPagamento(transactionId, request);
             
@@ -140,15 +222,26 @@ public class PagamentoController {
     public ResponseEntity<PaymentResponse> cancelarPagamento(
             @PathVariable String transactionId, 
             @Valid @RequestBody VoidRequest request,
-            @RequestHeader("X-Api-Key") String apiKey) {
+            @RequestHeader("X-Api-Key") String apiKey,
+            @Parameter(description = "Chave de idempotência; retries com a mesma chave devolvem a resposta original")
+            @RequestHeader(value = HEADER_IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
         
         logger.info("Requisição de cancelamento recebida para transação: {}", transactionId);
         
-        try {
-            // Validar API Key
-            lojistaRepository.findByApiKey(apiKey)
-                .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
+        // Validar API Key
+        Lojista lojista = apiKeyCache.resolveMerchant(apiKey).orElse(null);
+        if (lojista == null) {
+            logger.warn("Erro ao cancelar: API Key inválida");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(createErrorResponse("VOID_ERROR", "API Key inválida"));
+        }
 
+        return idempotenciaService.executar(lojista.getId(), idempotencyKey, "void:" + transactionId, request,
+            () -> processarCancelamento(transactionId, request));
+    }
+
+    private ResponseEntity<PaymentResponse> processarCancelamento(String transactionId, VoidRequest request) {
+        try {
             // Processar cancelamento
             PaymentResponse response = pagamentoService.cancelarPagamento(transactionId, request);
             
@@ -183,7 +276,7 @@ public class PagamentoController {
         
         try {
             // Validar API Key
-            lojistaRepository.findByApiKey(apiKey)
+            apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Consultar transação
@@ -237,7 +330,7 @@ public class PagamentoController {
         
         try {
             // Buscar lojista pela API Key
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
+            Lojista lojista = apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Criar paginação
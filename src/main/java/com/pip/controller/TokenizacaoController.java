@@ -0,0 +1,138 @@
+package com.pip.controller;
+
+import com.pip.model.Lojista;
+import com.pip.security.ApiKeyCache;
+import com.pip.security.LoteTokenizacaoService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+/**
+ * Controller responsável pelos endpoints de tokenização em lote
+ * 
+ * Voltado a migrações de cartões armazenados a partir de outros PSPs:
+ * - POST /batch: Tokenização em lote (NDJSON ou array JSON)
+ * - POST /detokenize/batch: Destokenização em lote (NDJSON ou array JSON)
+ * 
+ * As respostas são NDJSON, com um resultado por item na ordem de entrada, enviadas
+ * à medida que cada bloco é concluído. Cada lote gera um único registro de auditoria.
+ * 
+ * @author Luiz Gustavo Finotello
+ */
+@RestController
+@RequestMapping("/api/tokens")
+@Tag(name = "Tokenização", description = "Tokenização e destokenização de cartões em lote")
+public class TokenizacaoController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenizacaoController.class);
+
+    private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private LoteTokenizacaoService loteTokenizacaoService;
+
+    @Autowired
+    private ApiKeyCache apiKeyCache;
+
+    /**
+     * Tokeniza cartões em lote
+     * 
+     * O merchantId dos itens é ignorado: os tokens pertencem ao lojista da API Key.
+     */
+    @PostMapping(value = "/batch", consumes = {MEDIA_TYPE_NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    @Operation(summary = "Tokeniza cartões em lote",
+               description = "Processa cartões em NDJSON ou array JSON e devolve um token (ou erro) NDJSON por item")
+    public void tokenizarLote(
+            InputStream corpo,
+            @RequestHeader("X-Api-Key") String apiKey,
+            @Parameter(description = "ID do lote registrado na auditoria; gerado se ausente")
+            @RequestHeader(value = "X-Batch-Id", required = false) String loteId,
+            HttpServletResponse response) throws IOException {
+
+        Lojista lojista = apiKeyCache.resolveMerchant(apiKey).orElse(null);
+        if (lojista == null) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "API Key inválida");
+            return;
+        }
+
+        loteId = resolverLoteId(loteId, response);
+        if (loteId == null) {
+            return;
+        }
+
+        int itens = loteTokenizacaoService.tokenizarLote(lojista.getId().toString(), loteId, corpo,
+            response.getOutputStream());
+
+        logger.info("Lote de tokenização {} processado - Itens: {}", loteId, itens);
+    }
+
+    /**
+     * Destokeniza tokens em lote
+     * 
+     * Somente tokens do lojista da API Key são abertos; os demais retornam UNAUTHORIZED.
+     */
+    @PostMapping(value = "/detokenize/batch", consumes = {MEDIA_TYPE_NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    @Operation(summary = "Destokeniza tokens em lote",
+               description = "Processa tokens em NDJSON ou array JSON e devolve os dados do cartão (ou erro) NDJSON por item")
+    public void destokenizarLote(
+            InputStream corpo,
+            @RequestHeader("X-Api-Key") String apiKey,
+            @Parameter(description = "Finalidade da destokenização, registrada na auditoria")
+            @RequestHeader("X-Detokenization-Purpose") String finalidade,
+            @Parameter(description = "ID do lote registrado na auditoria; gerado se ausente")
+            @RequestHeader(value = "X-Batch-Id", required = false) String loteId,
+            HttpServletResponse response) throws IOException {
+
+        Lojista lojista = apiKeyCache.resolveMerchant(apiKey).orElse(null);
+        if (lojista == null) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "API Key inválida");
+            return;
+        }
+
+        if (finalidade == null || finalidade.isBlank()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "X-Detokenization-Purpose é obrigatório");
+            return;
+        }
+
+        loteId = resolverLoteId(loteId, response);
+        if (loteId == null) {
+            return;
+        }
+
+        int itens = loteTokenizacaoService.destokenizarLote(lojista.getId().toString(), loteId, finalidade, corpo,
+            response.getOutputStream());
+
+        logger.info("Lote de destokenização {} processado - Itens: {}", loteId, itens);
+    }
+
+    /**
+     * Valida ou gera o ID do lote e prepara a resposta NDJSON
+     * 
+     * @return ID do lote, ou null se o erro já foi enviado
+     */
+    private String resolverLoteId(String loteId, HttpServletResponse response) throws IOException {
+        if (loteId == null || loteId.isBlank()) {
+            loteId = "LOTE-TKN-" + UUID.randomUUID();
+        } else if (loteId.length() > 100) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "X-Batch-Id deve ter no máximo 100 caracteres");
+            return null;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MEDIA_TYPE_NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("X-Batch-Id", loteId);
+        return loteId;
+    }
+}
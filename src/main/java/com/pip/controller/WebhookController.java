@@ -4,9 +4,9 @@ import com.pip.dto.WebhookConfigRequest;
 import com.pip.model.Lojista;
 import com.pip.model.Webhook;
 import com.pip.model.WebhookEvent;
-import com.pip.repository.LojistaRepository;
 import com.pip.repository.WebhookRepository;
 import com.pip.repository.WebhookEventRepository;
+import com.pip.security.ApiKeyCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -48,7 +48,7 @@ public class WebhookController {
     private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
 
     @Autowired
-    private LojistaRepository lojistaRepository;
+    private ApiKeyCache apiKeyCache;
 
     @Autowired
     private WebhookRepository webhookRepository;
@@ -70,7 +70,7 @@ public class WebhookController {
         
         try {
             // Buscar lojista
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
+            Lojista lojista = apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Buscar ou criar webhook
@@ -137,7 +137,7 @@ public class WebhookController {
         
         try {
             // Buscar lojista
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
+            Lojista lojista = apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Buscar webhooks
@@ -184,7 +184,7 @@ public class WebhookController {
         
         try {
             // Buscar lojista
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
+            Lojista lojista = apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Buscar webhook
@@ -240,7 +240,7 @@ public class WebhookController {
         
         try {
             // Buscar lojista
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
+            Lojista lojista = apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Criar paginação
@@ -284,7 +284,7 @@ public class WebhookController {
         
         try {
             // Buscar lojista
-            Lojista lojista = lojistaRepository.findByApiKey(apiKey)
+            Lojista lojista = apiKeyCache.resolveMerchant(apiKey)
                 .orElseThrow(() -> new IllegalArgumentException("API Key inválida"));
 
             // Buscar webhook configurado
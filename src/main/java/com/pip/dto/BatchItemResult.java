@@ -0,0 +1,108 @@
+package com.pip.dto;
+
+/**
+ * DTO com o resultado de um item de autorização em lote (uma linha NDJSON)
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public class BatchItemResult {
+
+    private int index;
+    private boolean success;
+    private String status;
+    private String transactionId;
+    private String gatewayTransactionId;
+    private String authorizationCode;
+    private String errorCode;
+    private String errorMessage;
+    private boolean resumed;
+
+    // Construtores
+    public BatchItemResult() {}
+
+    public BatchItemResult(int index) {
+        this.index = index;
+    }
+
+    public static BatchItemResult erro(int index, String errorCode, String errorMessage) {
+        BatchItemResult result = new BatchItemResult(index);
+        result.setSuccess(false);
+        result.setStatus("REJECTED");
+        result.setErrorCode(errorCode);
+        result.setErrorMessage(errorMessage);
+        return result;
+    }
+
+    // Getters e Setters
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public String getGatewayTransactionId() {
+        return gatewayTransactionId;
+    }
+
+    public void setGatewayTransactionId(String gatewayTransactionId) {
+        this.gatewayTransactionId = gatewayTransactionId;
+    }
+
+    public String getAuthorizationCode() {
+        return authorizationCode;
+    }
+
+    public void setAuthorizationCode(String authorizationCode) {
+        this.authorizationCode = authorizationCode;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+}
@@ -9,11 +9,13 @@ public enum SecurityEventType {
     TOKENIZATION_START("Início de processo de tokenização"),
     TOKENIZATION_SUCCESS("Tokenização realizada com sucesso"),
     TOKENIZATION_FAILURE("Falha na tokenização"),
+    TOKENIZATION_BATCH("Tokenização em lote concluída"),
     
     // Eventos de Destokenização
     DETOKENIZATION_START("Início de processo de destokenização"),
     DETOKENIZATION_SUCCESS("Destokenização realizada com sucesso"),
     DETOKENIZATION_FAILURE("Falha na destokenização"),
+    DETOKENIZATION_BATCH("Destokenização em lote concluída"),
     
     // Eventos de API Key
     API_KEY_USAGE("Uso de API Key"),
@@ -88,12 +90,14 @@ public enum SecurityEventType {
             case TOKENIZATION_FAILURE:
             case DETOKENIZATION_FAILURE:
             case API_KEY_ROTATION_NEEDED:
+            case DETOKENIZATION_BATCH:
                 return "MEDIUM";
                 
             case API_KEY_USAGE:
             case TOKENIZATION_SUCCESS:
             case DETOKENIZATION_SUCCESS:
             case PAYMENT_TRANSACTION:
+            case TOKENIZATION_BATCH:
                 return "LOW";
                 
             default:
@@ -0,0 +1,127 @@
+package com.pip.dto;
+
+import java.time.Instant;
+
+/**
+ * DTO com o resultado de um item de tokenização ou destokenização em lote (uma linha NDJSON)
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public class TokenBatchItemResult {
+
+    private int index;
+    private boolean success;
+    private String token;
+    private Instant expiresAt;
+    private String pan;
+    private String cvv;
+    private String expiryDate;
+    private String cardholderName;
+    private String errorCode;
+    private String errorMessage;
+
+    // Construtores
+    public TokenBatchItemResult() {}
+
+    public TokenBatchItemResult(int index) {
+        this.index = index;
+    }
+
+    public static TokenBatchItemResult tokenizado(int index, String token, Instant expiresAt) {
+        TokenBatchItemResult result = new TokenBatchItemResult(index);
+        result.setSuccess(true);
+        result.setToken(token);
+        result.setExpiresAt(expiresAt);
+        return result;
+    }
+
+    public static TokenBatchItemResult erro(int index, String token, String errorCode, String errorMessage) {
+        TokenBatchItemResult result = new TokenBatchItemResult(index);
+        result.setSuccess(false);
+        result.setToken(token);
+        result.setErrorCode(errorCode);
+        result.setErrorMessage(errorMessage);
+        return result;
+    }
+
+    // Getters e Setters
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public String getPan() {
+        return pan;
+    }
+
+    public void setPan(String pan) {
+        this.pan = pan;
+    }
+
+    public String getCvv() {
+        return cvv;
+    }
+
+    public void setCvv(String cvv) {
+        this.cvv = cvv;
+    }
+
+    public String getExpiryDate() {
+        return expiryDate;
+    }
+
+    public void setExpiryDate(String expiryDate) {
+        this.expiryDate = expiryDate;
+    }
+
+    public String getCardholderName() {
+        return cardholderName;
+    }
+
+    public void setCardholderName(String cardholderName) {
+        this.cardholderName = cardholderName;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
@@ -1,17 +1,31 @@
 package com.pip.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.pip.model.WebhookEvent;
+
 import java.io.Serializable;
 import java.util.UUID;
 
 /**
  * DTO para mensagens de webhook na fila RabbitMQ
- * 
+ *
+ * Além do ID do evento, a mensagem carrega tudo o que a entrega precisa (URL,
+ * payload assinado, assinatura e tipo do evento), de modo que o consumer envia
+ * o webhook sem consultar o banco. Mensagens apenas com o ID (formato anterior)
+ * continuam sendo aceitas.
+ *
  * @author Luiz Gustavo Finotello
  */
 public class WebhookMessage implements Serializable {
 
     private UUID webhookEventId;
     private int attemptNumber;
+    private UUID lojistaId;
+    private String evento;
+    private String url;
+    private String payload;
+    private String signature;
+    private int maxAttempts;
 
     public WebhookMessage() {
     }
@@ -21,6 +35,38 @@ public class WebhookMessage implements Serializable {
         this.attemptNumber = attemptNumber;
     }
 
+    public WebhookMessage(WebhookEvent event, int attemptNumber) {
+        this(event.getId(), attemptNumber);
+        this.lojistaId = event.getLojista() != null ? event.getLojista().getId() : null;
+        this.evento = event.getEvento();
+        this.url = event.getUrl();
+        this.payload = event.getPayload();
+        this.signature = event.getSignature();
+        this.maxAttempts = event.getMaxTentativas() != null ? event.getMaxTentativas() : 0;
+    }
+
+    /**
+     * Cópia da mensagem para uma nova tentativa
+     */
+    public WebhookMessage paraTentativa(int attemptNumber) {
+        WebhookMessage copia = new WebhookMessage(webhookEventId, attemptNumber);
+        copia.lojistaId = lojistaId;
+        copia.evento = evento;
+        copia.url = url;
+        copia.payload = payload;
+        copia.signature = signature;
+        copia.maxAttempts = maxAttempts;
+        return copia;
+    }
+
+    /**
+     * Indica se a mensagem traz os dados de entrega (dispensa a leitura do evento no banco)
+     */
+    @JsonIgnore
+    public boolean isCompleta() {
+        return url != null && payload != null && evento != null && maxAttempts > 0;
+    }
+
     public UUID getWebhookEventId() {
         return webhookEventId;
     }
@@ -37,11 +83,60 @@ public class WebhookMessage implements Serializable {
         this.attemptNumber = attemptNumber;
     }
 
+    public UUID getLojistaId() {
+        return lojistaId;
+    }
+
+    public void setLojistaId(UUID lojistaId) {
+        this.lojistaId = lojistaId;
+    }
+
+    public String getEvento() {
+        return evento;
+    }
+
+    public void setEvento(String evento) {
+        this.evento = evento;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
     @Override
     public String toString() {
         return "WebhookMessage{" +
                 "webhookEventId=" + webhookEventId +
                 ", attemptNumber=" + attemptNumber +
+                ", evento=" + evento +
                 '}';
     }
 }
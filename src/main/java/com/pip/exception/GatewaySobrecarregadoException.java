@@ -0,0 +1,11 @@
+package com.pip.exception;
+
+/**
+ * Exceção lançada quando o limite de chamadas simultâneas a um gateway foi atingido
+ */
+public class GatewaySobrecarregadoException extends RuntimeException {
+
+    public GatewaySobrecarregadoException(String message) {
+        super(message);
+    }
+}
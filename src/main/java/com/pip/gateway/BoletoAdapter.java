@@ -1,12 +1,14 @@
 package com.pip.gateway;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.config.GatewayHttpClientFactory;
 import com.pip.dto.AuthorizationRequest;
 import com.pip.dto.CaptureRequest;
 import com.pip.dto.VoidRequest;
 import com.pip.dto.PaymentResponse;
 import com.pip.model.Gateway;
 import com.pip.model.Transacao;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,11 +54,24 @@ public class BoletoAdapter implements GatewayAdapter {
     private static final String PRODUCTION_URL = "https://api.bb.com.br/cobrancas/v2";
 
     @Autowired
+    private GatewayHttpClientFactory httpClientFactory;
+
     private RestTemplate restTemplate;
 
+    private RestTemplate restTemplateSonda;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    /**
+     * Obtém os clientes HTTP (transações e sondas de saúde) com pool dedicado a este gateway
+     */
+    @PostConstruct
+    public void inicializarHttpClient() {
+        this.restTemplate = httpClientFactory.obterRestTemplate(GATEWAY_CODE);
+        this.restTemplateSonda = httpClientFactory.obterRestTemplateSonda(GATEWAY_CODE);
+    }
+
     @Override
     public PaymentResponse authorize(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
         logger.info("[BOLETO] Iniciando autorização - TransactionID: {}", transacao.getTransactionId());
@@ -195,7 +210,7 @@ public class BoletoAdapter implements GatewayAdapter {
             String url = getBaseUrl(gateway) + "/health";
             HttpEntity<Void> entity = new HttpEntity<>(headers);
             
-            ResponseEntity<String> response = restTemplate.exchange(
+            ResponseEntity<String> response = restTemplateSonda.exchange(
                 url,
                 HttpMethod.GET,
                 entity,
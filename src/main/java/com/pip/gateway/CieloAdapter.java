@@ -1,12 +1,14 @@
 package com.pip.gateway;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.config.GatewayHttpClientFactory;
 import com.pip.dto.AuthorizationRequest;
 import com.pip.dto.CaptureRequest;
 import com.pip.dto.VoidRequest;
 import com.pip.dto.PaymentResponse;
 import com.pip.model.Gateway;
 import com.pip.model.Transacao;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -61,11 +63,24 @@ public class CieloAdapter implements GatewayAdapter {
     private static final String PRODUCTION_QUERY_URL = "https://apiquery.cieloecommerce.cielo.com.br";
 
     @Autowired
+    private GatewayHttpClientFactory httpClientFactory;
+
     private RestTemplate restTemplate;
 
+    private RestTemplate restTemplateSonda;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    /**
+     * Obtém os clientes HTTP (transações e sondas de saúde) com pool dedicado a este gateway
+     */
+    @PostConstruct
+    public void inicializarHttpClient() {
+        this.restTemplate = httpClientFactory.obterRestTemplate(GATEWAY_CODE);
+        this.restTemplateSonda = httpClientFactory.obterRestTemplateSonda(GATEWAY_CODE);
+    }
+
     @Override
     public PaymentResponse authorize(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
         logger.info("[CIELO] Iniciando autorização - TransactionID: {}", transacao.getTransactionId());
@@ -253,7 +268,7 @@ public class CieloAdapter implements GatewayAdapter {
             String url = getQueryUrl(gateway) + "/1/sales/" + UUID.randomUUID().toString();
             HttpEntity<Void> entity = new HttpEntity<>(headers);
             
-            restTemplate.exchange(
+            restTemplateSonda.exchange(
                 url,
                 HttpMethod.GET,
                 entity,
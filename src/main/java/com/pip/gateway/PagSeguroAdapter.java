@@ -1,12 +1,14 @@
 package com.pip.gateway;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.config.GatewayHttpClientFactory;
 import com.pip.dto.AuthorizationRequest;
 import com.pip.dto.CaptureRequest;
 import com.pip.dto.VoidRequest;
 import com.pip.dto.PaymentResponse;
 import com.pip.model.Gateway;
 import com.pip.model.Transacao;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -54,11 +56,24 @@ public class PagSeguroAdapter implements GatewayAdapter {
     private static final String PRODUCTION_URL = "https://api.pagseguro.com";
 
     @Autowired
+    private GatewayHttpClientFactory httpClientFactory;
+
     private RestTemplate restTemplate;
 
+    private RestTemplate restTemplateSonda;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    /**
+     * Obtém os clientes HTTP (transações e sondas de saúde) com pool dedicado a este gateway
+     */
+    @PostConstruct
+    public void inicializarHttpClient() {
+        this.restTemplate = httpClientFactory.obterRestTemplate(GATEWAY_CODE);
+        this.restTemplateSonda = httpClientFactory.obterRestTemplateSonda(GATEWAY_CODE);
+    }
+
     @Override
     public PaymentResponse authorize(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
         logger.info("[PAGSEGURO] Iniciando autorização - TransactionID: {}", transacao.getTransactionId());
@@ -213,7 +228,7 @@ public class PagSeguroAdapter implements GatewayAdapter {
             
             HttpEntity<Void> entity = new HttpEntity<>(headers);
             
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = restTemplateSonda.exchange(
                 url,
                 HttpMethod.GET,
                 entity,
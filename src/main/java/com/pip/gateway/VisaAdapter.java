@@ -1,8 +1,10 @@
 package com.pip.gateway;
 
+import com.pip.config.GatewayHttpClientFactory;
 import com.pip.dto.*;
 import com.pip.model.Gateway;
 import com.pip.model.Transacao;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -54,8 +56,18 @@ public class VisaAdapter implements GatewayAdapter {
     private static final String PRODUCTION_URL = "https://api.visa.com";
 
     @Autowired
+    private GatewayHttpClientFactory httpClientFactory;
+
     private RestTemplate restTemplate; // DEVE ser configurado com mTLS
 
+    /**
+     * Obtém o cliente HTTP com pool dedicado a este gateway
+     */
+    @PostConstruct
+    public void inicializarHttpClient() {
+        this.restTemplate = httpClientFactory.obterRestTemplate(GATEWAY_CODE);
+    }
+
     @Override
     public PaymentResponse authorize(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
         logger.warn("[VISA] ATENÇÃO: Visa Direct requer mTLS. Verifique configuração de certificados.");
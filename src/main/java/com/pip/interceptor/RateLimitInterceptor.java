@@ -2,13 +2,16 @@ package com.pip.interceptor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pip.model.Lojista;
-import com.pip.repository.LojistaRepository;
+import com.pip.security.ApiKeyCache;
+import com.pip.service.RateLimitDecision;
 import com.pip.service.RateLimitService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -40,13 +43,20 @@ public class RateLimitInterceptor implements HandlerInterceptor {
     private RateLimitService rateLimitService;
 
     @Autowired
-    private LojistaRepository lojistaRepository;
+    private ApiKeyCache apiKeyCache;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Value("${rate.limit.enabled:true}")
+    private boolean rateLimitHabilitado;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!rateLimitHabilitado) {
+            return true;
+        }
+
         // Ignorar requisições de health check e documentação
         String path = request.getRequestURI();
         if (path.startsWith("/actuator") || path.startsWith("/swagger") || path.startsWith("/api-docs")) {
@@ -63,7 +73,7 @@ public class RateLimitInterceptor implements HandlerInterceptor {
 
         try {
             // Buscar lojista
-            Optional<Lojista> lojistaOpt = lojistaRepository.findByApiKey(apiKey);
+            Optional<Lojista> lojistaOpt = apiKeyCache.resolveMerchant(apiKey);
             
             if (lojistaOpt.isEmpty()) {
                 // API Key inválida - deixar o controller tratar
@@ -75,30 +85,31 @@ public class RateLimitInterceptor implements HandlerInterceptor {
             // Obter limite baseado no plano
             int maxRequests = rateLimitService.getLimitByPlan(lojista.getPlano().name());
             
-            // Verificar rate limit
-            boolean allowed = rateLimitService.isAllowed(apiKey, maxRequests);
+            // Verificar rate limit (decisão, restantes e reset em uma única operação)
+            RateLimitDecision decisao = rateLimitService.verificar(apiKey, maxRequests);
             
             // Adicionar headers informativos
-            long remaining = rateLimitService.getRemainingRequests(apiKey, maxRequests);
-            long resetTime = rateLimitService.getResetTime(apiKey);
-            
-            response.setHeader(RATE_LIMIT_HEADER, String.valueOf(maxRequests));
-            response.setHeader(RATE_LIMIT_REMAINING_HEADER, String.valueOf(remaining));
-            response.setHeader(RATE_LIMIT_RESET_HEADER, String.valueOf(System.currentTimeMillis() / 1000 + resetTime));
+            response.setHeader(RATE_LIMIT_HEADER, String.valueOf(decisao.getLimite()));
+            response.setHeader(RATE_LIMIT_REMAINING_HEADER, String.valueOf(decisao.getRestantes()));
+            response.setHeader(RATE_LIMIT_RESET_HEADER,
+                String.valueOf(System.currentTimeMillis() / 1000 + decisao.getResetSegundos()));
             
-            if (!allowed) {
+            if (!decisao.isPermitido()) {
                 // Rate limit excedido
                 logger.warn("Rate limit excedido para lojista: {} ({})", lojista.getNomeFantasia(), apiKey);
                 
+                long retryAfter = Math.max(1, decisao.getRetryAfterSegundos());
+                
                 response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
                 response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
                 
                 Map<String, Object> errorResponse = new HashMap<>();
                 errorResponse.put("error", "RATE_LIMIT_EXCEEDED");
-                errorResponse.put("message", "Limite de requisições excedido. Tente novamente em " + resetTime + " segundos.");
+                errorResponse.put("message", "Limite de requisições excedido. Tente novamente em " + retryAfter + " segundos.");
                 errorResponse.put("limit", maxRequests);
                 errorResponse.put("remaining", 0);
-                errorResponse.put("resetIn", resetTime);
+                errorResponse.put("resetIn", decisao.getResetSegundos());
                 
                 response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
                 
@@ -106,7 +117,7 @@ public class RateLimitInterceptor implements HandlerInterceptor {
             }
             
             logger.debug("Rate limit OK para lojista: {} - Restantes: {}/{}", 
-                lojista.getNomeFantasia(), remaining, maxRequests);
+                lojista.getNomeFantasia(), decisao.getRestantes(), maxRequests);
             
             return true;
             
@@ -4,6 +4,7 @@ import com.pip.config.RabbitMQConfig;
 import com.pip.dto.WebhookMessage;
 import com.pip.model.WebhookEvent;
 import com.pip.repository.WebhookEventRepository;
+import com.pip.service.WebhookDispatcher;
 import com.pip.service.WebhookService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Consumer para processar webhooks da fila RabbitMQ
@@ -22,10 +24,9 @@ import java.util.Optional;
 public class WebhookConsumer {
 
     private static final Logger logger = LoggerFactory.getLogger(WebhookConsumer.class);
-    private static final int MAX_ATTEMPTS = 5;
 
     @Autowired
-    private WebhookService webhookService;
+    private WebhookDispatcher webhookDispatcher;
 
     @Autowired
     private WebhookEventRepository webhookEventRepository;
@@ -33,9 +34,17 @@ public class WebhookConsumer {
     @Autowired
     private WebhookProducer webhookProducer;
 
+    @Autowired
+    private WebhookService webhookService;
+
     /**
      * Processa webhooks da fila principal
      * 
+     * Mensagens completas (com URL e payload assinado) são entregues sem carregar o
+     * evento, consultando apenas o seu status; mensagens apenas com o ID carregam o
+     * evento antes do envio. Em ambos os casos eventos já gravados como SUCCESS não
+     * são reenviados, e o retry é feito pelas filas de atraso, e não pelo polling.
+     * 
      * @param message Mensagem do webhook
      */
     @RabbitListener(queues = RabbitMQConfig.WEBHOOK_QUEUE)
@@ -43,6 +52,13 @@ public class WebhookConsumer {
         logger.info("Processando webhook da fila: {} (tentativa {})", 
             message.getWebhookEventId(), message.getAttemptNumber());
 
+        if (message.isCompleta()) {
+            if (!jaEntregue(message.getWebhookEventId())) {
+                processarMensagemCompleta(message);
+            }
+            return;
+        }
+
         try {
             // Buscar evento de webhook
             Optional<WebhookEvent> eventOpt = webhookEventRepository.findById(message.getWebhookEventId());
@@ -60,22 +76,59 @@ public class WebhookConsumer {
                 return;
             }
 
-            // Tentar enviar webhook
-            boolean success = webhookService.enviarWebhook(event);
+            // Mesmo caminho das mensagens completas: os retries ficam com as filas de atraso
+            processarMensagemCompleta(new WebhookMessage(event, message.getAttemptNumber()));
+
+        } catch (Exception e) {
+            logger.error("Erro ao carregar webhook {}: {}", message.getWebhookEventId(), e.getMessage(), e);
+
+            // Nenhuma tentativa foi feita: reenfileirar sem consumir tentativa
+            webhookProducer.sendWebhookToRetry(message);
+        }
+    }
 
-            if (success) {
-                logger.info("Webhook enviado com sucesso: {}", message.getWebhookEventId());
-            } else {
-                // Falhou - verificar se deve retentar
-                handleWebhookFailure(message, event);
+    /**
+     * Verifica se o evento já foi gravado como entregue (pelo polling ou por uma
+     * mensagem republicada)
+     *
+     * Se a consulta falhar, a mensagem é entregue: a entrega é at-least-once.
+     */
+    private boolean jaEntregue(UUID webhookEventId) {
+        try {
+            if (webhookEventRepository.buscarStatus(webhookEventId).filter("SUCCESS"::equals).isPresent()) {
+                logger.info("Webhook já foi enviado com sucesso: {}", webhookEventId);
+                return true;
             }
+        } catch (Exception e) {
+            logger.warn("Não foi possível consultar o status do webhook {}: {}", webhookEventId, e.getMessage());
+        }
+        return false;
+    }
 
+    /**
+     * Entrega a partir da mensagem; o status é gravado de forma assíncrona pelo WebhookService
+     */
+    private void processarMensagemCompleta(WebhookMessage message) {
+        WebhookDispatcher.ResultadoEnvio resultado;
+        try {
+            resultado = webhookDispatcher.enviar(message);
         } catch (Exception e) {
             logger.error("Erro ao processar webhook {}: {}", message.getWebhookEventId(), e.getMessage(), e);
-            
-            // Tentar buscar o evento para retry
-            webhookEventRepository.findById(message.getWebhookEventId())
-                .ifPresent(event -> handleWebhookFailure(message, event));
+            resultado = WebhookDispatcher.ResultadoEnvio.FALHA;
+        }
+
+        if (resultado == WebhookDispatcher.ResultadoEnvio.SUCESSO) {
+            logger.info("Webhook enviado com sucesso: {}", message.getWebhookEventId());
+        } else if (resultado == WebhookDispatcher.ResultadoEnvio.ADIADO) {
+            // Não houve tentativa: reenfileirar sem consumir tentativa e estender o prazo da fila
+            webhookProducer.sendWebhookToRetry(message);
+            webhookService.adiarMensagem(message);
+        } else if (message.getAttemptNumber() < message.getMaxAttempts()) {
+            int nextAttempt = message.getAttemptNumber() + 1;
+            logger.info("Agendando retry {} para webhook: {}", nextAttempt, message.getWebhookEventId());
+            webhookProducer.sendWebhookToRetry(message.paraTentativa(nextAttempt));
+        } else {
+            logger.warn("Webhook atingiu número máximo de tentativas: {}", message.getWebhookEventId());
         }
     }
 
@@ -104,29 +157,4 @@ public class WebhookConsumer {
             logger.error("Erro ao processar webhook da DLQ: {}", e.getMessage(), e);
         }
     }
-
-    /**
-     * Trata falha no envio de webhook
-     * 
-     * @param message Mensagem do webhook
-     * @param event Evento do webhook
-     */
-    private void handleWebhookFailure(WebhookMessage message, WebhookEvent event) {
-        int nextAttempt = message.getAttemptNumber() + 1;
-
-        if (nextAttempt <= MAX_ATTEMPTS) {
-            logger.info("Agendando retry {} para webhook: {}", nextAttempt, message.getWebhookEventId());
-            
-            // Enviar para fila de retry
-            webhookProducer.sendWebhookToRetry(message.getWebhookEventId(), nextAttempt);
-            
-        } else {
-            logger.warn("Webhook atingiu número máximo de tentativas: {}", message.getWebhookEventId());
-            
-            // Marcar como falhado
-            event.setStatus("FAILED");
-            event.setErrorMessage("Falhou após " + MAX_ATTEMPTS + " tentativas");
-            webhookEventRepository.save(event);
-        }
-    }
 }
@@ -0,0 +1,187 @@
+package com.pip.messaging;
+
+import com.pip.config.RabbitMQConfig;
+import com.pip.dto.WebhookMessage;
+import com.pip.model.WebhookEvent;
+import com.pip.model.WebhookOutbox;
+import com.pip.repository.WebhookEventRepository;
+import com.pip.repository.WebhookOutboxRepository;
+import com.pip.service.WebhookService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Relay do outbox transacional de webhooks para o RabbitMQ
+ *
+ * Lê o outbox em lotes (FOR UPDATE SKIP LOCKED, de modo que vários nós publicam
+ * lotes disjuntos), publica cada lote em {@link RabbitMQConfig#WEBHOOK_EXCHANGE} em
+ * um único canal e aguarda as publisher confirms do broker antes de remover as
+ * linhas na mesma transação. Os eventos do lote são carregados com uma única
+ * consulta e publicados com URL, payload e assinatura, de modo que o consumer
+ * entrega o webhook sem carregar o evento. Se o broker recusar ou não confirmar a tempo, a
+ * transação é desfeita e o lote é republicado no ciclo seguinte.
+ *
+ * Só eventos ainda PENDING são publicados: um evento já entregue, em envio ou
+ * cancelado tem apenas a sua entrada removida do outbox. A entrega é
+ * at-least-once: uma falha entre a confirmação e o commit republica o lote, e o
+ * consumer descarta mensagens de eventos já gravados como SUCCESS.
+ *
+ * O evento é criado com o prazo da fila em proxima_tentativa, e na mesma
+ * transação da publicação esse prazo é renovado: a entrega e os retries são da
+ * fila, e o WebhookScheduler só seleciona o evento se esse prazo vencer.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class WebhookOutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookOutboxRelay.class);
+
+    @Autowired
+    private WebhookOutboxRepository webhookOutboxRepository;
+
+    @Autowired
+    private WebhookEventRepository webhookEventRepository;
+
+    @Autowired
+    private WebhookService webhookService;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.outbox.lote:500}")
+    private int tamanhoLote;
+
+    @Value("${webhook.outbox.max-lotes-por-ciclo:20}")
+    private int maxLotesPorCiclo;
+
+    @Value("${webhook.outbox.confirm-timeout-ms:5000}")
+    private long timeoutConfirmacaoMs;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Counter contadorPublicadas;
+    private Counter contadorFalhas;
+
+    @PostConstruct
+    public void iniciar() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.contadorPublicadas = Counter.builder("pip.webhook.outbox.publicadas")
+            .description("Mensagens do outbox publicadas e confirmadas pelo broker")
+            .register(meterRegistry);
+        this.contadorFalhas = Counter.builder("pip.webhook.outbox.falhas")
+            .description("Lotes do outbox não confirmados pelo broker")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Publica as entradas pendentes do outbox até esvaziá-lo ou atingir o limite do ciclo
+     */
+    @Scheduled(fixedDelayString = "${webhook.outbox.intervalo-ms:500}")
+    public void publicarPendentes() {
+        int total = 0;
+
+        try {
+            for (int lote = 0; lote < maxLotesPorCiclo; lote++) {
+                int publicadas = publicarLote();
+                total += publicadas;
+
+                // Lote incompleto: outbox esvaziado (ou restante bloqueado por outro nó)
+                if (publicadas < tamanhoLote) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            contadorFalhas.increment();
+            logger.error("Erro ao publicar outbox de webhooks: {}", e.getMessage());
+        }
+
+        if (total > 0) {
+            logger.debug("Outbox de webhooks: {} mensagens publicadas", total);
+        }
+    }
+
+    /**
+     * Publica um lote e remove as entradas confirmadas, em uma única transação
+     *
+     * @return Quantidade de mensagens publicadas
+     */
+    int publicarLote() {
+        Integer publicadas = transactionTemplate.execute(tx -> {
+            List<WebhookOutbox> lote = webhookOutboxRepository.selecionarLote(tamanhoLote);
+            if (lote.isEmpty()) {
+                return 0;
+            }
+
+            Map<UUID, WebhookEvent> eventos = webhookEventRepository.findAllById(
+                    lote.stream().map(WebhookOutbox::getWebhookEventId).toList())
+                .stream()
+                .collect(Collectors.toMap(WebhookEvent::getId, Function.identity()));
+
+            List<UUID> publicados = publicarComConfirmacao(lote, eventos);
+
+            if (!publicados.isEmpty()) {
+                webhookEventRepository.atribuirAFila(publicados, webhookService.calcularPrazoFila(1));
+            }
+            webhookOutboxRepository.removerPublicadas(lote.stream().map(WebhookOutbox::getId).toList());
+            return lote.size();
+        });
+
+        int total = publicadas != null ? publicadas : 0;
+        contadorPublicadas.increment(total);
+        return total;
+    }
+
+    /**
+     * Publica o lote em um canal dedicado e aguarda a confirmação de todas as mensagens
+     *
+     * @return IDs dos eventos publicados
+     * @throws org.springframework.amqp.AmqpException se alguma mensagem for recusada ou
+     *         não for confirmada dentro do timeout
+     */
+    private List<UUID> publicarComConfirmacao(List<WebhookOutbox> lote, Map<UUID, WebhookEvent> eventos) {
+        List<UUID> publicados = new ArrayList<>(lote.size());
+        rabbitTemplate.invoke(operacoes -> {
+            for (WebhookOutbox entrada : lote) {
+                WebhookEvent evento = eventos.get(entrada.getWebhookEventId());
+                if (evento == null || !"PENDING".equals(evento.getStatus())) {
+                    // Evento removido, cancelado ou já tratado pelo polling: nada a enviar
+                    continue;
+                }
+                operacoes.convertAndSend(
+                    RabbitMQConfig.WEBHOOK_EXCHANGE,
+                    RabbitMQConfig.WEBHOOK_ROUTING_KEY,
+                    new WebhookMessage(evento, 1)
+                );
+                publicados.add(evento.getId());
+            }
+            operacoes.waitForConfirmsOrDie(timeoutConfirmacaoMs);
+            return null;
+        });
+        return publicados;
+    }
+}
@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.UUID;
@@ -23,6 +24,9 @@ public class WebhookProducer {
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
+    @Value("${webhook.retry.jitter:0.2}")
+    private double jitter;
+
     /**
      * Envia webhook para a fila principal
      * 
@@ -57,22 +61,42 @@ public class WebhookProducer {
     }
 
     /**
-     * Envia webhook para a fila de retry
+     * Envia webhook para a fila de atraso da faixa correspondente à tentativa
+     * 
+     * O atraso cresce com a tentativa (10s, 1m, 5m, 30m, 2h) e recebe jitter por
+     * mensagem, dessincronizando os retries de eventos que falharam juntos.
      * 
      * @param webhookEventId ID do evento de webhook
      * @param attemptNumber Número da tentativa
      */
     public void sendWebhookToRetry(UUID webhookEventId, int attemptNumber) {
+        sendWebhookToRetry(new WebhookMessage(webhookEventId, attemptNumber));
+    }
+
+    /**
+     * Envia a mensagem (com os dados de entrega) para a fila de atraso da sua tentativa
+     * 
+     * @param message Mensagem já com o número da próxima tentativa
+     */
+    public void sendWebhookToRetry(WebhookMessage message) {
+        UUID webhookEventId = message.getWebhookEventId();
+        int attemptNumber = message.getAttemptNumber();
         try {
-            WebhookMessage message = new WebhookMessage(webhookEventId, attemptNumber);
+            RabbitMQConfig.FaixaRetry faixa = RabbitMQConfig.FaixaRetry.paraTentativa(attemptNumber);
+            long atrasoMs = faixa.atrasoComJitterMs(jitter);
             
             rabbitTemplate.convertAndSend(
                 RabbitMQConfig.WEBHOOK_RETRY_EXCHANGE,
-                RabbitMQConfig.WEBHOOK_RETRY_ROUTING_KEY,
-                message
+                faixa.getRoutingKey(),
+                message,
+                mensagem -> {
+                    mensagem.getMessageProperties().setExpiration(String.valueOf(atrasoMs));
+                    return mensagem;
+                }
             );
             
-            logger.info("Webhook enviado para fila de retry: {} (tentativa {})", webhookEventId, attemptNumber);
+            logger.info("Webhook enviado para fila de retry {}: {} (tentativa {}, atraso {}ms)",
+                faixa.getFila(), webhookEventId, attemptNumber, atrasoMs);
             
         } catch (Exception e) {
             logger.error("Erro ao enviar webhook para fila de retry: {}", e.getMessage(), e);
@@ -0,0 +1,109 @@
+package com.pip.model;
+
+import jakarta.persistence.*;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Chave de dados (DEK) da tokenização por envelope
+ *
+ * A DEK é gerada localmente e persistida apenas cifrada pela KEK mantida no Azure
+ * Key Vault. Na rotação da KEK somente esta linha é recifrada; os dados de cartão
+ * cifrados pela DEK não mudam.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Entity
+@Table(name = "chave_dados_tokenizacao", indexes = {
+    @Index(name = "idx_chave_dados_kek_versao", columnList = "kek_versao")
+})
+public class ChaveDadosTokenizacao {
+
+    @Id
+    private UUID id; // Atribuído na criação: compõe o AAD da cifragem da DEK
+
+    @Column(name = "chave_cifrada", nullable = false)
+    private byte[] chaveCifrada;
+
+    @Column(name = "kek_versao", nullable = false, length = 64)
+    private String kekVersao;
+
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private StatusChaveDados status;
+
+    @Column(name = "created_at", nullable = false)
+    private ZonedDateTime createdAt;
+
+    @Column(name = "rewrapped_at")
+    private ZonedDateTime rewrappedAt;
+
+    // Construtores
+    public ChaveDadosTokenizacao() {
+        this.createdAt = ZonedDateTime.now();
+        this.status = StatusChaveDados.ACTIVE;
+    }
+
+    public ChaveDadosTokenizacao(UUID id, byte[] chaveCifrada, String kekVersao) {
+        this();
+        this.id = id;
+        this.chaveCifrada = chaveCifrada;
+        this.kekVersao = kekVersao;
+    }
+
+    // Métodos de negócio
+    public void recifrar(byte[] chaveCifrada, String kekVersao) {
+        this.chaveCifrada = chaveCifrada;
+        this.kekVersao = kekVersao;
+        this.rewrappedAt = ZonedDateTime.now();
+    }
+
+    public void aposentar() {
+        this.status = StatusChaveDados.RETIRED;
+    }
+
+    public boolean isAtiva() {
+        return this.status == StatusChaveDados.ACTIVE;
+    }
+
+    // Getters e Setters
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public byte[] getChaveCifrada() {
+        return chaveCifrada;
+    }
+
+    public void setChaveCifrada(byte[] chaveCifrada) {
+        this.chaveCifrada = chaveCifrada;
+    }
+
+    public String getKekVersao() {
+        return kekVersao;
+    }
+
+    public void setKekVersao(String kekVersao) {
+        this.kekVersao = kekVersao;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public ZonedDateTime getRewrappedAt() {
+        return rewrappedAt;
+    }
+
+    public void setRewrappedAt(ZonedDateTime rewrappedAt) {
+        this.rewrappedAt = rewrappedAt;
+    }
+}
@@ -5,7 +5,11 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Max;
+import org.springframework.data.domain.AfterDomainEventPublication;
+import org.springframework.data.domain.DomainEvents;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -84,6 +88,12 @@ public class Gateway {
     @Column(name = "tempo_resposta_medio", nullable = false)
     private Long tempoRespostaMedio = 0L; // Em milissegundos
 
+    @Column(name = "custo_percentual", nullable = false)
+    private Integer custoPercentual = 0; // Em basis points (ex: 199 = 1.99%)
+
+    @Column(name = "custo_fixo", nullable = false)
+    private Long custoFixo = 0L; // Em centavos por transação
+
     @Column(name = "limite_diario", nullable = false)
     private Long limiteDiario; // Em centavos
 
@@ -199,32 +209,21 @@ public class Gateway {
     }
 
     public boolean podeProcessarTransacao(Long valor) {
+        return podeProcessarTransacao(valor, this.volumeProcessadoHoje);
+    }
+
+    /**
+     * Verifica status, saúde e limite diário contra um volume informado pelo chamador
+     * (o volume em memória do roteamento, mais atual que o campo persistido)
+     */
+    public boolean podeProcessarTransacao(Long valor, long volumeHoje) {
         if (this.status != StatusGateway.ACTIVE) {
             return false;
         }
         if (this.healthStatus == HealthStatus.DOWN) {
             return false;
         }
-        return (this.volumeProcessadoHoje + valor) <= this.limiteDiario;
-    }
-
-    public void registrarTransacao(boolean sucesso, Long valor, Long tempoResposta) {
-        this.totalTransacoes++;
-        this.volumeProcessadoHoje += valor;
-        
-        if (sucesso) {
-            this.totalSucesso++;
-        } else {
-            this.totalFalhas++;
-        }
-        
-        // Atualizar taxa de sucesso
-        this.taxaSucesso = (this.totalSucesso.doubleValue() / this.totalTransacoes.doubleValue()) * 100.0;
-        
-        // Atualizar tempo médio de resposta (média móvel simples)
-        this.tempoRespostaMedio = (this.tempoRespostaMedio + tempoResposta) / 2;
-        
-        this.updatedAt = ZonedDateTime.now();
+        return (volumeHoje + valor) <= this.limiteDiario;
     }
 
     public void resetarVolumeProcessadoHoje() {
@@ -246,11 +245,29 @@ public class Gateway {
         return this.healthStatus == HealthStatus.UP;
     }
 
+    /**
+     * Gateway pode receber tráfego: saudável ou degradado (com score reduzido)
+     */
+    public boolean isRoteavel() {
+        return this.healthStatus == HealthStatus.UP || this.healthStatus == HealthStatus.DEGRADED;
+    }
+
     public double getPercentualLimiteUtilizado() {
         if (this.limiteDiario == 0) return 0.0;
         return (this.volumeProcessadoHoje.doubleValue() / this.limiteDiario.doubleValue()) * 100.0;
     }
 
+    // Eventos de domínio (publicados pelo repository a cada save/delete)
+    @DomainEvents
+    Collection<Object> eventosDominio() {
+        return List.of(new GatewayAlteradoEvent(this.id, this.codigo));
+    }
+
+    @AfterDomainEventPublication
+    void limparEventosDominio() {
+        // Evento derivado do estado atual, nada a limpar
+    }
+
     // Getters e Setters
     public UUID getId() {
         return id;
@@ -368,6 +385,24 @@ public class Gateway {
         this.updatedAt = ZonedDateTime.now();
     }
 
+    public Integer getCustoPercentual() {
+        return custoPercentual;
+    }
+
+    public void setCustoPercentual(Integer custoPercentual) {
+        this.custoPercentual = custoPercentual;
+        this.updatedAt = ZonedDateTime.now();
+    }
+
+    public Long getCustoFixo() {
+        return custoFixo;
+    }
+
+    public void setCustoFixo(Long custoFixo) {
+        this.custoFixo = custoFixo;
+        this.updatedAt = ZonedDateTime.now();
+    }
+
     public Double getTaxaSucesso() {
         return taxaSucesso;
     }
@@ -0,0 +1,38 @@
+package com.pip.model;
+
+import java.util.UUID;
+
+/**
+ * Evento de domínio publicado sempre que um gateway é salvo ou removido
+ *
+ * Consumido pelo serviço de roteamento para republicar a tabela de
+ * roteamento em memória após o commit da alteração.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public class GatewayAlteradoEvent {
+
+    private final UUID gatewayId;
+    private final String codigo;
+
+    public GatewayAlteradoEvent(UUID gatewayId, String codigo) {
+        this.gatewayId = gatewayId;
+        this.codigo = codigo;
+    }
+
+    public UUID getGatewayId() {
+        return gatewayId;
+    }
+
+    public String getCodigo() {
+        return codigo;
+    }
+
+    @Override
+    public String toString() {
+        return "GatewayAlteradoEvent{" +
+                "gatewayId=" + gatewayId +
+                ", codigo='" + codigo + '\'' +
+                '}';
+    }
+}
@@ -81,6 +81,9 @@ public class Lojista {
     @Column(name = "taxa_fixa", nullable = false)
     private Long taxaFixa; // Em centavos
 
+    @Column(name = "estrategia_roteamento", length = 30)
+    private String estrategiaRoteamento; // Nula = estratégia padrão (gateway.routing.estrategia-padrao)
+
     @Column(name = "created_at", nullable = false)
     private ZonedDateTime createdAt;
 
@@ -287,6 +290,15 @@ public class Lojista {
         this.updatedAt = ZonedDateTime.now();
     }
 
+    public String getEstrategiaRoteamento() {
+        return estrategiaRoteamento;
+    }
+
+    public void setEstrategiaRoteamento(String estrategiaRoteamento) {
+        this.estrategiaRoteamento = estrategiaRoteamento;
+        this.updatedAt = ZonedDateTime.now();
+    }
+
     public ZonedDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,9 @@
+package com.pip.model;
+
+/**
+ * Status da chave de dados: ACTIVE cifra novos tokens; RETIRED só decifra
+ */
+public enum StatusChaveDados {
+    ACTIVE,
+    RETIRED
+}
@@ -0,0 +1,122 @@
+package com.pip.model;
+
+import jakarta.persistence.*;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Dados de cartão tokenizados, cifrados por envelope
+ *
+ * O JSON do cartão é cifrado com AES-256-GCM sob a chave de dados indicada em
+ * chaveDadosId, usando token e merchant como AAD: uma linha movida para outro
+ * token ou lojista não é decifrada.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Entity
+@Table(name = "token_cartao", indexes = {
+    @Index(name = "idx_token_cartao_chave_dados", columnList = "chave_dados_id"),
+    @Index(name = "idx_token_cartao_expires_at", columnList = "expires_at")
+})
+public class TokenCartao {
+
+    @Id
+    @Column(name = "token", length = 80)
+    private String token;
+
+    @Column(name = "merchant_id", nullable = false, length = 100)
+    private String merchantId;
+
+    @Column(name = "chave_dados_id", nullable = false)
+    private UUID chaveDadosId;
+
+    @Column(name = "iv", nullable = false)
+    private byte[] iv;
+
+    @Column(name = "dados_cifrados", nullable = false)
+    private byte[] dadosCifrados;
+
+    @Column(name = "created_at", nullable = false)
+    private ZonedDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private ZonedDateTime expiresAt;
+
+    // Construtores
+    public TokenCartao() {
+        this.createdAt = ZonedDateTime.now();
+    }
+
+    public TokenCartao(String token, String merchantId, UUID chaveDadosId, byte[] iv, byte[] dadosCifrados,
+                       ZonedDateTime expiresAt) {
+        this();
+        this.token = token;
+        this.merchantId = merchantId;
+        this.chaveDadosId = chaveDadosId;
+        this.iv = iv;
+        this.dadosCifrados = dadosCifrados;
+        this.expiresAt = expiresAt;
+    }
+
+    // Métodos de negócio
+    public boolean isExpirado() {
+        return this.expiresAt != null && ZonedDateTime.now().isAfter(this.expiresAt);
+    }
+
+    // Getters e Setters
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+
+    public UUID getChaveDadosId() {
+        return chaveDadosId;
+    }
+
+    public void setChaveDadosId(UUID chaveDadosId) {
+        this.chaveDadosId = chaveDadosId;
+    }
+
+    public byte[] getIv() {
+        return iv;
+    }
+
+    public void setIv(byte[] iv) {
+        this.iv = iv;
+    }
+
+    public byte[] getDadosCifrados() {
+        return dadosCifrados;
+    }
+
+    public void setDadosCifrados(byte[] dadosCifrados) {
+        this.dadosCifrados = dadosCifrados;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public ZonedDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(ZonedDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
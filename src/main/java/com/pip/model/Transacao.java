@@ -1,5 +1,6 @@
 package com.pip.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.ZonedDateTime;
 import java.util.UUID;
@@ -83,6 +84,7 @@ public class Transacao {
     @Column(name = "voided_at")
     private ZonedDateTime voidedAt;
 
+    @JsonIgnore // fora da sessão (open-in-view desligado); o JSON expõe lojistaId
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "lojista_id", insertable = false, updatable = false)
     private Lojista lojista;
@@ -100,6 +102,12 @@ public class Transacao {
     @Column(name = "valor_capturado")
     private Long valorCapturado;
 
+    @Column(name = "lote_id", length = 100)
+    private String loteId;
+
+    @Column(name = "lote_indice")
+    private Integer loteIndice;
+
     // Construtores
     public Transacao() {
         this.createdAt = ZonedDateTime.now();
@@ -338,5 +346,20 @@ public class Transacao {
     public void setValorCapturado(Long valorCapturado) {
         this.valorCapturado = valorCapturado;
     }
-}
 
+    public String getLoteId() {
+        return loteId;
+    }
+
+    public void setLoteId(String loteId) {
+        this.loteId = loteId;
+    }
+
+    public Integer getLoteIndice() {
+        return loteIndice;
+    }
+
+    public void setLoteIndice(Integer loteIndice) {
+        this.loteIndice = loteIndice;
+    }
+}
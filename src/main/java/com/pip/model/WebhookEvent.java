@@ -1,5 +1,6 @@
 package com.pip.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.ZonedDateTime;
 import java.util.UUID;
@@ -17,7 +18,8 @@ import java.util.UUID;
     @Index(name = "idx_webhook_event_lojista", columnList = "lojista_id"),
     @Index(name = "idx_webhook_event_transacao", columnList = "transacao_id"),
     @Index(name = "idx_webhook_event_status", columnList = "status"),
-    @Index(name = "idx_webhook_event_proxima_tentativa", columnList = "proxima_tentativa")
+    @Index(name = "idx_webhook_event_proxima_tentativa", columnList = "proxima_tentativa"),
+    @Index(name = "idx_webhook_event_fila", columnList = "status, proxima_tentativa, id")
 })
 public class WebhookEvent {
 
@@ -25,10 +27,12 @@ public class WebhookEvent {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private UUID id;
 
+    @JsonIgnore // fora da sessão (open-in-view desligado)
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "lojista_id", nullable = false)
     private Lojista lojista;
 
+    @JsonIgnore // fora da sessão (open-in-view desligado); o JSON expõe transacaoId
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "transacao_id", nullable = false)
     private Transacao transacao;
@@ -78,6 +82,12 @@ public class WebhookEvent {
     @Column(name = "sucesso_at")
     private ZonedDateTime sucessoAt;
 
+    @Column(name = "reservado_ate")
+    private ZonedDateTime reservadoAte;
+
+    @Column(name = "reservado_por", length = 100)
+    private String reservadoPor;
+
     // Construtores
     public WebhookEvent() {
         this.createdAt = ZonedDateTime.now();
@@ -120,6 +130,13 @@ public class WebhookEvent {
         this.transacao = transacao;
     }
 
+    /**
+     * ID da transação, sem inicializar o proxy da associação
+     */
+    public UUID getTransacaoId() {
+        return transacao != null ? transacao.getId() : null;
+    }
+
     public String getEvento() {
         return evento;
     }
@@ -239,4 +256,20 @@ public class WebhookEvent {
     public void setSucessoAt(ZonedDateTime sucessoAt) {
         this.sucessoAt = sucessoAt;
     }
+
+    public ZonedDateTime getReservadoAte() {
+        return reservadoAte;
+    }
+
+    public void setReservadoAte(ZonedDateTime reservadoAte) {
+        this.reservadoAte = reservadoAte;
+    }
+
+    public String getReservadoPor() {
+        return reservadoPor;
+    }
+
+    public void setReservadoPor(String reservadoPor) {
+        this.reservadoPor = reservadoPor;
+    }
 }
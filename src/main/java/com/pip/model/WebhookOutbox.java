@@ -0,0 +1,66 @@
+package com.pip.model;
+
+import jakarta.persistence.*;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Entrada do outbox transacional de webhooks
+ *
+ * Gravada na mesma transação que o WebhookEvent e removida pelo relay após a
+ * confirmação de publicação no RabbitMQ. Assim a publicação não ocorre dentro da
+ * transação do pagamento e nenhuma mensagem aponta para um evento que sofreu rollback.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Entity
+@Table(name = "webhook_outbox", indexes = {
+    @Index(name = "idx_webhook_outbox_event", columnList = "webhook_event_id")
+})
+public class WebhookOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "webhook_event_id", nullable = false)
+    private UUID webhookEventId;
+
+    @Column(name = "created_at", nullable = false)
+    private ZonedDateTime createdAt;
+
+    // Construtores
+    public WebhookOutbox() {
+        this.createdAt = ZonedDateTime.now();
+    }
+
+    public WebhookOutbox(UUID webhookEventId) {
+        this();
+        this.webhookEventId = webhookEventId;
+    }
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UUID getWebhookEventId() {
+        return webhookEventId;
+    }
+
+    public void setWebhookEventId(UUID webhookEventId) {
+        this.webhookEventId = webhookEventId;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -3,9 +3,11 @@ package com.pip.repository;
 import com.pip.model.ApiKey;
 import com.pip.model.Lojista;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -35,5 +37,10 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, UUID> {
     
     @Query("SELECT a FROM ApiKey a WHERE a.rotatedAt IS NOT NULL AND a.rotatedAt < :dataLimite")
     List<ApiKey> findNotRotatedSince(@Param("dataLimite") ZonedDateTime dataLimite);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE ApiKey a SET a.lastUsedAt = :lastUsedAt WHERE a.id IN :ids AND (a.lastUsedAt IS NULL OR a.lastUsedAt < :lastUsedAt)")
+    int updateLastUsedAt(@Param("ids") List<UUID> ids, @Param("lastUsedAt") ZonedDateTime lastUsedAt);
 }
 
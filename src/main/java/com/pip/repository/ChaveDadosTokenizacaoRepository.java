@@ -0,0 +1,32 @@
+package com.pip.repository;
+
+import com.pip.model.ChaveDadosTokenizacao;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repository para as chaves de dados (DEK) da tokenização
+ * 
+ * @author Luiz Gustavo Finotello
+ */
+@Repository
+public interface ChaveDadosTokenizacaoRepository extends JpaRepository<ChaveDadosTokenizacao, UUID> {
+
+    /**
+     * DEK ativa mais recente, reaproveitada pelos nós após um reinício
+     */
+    @Query("SELECT c FROM ChaveDadosTokenizacao c WHERE c.status = 'ACTIVE' ORDER BY c.createdAt DESC LIMIT 1")
+    Optional<ChaveDadosTokenizacao> findAtivaMaisRecente();
+
+    /**
+     * DEKs ainda cifradas por uma versão da KEK diferente da atual
+     */
+    @Query("SELECT c FROM ChaveDadosTokenizacao c WHERE c.kekVersao <> :kekVersao")
+    List<ChaveDadosTokenizacao> findPendentesDeRecifragem(@Param("kekVersao") String kekVersao);
+}
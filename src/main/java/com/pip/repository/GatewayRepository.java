@@ -1,10 +1,13 @@
 package com.pip.repository;
 
 import com.pip.model.Gateway;
+import com.pip.model.HealthStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -30,7 +33,44 @@ public interface GatewayRepository extends JpaRepository<Gateway, UUID> {
     @Query("SELECT g FROM Gateway g WHERE g.volumeProcessadoHoje >= (g.limiteDiario * 0.9)")
     List<Gateway> findNearDailyLimit();
     
+    @Modifying
+    @Transactional
     @Query("UPDATE Gateway g SET g.volumeProcessadoHoje = 0")
     int resetAllDailyVolume();
+
+    /**
+     * Soma os contadores acumulados em memória e grava as métricas recentes
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Gateway g SET g.totalTransacoes = g.totalTransacoes + :total, " +
+           "g.totalSucesso = g.totalSucesso + :sucesso, g.totalFalhas = g.totalFalhas + :falhas, " +
+           "g.volumeProcessadoHoje = g.volumeProcessadoHoje + :volume, " +
+           "g.taxaSucesso = :taxaSucesso, g.tempoRespostaMedio = :tempoRespostaMedio, g.updatedAt = :agora " +
+           "WHERE g.id = :id")
+    int acumularEstatisticas(@Param("id") UUID id,
+                             @Param("total") long total,
+                             @Param("sucesso") long sucesso,
+                             @Param("falhas") long falhas,
+                             @Param("volume") long volume,
+                             @Param("taxaSucesso") double taxaSucesso,
+                             @Param("tempoRespostaMedio") long tempoRespostaMedio,
+                             @Param("agora") ZonedDateTime agora);
+
+    /**
+     * Atualiza apenas o status de saúde (não sobrescreve as estatísticas)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Gateway g SET g.healthStatus = :status, g.lastHealthCheck = :agora, g.updatedAt = :agora WHERE g.id = :id")
+    int atualizarHealthCheck(@Param("id") UUID id, @Param("status") HealthStatus status, @Param("agora") ZonedDateTime agora);
+
+    /**
+     * Atualiza apenas a prioridade (não sobrescreve as estatísticas)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Gateway g SET g.prioridade = :prioridade, g.updatedAt = :agora WHERE g.id = :id")
+    int atualizarPrioridade(@Param("id") UUID id, @Param("prioridade") Integer prioridade, @Param("agora") ZonedDateTime agora);
 }
 
@@ -0,0 +1,14 @@
+package com.pip.repository;
+
+import com.pip.model.TokenCartao;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository para os dados de cartão tokenizados
+ * 
+ * @author Luiz Gustavo Finotello
+ */
+@Repository
+public interface TokenCartaoRepository extends JpaRepository<TokenCartao, String> {
+}
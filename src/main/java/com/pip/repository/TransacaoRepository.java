@@ -1,9 +1,16 @@
 package com.pip.repository;
 
+import com.pip.model.Gateway;
 import com.pip.model.Transacao;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -23,6 +30,32 @@ public interface TransacaoRepository extends JpaRepository<Transacao, UUID> {
      * Busca transação pelo ID da transação
      */
     Transacao findByTransactionId(String transactionId);
+
+    /**
+     * Transações já criadas para um trecho do lote (retomada de lote)
+     */
+    List<Transacao> findByLojistaIdAndLoteIdAndLoteIndiceBetween(UUID lojistaId, String loteId,
+                                                                 Integer inicio, Integer fim);
+    
+    /**
+     * Grava o resultado da autorização em um único UPDATE, sem SELECT prévio
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Transacao t SET t.status = :status, t.gateway = :gateway, t.gatewayTransactionId = :gatewayTransactionId, " +
+           "t.authorizationCode = :authorizationCode, t.nsu = :nsu, t.tid = :tid, t.authorizedAt = :authorizedAt, " +
+           "t.errorCode = :errorCode, t.errorMessage = :errorMessage, t.updatedAt = :updatedAt WHERE t.id = :id")
+    int atualizarResultadoAutorizacao(@Param("id") UUID id,
+                                      @Param("status") String status,
+                                      @Param("gateway") Gateway gateway,
+                                      @Param("gatewayTransactionId") String gatewayTransactionId,
+                                      @Param("authorizationCode") String authorizationCode,
+                                      @Param("nsu") String nsu,
+                                      @Param("tid") String tid,
+                                      @Param("authorizedAt") ZonedDateTime authorizedAt,
+                                      @Param("errorCode") String errorCode,
+                                      @Param("errorMessage") String errorMessage,
+                                      @Param("updatedAt") ZonedDateTime updatedAt);
     
     // Métodos customizados podem ser adicionados aqui conforme necessário
 }
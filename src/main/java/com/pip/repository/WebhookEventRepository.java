@@ -2,12 +2,14 @@ package com.pip.repository;
 
 import com.pip.model.WebhookEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -24,6 +26,52 @@ public interface WebhookEventRepository extends JpaRepository<WebhookEvent, UUID
     @Query("SELECT w FROM WebhookEvent w WHERE w.status = :status AND (w.proximaTentativa IS NULL OR w.proximaTentativa <= :agora)")
     List<WebhookEvent> findByStatusAndProximaTentativaBefore(@Param("status") String status, @Param("agora") ZonedDateTime agora);
 
+    /**
+     * Seleciona e bloqueia um lote de eventos vencidos, ordenados por proxima_tentativa
+     *
+     * Linhas já bloqueadas por outro nó são puladas (SKIP LOCKED) e eventos com reserva
+     * vigente de outro nó são ignorados. Deve ser chamado dentro de uma transação.
+     */
+    @Query(value = "SELECT id FROM webhook_event " +
+        "WHERE status = :status AND tentativas < max_tentativas " +
+        "AND (proxima_tentativa IS NULL OR proxima_tentativa <= :agora) " +
+        "AND (reservado_ate IS NULL OR reservado_ate < :agora OR reservado_por = :no) " +
+        "ORDER BY proxima_tentativa NULLS FIRST, id " +
+        "LIMIT :limite FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<UUID> selecionarParaReserva(@Param("status") String status,
+                                     @Param("agora") ZonedDateTime agora,
+                                     @Param("no") String no,
+                                     @Param("limite") int limite);
+
+    /**
+     * Grava a reserva dos eventos para o nó informado
+     */
+    @Modifying
+    @Query("UPDATE WebhookEvent w SET w.reservadoAte = :ate, w.reservadoPor = :no WHERE w.id IN :ids")
+    int reservar(@Param("ids") List<UUID> ids, @Param("ate") ZonedDateTime ate, @Param("no") String no);
+
+    /**
+     * Entrega à fila os eventos publicados pelo relay do outbox
+     *
+     * Grava em proxima_tentativa o prazo da fila, de modo que o scheduler só
+     * selecione o evento se a mensagem se perder.
+     */
+    @Modifying
+    @Query("UPDATE WebhookEvent w SET w.proximaTentativa = :prazo WHERE w.id IN :ids AND w.status = 'PENDING'")
+    int atribuirAFila(@Param("ids") List<UUID> ids, @Param("prazo") ZonedDateTime prazo);
+
+    /**
+     * Lê apenas o status do evento (usado pelo consumer antes de entregar uma mensagem completa)
+     */
+    @Query("SELECT w.status FROM WebhookEvent w WHERE w.id = :id")
+    Optional<String> buscarStatus(@Param("id") UUID id);
+
+    /**
+     * Carrega os eventos reservados com o lojista, na ordem da fila
+     */
+    @Query("SELECT w FROM WebhookEvent w JOIN FETCH w.lojista WHERE w.id IN :ids ORDER BY w.proximaTentativa ASC NULLS FIRST, w.id")
+    List<WebhookEvent> findReservados(@Param("ids") List<UUID> ids);
+
     /**
      * Busca eventos por status
      */
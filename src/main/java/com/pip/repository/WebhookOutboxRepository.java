@@ -0,0 +1,36 @@
+package com.pip.repository;
+
+import com.pip.model.WebhookOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository para o outbox transacional de webhooks
+ * 
+ * @author Luiz Gustavo Finotello
+ */
+@Repository
+public interface WebhookOutboxRepository extends JpaRepository<WebhookOutbox, Long> {
+
+    /**
+     * Seleciona e bloqueia as entradas mais antigas do outbox
+     *
+     * Linhas já bloqueadas por outro nó são puladas (SKIP LOCKED), de modo que relays
+     * concorrentes publicam lotes disjuntos. Deve ser chamado dentro de uma transação.
+     */
+    @Query(value = "SELECT * FROM webhook_outbox ORDER BY id LIMIT :limite FOR UPDATE SKIP LOCKED",
+        nativeQuery = true)
+    List<WebhookOutbox> selecionarLote(@Param("limite") int limite);
+
+    /**
+     * Remove as entradas cuja publicação foi confirmada pelo broker
+     */
+    @Modifying
+    @Query("DELETE FROM WebhookOutbox o WHERE o.id IN :ids")
+    int removerPublicadas(@Param("ids") List<Long> ids);
+}
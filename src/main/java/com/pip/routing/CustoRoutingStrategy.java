@@ -0,0 +1,66 @@
+package com.pip.routing;
+
+import com.pip.model.Gateway;
+import com.pip.model.Lojista;
+import com.pip.service.GatewayRoutingTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Estratégia orientada a custo
+ *
+ * Entre os gateways elegíveis cujo score está dentro da tolerância em relação
+ * ao melhor score, escolhe o de menor custo para o valor da transação
+ * (custo fixo + custo percentual). A tolerância evita trocar qualidade por
+ * economia: um gateway barato mas degradado perde score e sai da disputa.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class CustoRoutingStrategy implements RoutingStrategy {
+
+    public static final String NOME = "CUSTO";
+
+    @Value("${gateway.routing.custo.tolerancia-score:0.10}")
+    private double toleranciaScore;
+
+    @Override
+    public int selecionar(GatewayRoutingTable tabela, Lojista lojista, Long valor) {
+        int melhor = tabela.selecionarMelhor(valor);
+        if (melhor < 0) {
+            return -1;
+        }
+
+        double scoreMinimo = tabela.getScore(melhor) * (1.0 - toleranciaScore);
+        int maisBarato = melhor;
+        long menorCusto = custo(tabela.getGateway(melhor), valor);
+
+        // A tabela está ordenada por score decrescente
+        for (int i = melhor + 1; i < tabela.tamanho() && tabela.getScore(i) >= scoreMinimo; i++) {
+            if (!tabela.podeProcessar(i, valor)) {
+                continue;
+            }
+            long custo = custo(tabela.getGateway(i), valor);
+            if (custo < menorCusto) {
+                menorCusto = custo;
+                maisBarato = i;
+            }
+        }
+
+        return maisBarato;
+    }
+
+    /**
+     * Custo da transação no gateway, em centavos
+     */
+    static long custo(Gateway gateway, Long valor) {
+        long fixo = gateway.getCustoFixo() != null ? gateway.getCustoFixo() : 0L;
+        long percentual = gateway.getCustoPercentual() != null ? gateway.getCustoPercentual() : 0L;
+        return fixo + (valor != null ? valor : 0L) * percentual / 10_000;
+    }
+
+    @Override
+    public String getNome() {
+        return NOME;
+    }
+}
@@ -0,0 +1,29 @@
+package com.pip.routing;
+
+import com.pip.model.Lojista;
+import com.pip.service.GatewayRoutingTable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Estratégia determinística: gateway de maior score com capacidade
+ *
+ * Comportamento original do roteamento; concentra o tráfego no gateway
+ * de maior score até a próxima republicação da tabela.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class MaiorScoreRoutingStrategy implements RoutingStrategy {
+
+    public static final String NOME = "MAIOR_SCORE";
+
+    @Override
+    public int selecionar(GatewayRoutingTable tabela, Lojista lojista, Long valor) {
+        return tabela.selecionarMelhor(valor);
+    }
+
+    @Override
+    public String getNome() {
+        return NOME;
+    }
+}
@@ -0,0 +1,98 @@
+package com.pip.routing;
+
+import com.pip.model.Gateway;
+import com.pip.model.Lojista;
+import com.pip.service.GatewayRoutingTable;
+import com.pip.service.GatewayStats;
+import com.pip.service.GatewayStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estratégia power-of-two-choices (P2C)
+ *
+ * Sorteia dois gateways elegíveis e escolhe o de menor carga estimada:
+ * (chamadas em andamento + 1) × latência EWMA ÷ taxa de sucesso recente.
+ * Chamadas em andamento e EWMA são atualizadas a cada chamada, de modo que o
+ * tráfego se desloca em segundos quando um gateway degrada, sem concentrar
+ * todas as requisições no mesmo adquirente.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class P2CRoutingStrategy implements RoutingStrategy {
+
+    public static final String NOME = "P2C";
+
+    private static final double TAXA_SUCESSO_MINIMA = 0.01;
+
+    @Autowired
+    private GatewayStatsService gatewayStatsService;
+
+    @Override
+    public int selecionar(GatewayRoutingTable tabela, Lojista lojista, Long valor) {
+        int[] elegiveis = new int[tabela.tamanho()];
+        int total = 0;
+        for (int i = 0; i < tabela.tamanho(); i++) {
+            if (tabela.podeProcessar(i, valor)) {
+                elegiveis[total++] = i;
+            }
+        }
+
+        if (total == 0) {
+            return -1;
+        }
+        if (total == 1) {
+            return elegiveis[0];
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(total);
+        int b = random.nextInt(total - 1);
+        if (b >= a) {
+            b++;
+        }
+
+        int primeiro = elegiveis[a];
+        int segundo = elegiveis[b];
+        double cargaPrimeiro = carga(tabela.getGateway(primeiro));
+        double cargaSegundo = carga(tabela.getGateway(segundo));
+
+        if (cargaPrimeiro == cargaSegundo) {
+            return tabela.getScore(primeiro) >= tabela.getScore(segundo) ? primeiro : segundo;
+        }
+        return cargaPrimeiro < cargaSegundo ? primeiro : segundo;
+    }
+
+    /**
+     * Carga estimada do gateway (menor é melhor)
+     */
+    double carga(Gateway gateway) {
+        GatewayStats stats = gatewayStatsService.obter(gateway);
+
+        long emAndamento = 0;
+        double latencia = gateway.getTempoRespostaMedio() != null ? gateway.getTempoRespostaMedio() : 0;
+        double taxaSucesso = gateway.getTaxaSucesso() != null ? gateway.getTaxaSucesso() : 100.0;
+
+        if (stats != null) {
+            emAndamento = stats.getEmAndamento();
+            if (!Double.isNaN(stats.getLatenciaEwma())) {
+                latencia = stats.getLatenciaEwma();
+            }
+            GatewayStats.Snapshot recente = stats.snapshot(GatewayStats.JANELA_1M);
+            if (recente.getTotal() > 0) {
+                taxaSucesso = recente.getTaxaSucesso();
+            }
+        }
+
+        // Latência mínima de 1ms para que as chamadas em andamento sempre pesem
+        return (emAndamento + 1) * Math.max(1.0, latencia) / Math.max(TAXA_SUCESSO_MINIMA, taxaSucesso / 100.0);
+    }
+
+    @Override
+    public String getNome() {
+        return NOME;
+    }
+}
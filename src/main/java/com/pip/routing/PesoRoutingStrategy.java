@@ -0,0 +1,56 @@
+package com.pip.routing;
+
+import com.pip.model.Lojista;
+import com.pip.service.GatewayRoutingTable;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estratégia aleatória ponderada por {@code Gateway.pesoRoteamento}
+ *
+ * Distribui o tráfego entre os gateways elegíveis na proporção dos pesos
+ * configurados (peso 0 exclui o gateway). Sem pesos positivos, usa o maior score.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class PesoRoutingStrategy implements RoutingStrategy {
+
+    public static final String NOME = "PESO";
+
+    @Override
+    public int selecionar(GatewayRoutingTable tabela, Lojista lojista, Long valor) {
+        long pesoTotal = 0;
+        for (int i = 0; i < tabela.tamanho(); i++) {
+            pesoTotal += pesoElegivel(tabela, i, valor);
+        }
+
+        if (pesoTotal == 0) {
+            return tabela.selecionarMelhor(valor);
+        }
+
+        long sorteio = ThreadLocalRandom.current().nextLong(pesoTotal);
+        for (int i = 0; i < tabela.tamanho(); i++) {
+            sorteio -= pesoElegivel(tabela, i, valor);
+            if (sorteio < 0) {
+                return i;
+            }
+        }
+
+        return tabela.selecionarMelhor(valor);
+    }
+
+    private int pesoElegivel(GatewayRoutingTable tabela, int indice, Long valor) {
+        Integer peso = tabela.getGateway(indice).getPesoRoteamento();
+        if (peso == null || peso <= 0 || !tabela.podeProcessar(indice, valor)) {
+            return 0;
+        }
+        return peso;
+    }
+
+    @Override
+    public String getNome() {
+        return NOME;
+    }
+}
@@ -0,0 +1,37 @@
+package com.pip.routing;
+
+import com.pip.model.Lojista;
+import com.pip.service.GatewayRoutingTable;
+
+/**
+ * Interface base para estratégias de seleção de gateway
+ *
+ * Cada estratégia escolhe um gateway da tabela de roteamento vigente.
+ * A tabela já contém apenas gateways ativos e saudáveis, ordenados por score;
+ * a estratégia deve respeitar a capacidade diária de cada gateway
+ * ({@link GatewayRoutingTable#podeProcessar}, que usa o volume diário em memória).
+ *
+ * Implementações anotadas com @Component são registradas automaticamente
+ * e podem ser escolhidas por lojista pelo nome.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public interface RoutingStrategy {
+
+    /**
+     * Seleciona o gateway para a transação
+     *
+     * @param tabela Tabela de roteamento vigente (não vazia)
+     * @param lojista Lojista que está processando a transação
+     * @param valor Valor da transação em centavos
+     * @return Índice do gateway na tabela ou -1 se nenhum tiver capacidade
+     */
+    int selecionar(GatewayRoutingTable tabela, Lojista lojista, Long valor);
+
+    /**
+     * Nome da estratégia (valor de lojista.estrategia_roteamento)
+     *
+     * @return Nome (ex: "P2C", "PESO")
+     */
+    String getNome();
+}
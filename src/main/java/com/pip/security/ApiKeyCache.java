@@ -0,0 +1,217 @@
+package com.pip.security;
+
+import com.pip.exception.SecurityException;
+import com.pip.model.ApiKey;
+import com.pip.model.Lojista;
+import com.pip.repository.LojistaRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache de resolução API Key → Lojista / ApiKey
+ *
+ * Atua em dois níveis:
+ * - Requisição: o resultado é guardado como atributo da requisição HTTP, de modo que
+ *   interceptor e controllers resolvem a autenticação uma única vez
+ * - Nó: mapa em memória com TTL, evitando consultas ao banco a cada requisição
+ *
+ * As entradas são indexadas pelo hash SHA-256 da chave (a chave em claro não fica
+ * retida em memória). Rotação e revogação invalidam a entrada localmente e publicam
+ * a invalidação no Redis para os demais nós.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Component
+public class ApiKeyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyCache.class);
+
+    private static final String CANAL_INVALIDACAO = "pip:api-key:invalidacao";
+    private static final String ATRIBUTO_LOJISTA = ApiKeyCache.class.getName() + ".lojista.";
+
+    @Autowired
+    private LojistaRepository lojistaRepository;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${api.key.cache.ttl-seconds:60}")
+    private long ttlSegundos;
+
+    @Value("${api.key.cache.max-entradas:10000}")
+    private int maxEntradas;
+
+    private final Map<String, Entrada<Lojista>> lojistas = new ConcurrentHashMap<>();
+    private final Map<String, Entrada<ApiKey>> apiKeys = new ConcurrentHashMap<>();
+
+    private Counter contadorHits;
+    private Counter contadorMisses;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(
+            (message, pattern) -> invalidateLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(CANAL_INVALIDACAO));
+
+        this.contadorHits = Counter.builder("pip.api_key.cache")
+            .tag("resultado", "hit")
+            .register(meterRegistry);
+        this.contadorMisses = Counter.builder("pip.api_key.cache")
+            .tag("resultado", "miss")
+            .register(meterRegistry);
+        Gauge.builder("pip.api_key.cache.tamanho", lojistas, Map::size)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Resolve o lojista dono da API Key (requisição → nó → banco)
+     *
+     * @param apiKey Chave de API em claro recebida no header
+     * @return Lojista ou vazio se a chave não existir
+     */
+    public Optional<Lojista> resolveMerchant(String apiKey) {
+        if (apiKey == null || apiKey.isBlank()) {
+            return Optional.empty();
+        }
+
+        String keyHash = hash(apiKey);
+        RequestAttributes requisicao = RequestContextHolder.getRequestAttributes();
+        String atributo = ATRIBUTO_LOJISTA + keyHash;
+
+        if (requisicao != null) {
+            Object resolvido = requisicao.getAttribute(atributo, RequestAttributes.SCOPE_REQUEST);
+            if (resolvido instanceof Lojista lojista) {
+                return Optional.of(lojista);
+            }
+        }
+
+        Lojista lojista = obter(lojistas, keyHash, () -> lojistaRepository.findByApiKey(apiKey));
+
+        if (requisicao != null && lojista != null) {
+            requisicao.setAttribute(atributo, lojista, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        return Optional.ofNullable(lojista);
+    }
+
+    /**
+     * Obtém o registro ApiKey pelo hash, consultando o banco apenas em caso de miss
+     *
+     * @param keyHash Hash da chave
+     * @param loader Consulta ao banco
+     * @return Registro ou null se não existir
+     */
+    public ApiKey getApiKey(String keyHash, Supplier<ApiKey> loader) {
+        return obter(apiKeys, keyHash, loader);
+    }
+
+    /**
+     * Invalida a chave neste nó e nos demais (rotação ou revogação)
+     *
+     * @param apiKey Chave de API em claro
+     */
+    public void invalidate(String apiKey) {
+        String keyHash = hash(apiKey);
+        invalidateLocal(keyHash);
+
+        try {
+            stringRedisTemplate.convertAndSend(CANAL_INVALIDACAO, keyHash);
+        } catch (Exception e) {
+            // Os demais nós expiram a entrada pelo TTL
+            logger.error("Falha ao publicar invalidação de API Key: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Invalida todas as entradas de um lojista neste nó
+     *
+     * @param lojistaId ID do lojista
+     */
+    public void invalidateMerchant(UUID lojistaId) {
+        lojistas.entrySet().removeIf(entry -> lojistaId.equals(entry.getValue().valor.getId()));
+    }
+
+    private void invalidateLocal(String keyHash) {
+        lojistas.remove(keyHash);
+        apiKeys.remove(keyHash);
+        logger.debug("Entrada de API Key invalidada no cache local");
+    }
+
+    private <T> T obter(Map<String, Entrada<T>> mapa, String keyHash, Supplier<T> loader) {
+        long agora = System.currentTimeMillis();
+        Entrada<T> entrada = mapa.get(keyHash);
+
+        if (entrada != null && entrada.expiraEm > agora) {
+            contadorHits.increment();
+            return entrada.valor;
+        }
+
+        contadorMisses.increment();
+        T valor = loader.get();
+
+        if (valor != null && mapa.size() < maxEntradas) {
+            mapa.put(keyHash, new Entrada<>(valor, agora + ttlSegundos * 1000));
+        } else if (valor == null) {
+            mapa.remove(keyHash);
+        }
+
+        return valor;
+    }
+
+    /**
+     * Remove entradas expiradas
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long agora = System.currentTimeMillis();
+        lojistas.entrySet().removeIf(entry -> entry.getValue().expiraEm <= agora);
+        apiKeys.entrySet().removeIf(entry -> entry.getValue().expiraEm <= agora);
+    }
+
+    private String hash(String apiKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(apiKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new SecurityException("Failed to hash API key", e);
+        }
+    }
+
+    private static final class Entrada<T> {
+        private final T valor;
+        private final long expiraEm;
+
+        private Entrada(T valor, long expiraEm) {
+            this.valor = valor;
+            this.expiraEm = expiraEm;
+        }
+    }
+}
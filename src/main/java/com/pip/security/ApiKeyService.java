@@ -7,15 +7,23 @@ import com.pip.exception.SecurityException;
 import com.pip.repository.ApiKeyRepository;
 import com.pip.model.ApiKey;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,6 +40,8 @@ public class ApiKeyService {
     private static final int KEY_LENGTH = 64;
     private static final int MAX_REQUESTS_PER_MINUTE = 100;
     private static final int ROTATION_DAYS = 90;
+    private static final int LAST_USED_BATCH_SIZE = 500;
+    private static final String VALIDATION_ATTRIBUTE = ApiKeyService.class.getName() + ".validation.";
     
     @Autowired
     private ApiKeyRepository apiKeyRepository;
@@ -39,10 +49,18 @@ public class ApiKeyService {
     @Autowired
     private SecurityAuditLogger auditLogger;
     
+    @Autowired
+    private ApiKeyCache apiKeyCache;
+    
     private final SecureRandom secureRandom = new SecureRandom();
     private final ConcurrentHashMap<String, AtomicInteger> rateLimitMap = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Instant> rateLimitResetMap = new ConcurrentHashMap<>();
     
+    /**
+     * Último uso pendente de gravação por chave (coalescido entre flushes)
+     */
+    private final ConcurrentHashMap<UUID, ZonedDateTime> pendingLastUsed = new ConcurrentHashMap<>();
+    
     /**
      * Valida API Key e retorna informações do merchant
      * @param apiKey Chave de API fornecida
@@ -54,12 +72,32 @@ public class ApiKeyService {
             return ApiKeyValidationResult.invalid("API key is required");
         }
         
+        // Calcular hash da API key
+        String hashedKey = hashApiKey(apiKey);
+        
+        // Reaproveitar a validação já feita nesta requisição
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            Object previous = request.getAttribute(VALIDATION_ATTRIBUTE + hashedKey, RequestAttributes.SCOPE_REQUEST);
+            if (previous instanceof ApiKeyValidationResult result) {
+                return result;
+            }
+        }
+        
+        ApiKeyValidationResult result = doValidateApiKey(apiKey, hashedKey);
+        
+        if (request != null) {
+            request.setAttribute(VALIDATION_ATTRIBUTE + hashedKey, result, RequestAttributes.SCOPE_REQUEST);
+        }
+        
+        return result;
+    }
+    
+    private ApiKeyValidationResult doValidateApiKey(String apiKey, String hashedKey) {
         try {
-            // Calcular hash da API key
-            String hashedKey = hashApiKey(apiKey);
-            
-            // Buscar no banco de dados
-            ApiKey storedKey = apiKeyRepository.findByKeyHash(hashedKey);
+            // Buscar no cache do nó (banco apenas em caso de miss)
+            ApiKey storedKey = apiKeyCache.getApiKey(hashedKey,
+                () -> apiKeyRepository.findByKeyHash(hashedKey).orElse(null));
             
             if (storedKey == null) {
                 auditLogger.logInvalidApiKeyAttempt(apiKey, "API key not found");
@@ -91,9 +129,8 @@ public class ApiKeyService {
                 notifyRotationNeeded(storedKey.getMerchantId());
             }
             
-            // Atualizar último uso
-            storedKey.setLastUsedAt(Instant.now());
-            apiKeyRepository.save(storedKey);
+            // Atualizar último uso (gravado em lote por flushLastUsed)
+            pendingLastUsed.put(storedKey.getId(), ZonedDateTime.now());
             
             // Log de uso bem-sucedido
             auditLogger.logApiKeyUsage(storedKey.getMerchantId(), apiKey);
@@ -168,10 +205,12 @@ public class ApiKeyService {
             
             // Desativar chave atual
             String hashedKey = hashApiKey(currentApiKey);
-            ApiKey currentKey = apiKeyRepository.findByKeyHash(hashedKey);
+            ApiKey currentKey = apiKeyRepository.findByKeyHash(hashedKey)
+                .orElseThrow(() -> new SecurityException("API key not found"));
             currentKey.setActive(false);
             currentKey.setRotatedAt(Instant.now());
             apiKeyRepository.save(currentKey);
+            apiKeyCache.invalidate(currentApiKey);
             
             // Gerar nova chave
             String newApiKey = generateApiKey(merchantId, currentKey.getEnvironment());
@@ -195,12 +234,13 @@ public class ApiKeyService {
     public void revokeApiKey(String merchantId, String apiKey) {
         try {
             String hashedKey = hashApiKey(apiKey);
-            ApiKey keyRecord = apiKeyRepository.findByKeyHash(hashedKey);
+            ApiKey keyRecord = apiKeyRepository.findByKeyHash(hashedKey).orElse(null);
             
             if (keyRecord != null && keyRecord.getMerchantId().equals(merchantId)) {
                 keyRecord.setActive(false);
                 keyRecord.setRevokedAt(Instant.now());
                 apiKeyRepository.save(keyRecord);
+                apiKeyCache.invalidate(apiKey);
                 
                 auditLogger.logApiKeyRevocation(merchantId, apiKey);
             }
@@ -211,6 +251,49 @@ public class ApiKeyService {
         }
     }
     
+    /**
+     * Grava em lote o último uso das chaves acumulado desde o flush anterior
+     * (um UPDATE por lote em vez de um por requisição)
+     */
+    @Scheduled(fixedDelayString = "${api.key.last-used.flush-ms:30000}")
+    public void flushLastUsed() {
+        if (pendingLastUsed.isEmpty()) {
+            return;
+        }
+        
+        List<UUID> batch = new ArrayList<>(LAST_USED_BATCH_SIZE);
+        ZonedDateTime batchLastUsed = null;
+        
+        for (Map.Entry<UUID, ZonedDateTime> entry : pendingLastUsed.entrySet()) {
+            // Remove apenas se não houve uso mais recente durante o flush
+            if (!pendingLastUsed.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            batch.add(entry.getKey());
+            if (batchLastUsed == null || entry.getValue().isAfter(batchLastUsed)) {
+                batchLastUsed = entry.getValue();
+            }
+            if (batch.size() == LAST_USED_BATCH_SIZE) {
+                writeLastUsed(batch, batchLastUsed);
+                batch.clear();
+                batchLastUsed = null;
+            }
+        }
+        
+        if (!batch.isEmpty()) {
+            writeLastUsed(batch, batchLastUsed);
+        }
+    }
+    
+    private void writeLastUsed(List<UUID> keyIds, ZonedDateTime lastUsedAt) {
+        try {
+            int updated = apiKeyRepository.updateLastUsedAt(keyIds, lastUsedAt);
+            logger.debug("Last used updated for {} API keys", updated);
+        } catch (Exception e) {
+            logger.error("Failed to update last used for {} API keys: {}", keyIds.size(), e.getMessage());
+        }
+    }
+    
     private String generateSecureKey(String environment) {
         String prefix = "LIVE".equals(environment) ? LIVE_PREFIX : TEST_PREFIX;
         
@@ -0,0 +1,436 @@
+package com.pip.security;
+
+import com.azure.core.exception.ResourceNotFoundException;
+import com.azure.security.keyvault.secrets.SecretClient;
+import com.azure.security.keyvault.secrets.models.KeyVaultSecret;
+import com.pip.exception.SecurityException;
+import com.pip.model.ChaveDadosTokenizacao;
+import com.pip.repository.ChaveDadosTokenizacaoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Serviço de criptografia por envelope da tokenização
+ *
+ * Os dados de cartão são cifrados com AES-256-GCM sob uma chave de dados (DEK)
+ * gerada localmente. A DEK é persistida cifrada pela KEK, um secret de 256 bits no
+ * Azure Key Vault, e mantida em claro apenas na memória do processo. Assim o Key
+ * Vault só é consultado ao carregar uma versão da KEK ou uma DEK pela primeira vez;
+ * em regime, tokenização e destokenização não fazem chamadas remotas ao cofre.
+ *
+ * Na rotação da KEK apenas as DEKs são recifradas (reenvelopar); os dados de cartão
+ * não precisam ser lidos. A DEK ativa é trocada ao atingir a idade máxima.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class EnvelopeEncryptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnvelopeEncryptionService.class);
+
+    private static final String TRANSFORMACAO = "AES/GCM/NoPadding";
+    private static final int TAMANHO_IV = 12;
+    private static final int TAMANHO_TAG_BITS = 128;
+    private static final int TAMANHO_CHAVE_BYTES = 32;
+    private static final String AAD_DEK = "pip-dek:";
+
+    @Autowired
+    private SecretClient secretClient;
+
+    @Autowired
+    private ChaveDadosTokenizacaoRepository chaveDadosRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${tokenization.kek.secret-name:pip-tokenization-kek}")
+    private String nomeKek;
+
+    @Value("${tokenization.dek.max-idade-horas:720}")
+    private long maxIdadeDekHoras;
+
+    private final Map<String, SecretKey> keks = new ConcurrentHashMap<>();
+    private final Map<UUID, SecretKey> deks = new ConcurrentHashMap<>();
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    // Serializa a criação/carga da DEK ativa (banco + Key Vault); ReentrantLock não prende
+    // a carrier thread de virtual threads durante o I/O, ao contrário de synchronized
+    private final ReentrantLock lockDekAtiva = new ReentrantLock();
+
+    // Um lock por DEK/versão da KEK em carga: o I/O fica fora dos mapas (computeIfAbsent
+    // bloquearia o bin, e com ele outras chaves, durante a leitura no banco e no cofre)
+    private final Map<Object, ReentrantLock> locksCarga = new ConcurrentHashMap<>();
+
+    private volatile String versaoKekAtual;
+    private volatile DekAtiva dekAtiva;
+
+    private Counter contadorCarregamentosKek;
+    private Counter contadorCarregamentosDek;
+    private Counter contadorRecifradas;
+
+    @PostConstruct
+    public void init() {
+        this.contadorCarregamentosKek = Counter.builder("pip.tokenization.kek.carregamentos")
+            .description("Leituras da KEK no Key Vault")
+            .register(meterRegistry);
+        this.contadorCarregamentosDek = Counter.builder("pip.tokenization.dek.carregamentos")
+            .description("DEKs decifradas a partir do banco (cache local vazio)")
+            .register(meterRegistry);
+        this.contadorRecifradas = Counter.builder("pip.tokenization.dek.recifradas")
+            .description("DEKs recifradas após rotação da KEK")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Cifra dados com a DEK ativa
+     *
+     * @param claro Dados em claro (não são alterados)
+     * @param aad Dados associados autenticados (ex.: token|merchant)
+     * @return Identificador da DEK, IV e texto cifrado com a tag GCM
+     */
+    public DadosCifrados cifrar(byte[] claro, byte[] aad) {
+        DekAtiva dek = obterDekAtiva();
+        try {
+            byte[] iv = new byte[TAMANHO_IV];
+            secureRandom.nextBytes(iv);
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMACAO);
+            cipher.init(Cipher.ENCRYPT_MODE, dek.chave, new GCMParameterSpec(TAMANHO_TAG_BITS, iv));
+            cipher.updateAAD(aad);
+            return new DadosCifrados(dek.id, iv, cipher.doFinal(claro));
+
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to encrypt card data", e);
+        }
+    }
+
+    /**
+     * Decifra dados cifrados por cifrar
+     *
+     * @return Dados em claro; cabe ao chamador zerar o array após o uso
+     */
+    public byte[] decifrar(UUID chaveDadosId, byte[] iv, byte[] dadosCifrados, byte[] aad) {
+        SecretKey chave = obterCarregando(deks, chaveDadosId, this::carregarDek);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMACAO);
+            cipher.init(Cipher.DECRYPT_MODE, chave, new GCMParameterSpec(TAMANHO_TAG_BITS, iv));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(dadosCifrados);
+
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to decrypt card data", e);
+        }
+    }
+
+    /**
+     * Recifra com a versão atual da KEK as DEKs cifradas por versões anteriores
+     *
+     * Idempotente e seguro entre nós: execuções concorrentes produzem cifragens
+     * equivalentes da mesma DEK. As DEKs em claro no cache local não mudam.
+     *
+     * @return Quantidade de DEKs recifradas
+     */
+    public int reenvelopar() {
+        String versaoAtual = carregarKekAtual();
+        SecretKey kekAtual = keks.get(versaoAtual);
+
+        List<ChaveDadosTokenizacao> pendentes = chaveDadosRepository.findPendentesDeRecifragem(versaoAtual);
+        int recifradas = 0;
+
+        for (ChaveDadosTokenizacao registro : pendentes) {
+            byte[] dek = null;
+            try {
+                dek = abrirEnvelope(registro);
+                registro.recifrar(fecharEnvelope(registro.getId(), dek, kekAtual), versaoAtual);
+                chaveDadosRepository.save(registro);
+                recifradas++;
+            } catch (RuntimeException e) {
+                logger.error("[KEK] Falha ao recifrar DEK {} (KEK {}): {}",
+                    registro.getId(), registro.getKekVersao(), e.getMessage());
+            } finally {
+                if (dek != null) {
+                    Arrays.fill(dek, (byte) 0);
+                }
+            }
+        }
+
+        contadorRecifradas.increment(recifradas);
+        if (!pendentes.isEmpty()) {
+            logger.info("[KEK] Recifragem concluída - KEK {} - DEKs recifradas: {}/{}",
+                versaoAtual, recifradas, pendentes.size());
+        }
+        return recifradas;
+    }
+
+    /**
+     * Verifica periodicamente se a KEK foi rotacionada (inclusive por outro nó ou
+     * diretamente no cofre) e recifra as DEKs pendentes
+     */
+    @Scheduled(cron = "${tokenization.kek.verificacao-cron:0 30 3 * * *}")
+    public void verificarRotacaoKek() {
+        try {
+            reenvelopar();
+        } catch (Exception e) {
+            logger.error("[KEK] Erro na verificação de rotação da KEK", e);
+        }
+    }
+
+    public String getNomeKek() {
+        return nomeKek;
+    }
+
+    private DekAtiva obterDekAtiva() {
+        DekAtiva atual = this.dekAtiva;
+        if (atual != null && !atual.isVencida(maxIdadeDekHoras)) {
+            return atual;
+        }
+        lockDekAtiva.lock();
+        try {
+            atual = this.dekAtiva;
+            if (atual != null && !atual.isVencida(maxIdadeDekHoras)) {
+                return atual;
+            }
+
+            // Após um reinício reaproveita a DEK ativa mais recente em vez de criar uma por nó
+            if (atual == null) {
+                ChaveDadosTokenizacao existente = chaveDadosRepository.findAtivaMaisRecente().orElse(null);
+                if (existente != null && Duration.between(existente.getCreatedAt(), ZonedDateTime.now())
+                        .toHours() < maxIdadeDekHoras) {
+                    SecretKey chave = obterCarregando(deks, existente.getId(), this::carregarDek);
+                    this.dekAtiva = new DekAtiva(existente.getId(), chave, existente.getCreatedAt());
+                    return this.dekAtiva;
+                }
+            }
+
+            this.dekAtiva = criarDek();
+            return this.dekAtiva;
+        } finally {
+            lockDekAtiva.unlock();
+        }
+    }
+
+    private DekAtiva criarDek() {
+        String versaoKek = versaoKekAtual != null ? versaoKekAtual : carregarKekAtual();
+        UUID id = UUID.randomUUID();
+
+        byte[] dek = new byte[TAMANHO_CHAVE_BYTES];
+        secureRandom.nextBytes(dek);
+        try {
+            ChaveDadosTokenizacao registro = new ChaveDadosTokenizacao(id,
+                fecharEnvelope(id, dek, keks.get(versaoKek)), versaoKek);
+            chaveDadosRepository.save(registro);
+
+            SecretKey chave = new SecretKeySpec(dek, "AES");
+            deks.put(id, chave);
+
+            if (dekAtiva != null) {
+                chaveDadosRepository.findById(dekAtiva.id).ifPresent(anterior -> {
+                    anterior.aposentar();
+                    chaveDadosRepository.save(anterior);
+                });
+            }
+
+            logger.info("[DEK] Nova chave de dados criada: {} (KEK {})", id, versaoKek);
+            return new DekAtiva(id, chave, registro.getCreatedAt());
+
+        } finally {
+            Arrays.fill(dek, (byte) 0);
+        }
+    }
+
+    /**
+     * Retorna a chave do cache local, carregando-a uma única vez em caso de ausência
+     *
+     * Leituras de chaves já carregadas não bloqueiam; cargas concorrentes da mesma
+     * chave esperam a primeira, e cargas de chaves diferentes seguem em paralelo.
+     */
+    private <K> SecretKey obterCarregando(Map<K, SecretKey> cache, K id, Function<K, SecretKey> carga) {
+        SecretKey chave = cache.get(id);
+        if (chave != null) {
+            return chave;
+        }
+
+        ReentrantLock lock = locksCarga.computeIfAbsent(id, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            chave = cache.get(id);
+            if (chave == null) {
+                chave = carga.apply(id);
+                cache.put(id, chave);
+            }
+            return chave;
+        } finally {
+            lock.unlock();
+            locksCarga.remove(id, lock);
+        }
+    }
+
+    private SecretKey carregarDek(UUID id) {
+        ChaveDadosTokenizacao registro = chaveDadosRepository.findById(id)
+            .orElseThrow(() -> new SecurityException("Data encryption key not found: " + id));
+
+        byte[] dek = abrirEnvelope(registro);
+        try {
+            contadorCarregamentosDek.increment();
+            return new SecretKeySpec(dek, "AES");
+        } finally {
+            Arrays.fill(dek, (byte) 0);
+        }
+    }
+
+    private byte[] abrirEnvelope(ChaveDadosTokenizacao registro) {
+        SecretKey kek = obterCarregando(keks, registro.getKekVersao(), this::carregarKek);
+        byte[] envelope = registro.getChaveCifrada();
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMACAO);
+            cipher.init(Cipher.DECRYPT_MODE, kek, new GCMParameterSpec(TAMANHO_TAG_BITS, envelope, 0, TAMANHO_IV));
+            cipher.updateAAD(aadDek(registro.getId()));
+            return cipher.doFinal(envelope, TAMANHO_IV, envelope.length - TAMANHO_IV);
+
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to unwrap data encryption key " + registro.getId(), e);
+        }
+    }
+
+    private byte[] fecharEnvelope(UUID id, byte[] dek, SecretKey kek) {
+        try {
+            byte[] iv = new byte[TAMANHO_IV];
+            secureRandom.nextBytes(iv);
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMACAO);
+            cipher.init(Cipher.ENCRYPT_MODE, kek, new GCMParameterSpec(TAMANHO_TAG_BITS, iv));
+            cipher.updateAAD(aadDek(id));
+            byte[] cifrada = cipher.doFinal(dek);
+
+            byte[] envelope = new byte[TAMANHO_IV + cifrada.length];
+            System.arraycopy(iv, 0, envelope, 0, TAMANHO_IV);
+            System.arraycopy(cifrada, 0, envelope, TAMANHO_IV, cifrada.length);
+            return envelope;
+
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to wrap data encryption key " + id, e);
+        }
+    }
+
+    /**
+     * Lê a versão atual da KEK no cofre, criando o secret na primeira execução
+     */
+    private String carregarKekAtual() {
+        KeyVaultSecret secret;
+        try {
+            secret = secretClient.getSecret(nomeKek);
+        } catch (ResourceNotFoundException e) {
+            secret = null;
+        }
+
+        if (secret == null) {
+            logger.warn("[KEK] Secret {} não encontrado no Key Vault - criando KEK inicial", nomeKek);
+            secret = secretClient.setSecret(nomeKek, gerarValorKek());
+        }
+
+        contadorCarregamentosKek.increment();
+        String versao = secret.getProperties().getVersion();
+        keks.put(versao, decodificarKek(secret.getValue()));
+        this.versaoKekAtual = versao;
+        return versao;
+    }
+
+    private SecretKey carregarKek(String versao) {
+        KeyVaultSecret secret = secretClient.getSecret(nomeKek, versao);
+        if (secret == null) {
+            throw new SecurityException("KEK version not found: " + versao);
+        }
+        contadorCarregamentosKek.increment();
+        return decodificarKek(secret.getValue());
+    }
+
+    private SecretKey decodificarKek(String valor) {
+        byte[] chave = Base64.getDecoder().decode(valor);
+        try {
+            if (chave.length != TAMANHO_CHAVE_BYTES) {
+                throw new SecurityException("KEK must be a base64-encoded 256-bit key");
+            }
+            return new SecretKeySpec(chave, "AES");
+        } finally {
+            Arrays.fill(chave, (byte) 0);
+        }
+    }
+
+    /**
+     * Gera o valor de uma nova versão da KEK (256 bits em Base64)
+     */
+    public static String gerarValorKek() {
+        try {
+            KeyGenerator geradorChave = KeyGenerator.getInstance("AES");
+            geradorChave.init(256, new SecureRandom());
+            return Base64.getEncoder().encodeToString(geradorChave.generateKey().getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Failed to generate key encryption key", e);
+        }
+    }
+
+    private static byte[] aadDek(UUID id) {
+        return (AAD_DEK + id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Resultado da cifragem: DEK usada, IV e texto cifrado (com a tag GCM)
+     */
+    public static final class DadosCifrados {
+        private final UUID chaveDadosId;
+        private final byte[] iv;
+        private final byte[] dados;
+
+        private DadosCifrados(UUID chaveDadosId, byte[] iv, byte[] dados) {
+            this.chaveDadosId = chaveDadosId;
+            this.iv = iv;
+            this.dados = dados;
+        }
+
+        public UUID getChaveDadosId() { return chaveDadosId; }
+        public byte[] getIv() { return iv; }
+        public byte[] getDados() { return dados; }
+    }
+
+    private static final class DekAtiva {
+        private final UUID id;
+        private final SecretKey chave;
+        private final ZonedDateTime criadaEm;
+
+        private DekAtiva(UUID id, SecretKey chave, ZonedDateTime criadaEm) {
+            this.id = id;
+            this.chave = chave;
+            this.criadaEm = criadaEm;
+        }
+
+        private boolean isVencida(long maxIdadeHoras) {
+            return Duration.between(criadaEm, ZonedDateTime.now()).toHours() >= maxIdadeHoras;
+        }
+    }
+}
@@ -41,6 +41,9 @@ public class KeyRotationService {
     @Autowired
     private SecurityAuditLogger auditLogger;
 
+    @Autowired
+    private EnvelopeEncryptionService envelopeEncryptionService;
+
     /**
      * Executa rotação automática de chaves
      * Agendado para rodar diariamente às 3h da manhã
@@ -110,6 +113,11 @@ public class KeyRotationService {
             // Criar nova versão do secret
             secretClient.setSecret(secretName, newValue);
 
+            // Nova versão da KEK: recifrar as DEKs (os dados de cartão não são tocados)
+            if (secretName.equals(envelopeEncryptionService.getNomeKek())) {
+                envelopeEncryptionService.reenvelopar();
+            }
+
             logger.info("[KEY ROTATION] Secret rotacionado com sucesso: {}", secretName);
             auditLogger.logSecretRotated(secretName);
 
@@ -129,6 +137,11 @@ public class KeyRotationService {
             return currentValue; // Tokens não são rotacionados, apenas expiram
         }
 
+        // KEK da tokenização: precisa ser uma chave AES de 256 bits
+        if (secretName.equals(envelopeEncryptionService.getNomeKek())) {
+            return EnvelopeEncryptionService.gerarValorKek();
+        }
+
         // Para API keys, gerar nova chave
         return UUID.randomUUID().toString().replace("-", "");
     }
@@ -0,0 +1,525 @@
+package com.pip.security;
+
+import com.azure.core.exception.HttpResponseException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.pip.audit.SecurityAuditLogger;
+import com.pip.dto.DetokenizationRequest;
+import com.pip.dto.TokenBatchItemResult;
+import com.pip.dto.TokenizationRequest;
+import com.pip.exception.TokenizationException;
+import com.pip.model.TokenCartao;
+import com.pip.repository.TokenCartaoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Serviço de tokenização e destokenização em lote
+ *
+ * Voltado a migrações de cartões armazenados (card-on-file) vindos de outros PSPs.
+ * Lê os itens em fluxo (NDJSON ou array JSON) e os processa em blocos:
+ * 1. Validação de formato e Luhn em laço sobre os caracteres, sem exceções por item
+ * 2. Cifragem por envelope na thread da requisição (DEK local, sem chamada ao cofre)
+ * 3. Gravação em sub-lotes de INSERT paralelos, limitados pelo pool do serviço, com
+ *    retentativa e backoff exponencial quando o banco ou o Key Vault sinalizam
+ *    sobrecarga (erros transitórios, HTTP 429/503)
+ * 4. Resultados do bloco escritos como NDJSON na ordem de entrada, enquanto o
+ *    bloco seguinte já está sendo preparado
+ *
+ * Em vez dos eventos de auditoria por item da API unitária, cada lote gera um
+ * único registro agregado (totais e falhas por código).
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class LoteTokenizacaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoteTokenizacaoService.class);
+
+    private static final byte[] NOVA_LINHA = {'\n'};
+
+    private static final String SQL_INSERCAO =
+        "INSERT INTO token_cartao (token, merchant_id, chave_dados_id, iv, dados_cifrados, created_at, expires_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (token) DO NOTHING";
+
+    private static final int[] TIPOS_INSERCAO = {
+        Types.VARCHAR, Types.VARCHAR, Types.OTHER, Types.BINARY, Types.BINARY,
+        Types.TIMESTAMP_WITH_TIMEZONE, Types.TIMESTAMP_WITH_TIMEZONE
+    };
+
+    @Autowired
+    private TokenizationService tokenizationService;
+
+    @Autowired
+    private TokenCartaoRepository tokenCartaoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SecurityAuditLogger auditLogger;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${tokenization.lote.tamanho-bloco:2000}")
+    private int tamanhoBloco;
+
+    @Value("${tokenization.lote.tamanho-escrita:250}")
+    private int tamanhoEscrita;
+
+    @Value("${tokenization.lote.paralelismo:8}")
+    private int paralelismo;
+
+    @Value("${tokenization.lote.max-itens:10000000}")
+    private int maxItens;
+
+    @Value("${tokenization.lote.retry.max-tentativas:6}")
+    private int maxTentativas;
+
+    @Value("${tokenization.lote.retry.espera-inicial-ms:100}")
+    private long esperaInicialMs;
+
+    @Value("${tokenization.lote.retry.espera-maxima-ms:5000}")
+    private long esperaMaximaMs;
+
+    private ThreadPoolExecutor executor;
+
+    private Counter contadorRetentativas;
+
+    @PostConstruct
+    public void iniciar() {
+        this.executor = new ThreadPoolExecutor(
+            paralelismo, paralelismo,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("lote-tokenizacao-")
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.contadorRetentativas = Counter.builder("pip.tokenization.lote.retentativas")
+            .description("Retentativas de gravação/leitura após sinal de sobrecarga")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Tokeniza um lote de cartões, escrevendo um resultado NDJSON por item
+     *
+     * @param merchantId Lojista dono dos tokens (sobrepõe o merchantId dos itens)
+     * @param loteId ID do lote, registrado na auditoria
+     * @param entrada Cartões ({@link TokenizationRequest}) em NDJSON ou array JSON
+     * @param saida Saída NDJSON com um {@link TokenBatchItemResult} por item
+     * @return Quantidade de itens processados
+     */
+    public int tokenizarLote(String merchantId, String loteId, InputStream entrada, OutputStream saida) throws IOException {
+        logger.info("Iniciando tokenização em lote {} do lojista {}", loteId, merchantId);
+
+        Pipeline pipeline = new Pipeline(saida);
+        try {
+            this.<TokenizationRequest>ler(objectMapper.readerFor(TokenizationRequest.class), entrada, pipeline,
+                (inicio, bloco) -> tokenizarBloco(merchantId, inicio, bloco));
+        } finally {
+            pipeline.resumo.registrarMetricas("tokenizar");
+            auditLogger.logBatchTokenization(loteId, merchantId, pipeline.resumo.total, pipeline.resumo.sucesso,
+                pipeline.resumo.falhasPorCodigo, pipeline.duracaoMs());
+        }
+
+        logger.info("Tokenização em lote {} concluída: {} itens, {} tokens em {} ms",
+            loteId, pipeline.resumo.total, pipeline.resumo.sucesso, pipeline.duracaoMs());
+        return pipeline.resumo.total;
+    }
+
+    /**
+     * Destokeniza um lote de tokens, escrevendo um resultado NDJSON por item
+     *
+     * @param merchantId Lojista solicitante (somente tokens do próprio lojista são abertos)
+     * @param loteId ID do lote, registrado na auditoria
+     * @param finalidade Finalidade da destokenização, registrada na auditoria
+     * @param entrada Tokens ({@link DetokenizationRequest}) em NDJSON ou array JSON
+     * @param saida Saída NDJSON com um {@link TokenBatchItemResult} por item
+     * @return Quantidade de itens processados
+     */
+    public int destokenizarLote(String merchantId, String loteId, String finalidade,
+                                InputStream entrada, OutputStream saida) throws IOException {
+        logger.info("Iniciando destokenização em lote {} do lojista {} - Finalidade: {}", loteId, merchantId, finalidade);
+
+        Pipeline pipeline = new Pipeline(saida);
+        try {
+            this.<DetokenizationRequest>ler(objectMapper.readerFor(DetokenizationRequest.class), entrada, pipeline,
+                (inicio, bloco) -> destokenizarBloco(merchantId, inicio, bloco));
+        } finally {
+            pipeline.resumo.registrarMetricas("destokenizar");
+            auditLogger.logBatchDetokenization(loteId, merchantId, finalidade, pipeline.resumo.total,
+                pipeline.resumo.sucesso, pipeline.resumo.falhasPorCodigo, pipeline.duracaoMs());
+        }
+
+        logger.info("Destokenização em lote {} concluída: {} itens, {} abertos em {} ms",
+            loteId, pipeline.resumo.total, pipeline.resumo.sucesso, pipeline.duracaoMs());
+        return pipeline.resumo.total;
+    }
+
+    /**
+     * Lê a entrada em blocos e os encaminha ao pipeline
+     */
+    private <T> void ler(ObjectReader leitor, InputStream entrada, Pipeline pipeline, Etapa<T> etapa) throws IOException {
+        int indice = 0;
+
+        try (MappingIterator<T> itens = leitor.readValues(entrada)) {
+            List<T> bloco = new ArrayList<>(tamanhoBloco);
+            while (true) {
+                T item;
+                try {
+                    if (!itens.hasNextValue()) {
+                        break;
+                    }
+                    item = itens.nextValue();
+                } catch (IOException e) {
+                    // JSON malformado: não é possível sincronizar o restante do fluxo
+                    pipeline.enviar(etapa.processar(indice, bloco));
+                    indice += bloco.size();
+                    pipeline.concluir(TokenBatchItemResult.erro(indice, null, "INVALID_JSON", e.getMessage()));
+                    logger.warn("Lote de tokenização interrompido no item {}: JSON inválido", indice);
+                    return;
+                }
+
+                if (indice + bloco.size() >= maxItens) {
+                    pipeline.enviar(etapa.processar(indice, bloco));
+                    indice += bloco.size();
+                    pipeline.concluir(TokenBatchItemResult.erro(indice, null, "BATCH_TOO_LARGE",
+                        "Lote excede o limite de " + maxItens + " itens"));
+                    return;
+                }
+
+                bloco.add(item);
+                if (bloco.size() == tamanhoBloco) {
+                    pipeline.enviar(etapa.processar(indice, bloco));
+                    indice += bloco.size();
+                    bloco = new ArrayList<>(tamanhoBloco);
+                }
+            }
+
+            pipeline.enviar(etapa.processar(indice, bloco));
+            pipeline.concluir(null);
+        }
+    }
+
+    /**
+     * Valida e cifra o bloco na thread atual e dispara a gravação paralela em sub-lotes
+     *
+     * @param inicio Índice do primeiro item do bloco no lote
+     * @return Resultados do bloco, completados quando todas as gravações terminarem
+     */
+    CompletableFuture<List<TokenBatchItemResult>> tokenizarBloco(String merchantId, int inicio,
+                                                                 List<TokenizationRequest> requests) {
+        TokenBatchItemResult[] resultados = new TokenBatchItemResult[requests.size()];
+        List<TokenCartao> linhas = new ArrayList<>(requests.size());
+        List<Integer> posicoes = new ArrayList<>(requests.size());
+        Instant expiresAt = tokenizationService.calculateExpirationTime();
+
+        for (int i = 0; i < requests.size(); i++) {
+            TokenizationRequest request = requests.get(i);
+            request.setMerchantId(merchantId);
+            try {
+                String erro = tokenizationService.validateCard(request);
+                if (erro != null) {
+                    resultados[i] = TokenBatchItemResult.erro(inicio + i, null, "VALIDATION_ERROR", erro);
+                    continue;
+                }
+
+                String token = tokenizationService.generateSecureToken(request.isTestMode());
+                linhas.add(tokenizationService.encryptCard(request, token, expiresAt));
+                posicoes.add(i);
+
+            } catch (RuntimeException e) {
+                resultados[i] = TokenBatchItemResult.erro(inicio + i, null, "ENCRYPTION_ERROR", e.getMessage());
+            } finally {
+                request.setPan(null);
+                request.setCvv(null);
+            }
+        }
+
+        List<CompletableFuture<Void>> gravacoes = new ArrayList<>();
+        for (int de = 0; de < linhas.size(); de += tamanhoEscrita) {
+            List<TokenCartao> parte = linhas.subList(de, Math.min(de + tamanhoEscrita, linhas.size()));
+            List<Integer> posicoesParte = posicoes.subList(de, Math.min(de + tamanhoEscrita, linhas.size()));
+
+            gravacoes.add(CompletableFuture.runAsync(() -> {
+                try {
+                    comRetentativa(() -> gravar(parte));
+                    for (int k = 0; k < parte.size(); k++) {
+                        int i = posicoesParte.get(k);
+                        resultados[i] = TokenBatchItemResult.tokenizado(inicio + i, parte.get(k).getToken(), expiresAt);
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Falha ao gravar {} tokens do lote: {}", parte.size(), e.getMessage());
+                    for (int i : posicoesParte) {
+                        resultados[i] = TokenBatchItemResult.erro(inicio + i, null, "STORAGE_ERROR",
+                            "Falha ao gravar o token");
+                    }
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(gravacoes.toArray(new CompletableFuture<?>[0]))
+            .thenApply(v -> List.of(resultados));
+    }
+
+    /**
+     * Lê os tokens do bloco em uma única consulta e os decifra na thread atual; tokens
+     * ausentes de token_cartao (inclusive os legados do Key Vault, que não guardam o
+     * cartão) resultam em TOKEN_NOT_FOUND
+     *
+     * @param inicio Índice do primeiro item do bloco no lote
+     */
+    CompletableFuture<List<TokenBatchItemResult>> destokenizarBloco(String merchantId, int inicio,
+                                                                    List<DetokenizationRequest> requests) {
+        TokenBatchItemResult[] resultados = new TokenBatchItemResult[requests.size()];
+        List<String> tokens = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            String token = requests.get(i).getToken();
+            if (!tokenizationService.isTokenFormat(token)) {
+                resultados[i] = TokenBatchItemResult.erro(inicio + i, token, "VALIDATION_ERROR", "Invalid token format");
+            } else {
+                tokens.add(token);
+            }
+        }
+
+        Map<String, TokenCartao> encontrados = new HashMap<>();
+        if (!tokens.isEmpty()) {
+            for (TokenCartao tokenCartao : comRetentativa(() -> tokenCartaoRepository.findAllById(tokens))) {
+                encontrados.put(tokenCartao.getToken(), tokenCartao);
+            }
+        }
+
+        for (int i = 0; i < requests.size(); i++) {
+            if (resultados[i] != null) {
+                continue;
+            }
+            int indice = inicio + i;
+            String token = requests.get(i).getToken();
+            TokenCartao tokenCartao = encontrados.get(token);
+
+            if (tokenCartao == null) {
+                resultados[i] = TokenBatchItemResult.erro(indice, token, "TOKEN_NOT_FOUND", "Token not found or expired");
+            } else if (!tokenCartao.getMerchantId().equals(merchantId)) {
+                // Não decifra dados de outro lojista
+                resultados[i] = TokenBatchItemResult.erro(indice, token, "UNAUTHORIZED", "Unauthorized token access");
+            } else {
+                resultados[i] = abrir(indice, token, merchantId, () -> tokenizationService.decryptEnvelope(tokenCartao));
+            }
+        }
+
+        return CompletableFuture.completedFuture(List.of(resultados));
+    }
+
+    private TokenBatchItemResult abrir(int indice, String token, String merchantId,
+                                       Supplier<TokenizationService.TokenizedData> leitura) {
+        TokenizationService.TokenizedData data;
+        try {
+            data = leitura.get();
+        } catch (TokenizationException e) {
+            return TokenBatchItemResult.erro(indice, token, "TOKEN_NOT_FOUND", "Token not found or expired");
+        } catch (RuntimeException e) {
+            logger.error("Falha ao destokenizar item {} do lote: {}", indice, e.getMessage());
+            return TokenBatchItemResult.erro(indice, token, "DETOKENIZATION_ERROR", "Falha ao abrir o token");
+        }
+
+        if (data.getMerchantId() == null || !data.getMerchantId().equals(merchantId)) {
+            return TokenBatchItemResult.erro(indice, token, "UNAUTHORIZED", "Unauthorized token access");
+        }
+
+        TokenBatchItemResult resultado = new TokenBatchItemResult(indice);
+        resultado.setSuccess(true);
+        resultado.setToken(token);
+        resultado.setPan(data.getPan());
+        resultado.setCvv(data.getCvv());
+        resultado.setExpiryDate(data.getExpiryDate());
+        resultado.setCardholderName(data.getCardholderName());
+        return resultado;
+    }
+
+    /**
+     * Grava um sub-lote com um único batch de INSERTs
+     *
+     * ON CONFLICT torna a retentativa idempotente quando a falha ocorre após o commit.
+     */
+    private int[] gravar(List<TokenCartao> linhas) {
+        List<Object[]> parametros = new ArrayList<>(linhas.size());
+        for (TokenCartao linha : linhas) {
+            parametros.add(new Object[] {
+                linha.getToken(), linha.getMerchantId(), linha.getChaveDadosId(), linha.getIv(),
+                linha.getDadosCifrados(), linha.getCreatedAt().toOffsetDateTime(),
+                linha.getExpiresAt() != null ? linha.getExpiresAt().toOffsetDateTime() : null
+            });
+        }
+        return jdbcTemplate.batchUpdate(SQL_INSERCAO, parametros, TIPOS_INSERCAO);
+    }
+
+    /**
+     * Executa a operação repetindo-a com backoff exponencial (com jitter) enquanto o
+     * erro indicar sobrecarga; respeita o Retry-After do Key Vault quando presente
+     */
+    <T> T comRetentativa(Supplier<T> operacao) {
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                return operacao.get();
+            } catch (RuntimeException e) {
+                long espera = esperaSobrecarga(e, tentativa);
+                if (espera < 0 || tentativa >= maxTentativas) {
+                    throw e;
+                }
+
+                contadorRetentativas.increment();
+                logger.debug("Sobrecarga detectada ({}); nova tentativa {} em {} ms",
+                    e.getClass().getSimpleName(), tentativa + 1, espera);
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Espera em ms antes da próxima tentativa, ou -1 se o erro não for de sobrecarga
+     */
+    private long esperaSobrecarga(Throwable erro, int tentativa) {
+        for (Throwable causa = erro; causa != null; causa = causa.getCause()) {
+            if (causa instanceof TransientDataAccessException) {
+                return backoff(tentativa);
+            }
+            if (causa instanceof HttpResponseException http && http.getResponse() != null) {
+                int status = http.getResponse().getStatusCode();
+                if (status != 429 && status != 503) {
+                    return -1;
+                }
+                String retryAfter = http.getResponse().getHeaderValue("Retry-After");
+                if (retryAfter != null && !retryAfter.isEmpty() && retryAfter.chars().allMatch(Character::isDigit)) {
+                    return Math.min(esperaMaximaMs, Long.parseLong(retryAfter) * 1000);
+                }
+                return backoff(tentativa);
+            }
+        }
+        return -1;
+    }
+
+    private long backoff(int tentativa) {
+        long teto = Math.min(esperaMaximaMs, esperaInicialMs << Math.min(tentativa - 1, 20));
+        return ThreadLocalRandom.current().nextLong(teto / 2, teto + 1);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdown();
+    }
+
+    @FunctionalInterface
+    private interface Etapa<T> {
+        CompletableFuture<List<TokenBatchItemResult>> processar(int inicio, List<T> bloco);
+    }
+
+    /**
+     * Mantém um bloco em gravação enquanto o seguinte é lido e cifrado, e escreve os
+     * resultados na ordem de entrada
+     */
+    private final class Pipeline {
+        private final OutputStream saida;
+        private final ObjectWriter escritor = objectMapper.writerFor(TokenBatchItemResult.class);
+        private final ResumoLote resumo = new ResumoLote();
+        private final long inicioNanos = System.nanoTime();
+        private CompletableFuture<List<TokenBatchItemResult>> emAndamento;
+
+        private Pipeline(OutputStream saida) {
+            this.saida = saida;
+        }
+
+        private void enviar(CompletableFuture<List<TokenBatchItemResult>> proximo) throws IOException {
+            CompletableFuture<List<TokenBatchItemResult>> anterior = emAndamento;
+            emAndamento = proximo;
+            if (anterior != null) {
+                escrever(anterior.join());
+            }
+        }
+
+        private void concluir(TokenBatchItemResult ultimo) throws IOException {
+            enviar(null);
+            if (ultimo != null) {
+                escrever(List.of(ultimo));
+            }
+        }
+
+        private void escrever(List<TokenBatchItemResult> resultados) throws IOException {
+            for (TokenBatchItemResult resultado : resultados) {
+                resumo.contar(resultado);
+                saida.write(escritor.writeValueAsBytes(resultado));
+                saida.write(NOVA_LINHA);
+            }
+            saida.flush();
+        }
+
+        private long duracaoMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+        }
+    }
+
+    /**
+     * Totais do lote para o registro de auditoria agregado e as métricas
+     */
+    private final class ResumoLote {
+        private int total;
+        private int sucesso;
+        private final Map<String, Integer> falhasPorCodigo = new TreeMap<>();
+
+        private void contar(TokenBatchItemResult resultado) {
+            total++;
+            if (resultado.isSuccess()) {
+                sucesso++;
+            } else {
+                falhasPorCodigo.merge(resultado.getErrorCode(), 1, Integer::sum);
+            }
+        }
+
+        private void registrarMetricas(String operacao) {
+            meterRegistry.counter("pip.tokenization.lote.itens", "operacao", operacao, "status", "SUCCESS")
+                .increment(sucesso);
+            falhasPorCodigo.forEach((codigo, quantidade) ->
+                meterRegistry.counter("pip.tokenization.lote.itens", "operacao", operacao, "status", codigo)
+                    .increment(quantidade));
+        }
+    }
+}
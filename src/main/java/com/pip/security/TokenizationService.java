@@ -1,26 +1,39 @@
 package com.pip.security;
 
-import com.azure.security.keyvault.secrets.SecretClient;
-import com.azure.security.keyvault.secrets.models.KeyVaultSecret;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pip.audit.SecurityAuditLogger;
 import com.pip.dto.TokenizationRequest;
 import com.pip.dto.TokenizationResponse;
 import com.pip.dto.DetokenizationRequest;
 import com.pip.dto.DetokenizationResponse;
 import com.pip.exception.TokenizationException;
+import com.pip.model.TokenCartao;
+import com.pip.repository.TokenCartaoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
  * Serviço de tokenização PCI DSS compliant
- * Implementa tokenização irreversível usando Azure Key Vault
+ * Implementa tokenização irreversível com criptografia por envelope: os dados do
+ * cartão ficam no PostgreSQL cifrados por uma DEK local, protegida pela KEK do
+ * Azure Key Vault (ver EnvelopeEncryptionService).
+ *
+ * Tokens emitidos antes da criptografia por envelope não podem ser destokenizados:
+ * o secret gravado no Key Vault era o Base64 de TokenizedData.toString() (o
+ * toString padrão de Object, sem os dados do cartão), então não há cartão a
+ * recuperar. Esses tokens respondem como não encontrados e o cartão precisa ser
+ * tokenizado novamente.
  */
 @Service
 public class TokenizationService {
@@ -30,10 +43,16 @@ public class TokenizationService {
     private static final String TOKEN_TEST_PREFIX = "tkn_test_";
     
     @Autowired
-    private SecretClient secretClient;
+    private SecurityAuditLogger auditLogger;
     
     @Autowired
-    private SecurityAuditLogger auditLogger;
+    private EnvelopeEncryptionService envelopeEncryptionService;
+    
+    @Autowired
+    private TokenCartaoRepository tokenCartaoRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
     
     private final SecureRandom secureRandom = new SecureRandom();
     
@@ -55,11 +74,10 @@ public class TokenizationService {
             // Gerar token único
             String token = generateSecureToken(request.isTestMode());
             
-            // Criar payload criptografado
-            String encryptedPayload = createEncryptedPayload(request);
+            Instant expiresAt = calculateExpirationTime();
             
-            // Armazenar no Azure Key Vault
-            secretClient.setSecret(token, encryptedPayload);
+            // Cifrar com a DEK local e armazenar no PostgreSQL (sem chamada ao Key Vault em regime)
+            tokenCartaoRepository.save(encryptCard(request, token, expiresAt));
             
             // Limpar dados sensíveis da memória
             clearSensitiveData(request);
@@ -70,7 +88,7 @@ public class TokenizationService {
             return TokenizationResponse.builder()
                 .token(token)
                 .tokenType("IRREVERSIBLE")
-                .expiresAt(calculateExpirationTime())
+                .expiresAt(expiresAt)
                 .requestId(requestId)
                 .build();
                 
@@ -95,15 +113,10 @@ public class TokenizationService {
             // Validar token
             validateDetokenizationRequest(request);
             
-            // Recuperar dados do Azure Key Vault
-            KeyVaultSecret secret = secretClient.getSecret(request.getToken());
-            
-            if (secret == null) {
-                throw new TokenizationException("Token not found or expired");
-            }
-            
-            // Descriptografar payload
-            TokenizedData data = decryptPayload(secret.getValue());
+            // Apenas tokens cifrados por envelope; tokens legados do Key Vault não guardam o cartão
+            TokenizedData data = tokenCartaoRepository.findById(request.getToken())
+                .map(this::decryptEnvelope)
+                .orElseThrow(() -> new TokenizationException("Token not found or expired"));
             
             // Validar propriedade do token
             if (!data.getMerchantId().equals(request.getMerchantId())) {
@@ -134,27 +147,41 @@ public class TokenizationService {
     }
     
     private void validateTokenizationRequest(TokenizationRequest request) {
-        if (request.getPan() == null || request.getPan().length() < 13 || request.getPan().length() > 19) {
-            throw new IllegalArgumentException("Invalid PAN format");
+        String error = validateCard(request);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+    
+    /**
+     * Valida os dados do cartão sem lançar exceção (usado também pela tokenização em lote)
+     * @return Mensagem de erro ou null se válido
+     */
+    String validateCard(TokenizationRequest request) {
+        String pan = request.getPan();
+        if (pan == null || pan.length() < 13 || pan.length() > 19) {
+            return "Invalid PAN format";
         }
         
-        if (request.getCvv() == null || request.getCvv().length() < 3 || request.getCvv().length() > 4) {
-            throw new IllegalArgumentException("Invalid CVV format");
+        String cvv = request.getCvv();
+        if (cvv == null || cvv.length() < 3 || cvv.length() > 4) {
+            return "Invalid CVV format";
         }
         
         if (request.getMerchantId() == null || request.getMerchantId().trim().isEmpty()) {
-            throw new IllegalArgumentException("Merchant ID is required");
+            return "Merchant ID is required";
         }
         
         // Validar algoritmo de Luhn
-        if (!isValidLuhn(request.getPan())) {
-            throw new IllegalArgumentException("Invalid PAN checksum");
+        if (!isValidLuhn(pan)) {
+            return "Invalid PAN checksum";
         }
+        
+        return null;
     }
     
     private void validateDetokenizationRequest(DetokenizationRequest request) {
-        if (request.getToken() == null || 
-            (!request.getToken().startsWith(TOKEN_PREFIX) && !request.getToken().startsWith(TOKEN_TEST_PREFIX))) {
+        if (!isTokenFormat(request.getToken())) {
             throw new IllegalArgumentException("Invalid token format");
         }
         
@@ -167,7 +194,11 @@ public class TokenizationService {
         }
     }
     
-    private String generateSecureToken(boolean testMode) {
+    boolean isTokenFormat(String token) {
+        return token != null && (token.startsWith(TOKEN_PREFIX) || token.startsWith(TOKEN_TEST_PREFIX));
+    }
+    
+    String generateSecureToken(boolean testMode) {
         String prefix = testMode ? TOKEN_TEST_PREFIX : TOKEN_PREFIX;
         
         // Gerar 32 bytes aleatórios
@@ -187,28 +218,68 @@ public class TokenizationService {
         return prefix + hexString.toString();
     }
     
-    private String createEncryptedPayload(TokenizationRequest request) {
-        // Em implementação real, usar AES-256-GCM
-        // Por simplicidade, usando Base64 (NUNCA fazer isso em produção)
-        TokenizedData data = TokenizedData.builder()
-            .pan(request.getPan())
-            .cvv(request.getCvv())
-            .expiryDate(request.getExpiryDate())
-            .cardholderName(request.getCardholderName())
-            .merchantId(request.getMerchantId())
-            .tokenizedAt(Instant.now())
-            .build();
-        
-        // Simular criptografia (implementar AES-256-GCM em produção)
-        return java.util.Base64.getEncoder().encodeToString(data.toString().getBytes());
+    /**
+     * Cifra os dados do cartão por envelope, gerando a linha de token_cartao (não persistida)
+     */
+    TokenCartao encryptCard(TokenizationRequest request, String token, Instant expiresAt) {
+        byte[] payload = serializePayload(request);
+        try {
+            EnvelopeEncryptionService.DadosCifrados cifrado =
+                envelopeEncryptionService.cifrar(payload, aad(token, request.getMerchantId()));
+            return new TokenCartao(token, request.getMerchantId(), cifrado.getChaveDadosId(),
+                cifrado.getIv(), cifrado.getDados(), expiresAt.atZone(ZoneOffset.UTC));
+        } finally {
+            Arrays.fill(payload, (byte) 0);
+        }
+    }
+    
+    private byte[] serializePayload(TokenizationRequest request) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("pan", request.getPan());
+        data.put("cvv", request.getCvv());
+        data.put("expiryDate", request.getExpiryDate());
+        data.put("cardholderName", request.getCardholderName());
+        data.put("merchantId", request.getMerchantId());
+        data.put("tokenizedAt", Instant.now().toString());
+        try {
+            return objectMapper.writeValueAsBytes(data);
+        } catch (java.io.IOException e) {
+            throw new TokenizationException("Failed to serialize card data", e);
+        }
     }
     
-    private TokenizedData decryptPayload(String encryptedPayload) {
-        // Simular descriptografia (implementar AES-256-GCM em produção)
-        String decrypted = new String(java.util.Base64.getDecoder().decode(encryptedPayload));
+    TokenizedData decryptEnvelope(TokenCartao tokenCartao) {
+        if (tokenCartao.isExpirado()) {
+            throw new TokenizationException("Token not found or expired");
+        }
         
-        // Parse dos dados (implementar JSON parsing em produção)
-        return TokenizedData.fromString(decrypted);
+        byte[] payload = envelopeEncryptionService.decifrar(tokenCartao.getChaveDadosId(), tokenCartao.getIv(),
+            tokenCartao.getDadosCifrados(), aad(tokenCartao.getToken(), tokenCartao.getMerchantId()));
+        try {
+            return parseCardData(payload);
+        } finally {
+            Arrays.fill(payload, (byte) 0);
+        }
+    }
+    
+    private TokenizedData parseCardData(byte[] payload) {
+        try {
+            Map<?, ?> data = objectMapper.readValue(payload, Map.class);
+            return TokenizedData.builder()
+                .pan((String) data.get("pan"))
+                .cvv((String) data.get("cvv"))
+                .expiryDate((String) data.get("expiryDate"))
+                .cardholderName((String) data.get("cardholderName"))
+                .merchantId((String) data.get("merchantId"))
+                .tokenizedAt(data.get("tokenizedAt") != null ? Instant.parse((String) data.get("tokenizedAt")) : null)
+                .build();
+        } catch (java.io.IOException e) {
+            throw new TokenizationException("Invalid token payload", e);
+        }
+    }
+    
+    private static byte[] aad(String token, String merchantId) {
+        return (token + "|" + merchantId).getBytes(StandardCharsets.UTF_8);
     }
     
     private void clearSensitiveData(TokenizationRequest request) {
@@ -258,17 +329,24 @@ public class TokenizationService {
         System.gc();
     }
     
-    private boolean isValidLuhn(String pan) {
+    /**
+     * Algoritmo de Luhn por aritmética de caracteres (sem substring/parse por dígito);
+     * caracteres não numéricos invalidam o PAN
+     */
+    static boolean isValidLuhn(CharSequence pan) {
         int sum = 0;
         boolean alternate = false;
         
         for (int i = pan.length() - 1; i >= 0; i--) {
-            int n = Integer.parseInt(pan.substring(i, i + 1));
+            int n = pan.charAt(i) - '0';
+            if (n < 0 || n > 9) {
+                return false;
+            }
             
             if (alternate) {
-                n *= 2;
+                n <<= 1;
                 if (n > 9) {
-                    n = (n % 10) + 1;
+                    n -= 9;
                 }
             }
             
@@ -279,7 +357,7 @@ public class TokenizationService {
         return (sum % 10 == 0);
     }
     
-    private Instant calculateExpirationTime() {
+    Instant calculateExpirationTime() {
         // Tokens expiram em 1 ano
         return Instant.now().plusSeconds(365 * 24 * 60 * 60);
     }
@@ -287,7 +365,7 @@ public class TokenizationService {
     /**
      * Classe interna para dados tokenizados
      */
-    private static class TokenizedData {
+    static class TokenizedData {
         private String pan;
         private String cvv;
         private String expiryDate;
@@ -295,16 +373,11 @@ public class TokenizationService {
         private String merchantId;
         private Instant tokenizedAt;
         
-        // Builder pattern e métodos de serialização
+        // Builder pattern
         public static TokenizedDataBuilder builder() {
             return new TokenizedDataBuilder();
         }
         
-        public static TokenizedData fromString(String data) {
-            // Implementar parsing real em produção
-            return new TokenizedData();
-        }
-        
         // Getters
         public String getPan() { return pan; }
         public String getCvv() { return cvv; }
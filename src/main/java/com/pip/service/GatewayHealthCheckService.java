@@ -22,15 +22,18 @@ public class GatewayHealthCheckService {
     @Autowired
     private GatewayRoutingService routingService;
 
+    @Autowired
+    private GatewayHealthProbeService healthProbeService;
+
     /**
-     * Verifica saúde dos gateways a cada 1 minuto
+     * Sonda a saúde dos gateways (padrão: a cada 15 segundos)
      */
-    @Scheduled(fixedRate = 60000) // 60 segundos
+    @Scheduled(fixedDelayString = "${gateway.health.intervalo-ms:15000}")
     public void verificarSaudeGateways() {
         logger.debug("Executando health check dos gateways");
         
         try {
-            routingService.verificarSaudeGateways();
+            healthProbeService.sondarGateways();
             logger.debug("Health check concluído com sucesso");
         } catch (Exception e) {
             logger.error("Erro ao executar health check: {}", e.getMessage(), e);
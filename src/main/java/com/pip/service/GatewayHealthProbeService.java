@@ -0,0 +1,232 @@
+package com.pip.service;
+
+import com.pip.gateway.GatewayAdapter;
+import com.pip.gateway.GatewayAdapterFactory;
+import com.pip.model.Gateway;
+import com.pip.model.HealthStatus;
+import com.pip.repository.GatewayRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sondagem ativa de saúde dos gateways
+ *
+ * A cada ciclo, chama {@link GatewayAdapter#healthCheck(Gateway)} de todos os gateways
+ * ativos em paralelo, com atraso aleatório (jitter) para não sincronizar as sondas e
+ * timeout por sonda. O resultado da sonda é combinado com a taxa de sucesso e a
+ * latência observadas no tráfego real:
+ * - Sonda falhou ou taxa de sucesso abaixo de taxa-down: DOWN
+ * - Taxa de sucesso abaixo de taxa-degradado ou latência alta: DEGRADED
+ * - Caso contrário: UP
+ *
+ * A observação passa por um {@link GatewayHealthState} com histerese antes de mudar o
+ * status. O status é persistido e a tabela de roteamento é republicada ao final do ciclo.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class GatewayHealthProbeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayHealthProbeService.class);
+
+    @Autowired
+    private GatewayRepository gatewayRepository;
+
+    @Autowired
+    private GatewayAdapterFactory gatewayAdapterFactory;
+
+    @Autowired
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Autowired
+    private GatewayStatsService gatewayStatsService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gateway.health.probe-timeout-ms:3000}")
+    private long timeoutSondaMs;
+
+    @Value("${gateway.health.jitter-ms:2000}")
+    private long jitterMs;
+
+    @Value("${gateway.health.threads:8}")
+    private int threads;
+
+    @Value("${gateway.health.limiar-piora:2}")
+    private int limiarPiora;
+
+    @Value("${gateway.health.limiar-melhora:3}")
+    private int limiarMelhora;
+
+    @Value("${gateway.health.taxa-degradado:90.0}")
+    private double taxaDegradado;
+
+    @Value("${gateway.health.taxa-down:70.0}")
+    private double taxaDown;
+
+    @Value("${gateway.health.latencia-degradado-ms:5000}")
+    private long latenciaDegradadoMs;
+
+    private final Map<UUID, GatewayHealthState> estados = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void iniciar() {
+        this.executor = new ScheduledThreadPoolExecutor(threads, new CustomizableThreadFactory("gateway-probe-"));
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Executa um ciclo de sondagem de todos os gateways ativos
+     */
+    public void sondarGateways() {
+        List<Gateway> gateways = gatewayRepository.findAll();
+
+        List<Gateway> sondados = new ArrayList<>();
+        List<CompletableFuture<Boolean>> sondas = new ArrayList<>();
+        for (Gateway gateway : gateways) {
+            if (gateway.getStatus() != null && "ACTIVE".equals(gateway.getStatus().name())) {
+                sondados.add(gateway);
+                sondas.add(sondar(gateway));
+            }
+        }
+
+        ZonedDateTime agora = ZonedDateTime.now();
+        for (int i = 0; i < sondados.size(); i++) {
+            Gateway gateway = sondados.get(i);
+            try {
+                atualizarEstado(gateway, sondas.get(i).join(), agora);
+            } catch (Exception e) {
+                logger.error("Erro ao atualizar saúde do gateway {}: {}", gateway.getCodigo(), e.getMessage());
+            }
+        }
+
+        gatewayRoutingService.publicarSaude(gateways);
+
+        logger.debug("Sondagem de saúde concluída. Gateways sondados: {}", sondados.size());
+    }
+
+    /**
+     * Agenda a sonda do gateway com jitter; conclui com false no timeout
+     *
+     * No timeout a tarefa é cancelada com interrupção: uma sonda presa não segura a
+     * thread do executor até o timeout de leitura do adaptador, que além disso usa
+     * um cliente HTTP com timeout curto próprio das sondas.
+     *
+     * @return Resultado da sonda, ou null se o gateway não tiver adaptador
+     */
+    private CompletableFuture<Boolean> sondar(Gateway gateway) {
+        if (!gatewayAdapterFactory.hasAdapter(gateway.getCodigo())) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        GatewayAdapter adapter = gatewayAdapterFactory.getAdapter(gateway.getCodigo());
+        long atraso = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs) : 0;
+
+        CompletableFuture<Boolean> resultado = new CompletableFuture<>();
+        ScheduledFuture<?> tarefa = executor.schedule(() -> {
+            long inicio = System.currentTimeMillis();
+            try {
+                resultado.complete(adapter.healthCheck(gateway));
+            } catch (Exception e) {
+                logger.warn("Sonda do gateway {} falhou: {}", gateway.getCodigo(), e.getMessage());
+                resultado.complete(false);
+            }
+            meterRegistry.timer("pip.gateway.sonda", "gateway", gateway.getCodigo())
+                .record(System.currentTimeMillis() - inicio, TimeUnit.MILLISECONDS);
+        }, atraso, TimeUnit.MILLISECONDS);
+
+        // O timeout roda fora do executor das sondas: com todas as threads presas ele ainda dispara
+        CompletableFuture.delayedExecutor(atraso + timeoutSondaMs, TimeUnit.MILLISECONDS, Runnable::run)
+            .execute(() -> {
+                if (resultado.complete(false)) {
+                    tarefa.cancel(true);
+                    logger.warn("Sonda do gateway {} excedeu {} ms e foi cancelada",
+                        gateway.getCodigo(), timeoutSondaMs);
+                    meterRegistry.counter("pip.gateway.sonda.timeouts", "gateway", gateway.getCodigo())
+                        .increment();
+                }
+            });
+
+        return resultado;
+    }
+
+    private void atualizarEstado(Gateway gateway, Boolean sondaOk, ZonedDateTime agora) {
+        // Gateway nunca verificado: o status persistido não é confiável
+        GatewayHealthState estado = estados.computeIfAbsent(gateway.getId(), id -> new GatewayHealthState(
+            gateway.getLastHealthCheck() != null ? gateway.getHealthStatus() : HealthStatus.UNKNOWN));
+
+        HealthStatus anterior = estado.getStatus();
+        HealthStatus observado = classificar(gateway, sondaOk);
+
+        if (estado.observar(observado, limiarPiora, limiarMelhora)) {
+            logger.info("Gateway {} mudou de {} para {}", gateway.getCodigo(), anterior, estado.getStatus());
+            meterRegistry.counter("pip.gateway.saude.transicoes",
+                "gateway", gateway.getCodigo(), "status", estado.getStatus().name()).increment();
+        }
+
+        // Apenas as colunas de saúde: regravar a entidade sobrescreveria as estatísticas
+        gateway.atualizarHealthCheck(estado.getStatus());
+        gatewayRepository.atualizarHealthCheck(gateway.getId(), estado.getStatus(), agora);
+    }
+
+    /**
+     * Combina o resultado da sonda com as métricas do tráfego real
+     *
+     * @param sondaOk Resultado da sonda, ou null se não houve sonda
+     */
+    HealthStatus classificar(Gateway gateway, Boolean sondaOk) {
+        if (Boolean.FALSE.equals(sondaOk)) {
+            return HealthStatus.DOWN;
+        }
+
+        GatewayStats.Snapshot snapshot = gatewayStatsService.snapshotRoteamento(gateway);
+        if (snapshot == null && sondaOk != null) {
+            // Sem tráfego recente os valores persistidos estão defasados (um gateway fora
+            // da tabela não recebe tráfego); a sonda é o único sinal atual
+            return HealthStatus.UP;
+        }
+
+        Double taxaSucesso = snapshot != null ? Double.valueOf(snapshot.getTaxaSucesso()) : gateway.getTaxaSucesso();
+        Double latencia = snapshot != null ? Double.valueOf(snapshot.getLatenciaEwma())
+            : gateway.getTempoRespostaMedio() != null ? gateway.getTempoRespostaMedio().doubleValue() : null;
+
+        if (taxaSucesso != null && taxaSucesso < taxaDown) {
+            logger.warn("Gateway {} com taxa de sucesso muito baixa: {}%", gateway.getCodigo(), taxaSucesso);
+            return HealthStatus.DOWN;
+        }
+        if ((taxaSucesso != null && taxaSucesso < taxaDegradado)
+                || (latencia != null && latencia > latenciaDegradadoMs)) {
+            logger.warn("Gateway {} degradado - taxa de sucesso: {}%, latência: {}ms",
+                gateway.getCodigo(), taxaSucesso, latencia);
+            return HealthStatus.DEGRADED;
+        }
+        return HealthStatus.UP;
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,78 @@
+package com.pip.service;
+
+import com.pip.model.HealthStatus;
+
+/**
+ * Máquina de estados de saúde de um gateway (UP / DEGRADED / DOWN) com histerese
+ *
+ * Uma observação isolada não muda o status: piorar exige {@code limiarPiora}
+ * observações consecutivas no mesmo status, e melhorar exige {@code limiarMelhora}.
+ * Assim, uma sonda perdida não derruba o gateway e um gateway instável não fica
+ * alternando entre UP e DOWN a cada ciclo. O status UNKNOWN (gateway ainda não
+ * verificado) é substituído já na primeira observação.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public class GatewayHealthState {
+
+    private HealthStatus status;
+    private HealthStatus candidato;
+    private int consecutivas;
+
+    public GatewayHealthState(HealthStatus inicial) {
+        this.status = inicial != null ? inicial : HealthStatus.UNKNOWN;
+    }
+
+    /**
+     * Registra uma observação e aplica a transição se o limiar foi atingido
+     *
+     * @param observado Status indicado pela verificação atual
+     * @param limiarPiora Observações consecutivas necessárias para piorar o status
+     * @param limiarMelhora Observações consecutivas necessárias para melhorar o status
+     * @return true se o status mudou
+     */
+    public synchronized boolean observar(HealthStatus observado, int limiarPiora, int limiarMelhora) {
+        if (observado == status) {
+            candidato = null;
+            consecutivas = 0;
+            return false;
+        }
+
+        if (status == HealthStatus.UNKNOWN) {
+            return transitar(observado);
+        }
+
+        if (observado != candidato) {
+            candidato = observado;
+            consecutivas = 0;
+        }
+        consecutivas++;
+
+        int limiar = gravidade(observado) > gravidade(status) ? limiarPiora : limiarMelhora;
+        return consecutivas >= limiar && transitar(observado);
+    }
+
+    public synchronized HealthStatus getStatus() {
+        return status;
+    }
+
+    private boolean transitar(HealthStatus novo) {
+        status = novo;
+        candidato = null;
+        consecutivas = 0;
+        return true;
+    }
+
+    private static int gravidade(HealthStatus status) {
+        switch (status) {
+            case UP:
+                return 0;
+            case DEGRADED:
+                return 1;
+            case DOWN:
+                return 2;
+            default:
+                return -1;
+        }
+    }
+}
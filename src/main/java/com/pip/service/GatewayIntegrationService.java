@@ -1,5 +1,6 @@
 package com.pip.service;
 
+import com.pip.config.GatewayHttpClientFactory;
 import com.pip.dto.AuthorizationRequest;
 import com.pip.dto.CaptureRequest;
 import com.pip.dto.VoidRequest;
@@ -25,7 +26,8 @@ import java.util.Map;
  * Implementa padrões de resiliência:
  * - Circuit Breaker: Protege contra falhas em cascata
  * - Retry: Tenta novamente em caso de falhas temporárias
- * - Timeout: Limita tempo de espera
+ * - Timeout: Limita tempo de espera (ajustado pela latência recente)
+ * - Limite de concorrência: Rejeita chamadas acima do limite adaptativo do gateway
  * - Fallback: Roteamento alternativo em caso de falha
  * 
  * @author Luiz Gustavo Finotello
@@ -36,11 +38,17 @@ public class GatewayIntegrationService {
     private static final Logger logger = LoggerFactory.getLogger(GatewayIntegrationService.class);
 
     @Autowired
-    private RestTemplate restTemplate;
+    private GatewayHttpClientFactory httpClientFactory;
 
     @Autowired
     private GatewayRoutingService routingService;
 
+    @Autowired
+    private GatewayStatsService gatewayStatsService;
+
+    @Autowired
+    private GatewayLimitService gatewayLimitService;
+
     /**
      * Processa autorização de pagamento com resiliência
      * 
@@ -52,10 +60,29 @@ public class GatewayIntegrationService {
     @CircuitBreaker(name = "gatewayService", fallbackMethod = "authorizeFallback")
     @Retry(name = "gatewayService")
     public PaymentResponse authorize(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
+        return executarAutorizacao(gateway, request, transacao);
+    }
+
+    /**
+     * Executa uma única tentativa de autorização, sem retry nem fallback
+     * 
+     * Usado pelas autorizações com hedge, em que a requisição de backup a outro
+     * gateway substitui o retry no mesmo gateway.
+     * 
+     * @param gateway Gateway para processar
+     * @param request Dados da autorização
+     * @param transacao Transação sendo processada
+     * @return Resposta do gateway
+     */
+    public PaymentResponse executarAutorizacao(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
         logger.info("Processando autorização no gateway {} para transação {}", 
             gateway.getCodigo(), transacao.getTransactionId());
 
+        // Rejeita de imediato se o gateway já está no limite de chamadas simultâneas
+        gatewayLimitService.adquirir(gateway);
+
         long startTime = System.currentTimeMillis();
+        gatewayStatsService.iniciarChamada(gateway);
 
         try {
             // Preparar requisição
@@ -66,7 +93,7 @@ public class GatewayIntegrationService {
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
 
             // Fazer chamada ao gateway
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = restTemplatePara(gateway).exchange(
                 url,
                 HttpMethod.POST,
                 entity,
@@ -78,8 +105,9 @@ public class GatewayIntegrationService {
             // Processar resposta
             PaymentResponse paymentResponse = processarResposta(response, responseTime);
 
-            // Atualizar métricas do gateway
-            atualizarMetricasGateway(gateway, true, responseTime);
+            // Atualizar métricas do gateway; só a autorização aprovada conta no volume diário
+            long volume = paymentResponse.isSuccess() && transacao.getValor() != null ? transacao.getValor() : 0L;
+            atualizarMetricasGateway(gateway, responseTime, volume, null);
 
             logger.info("Autorização processada com sucesso. Gateway: {}, Tempo: {}ms", 
                 gateway.getCodigo(), responseTime);
@@ -93,7 +121,7 @@ public class GatewayIntegrationService {
                 gateway.getCodigo(), e.getMessage());
 
             // Atualizar métricas do gateway (falha)
-            atualizarMetricasGateway(gateway, false, responseTime);
+            atualizarMetricasGateway(gateway, responseTime, 0L, e);
 
             throw new RuntimeException("Falha na comunicação com gateway: " + e.getMessage(), e);
         }
@@ -139,7 +167,11 @@ public class GatewayIntegrationService {
         logger.info("Processando captura no gateway {} para transação {}", 
             gateway.getCodigo(), transacao.getTransactionId());
 
+        // Rejeita de imediato se o gateway já está no limite de chamadas simultâneas
+        gatewayLimitService.adquirir(gateway);
+
         long startTime = System.currentTimeMillis();
+        gatewayStatsService.iniciarChamada(gateway);
 
         try {
             String url = gateway.getUrlAtiva() + "/capture";
@@ -148,7 +180,7 @@ public class GatewayIntegrationService {
 
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = restTemplatePara(gateway).exchange(
                 url,
                 HttpMethod.POST,
                 entity,
@@ -158,7 +190,7 @@ public class GatewayIntegrationService {
             long responseTime = System.currentTimeMillis() - startTime;
 
             PaymentResponse paymentResponse = processarResposta(response, responseTime);
-            atualizarMetricasGateway(gateway, true, responseTime);
+            atualizarMetricasGateway(gateway, responseTime, 0L, null);
 
             logger.info("Captura processada com sucesso. Gateway: {}, Tempo: {}ms", 
                 gateway.getCodigo(), responseTime);
@@ -171,7 +203,7 @@ public class GatewayIntegrationService {
             logger.error("Erro ao processar captura no gateway {}: {}", 
                 gateway.getCodigo(), e.getMessage());
 
-            atualizarMetricasGateway(gateway, false, responseTime);
+            atualizarMetricasGateway(gateway, responseTime, 0L, e);
 
             throw new RuntimeException("Falha na comunicação com gateway: " + e.getMessage(), e);
         }
@@ -204,7 +236,11 @@ public class GatewayIntegrationService {
         logger.info("Processando cancelamento no gateway {} para transação {}", 
             gateway.getCodigo(), transacao.getTransactionId());
 
+        // Rejeita de imediato se o gateway já está no limite de chamadas simultâneas
+        gatewayLimitService.adquirir(gateway);
+
         long startTime = System.currentTimeMillis();
+        gatewayStatsService.iniciarChamada(gateway);
 
         try {
             String url = gateway.getUrlAtiva() + "/void";
@@ -213,7 +249,7 @@ public class GatewayIntegrationService {
 
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = restTemplatePara(gateway).exchange(
                 url,
                 HttpMethod.POST,
                 entity,
@@ -223,7 +259,7 @@ public class GatewayIntegrationService {
             long responseTime = System.currentTimeMillis() - startTime;
 
             PaymentResponse paymentResponse = processarResposta(response, responseTime);
-            atualizarMetricasGateway(gateway, true, responseTime);
+            atualizarMetricasGateway(gateway, responseTime, 0L, null);
 
             logger.info("Cancelamento processado com sucesso. Gateway: {}, Tempo: {}ms", 
                 gateway.getCodigo(), responseTime);
@@ -236,7 +272,7 @@ public class GatewayIntegrationService {
             logger.error("Erro ao processar cancelamento no gateway {}: {}", 
                 gateway.getCodigo(), e.getMessage());
 
-            atualizarMetricasGateway(gateway, false, responseTime);
+            atualizarMetricasGateway(gateway, responseTime, 0L, e);
 
             throw new RuntimeException("Falha na comunicação com gateway: " + e.getMessage(), e);
         }
@@ -347,10 +383,20 @@ public class GatewayIntegrationService {
     }
 
     /**
-     * Atualiza métricas do gateway após processamento
+     * Atualiza métricas e o limite de concorrência do gateway após processamento
+     *
+     * @param volume Valor em centavos a somar ao volume diário do gateway
+     * @param erro Exceção da chamada, ou null em caso de sucesso
+     */
+    private void atualizarMetricasGateway(Gateway gateway, long tempoResposta, long volume, Exception erro) {
+        gatewayStatsService.concluirChamada(gateway, erro == null, volume, tempoResposta);
+        gatewayLimitService.liberar(gateway, tempoResposta, erro);
+    }
+
+    /**
+     * Retorna o RestTemplate com pool de conexões dedicado ao gateway
      */
-    private void atualizarMetricasGateway(Gateway gateway, boolean sucesso, long tempoResposta) {
-        gateway.registrarTransacao(sucesso, 0L, tempoResposta);
-        // O save será feito pelo serviço que chamou este método
+    private RestTemplate restTemplatePara(Gateway gateway) {
+        return httpClientFactory.obterRestTemplate(gateway.getCodigo());
     }
 }
@@ -0,0 +1,107 @@
+package com.pip.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limite adaptativo de chamadas simultâneas a um gateway (algoritmo de gradiente)
+ *
+ * O limite acompanha a relação entre a latência de longo prazo (média móvel lenta)
+ * e a latência de cada amostra:
+ * - Latência estável: o limite cresce aos poucos (+ raiz do limite, suavizado)
+ * - Latência subindo além da tolerância: o limite cai proporcionalmente ao gradiente
+ * - Timeout ou erro de comunicação: o limite cai multiplicativamente (AIMD)
+ *
+ * A aquisição é lock-free; apenas o recálculo do limite é sincronizado.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public class GatewayLimit {
+
+    private final int limiteMinimo;
+    private final int limiteMaximo;
+    private final double tolerancia;
+    private final double fatorReducao;
+    private final double suavizacao;
+    private final double alfaLatenciaLonga;
+
+    private final AtomicInteger emAndamento = new AtomicInteger();
+
+    private volatile double limite;
+
+    // Protegido pelo monitor da instância
+    private double latenciaLonga;
+
+    public GatewayLimit(int limiteInicial, int limiteMinimo, int limiteMaximo,
+                        double tolerancia, double fatorReducao, double suavizacao, double alfaLatenciaLonga) {
+        if (limiteMinimo < 1 || limiteMaximo < limiteMinimo) {
+            throw new IllegalArgumentException("Limites inválidos: mínimo " + limiteMinimo + ", máximo " + limiteMaximo);
+        }
+        this.limiteMinimo = limiteMinimo;
+        this.limiteMaximo = limiteMaximo;
+        this.tolerancia = tolerancia;
+        this.fatorReducao = fatorReducao;
+        this.suavizacao = suavizacao;
+        this.alfaLatenciaLonga = alfaLatenciaLonga;
+        this.limite = Math.max(limiteMinimo, Math.min(limiteMaximo, limiteInicial));
+    }
+
+    /**
+     * Reserva uma vaga para chamada ao gateway
+     *
+     * @return false se o limite atual já foi atingido (a chamada deve ser rejeitada)
+     */
+    public boolean tentarAdquirir() {
+        while (true) {
+            int atual = emAndamento.get();
+            if (atual >= (int) limite) {
+                return false;
+            }
+            if (emAndamento.compareAndSet(atual, atual + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libera a vaga e ajusta o limite com a amostra da chamada
+     *
+     * @param latenciaMs Tempo de resposta da chamada
+     * @param descartada Se a chamada terminou por timeout ou erro de comunicação
+     */
+    public void liberar(long latenciaMs, boolean descartada) {
+        int emVoo = emAndamento.getAndDecrement();
+        ajustar(latenciaMs, descartada, emVoo);
+    }
+
+    private synchronized void ajustar(long latenciaMs, boolean descartada, int emVoo) {
+        double atual = limite;
+        double novo;
+
+        if (descartada) {
+            novo = atual * fatorReducao;
+        } else {
+            double amostra = Math.max(1, latenciaMs);
+            latenciaLonga = latenciaLonga == 0 ? amostra : latenciaLonga + alfaLatenciaLonga * (amostra - latenciaLonga);
+
+            double gradiente = Math.max(0.5, Math.min(1.0, tolerancia * latenciaLonga / amostra));
+
+            // Sem carga suficiente a amostra não justifica aumentar o limite
+            if (gradiente >= 1.0 && emVoo < atual / 2) {
+                return;
+            }
+
+            double alvo = atual * gradiente + Math.sqrt(atual);
+            novo = atual * (1 - suavizacao) + alvo * suavizacao;
+        }
+
+        limite = Math.max(limiteMinimo, Math.min(limiteMaximo, novo));
+    }
+
+    public int getLimite() {
+        return (int) limite;
+    }
+
+    public int getEmAndamento() {
+        return emAndamento.get();
+    }
+}
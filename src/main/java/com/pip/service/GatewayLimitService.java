@@ -0,0 +1,209 @@
+package com.pip.service;
+
+import com.pip.config.GatewayHttpClientFactory;
+import com.pip.exception.GatewaySobrecarregadoException;
+import com.pip.model.Gateway;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limites adaptativos de concorrência e timeouts por gateway
+ *
+ * Cada gateway tem um {@link GatewayLimit} que limita as chamadas em andamento. Quando
+ * um adquirente degrada, as chamadas acima do limite são rejeitadas imediatamente com
+ * {@link GatewaySobrecarregadoException} (e seguem para o fallback de roteamento) em vez
+ * de ocuparem threads esperando o timeout.
+ *
+ * O timeout de resposta de cada gateway é recalculado periodicamente a partir do p99
+ * recente e aplicado ao cliente HTTP dedicado do gateway.
+ *
+ * Métricas: pip.gateway.limite, pip.gateway.em_andamento, pip.gateway.timeout_ms
+ * e pip.gateway.rejeitadas, todas com a tag gateway.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class GatewayLimitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayLimitService.class);
+
+    @Autowired
+    private GatewayStatsService gatewayStatsService;
+
+    @Autowired
+    private GatewayHttpClientFactory httpClientFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gateway.limite.enabled:true}")
+    private boolean habilitado;
+
+    @Value("${gateway.limite.inicial:20}")
+    private int limiteInicial;
+
+    @Value("${gateway.limite.minimo:2}")
+    private int limiteMinimo;
+
+    @Value("${gateway.limite.maximo:200}")
+    private int limiteMaximo;
+
+    @Value("${gateway.limite.tolerancia:1.5}")
+    private double tolerancia;
+
+    @Value("${gateway.limite.fator-reducao:0.9}")
+    private double fatorReducao;
+
+    @Value("${gateway.limite.suavizacao:0.2}")
+    private double suavizacao;
+
+    @Value("${gateway.limite.alfa-latencia:0.05}")
+    private double alfaLatencia;
+
+    @Value("${gateway.timeout.adaptativo.enabled:true}")
+    private boolean timeoutAdaptativo;
+
+    @Value("${gateway.timeout.adaptativo.multiplicador:3.0}")
+    private double multiplicadorTimeout;
+
+    @Value("${gateway.timeout.adaptativo.minimo-ms:1000}")
+    private long timeoutMinimoMs;
+
+    @Value("${gateway.timeout.adaptativo.maximo-ms:30000}")
+    private long timeoutMaximoMs;
+
+    private final Map<UUID, Controle> controles = new ConcurrentHashMap<>();
+
+    /**
+     * Reserva uma vaga para chamada ao gateway
+     *
+     * @throws GatewaySobrecarregadoException se o limite atual do gateway foi atingido
+     */
+    public void adquirir(Gateway gateway) {
+        if (!habilitado || gateway.getId() == null) {
+            return;
+        }
+
+        Controle controle = controlePara(gateway);
+        if (!controle.limite.tentarAdquirir()) {
+            meterRegistry.counter("pip.gateway.rejeitadas", "gateway", gateway.getCodigo()).increment();
+            throw new GatewaySobrecarregadoException("Gateway " + gateway.getCodigo() +
+                " atingiu o limite de " + controle.limite.getLimite() + " chamadas simultâneas");
+        }
+    }
+
+    /**
+     * Libera a vaga reservada por {@link #adquirir(Gateway)}
+     *
+     * @param gateway Gateway chamado
+     * @param tempoResposta Tempo de resposta em milissegundos
+     * @param erro Exceção da chamada, ou null se houve resposta
+     */
+    public void liberar(Gateway gateway, long tempoResposta, Throwable erro) {
+        if (!habilitado || gateway.getId() == null) {
+            return;
+        }
+
+        Controle controle = controles.get(gateway.getId());
+        if (controle != null) {
+            controle.limite.liberar(tempoResposta, indicaSobrecarga(erro));
+        }
+    }
+
+    /**
+     * Timeouts, erros de I/O e 5xx indicam gateway sobrecarregado; recusas
+     * e erros de validação (4xx) não reduzem o limite
+     */
+    private boolean indicaSobrecarga(Throwable erro) {
+        for (Throwable causa = erro; causa != null; causa = causa.getCause()) {
+            if (causa instanceof ResourceAccessException || causa instanceof HttpServerErrorException
+                    || causa instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recalcula o timeout de resposta de cada gateway a partir do p99 recente
+     */
+    @Scheduled(fixedDelayString = "${gateway.timeout.adaptativo.intervalo-ms:5000}")
+    public void recalcularTimeouts() {
+        if (!timeoutAdaptativo) {
+            return;
+        }
+
+        controles.values().forEach(controle -> {
+            GatewayStats.Snapshot snapshot = gatewayStatsService.snapshotRoteamento(controle.gateway);
+            if (snapshot == null) {
+                return;
+            }
+
+            long timeout = Math.round(snapshot.getPercentil(99) * multiplicadorTimeout);
+            timeout = Math.max(timeoutMinimoMs, Math.min(timeoutMaximoMs, timeout));
+
+            if (controle.timeoutMs.getAndSet(timeout) != timeout) {
+                httpClientFactory.definirTimeoutResposta(controle.gateway.getCodigo(), timeout);
+                logger.debug("Timeout de resposta do gateway {} ajustado para {}ms",
+                    controle.gateway.getCodigo(), timeout);
+            }
+        });
+    }
+
+    public GatewayLimit obter(Gateway gateway) {
+        Controle controle = gateway.getId() != null ? controles.get(gateway.getId()) : null;
+        return controle != null ? controle.limite : null;
+    }
+
+    private Controle controlePara(Gateway gateway) {
+        Controle controle = controles.get(gateway.getId());
+        if (controle != null) {
+            return controle;
+        }
+        return controles.computeIfAbsent(gateway.getId(), id -> {
+            Controle novo = new Controle(gateway, new GatewayLimit(limiteInicial, limiteMinimo, limiteMaximo,
+                tolerancia, fatorReducao, suavizacao, alfaLatencia), timeoutMaximoMs);
+            registrarMetricas(novo);
+            return novo;
+        });
+    }
+
+    private void registrarMetricas(Controle controle) {
+        String codigo = controle.gateway.getCodigo();
+        Gauge.builder("pip.gateway.limite", controle.limite, GatewayLimit::getLimite)
+            .tag("gateway", codigo)
+            .register(meterRegistry);
+        Gauge.builder("pip.gateway.em_andamento", controle.limite, GatewayLimit::getEmAndamento)
+            .tag("gateway", codigo)
+            .register(meterRegistry);
+        Gauge.builder("pip.gateway.timeout_ms", controle.timeoutMs, AtomicLong::get)
+            .tag("gateway", codigo)
+            .register(meterRegistry);
+    }
+
+    private static final class Controle {
+        private final Gateway gateway;
+        private final GatewayLimit limite;
+        private final AtomicLong timeoutMs;
+
+        private Controle(Gateway gateway, GatewayLimit limite, long timeoutInicialMs) {
+            this.gateway = gateway;
+            this.limite = limite;
+            this.timeoutMs = new AtomicLong(timeoutInicialMs);
+        }
+    }
+}
@@ -1,29 +1,47 @@
 package com.pip.service;
 
 import com.pip.model.Gateway;
+import com.pip.model.GatewayAlteradoEvent;
+import com.pip.model.HealthStatus;
 import com.pip.model.Lojista;
 import com.pip.model.LogTransacao;
 import com.pip.repository.GatewayRepository;
-import com.pip.repository.LogTransacaoRepository;
+import com.pip.routing.MaiorScoreRoutingStrategy;
+import com.pip.routing.RoutingStrategy;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Serviço responsável pelo roteamento inteligente de transações entre gateways
  * 
- * Implementa algoritmo de seleção baseado em múltiplos critérios:
+ * O score de cada gateway é calculado a partir de múltiplos critérios:
  * - Prioridade configurada
  * - Taxa de sucesso histórica
  * - Tempo médio de resposta
  * - Status de saúde (health check)
  * - Limites de processamento
  * 
+ * Os gateways disponíveis são mantidos em uma tabela de roteamento imutável
+ * ({@link GatewayRoutingTable}) republicada a cada alteração de gateway,
+ * de modo que a seleção por transação não consulta o banco de dados.
+ * 
+ * A escolha sobre a tabela é delegada a uma {@link RoutingStrategy}
+ * (maior score, peso, P2C ou custo), configurável por lojista.
+ * 
+ * Taxa de sucesso e latência vêm das estatísticas em memória
+ * ({@link GatewayStatsService}, janela de 5 minutos); sem amostras suficientes
+ * são usados os valores persistidos na tabela gateway.
+ * 
  * @author Luiz Gustavo Finotello
  */
 @Service
@@ -35,11 +53,54 @@ public class GatewayRoutingService {
     private GatewayRepository gatewayRepository;
 
     @Autowired
-    private LogTransacaoRepository logTransacaoRepository;
+    private LogTransacaoWriter logTransacaoWriter;
+
+    @Autowired
+    private GatewayStatsService gatewayStatsService;
+
+    @Autowired(required = false)
+    private List<RoutingStrategy> estrategiasDisponiveis;
+
+    @Value("${gateway.routing.estrategia-padrao:P2C}")
+    private String estrategiaPadrao;
+
+    @Value("${gateway.health.fator-score-degradado:0.5}")
+    private double fatorDegradado;
+
+    /**
+     * Estratégias registradas por nome
+     */
+    private final Map<String, RoutingStrategy> estrategias = new HashMap<>();
+
+    /**
+     * Tabela de roteamento vigente (substituída atomicamente a cada publicação)
+     */
+    private final AtomicReference<GatewayRoutingTable> tabelaRoteamento = new AtomicReference<>();
+
+    /**
+     * Marca a thread que está executando uma operação em lote: só as alterações feitas por
+     * ela deixam de republicar a tabela; eventos de outras threads seguem normalmente
+     */
+    private final ThreadLocal<Boolean> emLote = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    @PostConstruct
+    public void registrarEstrategias() {
+        if (estrategiasDisponiveis == null) {
+            return;
+        }
+        for (RoutingStrategy estrategia : estrategiasDisponiveis) {
+            estrategias.put(estrategia.getNome(), estrategia);
+            logger.info("Estratégia de roteamento registrada: {}", estrategia.getNome());
+        }
+    }
 
     /**
      * Seleciona o melhor gateway para processar uma transação
      * 
+     * A seleção é feita sobre a tabela de roteamento em memória, sem acesso
+     * ao banco de dados: os gateways já estão filtrados por status/saúde e
+     * ordenados por score; a estratégia do lojista escolhe entre eles.
+     * 
      * @param lojista Lojista que está processando a transação
      * @param valor Valor da transação em centavos
      * @return Gateway selecionado
@@ -48,35 +109,51 @@ public class GatewayRoutingService {
     public Gateway selecionarMelhorGateway(Lojista lojista, Long valor) {
         logger.debug("Selecionando gateway para lojista {} e valor {}", lojista.getId(), valor);
 
-        // Buscar todos os gateways ativos
-        List<Gateway> gatewaysDisponiveis = buscarGatewaysDisponiveis();
+        GatewayRoutingTable tabela = obterTabelaRoteamento();
 
-        if (gatewaysDisponiveis.isEmpty()) {
+        if (tabela.isVazia()) {
             logger.error("Nenhum gateway disponível no sistema");
             throw new RuntimeException("Nenhum gateway disponível para processar a transação");
         }
 
-        // Filtrar gateways que podem processar o valor
-        gatewaysDisponiveis = filtrarPorLimites(gatewaysDisponiveis, valor);
+        RoutingStrategy estrategia = resolverEstrategia(lojista);
+        int indice = estrategia != null
+            ? estrategia.selecionar(tabela, lojista, valor)
+            : tabela.selecionarMelhor(valor);
+        String nomeEstrategia = estrategia != null ? estrategia.getNome() : MaiorScoreRoutingStrategy.NOME;
 
-        if (gatewaysDisponiveis.isEmpty()) {
+        if (indice < 0) {
             logger.error("Nenhum gateway com capacidade para processar valor {}", valor);
             throw new RuntimeException("Nenhum gateway com capacidade disponível para o valor solicitado");
         }
 
-        // Aplicar algoritmo de seleção inteligente
-        Gateway gatewaySelecionado = aplicarAlgoritmoSelecao(gatewaysDisponiveis, valor);
+        Gateway gatewaySelecionado = tabela.getGateway(indice);
+        double score = tabela.getScore(indice);
 
-        logger.info("Gateway selecionado: {} (score: {})", 
-            gatewaySelecionado.getCodigo(), 
-            calcularScore(gatewaySelecionado));
+        logger.info("Gateway selecionado: {} (score: {}, estratégia: {})",
+            gatewaySelecionado.getCodigo(), score, nomeEstrategia);
 
         // Registrar decisão de roteamento
-        registrarDecisaoRoteamento(lojista, gatewaySelecionado, valor, gatewaysDisponiveis.size());
+        registrarDecisaoRoteamento(lojista, gatewaySelecionado, valor, tabela.tamanho(), score, nomeEstrategia);
 
         return gatewaySelecionado;
     }
 
+    /**
+     * Estratégia do lojista, ou a padrão se não configurada ou desconhecida
+     */
+    private RoutingStrategy resolverEstrategia(Lojista lojista) {
+        String nome = lojista.getEstrategiaRoteamento();
+        if (nome != null) {
+            RoutingStrategy estrategia = estrategias.get(nome.trim().toUpperCase());
+            if (estrategia != null) {
+                return estrategia;
+            }
+            logger.warn("Estratégia de roteamento desconhecida para lojista {}: {}", lojista.getId(), nome);
+        }
+        return estrategiaPadrao != null ? estrategias.get(estrategiaPadrao.trim().toUpperCase()) : null;
+    }
+
     /**
      * Seleciona gateway alternativo em caso de falha (fallback)
      * 
@@ -88,26 +165,17 @@ public class GatewayRoutingService {
     public Gateway selecionarGatewayFallback(Lojista lojista, Gateway gatewayFalhou, Long valor) {
         logger.warn("Selecionando gateway fallback. Gateway falho: {}", gatewayFalhou.getCodigo());
 
-        List<Gateway> gatewaysDisponiveis = buscarGatewaysDisponiveis();
-
-        // Remover o gateway que falhou
-        gatewaysDisponiveis = gatewaysDisponiveis.stream()
-            .filter(g -> !g.getId().equals(gatewayFalhou.getId()))
-            .collect(Collectors.toList());
+        GatewayRoutingTable tabela = obterTabelaRoteamento();
 
-        // Filtrar por limites
-        gatewaysDisponiveis = filtrarPorLimites(gatewaysDisponiveis, valor);
+        // Para fallback, priorizar estabilidade (alta taxa de sucesso)
+        int indice = tabela.selecionarFallback(gatewayFalhou, valor);
 
-        if (gatewaysDisponiveis.isEmpty()) {
+        if (indice < 0) {
             logger.error("Nenhum gateway disponível para fallback");
             return null;
         }
 
-        // Para fallback, priorizar estabilidade (alta taxa de sucesso)
-        Gateway gatewayFallback = gatewaysDisponiveis.stream()
-            .filter(g -> g.getTaxaSucesso() > 95.0)
-            .max(Comparator.comparing(Gateway::getTaxaSucesso))
-            .orElse(gatewaysDisponiveis.get(0));
+        Gateway gatewayFallback = tabela.getGateway(indice);
 
         logger.info("Gateway fallback selecionado: {}", gatewayFallback.getCodigo());
 
@@ -115,40 +183,87 @@ public class GatewayRoutingService {
     }
 
     /**
-     * Busca gateways disponíveis para processamento
+     * Retorna a tabela de roteamento vigente, construindo-a na primeira utilização
      */
-    private List<Gateway> buscarGatewaysDisponiveis() {
-        return gatewayRepository.findAll().stream()
-            .filter(g -> "ACTIVE".equals(g.getStatus().name()))
-            .filter(g -> g.isHealthy())
-            .collect(Collectors.toList());
+    public GatewayRoutingTable obterTabelaRoteamento() {
+        GatewayRoutingTable tabela = tabelaRoteamento.get();
+        if (tabela == null) {
+            tabela = atualizarTabelaRoteamento();
+        }
+        return tabela;
     }
 
     /**
-     * Filtra gateways que podem processar o valor solicitado
+     * Recarrega os gateways do banco e publica uma nova tabela de roteamento
+     * 
+     * @return Tabela publicada
      */
-    private List<Gateway> filtrarPorLimites(List<Gateway> gateways, Long valor) {
-        return gateways.stream()
-            .filter(g -> g.podeProcessarTransacao(valor))
-            .collect(Collectors.toList());
+    public GatewayRoutingTable atualizarTabelaRoteamento() {
+        return publicarTabelaRoteamento(gatewayRepository.findAll());
     }
 
     /**
-     * Aplica algoritmo de seleção baseado em score
+     * Reage a alterações de gateway (edições administrativas, health check, etc.)
+     * republicando a tabela após o commit da transação
      */
-    private Gateway aplicarAlgoritmoSelecao(List<Gateway> gateways, Long valor) {
-        Map<Gateway, Double> scores = new HashMap<>();
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGatewayAlterado(GatewayAlteradoEvent event) {
+        if (emLote.get()) {
+            // Alteração da própria operação em lote, que publica a tabela ao final
+            return;
+        }
 
-        for (Gateway gateway : gateways) {
-            double score = calcularScore(gateway);
-            scores.put(gateway, score);
+        logger.debug("Gateway {} alterado, republicando tabela de roteamento", event.getCodigo());
+        try {
+            atualizarTabelaRoteamento();
+        } catch (Exception e) {
+            logger.error("Erro ao republicar tabela de roteamento: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recalcula os scores da tabela vigente com as estatísticas mais recentes
+     * 
+     * Não consulta o banco: reaproveita os gateways da tabela publicada. O volume diário
+     * das entidades fica defasado, mas o limite e o fator de capacidade usam o volume em
+     * memória de {@link GatewayStats}, atualizado a cada chamada.
+     *
+     * A nova tabela só é publicada se a tabela lida ainda for a vigente: se a sondagem de
+     * saúde ou uma alteração de gateway publicou nesse intervalo, o recálculo é descartado
+     * para não trazer de volta gateways já retirados (a tabela mais nova já tem scores atuais).
+     */
+    @Scheduled(fixedDelayString = "${gateway.stats.flush-interval-ms:10000}")
+    public void recalcularScores() {
+        GatewayRoutingTable tabela = tabelaRoteamento.get();
+        if (tabela == null || tabela.isVazia()) {
+            return;
+        }
+
+        List<Gateway> gateways = new ArrayList<>(tabela.tamanho());
+        for (int i = 0; i < tabela.tamanho(); i++) {
+            gateways.add(tabela.getGateway(i));
+        }
+
+        GatewayRoutingTable novaTabela = construirTabelaRoteamento(gateways);
+        if (!tabelaRoteamento.compareAndSet(tabela, novaTabela)) {
+            logger.debug("Tabela de roteamento republicada durante o recálculo de scores; recálculo descartado");
         }
+    }
 
-        // Retornar gateway com maior score
-        return scores.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse(gateways.get(0));
+    private GatewayRoutingTable construirTabelaRoteamento(List<Gateway> gateways) {
+        return GatewayRoutingTable.construir(gateways, this::calcularScore, gatewayStatsService::estatisticasRoteamento);
+    }
+
+    /**
+     * Publica atomicamente uma nova tabela construída a partir dos gateways informados
+     */
+    private GatewayRoutingTable publicarTabelaRoteamento(List<Gateway> gateways) {
+        GatewayRoutingTable novaTabela = construirTabelaRoteamento(gateways);
+        tabelaRoteamento.set(novaTabela);
+
+        logger.debug("Tabela de roteamento publicada com {} gateways disponíveis", novaTabela.tamanho());
+
+        return novaTabela;
     }
 
     /**
@@ -165,11 +280,11 @@ public class GatewayRoutingService {
 
         // Fator 1: Taxa de sucesso (peso 40%)
         // Taxa de 100% = 40 pontos, 0% = 0 pontos
-        score += (gateway.getTaxaSucesso() / 100.0) * 40.0;
+        score += (taxaSucesso(gateway) / 100.0) * 40.0;
 
         // Fator 2: Tempo de resposta (peso 30%)
         // Tempo < 500ms = 30 pontos, > 5000ms = 0 pontos
-        double tempoScore = Math.max(0, 30.0 - (gateway.getTempoRespostaMedio() / 1000.0) * 6.0);
+        double tempoScore = Math.max(0, 30.0 - (tempoResposta(gateway) / 1000.0) * 6.0);
         score += Math.min(tempoScore, 30.0);
 
         // Fator 3: Prioridade configurada (peso 20%)
@@ -178,100 +293,95 @@ public class GatewayRoutingService {
 
         // Fator 4: Capacidade disponível (peso 10%)
         // Quanto mais capacidade livre, melhor
-        double percentualUtilizado = gateway.getPercentualLimiteUtilizado();
+        double percentualUtilizado = percentualLimiteUtilizado(gateway);
         score += (100.0 - percentualUtilizado) / 100.0 * 10.0;
 
+        // Gateway degradado continua roteável, mas só recebe tráfego na falta de um saudável
+        if (gateway.getHealthStatus() == HealthStatus.DEGRADED) {
+            score *= fatorDegradado;
+        }
+
         return score;
     }
 
+    /**
+     * Percentual do limite diário utilizado, pelo volume em memória quando disponível
+     */
+    private double percentualLimiteUtilizado(Gateway gateway) {
+        GatewayStats stats = gatewayStatsService.obter(gateway);
+        if (stats == null || gateway.getLimiteDiario() == null || gateway.getLimiteDiario() == 0) {
+            return gateway.getPercentualLimiteUtilizado();
+        }
+        return stats.getVolumeDiario() * 100.0 / gateway.getLimiteDiario();
+    }
+
+    /**
+     * Taxa de sucesso recente (memória) ou persistida
+     */
+    private double taxaSucesso(Gateway gateway) {
+        GatewayStats.Snapshot snapshot = gatewayStatsService.snapshotRoteamento(gateway);
+        return snapshot != null ? snapshot.getTaxaSucesso() : gateway.getTaxaSucesso();
+    }
+
+    /**
+     * Latência recente (EWMA em memória) ou tempo médio persistido, em ms
+     */
+    private double tempoResposta(Gateway gateway) {
+        GatewayStats.Snapshot snapshot = gatewayStatsService.snapshotRoteamento(gateway);
+        return snapshot != null ? snapshot.getLatenciaEwma() : gateway.getTempoRespostaMedio();
+    }
+
     /**
      * Registra decisão de roteamento no log
      */
-    private void registrarDecisaoRoteamento(Lojista lojista, Gateway gateway, Long valor, int gatewaysAvaliados) {
+    private void registrarDecisaoRoteamento(Lojista lojista, Gateway gateway, Long valor, int gatewaysAvaliados,
+                                            double score, String estrategia) {
         LogTransacao log = new LogTransacao();
         log.setGateway(gateway);
         log.setAcao("ROUTING_DECISION");
         log.setStatusNovo("ROUTED");
         log.setMetadata(String.format(
-            "{\"lojista_id\":\"%s\",\"gateway_selecionado\":\"%s\",\"valor\":%d,\"gateways_avaliados\":%d,\"score\":%.2f}",
+            "{\"lojista_id\":\"%s\",\"gateway_selecionado\":\"%s\",\"valor\":%d,\"gateways_avaliados\":%d,\"score\":%.2f,\"estrategia\":\"%s\"}",
             lojista.getId(),
             gateway.getCodigo(),
             valor,
             gatewaysAvaliados,
-            calcularScore(gateway)
+            score,
+            estrategia
         ));
         log.setCreatedAt(ZonedDateTime.now());
 
-        logTransacaoRepository.save(log);
+        logTransacaoWriter.registrar(log);
     }
 
     /**
-     * Verifica saúde de todos os gateways e atualiza status
+     * Publica a tabela de roteamento com o status de saúde recém-avaliado
+     * 
+     * Chamado pelo {@link GatewayHealthProbeService} ao final de cada ciclo de sondagem.
      * 
-     * Este método deve ser executado periodicamente (ex: a cada 1 minuto)
+     * @param gateways Todos os gateways, com o status de saúde atualizado
      */
-    public void verificarSaudeGateways() {
-        logger.debug("Iniciando verificação de saúde dos gateways");
-
-        List<Gateway> gateways = gatewayRepository.findAll();
-
-        for (Gateway gateway : gateways) {
-            try {
-                boolean saudavel = avaliarSaudeGateway(gateway);
-
-                if (saudavel) {
-                    gateway.atualizarHealthCheck(com.pip.model.HealthStatus.UP);
-                } else {
-                    gateway.atualizarHealthCheck(com.pip.model.HealthStatus.DOWN);
-                }
-
-                gatewayRepository.save(gateway);
-
-                logger.debug("Gateway {} - Status: {}", gateway.getCodigo(), gateway.getHealthStatus());
-
-            } catch (Exception e) {
-                logger.error("Erro ao verificar saúde do gateway {}: {}", gateway.getCodigo(), e.getMessage());
-                gateway.atualizarHealthCheck(com.pip.model.HealthStatus.UNKNOWN);
-                gatewayRepository.save(gateway);
-            }
-        }
-
-        logger.info("Verificação de saúde concluída. Total de gateways: {}", gateways.size());
+    public void publicarSaude(List<Gateway> gateways) {
+        publicarTabelaRoteamento(gateways);
     }
 
     /**
-     * Avalia saúde de um gateway específico
-     * 
-     * Critérios:
-     * - Taxa de sucesso > 90%
-     * - Tempo médio de resposta < 5 segundos
-     * - Última verificação há menos de 5 minutos
+     * Executa uma operação que altera vários gateways sem republicar a tabela a cada save
+     *
+     * A supressão vale apenas para eventos entregues na thread do lote (sem transação, o
+     * listener roda de forma síncrona no save); o chamador publica a tabela ao final.
      */
-    private boolean avaliarSaudeGateway(Gateway gateway) {
-        // Critério 1: Taxa de sucesso
-        if (gateway.getTaxaSucesso() < 90.0) {
-            logger.warn("Gateway {} com taxa de sucesso baixa: {}%", 
-                gateway.getCodigo(), gateway.getTaxaSucesso());
-            return false;
+    private void executarEmLote(Runnable operacao) {
+        if (emLote.get()) {
+            operacao.run();
+            return;
         }
-
-        // Critério 2: Tempo de resposta
-        if (gateway.getTempoRespostaMedio() > 5000) {
-            logger.warn("Gateway {} com tempo de resposta alto: {}ms", 
-                gateway.getCodigo(), gateway.getTempoRespostaMedio());
-            return false;
+        emLote.set(Boolean.TRUE);
+        try {
+            operacao.run();
+        } finally {
+            emLote.remove();
         }
-
-        // Critério 3: Última verificação (se houver)
-        if (gateway.getLastHealthCheck() != null) {
-            ZonedDateTime limiteVerificacao = ZonedDateTime.now().minusMinutes(5);
-            if (gateway.getLastHealthCheck().isBefore(limiteVerificacao)) {
-                logger.warn("Gateway {} sem verificação recente", gateway.getCodigo());
-                return false;
-            }
-        }
-
-        return true;
     }
 
     /**
@@ -294,15 +404,35 @@ public class GatewayRoutingService {
             gatewayStats.put("tempoRespostaMedio", gateway.getTempoRespostaMedio());
             gatewayStats.put("volumeProcessadoHoje", gateway.getVolumeProcessadoHoje());
             gatewayStats.put("limiteDiario", gateway.getLimiteDiario());
-            gatewayStats.put("percentualUtilizado", gateway.getPercentualLimiteUtilizado());
+            gatewayStats.put("percentualUtilizado", percentualLimiteUtilizado(gateway));
             gatewayStats.put("score", calcularScore(gateway));
 
+            GatewayStats estatisticas = gatewayStatsService.obter(gateway);
+            if (estatisticas != null) {
+                gatewayStats.put("janela1m", resumirJanela(estatisticas.snapshot(GatewayStats.JANELA_1M)));
+                gatewayStats.put("janela5m", resumirJanela(estatisticas.snapshot(GatewayStats.JANELA_5M)));
+                gatewayStats.put("janela15m", resumirJanela(estatisticas.snapshot(GatewayStats.JANELA_15M)));
+                gatewayStats.put("latenciaEwma", estatisticas.getLatenciaEwma());
+                gatewayStats.put("volumeDiario", estatisticas.getVolumeDiario());
+            }
+
             stats.put(gateway.getCodigo(), gatewayStats);
         }
 
         return stats;
     }
 
+    private Map<String, Object> resumirJanela(GatewayStats.Snapshot snapshot) {
+        Map<String, Object> resumo = new HashMap<>();
+        resumo.put("total", snapshot.getTotal());
+        resumo.put("taxaSucesso", snapshot.getTaxaSucesso());
+        resumo.put("latenciaMedia", snapshot.getLatenciaMedia());
+        resumo.put("p50", snapshot.getPercentil(50));
+        resumo.put("p95", snapshot.getPercentil(95));
+        resumo.put("p99", snapshot.getPercentil(99));
+        return resumo;
+    }
+
     /**
      * Rebalanceia prioridades dos gateways baseado em performance
      * 
@@ -313,18 +443,22 @@ public class GatewayRoutingService {
 
         List<Gateway> gateways = gatewayRepository.findAll();
 
-        for (Gateway gateway : gateways) {
-            int prioridadeAtual = gateway.getPrioridade();
-            int novaPrioridade = calcularNovaPrioridade(gateway);
-
-            if (prioridadeAtual != novaPrioridade) {
-                logger.info("Ajustando prioridade do gateway {} de {} para {}", 
-                    gateway.getCodigo(), prioridadeAtual, novaPrioridade);
-                
-                gateway.setPrioridade(novaPrioridade);
-                gatewayRepository.save(gateway);
+        executarEmLote(() -> {
+            for (Gateway gateway : gateways) {
+                int prioridadeAtual = gateway.getPrioridade();
+                int novaPrioridade = calcularNovaPrioridade(gateway);
+
+                if (prioridadeAtual != novaPrioridade) {
+                    logger.info("Ajustando prioridade do gateway {} de {} para {}", 
+                        gateway.getCodigo(), prioridadeAtual, novaPrioridade);
+                    
+                    gateway.setPrioridade(novaPrioridade);
+                    gatewayRepository.atualizarPrioridade(gateway.getId(), novaPrioridade, ZonedDateTime.now());
+                }
             }
-        }
+        });
+
+        publicarTabelaRoteamento(gateways);
 
         logger.info("Rebalanceamento concluído");
     }
@@ -334,17 +468,19 @@ public class GatewayRoutingService {
      */
     private int calcularNovaPrioridade(Gateway gateway) {
         int prioridade = gateway.getPrioridade();
+        double taxaSucesso = taxaSucesso(gateway);
+        double tempoResposta = tempoResposta(gateway);
 
         // Gateway com excelente performance: diminuir prioridade (número menor = maior prioridade)
-        if (gateway.getTaxaSucesso() > 98.0 && gateway.getTempoRespostaMedio() < 1000) {
+        if (taxaSucesso > 98.0 && tempoResposta < 1000) {
             prioridade = Math.max(1, prioridade - 5);
         }
         // Gateway com boa performance: manter ou melhorar levemente
-        else if (gateway.getTaxaSucesso() > 95.0 && gateway.getTempoRespostaMedio() < 2000) {
+        else if (taxaSucesso > 95.0 && tempoResposta < 2000) {
             prioridade = Math.max(1, prioridade - 1);
         }
         // Gateway com performance ruim: aumentar prioridade (número maior = menor prioridade)
-        else if (gateway.getTaxaSucesso() < 90.0 || gateway.getTempoRespostaMedio() > 3000) {
+        else if (taxaSucesso < 90.0 || tempoResposta > 3000) {
             prioridade = Math.min(100, prioridade + 5);
         }
 
@@ -361,11 +497,15 @@ public class GatewayRoutingService {
 
         List<Gateway> gateways = gatewayRepository.findAll();
 
+        // UPDATE único; as instâncias e os volumes em memória são zerados para a nova tabela
+        gatewayRepository.resetAllDailyVolume();
+        gatewayStatsService.zerarVolumesDiarios();
         for (Gateway gateway : gateways) {
             gateway.resetarVolumeProcessadoHoje();
-            gatewayRepository.save(gateway);
         }
 
+        publicarTabelaRoteamento(gateways);
+
         logger.info("Volumes resetados. Total de gateways: {}", gateways.size());
     }
 }
@@ -0,0 +1,193 @@
+package com.pip.service;
+
+import com.pip.model.Gateway;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Snapshot imutável da tabela de roteamento de gateways
+ *
+ * Contém apenas gateways ativos e roteáveis (UP ou DEGRADED), com score pré-calculado e
+ * ordenados do maior para o menor score. Uma nova instância é publicada
+ * atomicamente pelo {@link GatewayRoutingService} sempre que um gateway
+ * é alterado (health check, rebalanceamento ou edição administrativa),
+ * de forma que o roteamento não precise acessar o banco nem alocar
+ * coleções por requisição.
+ *
+ * O limite diário é checado contra o volume em memória de {@link GatewayStats}, que
+ * continua sendo atualizado entre publicações; o campo persistido da entidade só é
+ * usado quando o gateway não tem estatísticas associadas.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public final class GatewayRoutingTable {
+
+    private static final GatewayRoutingTable VAZIA = new GatewayRoutingTable(new Gateway[0], new double[0], new GatewayStats[0]);
+
+    private final Gateway[] gateways;
+    private final double[] scores;
+    private final GatewayStats[] estatisticas;
+    private final ZonedDateTime publicadaEm;
+
+    private GatewayRoutingTable(Gateway[] gateways, double[] scores, GatewayStats[] estatisticas) {
+        this.gateways = gateways;
+        this.scores = scores;
+        this.estatisticas = estatisticas;
+        this.publicadaEm = ZonedDateTime.now();
+    }
+
+    /**
+     * Monta uma nova tabela a partir da lista completa de gateways
+     *
+     * @param todos Todos os gateways cadastrados
+     * @param calculadoraScore Função de score usada para ordenar os gateways
+     * @return Tabela imutável pronta para publicação
+     */
+    public static GatewayRoutingTable construir(List<Gateway> todos, ToDoubleFunction<Gateway> calculadoraScore) {
+        return construir(todos, calculadoraScore, gateway -> null);
+    }
+
+    /**
+     * Monta uma nova tabela associando a cada gateway suas estatísticas em memória
+     *
+     * @param todos Todos os gateways cadastrados
+     * @param calculadoraScore Função de score usada para ordenar os gateways
+     * @param fonteEstatisticas Estatísticas do gateway (volume diário), ou null para usar o campo persistido
+     * @return Tabela imutável pronta para publicação
+     */
+    public static GatewayRoutingTable construir(List<Gateway> todos, ToDoubleFunction<Gateway> calculadoraScore,
+                                                Function<Gateway, GatewayStats> fonteEstatisticas) {
+        List<Gateway> disponiveis = new ArrayList<>();
+        for (Gateway gateway : todos) {
+            if (gateway.getStatus() != null && "ACTIVE".equals(gateway.getStatus().name()) && gateway.isRoteavel()) {
+                disponiveis.add(gateway);
+            }
+        }
+
+        if (disponiveis.isEmpty()) {
+            return VAZIA;
+        }
+
+        int total = disponiveis.size();
+        double[] scoresCalculados = new double[total];
+        GatewayStats[] estatisticasCarregadas = new GatewayStats[total];
+        Integer[] ordem = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            // Estatísticas antes do score, para que o fator de capacidade já veja o volume sincronizado
+            estatisticasCarregadas[i] = fonteEstatisticas.apply(disponiveis.get(i));
+            scoresCalculados[i] = calculadoraScore.applyAsDouble(disponiveis.get(i));
+            ordem[i] = i;
+        }
+
+        // Ordenar por score decrescente (estável para manter a ordem original em empates)
+        Arrays.sort(ordem, Comparator.comparingDouble((Integer i) -> scoresCalculados[i]).reversed());
+
+        Gateway[] gatewaysOrdenados = new Gateway[total];
+        double[] scoresOrdenados = new double[total];
+        GatewayStats[] estatisticasOrdenadas = new GatewayStats[total];
+        for (int i = 0; i < total; i++) {
+            gatewaysOrdenados[i] = disponiveis.get(ordem[i]);
+            scoresOrdenados[i] = scoresCalculados[ordem[i]];
+            estatisticasOrdenadas[i] = estatisticasCarregadas[ordem[i]];
+        }
+
+        return new GatewayRoutingTable(gatewaysOrdenados, scoresOrdenados, estatisticasOrdenadas);
+    }
+
+    /**
+     * Retorna uma tabela vazia
+     */
+    public static GatewayRoutingTable vazia() {
+        return VAZIA;
+    }
+
+    /**
+     * Retorna o índice do gateway de maior score capaz de processar o valor
+     *
+     * @param valor Valor da transação em centavos
+     * @return Índice na tabela ou -1 se nenhum gateway tiver capacidade
+     */
+    public int selecionarMelhor(Long valor) {
+        for (int i = 0; i < gateways.length; i++) {
+            if (podeProcessar(i, valor)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retorna o índice do gateway de fallback, priorizando estabilidade
+     *
+     * Escolhe o gateway com maior taxa de sucesso acima de 95% entre os que
+     * podem processar o valor; se nenhum atingir esse patamar, o de maior score.
+     *
+     * @param gatewayExcluido Gateway que falhou
+     * @param valor Valor da transação em centavos
+     * @return Índice na tabela ou -1 se não houver alternativa
+     */
+    public int selecionarFallback(Gateway gatewayExcluido, Long valor) {
+        UUID idExcluido = gatewayExcluido.getId();
+        int primeiroElegivel = -1;
+        int maisEstavel = -1;
+
+        for (int i = 0; i < gateways.length; i++) {
+            Gateway gateway = gateways[i];
+            if (gateway == gatewayExcluido || (idExcluido != null && idExcluido.equals(gateway.getId()))) {
+                continue;
+            }
+            if (!podeProcessar(i, valor)) {
+                continue;
+            }
+            if (primeiroElegivel < 0) {
+                primeiroElegivel = i;
+            }
+            if (gateway.getTaxaSucesso() > 95.0
+                    && (maisEstavel < 0 || gateway.getTaxaSucesso() > gateways[maisEstavel].getTaxaSucesso())) {
+                maisEstavel = i;
+            }
+        }
+
+        return maisEstavel >= 0 ? maisEstavel : primeiroElegivel;
+    }
+
+    /**
+     * Verifica se o gateway da posição pode processar o valor, usando o volume diário em memória
+     *
+     * @param indice Posição na tabela
+     * @param valor Valor da transação em centavos
+     */
+    public boolean podeProcessar(int indice, Long valor) {
+        GatewayStats stats = estatisticas[indice];
+        return stats != null
+            ? gateways[indice].podeProcessarTransacao(valor, stats.getVolumeDiario())
+            : gateways[indice].podeProcessarTransacao(valor);
+    }
+
+    public Gateway getGateway(int indice) {
+        return gateways[indice];
+    }
+
+    public double getScore(int indice) {
+        return scores[indice];
+    }
+
+    public int tamanho() {
+        return gateways.length;
+    }
+
+    public boolean isVazia() {
+        return gateways.length == 0;
+    }
+
+    public ZonedDateTime getPublicadaEm() {
+        return publicadaEm;
+    }
+}
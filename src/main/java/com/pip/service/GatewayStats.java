@@ -0,0 +1,340 @@
+package com.pip.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estatísticas em memória de um gateway, sem locks
+ *
+ * - Contadores pendentes de persistência em LongAdder (striped), zerados a cada flush
+ * - Anel de janelas de tempo de {@value #LARGURA_JANELA_MS}ms cobrindo os últimos 15 minutos;
+ *   cada janela é substituída por CAS quando o anel dá a volta
+ * - Chamadas em andamento (in-flight), para balanceamento por carga
+ * - Volume processado no dia, para checagem do limite diário sem depender da entidade
+ * - Latência por EWMA e histograma log-linear (estilo HDR, erro relativo ~6%) por janela,
+ *   permitindo percentis sobre 1m/5m/15m
+ *
+ * Leituras somam as janelas vigentes e podem ocorrer em paralelo com as escritas.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public final class GatewayStats {
+
+    static final long LARGURA_JANELA_MS = 10_000;
+    static final int TAMANHO_ANEL = 90; // 15 minutos
+
+    public static final Duration JANELA_1M = Duration.ofMinutes(1);
+    public static final Duration JANELA_5M = Duration.ofMinutes(5);
+    public static final Duration JANELA_15M = Duration.ofMinutes(15);
+
+    // Histograma: valores 0-15ms exatos, depois 16 sub-faixas por potência de 2 (até ~131s)
+    private static final int SUB_FAIXAS_BITS = 4;
+    private static final int SUB_FAIXAS = 1 << SUB_FAIXAS_BITS;
+    private static final int MAX_EXPOENTE = 17;
+    static final int TAMANHO_HISTOGRAMA = SUB_FAIXAS + (MAX_EXPOENTE - SUB_FAIXAS_BITS) * SUB_FAIXAS;
+
+    private final double alfaEwma;
+
+    private final AtomicReferenceArray<Janela> anel = new AtomicReferenceArray<>(TAMANHO_ANEL);
+    private final AtomicLong latenciaEwmaBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+
+    private final LongAdder emAndamento = new LongAdder();
+
+    private final LongAdder pendentesTotal = new LongAdder();
+    private final LongAdder pendentesSucesso = new LongAdder();
+    private final LongAdder pendentesFalhas = new LongAdder();
+    private final LongAdder pendentesVolume = new LongAdder();
+
+    private final AtomicLong volumeDiario = new AtomicLong();
+
+    /**
+     * @param alfaEwma Peso da amostra mais recente na média móvel exponencial (0-1)
+     */
+    public GatewayStats(double alfaEwma) {
+        if (alfaEwma <= 0 || alfaEwma > 1) {
+            throw new IllegalArgumentException("Alfa da EWMA deve estar entre 0 e 1");
+        }
+        this.alfaEwma = alfaEwma;
+    }
+
+    /**
+     * Registra o resultado de uma chamada ao gateway
+     *
+     * @param sucesso Se a chamada foi bem-sucedida
+     * @param valor Valor processado em centavos
+     * @param tempoRespostaMs Tempo de resposta em milissegundos
+     */
+    public void registrar(boolean sucesso, long valor, long tempoRespostaMs) {
+        registrar(sucesso, valor, tempoRespostaMs, System.currentTimeMillis());
+    }
+
+    void registrar(boolean sucesso, long valor, long tempoRespostaMs, long agoraMs) {
+        long latencia = Math.max(0, tempoRespostaMs);
+        Janela janela = janelaAtual(agoraMs);
+
+        if (sucesso) {
+            janela.sucesso.increment();
+            pendentesSucesso.increment();
+        } else {
+            janela.falhas.increment();
+            pendentesFalhas.increment();
+        }
+        janela.somaLatencia.add(latencia);
+        janela.histograma.incrementAndGet(indiceHistograma(latencia));
+
+        pendentesTotal.increment();
+        pendentesVolume.add(valor);
+        volumeDiario.addAndGet(valor);
+
+        atualizarEwma(latencia);
+    }
+
+    /**
+     * Marca o início de uma chamada ao gateway
+     */
+    public void iniciarChamada() {
+        emAndamento.increment();
+    }
+
+    /**
+     * Registra o resultado de uma chamada aberta por {@link #iniciarChamada()}
+     */
+    public void concluirChamada(boolean sucesso, long valor, long tempoRespostaMs) {
+        emAndamento.decrement();
+        registrar(sucesso, valor, tempoRespostaMs);
+    }
+
+    /**
+     * Chamadas em andamento neste nó
+     */
+    public long getEmAndamento() {
+        return Math.max(0, emAndamento.sum());
+    }
+
+    /**
+     * Volume processado hoje em centavos (persistido na carga + registrado neste nó desde então)
+     */
+    public long getVolumeDiario() {
+        return volumeDiario.get();
+    }
+
+    /**
+     * Incorpora o volume persistido, que inclui o que outros nós já gravaram; mantém o maior
+     * dos dois para não perder o que este nó registrou e ainda não foi persistido
+     */
+    void sincronizarVolumeDiario(long volumePersistido) {
+        volumeDiario.accumulateAndGet(volumePersistido, Math::max);
+    }
+
+    /**
+     * Zera o volume diário (virada do dia)
+     */
+    void zerarVolumeDiario() {
+        volumeDiario.set(0);
+    }
+
+    /**
+     * Consolida as janelas dos últimos {@code periodo}
+     */
+    public Snapshot snapshot(Duration periodo) {
+        return snapshot(periodo, System.currentTimeMillis());
+    }
+
+    Snapshot snapshot(Duration periodo, long agoraMs) {
+        long epocaAtual = agoraMs / LARGURA_JANELA_MS;
+        int janelas = (int) Math.min(TAMANHO_ANEL, Math.max(1, periodo.toMillis() / LARGURA_JANELA_MS));
+
+        long sucesso = 0;
+        long falhas = 0;
+        long somaLatencia = 0;
+        long[] histograma = new long[TAMANHO_HISTOGRAMA];
+
+        for (long epoca = epocaAtual - janelas + 1; epoca <= epocaAtual; epoca++) {
+            Janela janela = anel.get(indiceAnel(epoca));
+            if (janela == null || janela.epoca != epoca) {
+                continue;
+            }
+            sucesso += janela.sucesso.sum();
+            falhas += janela.falhas.sum();
+            somaLatencia += janela.somaLatencia.sum();
+            for (int i = 0; i < TAMANHO_HISTOGRAMA; i++) {
+                histograma[i] += janela.histograma.get(i);
+            }
+        }
+
+        return new Snapshot(sucesso, falhas, somaLatencia, histograma, getLatenciaEwma());
+    }
+
+    /**
+     * Latência média móvel exponencial em ms (NaN antes da primeira amostra)
+     */
+    public double getLatenciaEwma() {
+        return Double.longBitsToDouble(latenciaEwmaBits.get());
+    }
+
+    /**
+     * Retira os contadores acumulados desde o último flush
+     *
+     * @return {total, sucesso, falhas, volume}
+     */
+    long[] retirarPendentes() {
+        return new long[] {
+            pendentesTotal.sumThenReset(),
+            pendentesSucesso.sumThenReset(),
+            pendentesFalhas.sumThenReset(),
+            pendentesVolume.sumThenReset()
+        };
+    }
+
+    /**
+     * Devolve contadores cujo flush falhou, para a próxima tentativa
+     */
+    void devolverPendentes(long[] pendentes) {
+        pendentesTotal.add(pendentes[0]);
+        pendentesSucesso.add(pendentes[1]);
+        pendentesFalhas.add(pendentes[2]);
+        pendentesVolume.add(pendentes[3]);
+    }
+
+    private void atualizarEwma(long latencia) {
+        while (true) {
+            long bitsAtuais = latenciaEwmaBits.get();
+            double atual = Double.longBitsToDouble(bitsAtuais);
+            double nova = Double.isNaN(atual) ? latencia : atual + alfaEwma * (latencia - atual);
+            if (latenciaEwmaBits.compareAndSet(bitsAtuais, Double.doubleToRawLongBits(nova))) {
+                return;
+            }
+        }
+    }
+
+    private Janela janelaAtual(long agoraMs) {
+        long epoca = agoraMs / LARGURA_JANELA_MS;
+        int indice = indiceAnel(epoca);
+
+        while (true) {
+            Janela janela = anel.get(indice);
+            if (janela != null && janela.epoca >= epoca) {
+                // Janela vigente (ou mais nova, em caso de relógio retrocedendo)
+                return janela;
+            }
+            Janela nova = new Janela(epoca);
+            if (anel.compareAndSet(indice, janela, nova)) {
+                return nova;
+            }
+        }
+    }
+
+    private static int indiceAnel(long epoca) {
+        return (int) Math.floorMod(epoca, (long) TAMANHO_ANEL);
+    }
+
+    static int indiceHistograma(long valor) {
+        if (valor < SUB_FAIXAS) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        if (expoente >= MAX_EXPOENTE) {
+            return TAMANHO_HISTOGRAMA - 1;
+        }
+        int subFaixa = (int) (valor >>> (expoente - SUB_FAIXAS_BITS)) - SUB_FAIXAS;
+        return SUB_FAIXAS + (expoente - SUB_FAIXAS_BITS) * SUB_FAIXAS + subFaixa;
+    }
+
+    static long limiteSuperior(int indice) {
+        if (indice < SUB_FAIXAS) {
+            return indice;
+        }
+        int expoente = (indice - SUB_FAIXAS) / SUB_FAIXAS + SUB_FAIXAS_BITS;
+        int subFaixa = (indice - SUB_FAIXAS) % SUB_FAIXAS;
+        return ((long) (SUB_FAIXAS + subFaixa + 1) << (expoente - SUB_FAIXAS_BITS)) - 1;
+    }
+
+    private static final class Janela {
+        private final long epoca;
+        private final LongAdder sucesso = new LongAdder();
+        private final LongAdder falhas = new LongAdder();
+        private final LongAdder somaLatencia = new LongAdder();
+        private final AtomicLongArray histograma = new AtomicLongArray(TAMANHO_HISTOGRAMA);
+
+        private Janela(long epoca) {
+            this.epoca = epoca;
+        }
+    }
+
+    /**
+     * Visão consolidada de um período
+     */
+    public static final class Snapshot {
+        private final long sucesso;
+        private final long falhas;
+        private final long somaLatencia;
+        private final long[] histograma;
+        private final double latenciaEwma;
+
+        private Snapshot(long sucesso, long falhas, long somaLatencia, long[] histograma, double latenciaEwma) {
+            this.sucesso = sucesso;
+            this.falhas = falhas;
+            this.somaLatencia = somaLatencia;
+            this.histograma = histograma;
+            this.latenciaEwma = latenciaEwma;
+        }
+
+        public long getTotal() {
+            return sucesso + falhas;
+        }
+
+        public long getSucesso() {
+            return sucesso;
+        }
+
+        public long getFalhas() {
+            return falhas;
+        }
+
+        /**
+         * Taxa de sucesso em percentual (0-100)
+         */
+        public double getTaxaSucesso() {
+            long total = getTotal();
+            return total == 0 ? 0.0 : sucesso * 100.0 / total;
+        }
+
+        public double getLatenciaMedia() {
+            long total = getTotal();
+            return total == 0 ? 0.0 : (double) somaLatencia / total;
+        }
+
+        public double getLatenciaEwma() {
+            return latenciaEwma;
+        }
+
+        /**
+         * Percentil de latência em ms (limite superior da faixa do histograma)
+         *
+         * @param percentil Percentil entre 0 e 100
+         */
+        public long getPercentil(double percentil) {
+            // Usa o total do próprio histograma: escritas concorrentes podem ainda não
+            // ter chegado a ele quando os contadores já foram incrementados
+            long total = 0;
+            for (long contagem : histograma) {
+                total += contagem;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long alvo = (long) Math.ceil(total * percentil / 100.0);
+            long acumulado = 0;
+            for (int i = 0; i < histograma.length; i++) {
+                acumulado += histograma[i];
+                if (acumulado >= alvo) {
+                    return limiteSuperior(i);
+                }
+            }
+            return limiteSuperior(histograma.length - 1);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.pip.service;
+
+import com.pip.model.Gateway;
+import com.pip.repository.GatewayRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serviço de estatísticas de gateways em memória
+ *
+ * Cada chamada a gateway é registrada em um {@link GatewayStats} sem locks; o roteamento
+ * lê as janelas recentes diretamente da memória. Os totais são persistidos na tabela
+ * gateway periodicamente, com uma única instrução UPDATE incremental por gateway,
+ * sem carregar nem regravar a entidade.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class GatewayStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayStatsService.class);
+
+    @Autowired
+    private GatewayRepository gatewayRepository;
+
+    @Value("${gateway.stats.ewma-alfa:0.1}")
+    private double alfaEwma;
+
+    @Value("${gateway.stats.minimo-amostras:20}")
+    private long minimoAmostras;
+
+    private final Map<UUID, GatewayStats> estatisticas = new ConcurrentHashMap<>();
+
+    /**
+     * Registra o resultado de uma chamada ao gateway
+     *
+     * @param gateway Gateway chamado
+     * @param sucesso Se a chamada foi bem-sucedida
+     * @param valor Valor processado em centavos
+     * @param tempoResposta Tempo de resposta em milissegundos
+     */
+    public void registrar(Gateway gateway, boolean sucesso, long valor, long tempoResposta) {
+        if (gateway.getId() == null) {
+            return;
+        }
+        estatisticas.computeIfAbsent(gateway.getId(), id -> new GatewayStats(alfaEwma))
+            .registrar(sucesso, valor, tempoResposta);
+    }
+
+    /**
+     * Marca o início de uma chamada ao gateway (contagem de chamadas em andamento)
+     */
+    public void iniciarChamada(Gateway gateway) {
+        if (gateway.getId() == null) {
+            return;
+        }
+        estatisticas.computeIfAbsent(gateway.getId(), id -> new GatewayStats(alfaEwma)).iniciarChamada();
+    }
+
+    /**
+     * Registra o resultado de uma chamada aberta por {@link #iniciarChamada(Gateway)}
+     */
+    public void concluirChamada(Gateway gateway, boolean sucesso, long valor, long tempoResposta) {
+        if (gateway.getId() == null) {
+            return;
+        }
+        estatisticas.computeIfAbsent(gateway.getId(), id -> new GatewayStats(alfaEwma))
+            .concluirChamada(sucesso, valor, tempoResposta);
+    }
+
+    /**
+     * Estatísticas em memória do gateway, ou null se ainda não houve chamadas neste nó
+     */
+    public GatewayStats obter(Gateway gateway) {
+        return gateway.getId() != null ? estatisticas.get(gateway.getId()) : null;
+    }
+
+    /**
+     * Estatísticas do gateway para a tabela de roteamento, criando-as se preciso
+     *
+     * O volume diário em memória é sincronizado com o valor persistido da entidade, de forma
+     * que a checagem de limite veja tanto o que outros nós já gravaram quanto o que este nó
+     * registrou desde a carga.
+     *
+     * @return Estatísticas ou null se o gateway ainda não tem id
+     */
+    public GatewayStats estatisticasRoteamento(Gateway gateway) {
+        if (gateway.getId() == null) {
+            return null;
+        }
+        GatewayStats stats = estatisticas.computeIfAbsent(gateway.getId(), id -> new GatewayStats(alfaEwma));
+        if (gateway.getVolumeProcessadoHoje() != null) {
+            stats.sincronizarVolumeDiario(gateway.getVolumeProcessadoHoje());
+        }
+        return stats;
+    }
+
+    /**
+     * Zera o volume diário em memória de todos os gateways (virada do dia)
+     */
+    public void zerarVolumesDiarios() {
+        estatisticas.values().forEach(GatewayStats::zerarVolumeDiario);
+    }
+
+    /**
+     * Snapshot de 5 minutos para decisões de roteamento e saúde
+     *
+     * @return Snapshot ou null se não houver amostras suficientes (usar valores persistidos)
+     */
+    public GatewayStats.Snapshot snapshotRoteamento(Gateway gateway) {
+        GatewayStats stats = obter(gateway);
+        if (stats == null) {
+            return null;
+        }
+        GatewayStats.Snapshot snapshot = stats.snapshot(GatewayStats.JANELA_5M);
+        return snapshot.getTotal() >= minimoAmostras ? snapshot : null;
+    }
+
+    /**
+     * Persiste os contadores acumulados e as métricas recentes de cada gateway
+     */
+    @Scheduled(fixedDelayString = "${gateway.stats.flush-interval-ms:10000}")
+    public void flush() {
+        ZonedDateTime agora = ZonedDateTime.now();
+
+        estatisticas.forEach((gatewayId, stats) -> {
+            long[] pendentes = stats.retirarPendentes();
+            if (pendentes[0] == 0) {
+                return;
+            }
+
+            GatewayStats.Snapshot janela = stats.snapshot(GatewayStats.JANELA_15M);
+
+            try {
+                gatewayRepository.acumularEstatisticas(
+                    gatewayId,
+                    pendentes[0],
+                    pendentes[1],
+                    pendentes[2],
+                    pendentes[3],
+                    janela.getTaxaSucesso(),
+                    Math.round(janela.getLatenciaEwma()),
+                    agora
+                );
+            } catch (Exception e) {
+                stats.devolverPendentes(pendentes);
+                logger.error("Erro ao persistir estatísticas do gateway {}: {}", gatewayId, e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        flush();
+    }
+}
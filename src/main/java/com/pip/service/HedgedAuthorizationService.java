@@ -0,0 +1,285 @@
+package com.pip.service;
+
+import com.pip.dto.AuthorizationRequest;
+import com.pip.dto.PaymentResponse;
+import com.pip.dto.VoidRequest;
+import com.pip.model.Gateway;
+import com.pip.model.Transacao;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Autorização com hedge entre gateways
+ *
+ * Quando habilitado e a operação é segura para duplicar (pré-autorização sem captura
+ * ou cobrança Pix), a autorização é enviada ao gateway selecionado e, se não houver
+ * resposta dentro do p95 recente desse gateway, uma requisição de backup é enviada ao
+ * próximo melhor gateway. Vale a primeira resposta definitiva (aprovação ou recusa);
+ * se a outra requisição também for aprovada, ela é cancelada (void) em segundo plano.
+ *
+ * Cada perna executa uma única tentativa: o backup substitui o retry no mesmo gateway.
+ * Fora dessas condições, a autorização segue o fluxo normal com retry e fallback.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class HedgedAuthorizationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedAuthorizationService.class);
+
+    private static final String GATEWAY_PIX = "PIX";
+
+    @Autowired
+    private GatewayIntegrationService gatewayIntegrationService;
+
+    @Autowired
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Autowired
+    private GatewayStatsService gatewayStatsService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gateway.hedging.enabled:false}")
+    private boolean habilitado;
+
+    @Value("${gateway.hedging.atraso-padrao-ms:2000}")
+    private long atrasoPadraoMs;
+
+    @Value("${gateway.hedging.atraso-minimo-ms:200}")
+    private long atrasoMinimoMs;
+
+    @Value("${gateway.hedging.atraso-maximo-ms:10000}")
+    private long atrasoMaximoMs;
+
+    @Value("${gateway.hedging.max-threads:64}")
+    private int maxThreads;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void iniciar() {
+        // Sem fila: se não houver thread livre, a autorização segue sem hedge
+        this.executor = new ThreadPoolExecutor(
+            0, maxThreads,
+            60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new CustomizableThreadFactory("gateway-hedge-"),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Autoriza o pagamento, com hedge quando aplicável
+     *
+     * @param gateway Gateway selecionado pelo roteamento
+     * @param request Dados da autorização
+     * @param transacao Transação sendo processada
+     * @return Gateway que respondeu e a resposta
+     */
+    public ResultadoAutorizacao autorizar(Gateway gateway, AuthorizationRequest request, Transacao transacao) {
+        if (!habilitado || !podeDuplicar(gateway, request)) {
+            return new ResultadoAutorizacao(gateway, gatewayIntegrationService.authorize(gateway, request, transacao));
+        }
+
+        CompletableFuture<PaymentResponse> primaria;
+        try {
+            primaria = executarPerna(gateway, request, transacao);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Pool de hedge cheio; autorização sem hedge");
+            return new ResultadoAutorizacao(gateway, gatewayIntegrationService.authorize(gateway, request, transacao));
+        }
+
+        long atrasoMs = calcularAtraso(gateway);
+        try {
+            PaymentResponse resposta = primaria.get(atrasoMs, TimeUnit.MILLISECONDS);
+            contar("primaria");
+            return new ResultadoAutorizacao(gateway, resposta);
+        } catch (TimeoutException e) {
+            // Primária lenta: segue para o hedge
+        } catch (ExecutionException e) {
+            // Falha rápida da primária: o backup atua como fallback imediato
+            logger.warn("Gateway {} falhou antes do hedge: {}", gateway.getCodigo(), e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Autorização interrompida", e);
+        }
+
+        Gateway backup = gatewayRoutingService.selecionarGatewayFallback(transacao.getLojista(), gateway, transacao.getValor());
+        if (backup == null) {
+            contar("sem_backup");
+            return new ResultadoAutorizacao(gateway, aguardar(primaria));
+        }
+
+        CompletableFuture<PaymentResponse> secundaria;
+        try {
+            secundaria = executarPerna(backup, request, transacao);
+        } catch (RejectedExecutionException e) {
+            contar("sem_backup");
+            return new ResultadoAutorizacao(gateway, aguardar(primaria));
+        }
+
+        logger.info("Hedge da transação {}: {} sem resposta em {}ms, backup enviado a {}",
+            transacao.getTransactionId(), gateway.getCodigo(), atrasoMs, backup.getCodigo());
+
+        ResultadoAutorizacao vencedor = primeiraRespostaDefinitiva(gateway, primaria, backup, secundaria);
+        contar(vencedor.getGateway() == gateway ? "primaria" : "backup");
+
+        if (vencedor.getGateway() == gateway) {
+            reconciliarPerdedora(backup, secundaria, transacao);
+        } else {
+            reconciliarPerdedora(gateway, primaria, transacao);
+        }
+
+        return vencedor;
+    }
+
+    /**
+     * Operações que podem ser enviadas a dois gateways sem efeito financeiro duplicado:
+     * pré-autorização (sem captura, cancelável) e cobrança Pix (expira se não paga)
+     */
+    private boolean podeDuplicar(Gateway gateway, AuthorizationRequest request) {
+        return Boolean.FALSE.equals(request.getCapture()) || GATEWAY_PIX.equalsIgnoreCase(gateway.getCodigo());
+    }
+
+    /**
+     * Atraso do hedge: p95 recente do gateway, limitado ao intervalo configurado
+     */
+    long calcularAtraso(Gateway gateway) {
+        GatewayStats.Snapshot snapshot = gatewayStatsService.snapshotRoteamento(gateway);
+        long atraso = snapshot != null ? snapshot.getPercentil(95) : atrasoPadraoMs;
+        return Math.max(atrasoMinimoMs, Math.min(atrasoMaximoMs, atraso));
+    }
+
+    private CompletableFuture<PaymentResponse> executarPerna(Gateway gateway, AuthorizationRequest request,
+                                                             Transacao transacao) {
+        return CompletableFuture.supplyAsync(
+            () -> gatewayIntegrationService.executarAutorizacao(gateway, request, transacao), executor);
+    }
+
+    /**
+     * Aguarda a primeira perna que responder; falha só se as duas falharem
+     */
+    private ResultadoAutorizacao primeiraRespostaDefinitiva(Gateway gatewayPrimario,
+                                                            CompletableFuture<PaymentResponse> primaria,
+                                                            Gateway gatewayBackup,
+                                                            CompletableFuture<PaymentResponse> secundaria) {
+        CompletableFuture<ResultadoAutorizacao> vencedor = new CompletableFuture<>();
+        AtomicInteger falhas = new AtomicInteger();
+
+        primaria.whenComplete((resposta, erro) -> concluirPerna(vencedor, falhas, gatewayPrimario, resposta, erro));
+        secundaria.whenComplete((resposta, erro) -> concluirPerna(vencedor, falhas, gatewayBackup, resposta, erro));
+
+        try {
+            return vencedor.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Autorização interrompida", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Falha na comunicação com os gateways: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void concluirPerna(CompletableFuture<ResultadoAutorizacao> vencedor, AtomicInteger falhas,
+                               Gateway gateway, PaymentResponse resposta, Throwable erro) {
+        if (erro == null) {
+            vencedor.complete(new ResultadoAutorizacao(gateway, resposta));
+        } else if (falhas.incrementAndGet() == 2) {
+            vencedor.completeExceptionally(erro);
+        }
+    }
+
+    /**
+     * Cancela a autorização da perna perdedora, se ela também tiver sido aprovada
+     */
+    private void reconciliarPerdedora(Gateway gateway, CompletableFuture<PaymentResponse> perdedora, Transacao transacao) {
+        perdedora.whenComplete((resposta, erro) -> {
+            if (erro != null || resposta == null || !resposta.isSuccess()) {
+                return;
+            }
+
+            Transacao duplicada = new Transacao();
+            duplicada.setTransactionId(transacao.getTransactionId());
+            duplicada.setLojista(transacao.getLojista());
+            duplicada.setValor(transacao.getValor());
+            duplicada.setGateway(gateway);
+            duplicada.setGatewayTransactionId(resposta.getGatewayTransactionId());
+
+            try {
+                PaymentResponse cancelamento = gatewayIntegrationService.voidTransaction(gateway,
+                    new VoidRequest("HEDGE_DUPLICADO", "Autorização duplicada pelo hedge"), duplicada);
+                if (cancelamento.isSuccess()) {
+                    contar("cancelada");
+                    logger.info("Autorização duplicada {} cancelada no gateway {}",
+                        resposta.getGatewayTransactionId(), gateway.getCodigo());
+                } else {
+                    contar("cancelamento_falhou");
+                    logger.error("Falha ao cancelar autorização duplicada {} no gateway {}: {}",
+                        resposta.getGatewayTransactionId(), gateway.getCodigo(), cancelamento.getErrorMessage());
+                }
+            } catch (Exception e) {
+                contar("cancelamento_falhou");
+                logger.error("Erro ao cancelar autorização duplicada {} no gateway {}: {}",
+                    resposta.getGatewayTransactionId(), gateway.getCodigo(), e.getMessage());
+            }
+        });
+    }
+
+    private PaymentResponse aguardar(CompletableFuture<PaymentResponse> perna) {
+        try {
+            return perna.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Autorização interrompida", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Falha na comunicação com gateway: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void contar(String resultado) {
+        meterRegistry.counter("pip.gateway.hedge", "resultado", resultado).increment();
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdown();
+    }
+
+    /**
+     * Gateway que respondeu a autorização e sua resposta
+     */
+    public static final class ResultadoAutorizacao {
+        private final Gateway gateway;
+        private final PaymentResponse response;
+
+        public ResultadoAutorizacao(Gateway gateway, PaymentResponse response) {
+            this.gateway = gateway;
+            this.response = response;
+        }
+
+        public Gateway getGateway() {
+            return gateway;
+        }
+
+        public PaymentResponse getResponse() {
+            return response;
+        }
+    }
+}
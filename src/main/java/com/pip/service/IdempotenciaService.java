@@ -0,0 +1,474 @@
+package com.pip.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.dto.PaymentResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Idempotência das mutações de pagamento (header Idempotency-Key)
+ *
+ * A chave é escopada por lojista e guardada no Redis em dois estados:
+ * - EM_ANDAMENTO: gravado com SET NX antes da execução, funciona como trava entre nós.
+ *   Enquanto a operação roda, o nó dono renova a expiração a cada terço de lock-ttl-ms
+ *   (só se o valor ainda for o seu); se o nó cair, a trava expira em lock-ttl-ms
+ * - CONCLUIDO: status HTTP e corpo da resposta, mantidos por ttl-horas
+ *
+ * Duplicatas concorrentes no mesmo nó aguardam a execução em andamento sem consultar
+ * o Redis; em outros nós, aguardam a conclusão consultando a chave até espera-max-ms
+ * e recebem 409 se ela não terminar. Respostas concluídas ficam também em um
+ * near-cache local, de modo que tempestades de retry são atendidas sem Redis, banco
+ * ou gateway.
+ *
+ * Toda resposta devolvida pela operação é armazenada, inclusive erros: o retry de uma
+ * autorização que falhou no gateway recebe a mesma falha em vez de uma nova cobrança
+ * (uma nova tentativa exige uma nova chave). Reutilizar a chave com outra requisição
+ * (operação, transação ou corpo diferentes) é rejeitado com 422. Se o Redis estiver
+ * indisponível, a operação segue apenas com a coalescência local, como no rate limiting.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class IdempotenciaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotenciaService.class);
+
+    public static final String HEADER_REPLAY = "Idempotent-Replayed";
+
+    private static final String PREFIXO = "pip:idempotencia:";
+    private static final String EM_ANDAMENTO = "EM_ANDAMENTO";
+    private static final String CONCLUIDO = "CONCLUIDO";
+    private static final String REJEITADO = "REJEITADO";
+    private static final int TAMANHO_MAXIMO_CHAVE = 255;
+
+    /**
+     * Renova a trava apenas se ela ainda for do nó (KEYS[1] = chave, ARGV[1] = valor da
+     * trava, ARGV[2] = ttl em ms); retorna 0 se a trava expirou ou mudou de dono
+     */
+    private static final RedisScript<Long> RENOVAR_TRAVA = new DefaultRedisScript<>("""
+        if redis.call('GET', KEYS[1]) == ARGV[1] then
+            return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+        end
+        return 0
+        """, Long.class);
+
+    /**
+     * Remove a trava apenas se ela ainda for do nó (KEYS[1] = chave, ARGV[1] = valor da trava)
+     */
+    private static final RedisScript<Long> LIBERAR_TRAVA = new DefaultRedisScript<>("""
+        if redis.call('GET', KEYS[1]) == ARGV[1] then
+            return redis.call('DEL', KEYS[1])
+        end
+        return 0
+        """, Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${idempotencia.ttl-horas:24}")
+    private long ttlHoras;
+
+    @Value("${idempotencia.lock-ttl-ms:30000}")
+    private long lockTtlMs;
+
+    @Value("${idempotencia.espera-max-ms:10000}")
+    private long esperaMaxMs;
+
+    @Value("${idempotencia.intervalo-espera-ms:100}")
+    private long intervaloEsperaMs;
+
+    @Value("${idempotencia.cache.max-entradas:10000}")
+    private int maxEntradasCache;
+
+    private final Map<String, Entrada> cacheLocal = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Registro>> emAndamento = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor renovador;
+
+    @PostConstruct
+    public void init() {
+        this.renovador = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("idempotencia-trava-"));
+        this.renovador.setRemoveOnCancelPolicy(true);
+
+        Gauge.builder("pip.idempotencia.cache.tamanho", cacheLocal, Map::size)
+            .register(meterRegistry);
+        Gauge.builder("pip.idempotencia.em_andamento", emAndamento, Map::size)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Executa a operação uma única vez por chave de idempotência
+     *
+     * @param lojistaId Lojista dono da chave
+     * @param chave Valor do header Idempotency-Key (sem chave, a operação é executada diretamente)
+     * @param recurso Operação e recurso alvo (ex.: "capture:TXN-123")
+     * @param corpo Corpo da requisição, usado na impressão digital da requisição
+     * @param operacao Execução da operação; deve devolver a resposta final, inclusive em erro
+     * @return Resposta da execução ou a resposta armazenada (com header Idempotent-Replayed)
+     */
+    public ResponseEntity<PaymentResponse> executar(UUID lojistaId, String chave, String recurso, Object corpo,
+                                                    Supplier<ResponseEntity<PaymentResponse>> operacao) {
+        if (chave == null || chave.isBlank()) {
+            return operacao.get();
+        }
+        if (chave.length() > TAMANHO_MAXIMO_CHAVE) {
+            return Registro.rejeitado(HttpStatus.BAD_REQUEST, "IDEMPOTENCY_KEY_INVALID",
+                "Idempotency-Key deve ter no máximo " + TAMANHO_MAXIMO_CHAVE + " caracteres").paraResposta(false);
+        }
+
+        String chaveRedis = PREFIXO + lojistaId + ":" + sha256(chave);
+        String impressao = impressaoDigital(recurso, corpo);
+
+        // Near-cache: resposta já concluída neste nó
+        Entrada entrada = cacheLocal.get(chaveRedis);
+        if (entrada != null && entrada.expiraEm > System.currentTimeMillis()) {
+            return replay(entrada.registro, impressao, "cache");
+        }
+
+        // Coalescência local: duplicatas concorrentes aguardam a primeira execução
+        CompletableFuture<Registro> execucao = new CompletableFuture<>();
+        CompletableFuture<Registro> existente = emAndamento.putIfAbsent(chaveRedis, execucao);
+        if (existente != null) {
+            return aguardarLocal(existente, impressao);
+        }
+
+        try {
+            return executarComTrava(chaveRedis, impressao, operacao, execucao);
+        } catch (RuntimeException e) {
+            execucao.completeExceptionally(e);
+            throw e;
+        } finally {
+            emAndamento.remove(chaveRedis, execucao);
+        }
+    }
+
+    /**
+     * Adquire a chave no Redis e executa a operação, ou replica a execução de outro nó
+     *
+     * @param execucao Concluída com o registro final, repassado às duplicatas locais
+     */
+    private ResponseEntity<PaymentResponse> executarComTrava(String chaveRedis, String impressao,
+                                                             Supplier<ResponseEntity<PaymentResponse>> operacao,
+                                                             CompletableFuture<Registro> execucao) {
+        long limite = System.currentTimeMillis() + esperaMaxMs;
+
+        // Valor único por execução: identifica o dono da trava na renovação e na liberação
+        String trava = serializar(Registro.emAndamento(impressao, UUID.randomUUID().toString()));
+
+        while (true) {
+            Boolean adquirida;
+            try {
+                adquirida = stringRedisTemplate.opsForValue().setIfAbsent(chaveRedis,
+                    trava, Duration.ofMillis(lockTtlMs));
+            } catch (Exception e) {
+                logger.error("Redis indisponível para idempotência, seguindo sem trava distribuída: {}", e.getMessage());
+                meterRegistry.counter("pip.idempotencia", "resultado", "sem_redis").increment();
+                adquirida = null;
+            }
+
+            if (adquirida == null || adquirida) {
+                Registro registro = executarEArmazenar(chaveRedis, impressao, operacao,
+                    adquirida != null ? trava : null);
+                execucao.complete(registro);
+                return registro.paraResposta(false);
+            }
+
+            // Chave já existe: concluída (replay) ou em andamento em outro nó
+            Registro atual = ler(chaveRedis);
+            if (atual != null && CONCLUIDO.equals(atual.estado)) {
+                armazenarLocal(chaveRedis, atual);
+                execucao.complete(atual);
+                return replay(atual, impressao, "redis");
+            }
+            if (atual != null && !impressao.equals(atual.hash)) {
+                Registro conflito = chaveReutilizada();
+                execucao.complete(conflito);
+                return conflito.paraResposta(false);
+            }
+            if (System.currentTimeMillis() >= limite) {
+                Registro pendente = emProcessamento();
+                execucao.complete(pendente);
+                return pendente.paraResposta(false);
+            }
+
+            // Sem registro, a chave expirou entre o SET NX e o GET: tenta adquirir de novo
+            if (atual != null) {
+                dormir(intervaloEsperaMs);
+            }
+        }
+    }
+
+    /**
+     * @param trava Valor da trava adquirida no Redis, ou null se a operação segue sem Redis
+     */
+    private Registro executarEArmazenar(String chaveRedis, String impressao,
+                                        Supplier<ResponseEntity<PaymentResponse>> operacao, String trava) {
+        boolean comRedis = trava != null;
+        ResponseEntity<PaymentResponse> resposta;
+        ScheduledFuture<?> renovacao = comRedis ? agendarRenovacao(chaveRedis, trava) : null;
+        try {
+            resposta = operacao.get();
+        } catch (RuntimeException e) {
+            // Sem resposta final: libera a chave para que o cliente possa tentar de novo
+            if (comRedis) {
+                renovacao.cancel(false);
+                liberar(chaveRedis, trava);
+            }
+            throw e;
+        }
+        if (comRedis) {
+            renovacao.cancel(false);
+        }
+
+        Registro registro = Registro.concluido(impressao, resposta.getStatusCode().value(), resposta.getBody());
+        meterRegistry.counter("pip.idempotencia", "resultado", "nova").increment();
+
+        if (comRedis) {
+            try {
+                stringRedisTemplate.opsForValue().set(chaveRedis, serializar(registro), Duration.ofHours(ttlHoras));
+            } catch (Exception e) {
+                // A trava (sem renovação) expira em lock-ttl-ms; até lá as duplicatas de outros nós recebem 409
+                logger.error("Falha ao gravar resposta idempotente: {}", e.getMessage());
+            }
+        }
+        armazenarLocal(chaveRedis, registro);
+        return registro;
+    }
+
+    private ResponseEntity<PaymentResponse> aguardarLocal(CompletableFuture<Registro> existente, String impressao) {
+        try {
+            Registro registro = existente.get(esperaMaxMs, TimeUnit.MILLISECONDS);
+            return replay(registro, impressao, "coalescida");
+        } catch (TimeoutException e) {
+            return emProcessamento().paraResposta(false);
+        } catch (ExecutionException e) {
+            // A primeira execução falhou sem resposta final; o cliente pode tentar de novo
+            return Registro.rejeitado(HttpStatus.CONFLICT, "IDEMPOTENCY_KEY_IN_PROGRESS",
+                "Requisição com a mesma Idempotency-Key falhou; tente novamente").paraResposta(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return emProcessamento().paraResposta(false);
+        }
+    }
+
+    private ResponseEntity<PaymentResponse> replay(Registro registro, String impressao, String origem) {
+        if (REJEITADO.equals(registro.estado)) {
+            // Resposta da própria camada de idempotência (conflito ou em andamento)
+            return registro.paraResposta(false);
+        }
+        if (!impressao.equals(registro.hash)) {
+            return chaveReutilizada().paraResposta(false);
+        }
+        meterRegistry.counter("pip.idempotencia", "resultado", "replay", "origem", origem).increment();
+        return registro.paraResposta(true);
+    }
+
+    private Registro chaveReutilizada() {
+        meterRegistry.counter("pip.idempotencia", "resultado", "conflito").increment();
+        return Registro.rejeitado(HttpStatus.UNPROCESSABLE_ENTITY, "IDEMPOTENCY_KEY_REUSED",
+            "Idempotency-Key já utilizada com uma requisição diferente");
+    }
+
+    private Registro emProcessamento() {
+        meterRegistry.counter("pip.idempotencia", "resultado", "em_andamento").increment();
+        return Registro.rejeitado(HttpStatus.CONFLICT, "IDEMPOTENCY_KEY_IN_PROGRESS",
+            "Requisição com a mesma Idempotency-Key ainda em processamento");
+    }
+
+    private Registro ler(String chaveRedis) {
+        try {
+            String valor = stringRedisTemplate.opsForValue().get(chaveRedis);
+            return valor != null ? objectMapper.readValue(valor, Registro.class) : null;
+        } catch (Exception e) {
+            logger.error("Falha ao ler registro idempotente: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Renova a trava enquanto a operação roda: a duração da operação (gateway com retries,
+     * hedging e timeouts) não fica limitada a lock-ttl-ms
+     */
+    private ScheduledFuture<?> agendarRenovacao(String chaveRedis, String trava) {
+        long intervalo = Math.max(1, lockTtlMs / 3);
+        return renovador.scheduleAtFixedRate(() -> renovar(chaveRedis, trava),
+            intervalo, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    private void renovar(String chaveRedis, String trava) {
+        try {
+            Long renovada = stringRedisTemplate.execute(RENOVAR_TRAVA, List.of(chaveRedis),
+                trava, String.valueOf(lockTtlMs));
+            if (renovada == null || renovada == 0) {
+                // Outra execução pode ter adquirido a chave; a resposta final ainda sobrescreve o registro
+                logger.error("Trava idempotente expirou durante a operação: {}", chaveRedis);
+                meterRegistry.counter("pip.idempotencia", "resultado", "trava_perdida").increment();
+            }
+        } catch (Exception e) {
+            logger.warn("Falha ao renovar trava idempotente: {}", e.getMessage());
+        }
+    }
+
+    private void liberar(String chaveRedis, String trava) {
+        try {
+            stringRedisTemplate.execute(LIBERAR_TRAVA, List.of(chaveRedis), trava);
+        } catch (Exception e) {
+            logger.error("Falha ao liberar chave idempotente: {}", e.getMessage());
+        }
+    }
+
+    private void armazenarLocal(String chaveRedis, Registro registro) {
+        if (cacheLocal.size() < maxEntradasCache) {
+            cacheLocal.put(chaveRedis, new Entrada(registro, System.currentTimeMillis() + ttlHoras * 3600_000L));
+        }
+    }
+
+    /**
+     * Remove entradas expiradas do near-cache
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long agora = System.currentTimeMillis();
+        cacheLocal.entrySet().removeIf(entry -> entry.getValue().expiraEm <= agora);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        renovador.shutdownNow();
+    }
+
+    private String impressaoDigital(String recurso, Object corpo) {
+        try {
+            return sha256(recurso + ":" + objectMapper.writeValueAsString(corpo));
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao serializar requisição para idempotência", e);
+        }
+    }
+
+    private String serializar(Registro registro) {
+        try {
+            return objectMapper.writeValueAsString(registro);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao serializar resposta idempotente", e);
+        }
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String sha256(String valor) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(valor.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    /**
+     * Registro de uma chave (armazenado no Redis como JSON)
+     */
+    static class Registro {
+        public String estado;
+        public String hash;
+        public String dono;
+        public int status;
+        public PaymentResponse corpo;
+
+        static Registro emAndamento(String hash, String dono) {
+            Registro registro = new Registro();
+            registro.estado = EM_ANDAMENTO;
+            registro.hash = hash;
+            registro.dono = dono;
+            return registro;
+        }
+
+        static Registro concluido(String hash, int status, PaymentResponse corpo) {
+            Registro registro = new Registro();
+            registro.estado = CONCLUIDO;
+            registro.hash = hash;
+            registro.status = status;
+            registro.corpo = corpo;
+            return registro;
+        }
+
+        /**
+         * Resposta da camada de idempotência; nunca armazenada, apenas repassada às duplicatas locais
+         */
+        static Registro rejeitado(HttpStatus status, String errorCode, String errorMessage) {
+            PaymentResponse corpo = new PaymentResponse();
+            corpo.setSuccess(false);
+            corpo.setErrorCode(errorCode);
+            corpo.setErrorMessage(errorMessage);
+            corpo.setTimestamp(ZonedDateTime.now());
+
+            Registro registro = new Registro();
+            registro.estado = REJEITADO;
+            registro.status = status.value();
+            registro.corpo = corpo;
+            return registro;
+        }
+
+        ResponseEntity<PaymentResponse> paraResposta(boolean replay) {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(status);
+            if (replay) {
+                builder.header(HEADER_REPLAY, "true");
+            } else if (status == HttpStatus.CONFLICT.value()) {
+                builder.header("Retry-After", "1");
+            }
+            return builder.body(corpo);
+        }
+    }
+
+    private static final class Entrada {
+        private final Registro registro;
+        private final long expiraEm;
+
+        private Entrada(Registro registro, long expiraEm) {
+            this.registro = registro;
+            this.expiraEm = expiraEm;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.pip.service;
+
+import com.pip.model.LogTransacao;
+import com.pip.repository.LogTransacaoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escritor assíncrono e em lote dos logs de transação
+ *
+ * Os registros de {@link LogTransacao} são enfileirados em um buffer circular
+ * limitado e gravados fora da thread da requisição por uma thread dedicada,
+ * usando inserts em lote (hibernate.jdbc.batch_size).
+ *
+ * Características:
+ * - Enfileiramento somente após o commit da transação de negócio
+ * - Flush por tamanho de lote ou por intervalo, o que ocorrer primeiro
+ * - Política configurável para buffer cheio (DESCARTAR, BLOQUEAR, SINCRONO)
+ * - Drenagem completa do buffer no desligamento da aplicação
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class LogTransacaoWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogTransacaoWriter.class);
+
+    /**
+     * Política aplicada quando o buffer está cheio
+     */
+    public enum PoliticaBufferCheio {
+        /** Descarta o registro e incrementa a métrica de descartes */
+        DESCARTAR,
+        /** Bloqueia a thread chamadora até o tempo limite e então descarta */
+        BLOQUEAR,
+        /** Grava o registro de forma síncrona na thread chamadora */
+        SINCRONO
+    }
+
+    @Autowired
+    private LogTransacaoRepository logTransacaoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${log.transacao.buffer.capacidade:10000}")
+    private int capacidadeBuffer;
+
+    @Value("${log.transacao.flush.tamanho:500}")
+    private int tamanhoLote;
+
+    @Value("${log.transacao.flush.intervalo-ms:200}")
+    private long intervaloFlushMs;
+
+    @Value("${log.transacao.buffer.politica:SINCRONO}")
+    private PoliticaBufferCheio politicaBufferCheio;
+
+    @Value("${log.transacao.buffer.bloqueio-max-ms:50}")
+    private long bloqueioMaxMs;
+
+    private ArrayBlockingQueue<LogTransacao> buffer;
+    private TransactionTemplate transactionTemplate;
+    private Thread threadEscrita;
+    private volatile boolean ativo;
+
+    private Counter contadorGravados;
+    private Counter contadorDescartados;
+    private Counter contadorFalhas;
+
+    @PostConstruct
+    public void iniciar() {
+        this.buffer = new ArrayBlockingQueue<>(capacidadeBuffer);
+
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        Gauge.builder("pip.log_transacao.buffer.tamanho", buffer, ArrayBlockingQueue::size)
+            .description("Registros de log aguardando gravação")
+            .register(meterRegistry);
+        this.contadorGravados = Counter.builder("pip.log_transacao.gravados")
+            .description("Registros de log gravados em lote")
+            .register(meterRegistry);
+        this.contadorDescartados = Counter.builder("pip.log_transacao.descartados")
+            .description("Registros de log descartados por buffer cheio")
+            .register(meterRegistry);
+        this.contadorFalhas = Counter.builder("pip.log_transacao.falhas")
+            .description("Registros de log que falharam na gravação")
+            .register(meterRegistry);
+
+        this.ativo = true;
+        this.threadEscrita = new Thread(this::loopEscrita, "log-transacao-writer");
+        this.threadEscrita.setDaemon(true);
+        this.threadEscrita.start();
+
+        logger.info("LogTransacaoWriter iniciado - capacidade: {}, lote: {}, intervalo: {}ms, politica: {}",
+            capacidadeBuffer, tamanhoLote, intervaloFlushMs, politicaBufferCheio);
+    }
+
+    /**
+     * Registra um log de transação para gravação assíncrona
+     *
+     * Se houver uma transação ativa, o registro só é enfileirado após o commit,
+     * garantindo que a transação referenciada já exista no banco.
+     *
+     * @param log Registro a ser gravado
+     */
+    public void registrar(LogTransacao log) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enfileirar(log);
+                }
+            });
+        } else {
+            enfileirar(log);
+        }
+    }
+
+    /**
+     * Insere o registro no buffer aplicando a política de buffer cheio
+     */
+    private void enfileirar(LogTransacao log) {
+        if (buffer.offer(log)) {
+            return;
+        }
+
+        switch (politicaBufferCheio) {
+            case BLOQUEAR -> {
+                try {
+                    if (!buffer.offer(log, bloqueioMaxMs, TimeUnit.MILLISECONDS)) {
+                        descartar();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    descartar();
+                }
+            }
+            case SINCRONO -> gravarLote(List.of(log));
+            default -> descartar();
+        }
+    }
+
+    private void descartar() {
+        contadorDescartados.increment();
+        logger.warn("Buffer de logs de transação cheio ({} registros), registro descartado", capacidadeBuffer);
+    }
+
+    /**
+     * Laço da thread de escrita: aguarda o primeiro registro até o intervalo
+     * de flush e drena o buffer até o tamanho do lote
+     */
+    private void loopEscrita() {
+        List<LogTransacao> lote = new ArrayList<>(tamanhoLote);
+
+        while (ativo) {
+            try {
+                LogTransacao primeiro = buffer.poll(intervaloFlushMs, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+
+                lote.add(primeiro);
+                buffer.drainTo(lote, tamanhoLote - 1);
+
+                gravarLote(lote);
+                lote.clear();
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Erro inesperado no escritor de logs de transação: {}", e.getMessage(), e);
+                reenfileirar(lote);
+            }
+        }
+    }
+
+    /**
+     * Devolve ao buffer um lote que não chegou a ser gravado; o que não couber
+     * é descartado pela métrica de descartes
+     */
+    private void reenfileirar(List<LogTransacao> lote) {
+        for (LogTransacao log : lote) {
+            if (!buffer.offer(log)) {
+                descartar();
+            }
+        }
+        lote.clear();
+    }
+
+    /**
+     * Grava um lote em uma única transação; em caso de falha, tenta registro a registro
+     * para não perder o lote inteiro por causa de uma linha inválida
+     */
+    private void gravarLote(List<LogTransacao> lote) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> logTransacaoRepository.saveAll(lote));
+            contadorGravados.increment(lote.size());
+
+        } catch (Exception e) {
+            logger.error("Falha ao gravar lote de {} logs de transação: {}", lote.size(), e.getMessage());
+
+            if (lote.size() == 1) {
+                contadorFalhas.increment();
+                return;
+            }
+
+            for (LogTransacao log : lote) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> logTransacaoRepository.save(log));
+                    contadorGravados.increment();
+                } catch (Exception ex) {
+                    contadorFalhas.increment();
+                    logger.error("Log de transação descartado após falha na gravação: {}", ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drena o buffer no desligamento da aplicação
+     *
+     * A thread de escrita não é interrompida: ela termina o lote em andamento e
+     * sai do laço quando o poll expira, em até um intervalo de flush.
+     */
+    @PreDestroy
+    public void encerrar() {
+        logger.info("Encerrando LogTransacaoWriter - {} registros pendentes", buffer.size());
+
+        ativo = false;
+        try {
+            threadEscrita.join(intervaloFlushMs + TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (threadEscrita.isAlive()) {
+            logger.warn("Thread de escrita ainda gravando um lote; drenando o restante do buffer em paralelo");
+        }
+
+        List<LogTransacao> lote = new ArrayList<>(tamanhoLote);
+        while (buffer.drainTo(lote, tamanhoLote) > 0) {
+            gravarLote(lote);
+            lote.clear();
+        }
+
+        logger.info("LogTransacaoWriter encerrado");
+    }
+
+    /**
+     * Retorna o número de registros aguardando gravação
+     */
+    public int getPendentes() {
+        return buffer.size();
+    }
+}
@@ -0,0 +1,333 @@
+package com.pip.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.pip.dto.AuthorizationRequest;
+import com.pip.dto.BatchItemResult;
+import com.pip.dto.PaymentResponse;
+import com.pip.model.Gateway;
+import com.pip.model.Lojista;
+import com.pip.model.Transacao;
+import com.pip.model.TransactionStatus;
+import com.pip.repository.TransacaoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serviço de autorização de pagamentos em lote
+ *
+ * Lê as autorizações em fluxo (NDJSON ou array JSON) e as processa em blocos:
+ * 1. Itens já processados em uma execução anterior do mesmo lote são devolvidos sem nova cobrança
+ * 2. Os itens novos são validados, roteados e inseridos em um único batch de INSERTs
+ * 3. As autorizações do bloco são enviadas em paralelo, limitadas por gateway
+ * 4. Os resultados do bloco são escritos na saída como NDJSON, na ordem de entrada
+ *
+ * Cada transação guarda o ID do lote e a posição do item; reenviar o mesmo arquivo
+ * com o mesmo ID de lote retoma o processamento sem duplicar cobranças.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class LoteAutorizacaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoteAutorizacaoService.class);
+
+    private static final byte[] NOVA_LINHA = {'\n'};
+
+    @Autowired
+    private PagamentoService pagamentoService;
+
+    @Autowired
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Autowired
+    private HedgedAuthorizationService hedgedAuthorizationService;
+
+    @Autowired
+    private TransacaoRepository transacaoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${pagamento.lote.tamanho-bloco:500}")
+    private int tamanhoBloco;
+
+    @Value("${pagamento.lote.paralelismo:64}")
+    private int paralelismo;
+
+    @Value("${pagamento.lote.max-por-gateway:16}")
+    private int maxPorGateway;
+
+    @Value("${pagamento.lote.max-itens:1000000}")
+    private int maxItens;
+
+    private ThreadPoolExecutor executor;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final Map<String, Semaphore> limitesGateway = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void iniciar() {
+        this.executor = new ThreadPoolExecutor(
+            paralelismo, paralelismo,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("lote-autorizacao-")
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Processa um lote de autorizações, escrevendo um resultado NDJSON por item
+     *
+     * @param lojista Lojista dono do lote
+     * @param loteId ID do lote (usado para retomada)
+     * @param entrada Autorizações em NDJSON ou array JSON
+     * @param saida Saída NDJSON com um {@link BatchItemResult} por item
+     * @return Quantidade de itens processados
+     */
+    public int processarLote(Lojista lojista, String loteId, InputStream entrada, OutputStream saida) throws IOException {
+        logger.info("Iniciando lote {} do lojista {}", loteId, lojista.getId());
+
+        ObjectWriter escritor = objectMapper.writerFor(BatchItemResult.class);
+        int indice = 0;
+
+        try (MappingIterator<AuthorizationRequest> itens =
+                 objectMapper.readerFor(AuthorizationRequest.class).readValues(entrada)) {
+
+            List<AuthorizationRequest> bloco = new ArrayList<>(tamanhoBloco);
+            while (true) {
+                AuthorizationRequest request;
+                try {
+                    if (!itens.hasNextValue()) {
+                        break;
+                    }
+                    request = itens.nextValue();
+                } catch (IOException e) {
+                    // JSON malformado: não é possível sincronizar o restante do fluxo
+                    escreverBloco(escritor, saida, processarBloco(lojista, loteId, indice, bloco));
+                    indice += bloco.size();
+                    escrever(escritor, saida, BatchItemResult.erro(indice, "INVALID_JSON", e.getMessage()));
+                    logger.warn("Lote {} interrompido no item {}: JSON inválido", loteId, indice);
+                    return indice;
+                }
+
+                if (indice + bloco.size() >= maxItens) {
+                    escreverBloco(escritor, saida, processarBloco(lojista, loteId, indice, bloco));
+                    indice += bloco.size();
+                    escrever(escritor, saida, BatchItemResult.erro(indice, "BATCH_TOO_LARGE",
+                        "Lote excede o limite de " + maxItens + " itens"));
+                    return indice;
+                }
+
+                bloco.add(request);
+                if (bloco.size() == tamanhoBloco) {
+                    escreverBloco(escritor, saida, processarBloco(lojista, loteId, indice, bloco));
+                    indice += bloco.size();
+                    bloco.clear();
+                }
+            }
+
+            escreverBloco(escritor, saida, processarBloco(lojista, loteId, indice, bloco));
+            indice += bloco.size();
+        }
+
+        logger.info("Lote {} concluído: {} itens", loteId, indice);
+        return indice;
+    }
+
+    /**
+     * Processa um bloco de itens consecutivos do lote
+     *
+     * @param inicio Índice do primeiro item do bloco no lote
+     */
+    List<BatchItemResult> processarBloco(Lojista lojista, String loteId, int inicio, List<AuthorizationRequest> requests) {
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+
+        BatchItemResult[] resultados = new BatchItemResult[requests.size()];
+        Map<Integer, Transacao> existentes = buscarExistentes(lojista, loteId, inicio, requests.size());
+
+        List<Integer> posicoes = new ArrayList<>();
+        List<Transacao> novas = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            int indice = inicio + i;
+            AuthorizationRequest request = requests.get(i);
+
+            Transacao existente = existentes.get(indice);
+            if (existente != null) {
+                resultados[i] = resultado(indice, existente);
+                resultados[i].setResumed(true);
+                continue;
+            }
+
+            Set<ConstraintViolation<AuthorizationRequest>> violacoes = validator.validate(request);
+            if (!violacoes.isEmpty()) {
+                resultados[i] = BatchItemResult.erro(indice, "VALIDATION_ERROR", violacoes.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining("; ")));
+                continue;
+            }
+
+            Gateway gateway;
+            try {
+                gateway = gatewayRoutingService.selecionarMelhorGateway(lojista, request.getAmount());
+            } catch (Exception e) {
+                resultados[i] = BatchItemResult.erro(indice, "ROUTING_ERROR", e.getMessage());
+                continue;
+            }
+
+            Transacao transacao = pagamentoService.novaTransacao(request, lojista);
+            transacao.setGateway(gateway);
+            transacao.setLoteId(loteId);
+            transacao.setLoteIndice(indice);
+
+            posicoes.add(i);
+            novas.add(transacao);
+        }
+
+        if (!novas.isEmpty()) {
+            // Um único batch de INSERTs para o bloco (hibernate.jdbc.batch_size)
+            transactionTemplate.executeWithoutResult(status -> transacaoRepository.saveAll(novas));
+
+            CompletableFuture<?>[] autorizacoes = new CompletableFuture<?>[novas.size()];
+            for (int n = 0; n < novas.size(); n++) {
+                int i = posicoes.get(n);
+                Transacao transacao = novas.get(n);
+                AuthorizationRequest request = requests.get(i);
+                autorizacoes[n] = CompletableFuture.runAsync(
+                    () -> resultados[i] = autorizar(lojista, request, transacao), executor);
+            }
+            CompletableFuture.allOf(autorizacoes).join();
+        }
+
+        for (BatchItemResult resultado : resultados) {
+            meterRegistry.counter("pip.pagamento.lote.itens", "status", resultado.getStatus()).increment();
+        }
+
+        return List.of(resultados);
+    }
+
+    /**
+     * Autoriza um item já persistido, respeitando o limite de chamadas simultâneas por gateway
+     */
+    private BatchItemResult autorizar(Lojista lojista, AuthorizationRequest request, Transacao transacao) {
+        Gateway gateway = transacao.getGateway();
+        Semaphore limite = limitesGateway.computeIfAbsent(gateway.getCodigo(), codigo -> new Semaphore(maxPorGateway));
+
+        PaymentResponse response;
+        limite.acquireUninterruptibly();
+        try {
+            HedgedAuthorizationService.ResultadoAutorizacao resultado =
+                hedgedAuthorizationService.autorizar(gateway, request, transacao);
+            response = resultado.getResponse();
+            if (resultado.getGateway() != gateway) {
+                transacao.setGateway(resultado.getGateway());
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao autorizar item {} do lote {}: {}",
+                transacao.getLoteIndice(), transacao.getLoteId(), e.getMessage());
+
+            transacao.setStatus(TransactionStatus.FAILED.toString());
+            transacao.setErrorMessage(e.getMessage());
+            pagamentoService.atualizarResultadoAutorizacao(transacao);
+            pagamentoService.registrarLog(transacao, "AUTHORIZATION_ERROR", "Erro no processamento: " + e.getMessage());
+
+            return resultado(transacao.getLoteIndice(), transacao);
+        } finally {
+            limite.release();
+        }
+
+        pagamentoService.aplicarRespostaAutorizacao(transacao, response);
+        pagamentoService.atualizarResultadoAutorizacao(transacao);
+        pagamentoService.notificarResultadoAutorizacao(lojista, transacao, response);
+
+        return resultado(transacao.getLoteIndice(), transacao);
+    }
+
+    private Map<Integer, Transacao> buscarExistentes(Lojista lojista, String loteId, int inicio, int quantidade) {
+        Map<Integer, Transacao> existentes = new HashMap<>();
+        for (Transacao transacao : transacaoRepository.findByLojistaIdAndLoteIdAndLoteIndiceBetween(
+                lojista.getId(), loteId, inicio, inicio + quantidade - 1)) {
+            existentes.put(transacao.getLoteIndice(), transacao);
+        }
+        return existentes;
+    }
+
+    /**
+     * Resultado a partir do estado persistido da transação
+     *
+     * Itens PENDING de uma execução interrompida não são reenviados ao gateway:
+     * o resultado da chamada original é desconhecido e deve ser consultado.
+     */
+    private BatchItemResult resultado(int indice, Transacao transacao) {
+        BatchItemResult resultado = new BatchItemResult(indice);
+        resultado.setTransactionId(transacao.getTransactionId());
+        resultado.setStatus(transacao.getStatus());
+        resultado.setSuccess(TransactionStatus.AUTHORIZED.toString().equals(transacao.getStatus())
+            || TransactionStatus.CAPTURED.toString().equals(transacao.getStatus()));
+        resultado.setGatewayTransactionId(transacao.getGatewayTransactionId());
+        resultado.setAuthorizationCode(transacao.getAuthorizationCode());
+        resultado.setErrorCode(transacao.getErrorCode());
+        resultado.setErrorMessage(transacao.getErrorMessage());
+        return resultado;
+    }
+
+    private void escreverBloco(ObjectWriter escritor, OutputStream saida, List<BatchItemResult> resultados) throws IOException {
+        for (BatchItemResult resultado : resultados) {
+            saida.write(escritor.writeValueAsBytes(resultado));
+            saida.write(NOVA_LINHA);
+        }
+        saida.flush();
+    }
+
+    private void escrever(ObjectWriter escritor, OutputStream saida, BatchItemResult resultado) throws IOException {
+        escreverBloco(escritor, saida, List.of(resultado));
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdown();
+    }
+}
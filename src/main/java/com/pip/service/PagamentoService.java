@@ -6,7 +6,6 @@ import com.pip.dto.VoidRequest;
 import com.pip.dto.PaymentResponse;
 import com.pip.model.*;
 import com.pip.repository.TransacaoRepository;
-import com.pip.repository.LogTransacaoRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,7 +40,7 @@ public class PagamentoService {
     private TransacaoRepository transacaoRepository;
 
     @Autowired
-    private LogTransacaoRepository logTransacaoRepository;
+    private LogTransacaoWriter logTransacaoWriter;
 
     @Autowired
     private GatewayRoutingService gatewayRoutingService;
@@ -49,93 +48,168 @@ public class PagamentoService {
     @Autowired
     private GatewayIntegrationService gatewayIntegrationService;
 
+    @Autowired
+    private HedgedAuthorizationService hedgedAuthorizationService;
+
     @Autowired
     private WebhookService webhookService;
 
     /**
      * Autoriza um novo pagamento
      * 
+     * O fluxo executa apenas um insert antes da chamada ao gateway e um update
+     * após a resposta, cada um em sua própria transação curta. A chamada HTTP
+     * ao gateway acontece sem transação nem conexão de banco abertas, de modo
+     * que o tamanho do pool não limite a vazão pela latência do gateway.
+     * 
      * @param request Dados da requisição de autorização
      * @param lojista Lojista que está processando o pagamento
      * @return Resposta com os detalhes do pagamento processado
      */
-    @Transactional
     public PaymentResponse autorizarPagamento(AuthorizationRequest request, Lojista lojista) {
         logger.info("Iniciando autorização de pagamento para lojista {}", lojista.getId());
 
         // Criar transação
-        Transacao transacao = new Transacao();
-        transacao.setTransactionId("TXN-" + UUID.randomUUID());
-        transacao.setLojista(lojista);
-        transacao.setValor(request.getAmount());
-        transacao.setMoeda(request.getCurrency());
-        transacao.setParcelas(request.getInstallments());
-        transacao.setDescricao(request.getDescription());
-        transacao.setStatus(TransactionStatus.PENDING.toString());
-        transacao.setCreatedAt(ZonedDateTime.now());
+        Transacao transacao = novaTransacao(request, lojista);
 
-        // Dados do cliente
-        if (request.getCustomer() != null) {
-            transacao.setCustomerName(request.getCustomer().get("name"));
-            transacao.setCustomerEmail(request.getCustomer().get("email"));
-            transacao.setCustomerDocument(request.getCustomer().get("document"));
+        // Selecionar melhor gateway (tabela de roteamento em memória, sem acesso ao banco)
+        Gateway gateway;
+        try {
+            gateway = gatewayRoutingService.selecionarMelhorGateway(lojista, request.getAmount());
+        } catch (Exception e) {
+            logger.error("Erro ao selecionar gateway: {}", e.getMessage(), e);
+
+            transacao.setStatus(TransactionStatus.FAILED.toString());
+            transacao.setErrorMessage(e.getMessage());
+            transacao = transacaoRepository.save(transacao);
+
+            registrarLog(transacao, "AUTHORIZATION_ERROR", "Erro no processamento: " + e.getMessage());
+
+            throw new RuntimeException("Falha ao processar autorização: " + e.getMessage(), e);
         }
 
-        // Salvar transação inicial
+        // Único insert antes da chamada externa
+        transacao.setGateway(gateway);
         transacao = transacaoRepository.save(transacao);
 
-        // Registrar log
         registrarLog(transacao, "AUTHORIZATION_STARTED", "Iniciando processo de autorização");
 
+        logger.info("Gateway selecionado: {} para transação {}", gateway.getCodigo(), transacao.getTransactionId());
+
+        // Processar autorização no gateway (fora de qualquer transação de banco)
+        PaymentResponse response;
         try {
-            // Selecionar melhor gateway
-            Gateway gateway = gatewayRoutingService.selecionarMelhorGateway(lojista, request.getAmount());
-            transacao.setGateway(gateway);
-            transacao = transacaoRepository.save(transacao);
+            HedgedAuthorizationService.ResultadoAutorizacao resultado =
+                hedgedAuthorizationService.autorizar(gateway, request, transacao);
+            response = resultado.getResponse();
+
+            // Com hedge, a resposta pode ter vindo do gateway de backup
+            if (resultado.getGateway() != gateway) {
+                gateway = resultado.getGateway();
+                transacao.setGateway(gateway);
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao autorizar pagamento: {}", e.getMessage(), e);
 
-            logger.info("Gateway selecionado: {} para transação {}", gateway.getCodigo(), transacao.getTransactionId());
+            transacao.setStatus(TransactionStatus.FAILED.toString());
+            transacao.setErrorMessage(e.getMessage());
+            atualizarResultadoAutorizacao(transacao);
 
-            // Processar autorização no gateway
-            PaymentResponse response = gatewayIntegrationService.authorize(gateway, request, transacao);
+            registrarLog(transacao, "AUTHORIZATION_ERROR", "Erro no processamento: " + e.getMessage());
 
-            // Atualizar transação com resposta
-            if (response.isSuccess()) {
-                transacao.setStatus(TransactionStatus.AUTHORIZED.toString());
-                transacao.setGatewayTransactionId(response.getGatewayTransactionId());
-                transacao.setAuthorizationCode(response.getAuthorizationCode());
-                transacao.setNsu(response.getNsu());
-                transacao.setTid(response.getTid());
-                transacao.setAuthorizedAt(ZonedDateTime.now());
+            throw new RuntimeException("Falha ao processar autorização: " + e.getMessage(), e);
+        }
 
-                registrarLog(transacao, "AUTHORIZATION_SUCCESS", "Autorização realizada com sucesso");
+        // Atualizar transação com resposta
+        aplicarRespostaAutorizacao(transacao, response);
 
-                // Criar webhook para notificar lojista
-                webhookService.criarWebhook(lojista, transacao, "TRANSACTION_AUTHORIZED");
+        // Único update após a resposta do gateway
+        atualizarResultadoAutorizacao(transacao);
 
-            } else {
-                transacao.setStatus(TransactionStatus.FAILED.toString());
-                transacao.setErrorCode(response.getErrorCode());
-                transacao.setErrorMessage(response.getErrorMessage());
+        notificarResultadoAutorizacao(lojista, transacao, response);
 
-                registrarLog(transacao, "AUTHORIZATION_FAILED", "Falha na autorização: " + response.getErrorMessage());
-            }
+        return response;
+    }
 
-            transacao.setUpdatedAt(ZonedDateTime.now());
-            transacao = transacaoRepository.save(transacao);
+    /**
+     * Monta a transação pendente a partir da requisição (sem persistir)
+     */
+    Transacao novaTransacao(AuthorizationRequest request, Lojista lojista) {
+        Transacao transacao = new Transacao();
+        transacao.setTransactionId("TXN-" + UUID.randomUUID());
+        transacao.setLojista(lojista);
+        transacao.setValor(request.getAmount());
+        transacao.setMoeda(request.getCurrency());
+        transacao.setParcelas(request.getInstallments());
+        transacao.setDescricao(request.getDescription());
+        transacao.setStatus(TransactionStatus.PENDING.toString());
+        transacao.setCreatedAt(ZonedDateTime.now());
 
-            return response;
+        // Dados do cliente
+        if (request.getCustomer() != null) {
+            transacao.setCustomerName(request.getCustomer().get("name"));
+            transacao.setCustomerEmail(request.getCustomer().get("email"));
+            transacao.setCustomerDocument(request.getCustomer().get("document"));
+        }
 
-        } catch (Exception e) {
-            logger.error("Erro ao autorizar pagamento: {}", e.getMessage(), e);
+        return transacao;
+    }
 
+    /**
+     * Copia a resposta do gateway para a transação
+     */
+    void aplicarRespostaAutorizacao(Transacao transacao, PaymentResponse response) {
+        if (response.isSuccess()) {
+            transacao.setStatus(TransactionStatus.AUTHORIZED.toString());
+            transacao.setGatewayTransactionId(response.getGatewayTransactionId());
+            transacao.setAuthorizationCode(response.getAuthorizationCode());
+            transacao.setNsu(response.getNsu());
+            transacao.setTid(response.getTid());
+            transacao.setAuthorizedAt(ZonedDateTime.now());
+        } else {
             transacao.setStatus(TransactionStatus.FAILED.toString());
-            transacao.setErrorMessage(e.getMessage());
-            transacao.setUpdatedAt(ZonedDateTime.now());
-            transacaoRepository.save(transacao);
+            transacao.setErrorCode(response.getErrorCode());
+            transacao.setErrorMessage(response.getErrorMessage());
+        }
+    }
 
-            registrarLog(transacao, "AUTHORIZATION_ERROR", "Erro no processamento: " + e.getMessage());
+    /**
+     * Registra o log do resultado e notifica o lojista em caso de aprovação
+     */
+    void notificarResultadoAutorizacao(Lojista lojista, Transacao transacao, PaymentResponse response) {
+        if (response.isSuccess()) {
+            registrarLog(transacao, "AUTHORIZATION_SUCCESS", "Autorização realizada com sucesso");
+
+            // Criar webhook para notificar lojista
+            webhookService.criarWebhook(lojista, transacao, "TRANSACTION_AUTHORIZED");
+        } else {
+            registrarLog(transacao, "AUTHORIZATION_FAILED", "Falha na autorização: " + response.getErrorMessage());
+        }
+    }
 
-            throw new RuntimeException("Falha ao processar autorização: " + e.getMessage(), e);
+    /**
+     * Persiste o resultado da autorização com um único UPDATE,
+     * sem recarregar a entidade
+     */
+    void atualizarResultadoAutorizacao(Transacao transacao) {
+        transacao.setUpdatedAt(ZonedDateTime.now());
+
+        int atualizadas = transacaoRepository.atualizarResultadoAutorizacao(
+            transacao.getId(),
+            transacao.getStatus(),
+            transacao.getGateway(),
+            transacao.getGatewayTransactionId(),
+            transacao.getAuthorizationCode(),
+            transacao.getNsu(),
+            transacao.getTid(),
+            transacao.getAuthorizedAt(),
+            transacao.getErrorCode(),
+            transacao.getErrorMessage(),
+            transacao.getUpdatedAt()
+        );
+
+        if (atualizadas != 1) {
+            logger.warn("Resultado da autorização não persistido para transação {}", transacao.getTransactionId());
         }
     }
 
@@ -336,14 +410,14 @@ public class PagamentoService {
     }
 
     /**
-     * Registra log de transação
+     * Registra log de transação (gravação assíncrona em lote)
      */
-    private void registrarLog(Transacao transacao, String evento, String descricao) {
+    void registrarLog(Transacao transacao, String evento, String descricao) {
         LogTransacao log = new LogTransacao();
         log.setTransacao(transacao);
         log.setEvento(evento);
         log.setDescricao(descricao);
         log.setTimestamp(ZonedDateTime.now());
-        logTransacaoRepository.save(log);
+        logTransacaoWriter.registrar(log);
     }
 }
@@ -0,0 +1,72 @@
+package com.pip.service;
+
+/**
+ * Resultado de uma verificação de rate limit
+ *
+ * Reúne em um único objeto a decisão e os dados usados nos headers
+ * X-RateLimit-*, evitando consultas adicionais ao Redis.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+public final class RateLimitDecision {
+
+    private final boolean permitido;
+    private final int limite;
+    private final long restantes;
+    private final long resetSegundos;
+    private final long retryAfterSegundos;
+
+    private RateLimitDecision(boolean permitido, int limite, long restantes, long resetSegundos, long retryAfterSegundos) {
+        this.permitido = permitido;
+        this.limite = limite;
+        this.restantes = Math.max(0, restantes);
+        this.resetSegundos = Math.max(0, resetSegundos);
+        this.retryAfterSegundos = Math.max(0, retryAfterSegundos);
+    }
+
+    public static RateLimitDecision permitida(int limite, long restantes, long resetSegundos) {
+        return new RateLimitDecision(true, limite, restantes, resetSegundos, 0);
+    }
+
+    public static RateLimitDecision negada(int limite, long resetSegundos, long retryAfterSegundos) {
+        return new RateLimitDecision(false, limite, 0, resetSegundos, retryAfterSegundos);
+    }
+
+    /**
+     * Decisão usada quando o Redis está indisponível (fail-open)
+     */
+    public static RateLimitDecision semVerificacao(int limite) {
+        return new RateLimitDecision(true, limite, limite, 0, 0);
+    }
+
+    public boolean isPermitido() {
+        return permitido;
+    }
+
+    public int getLimite() {
+        return limite;
+    }
+
+    public long getRestantes() {
+        return restantes;
+    }
+
+    public long getResetSegundos() {
+        return resetSegundos;
+    }
+
+    public long getRetryAfterSegundos() {
+        return retryAfterSegundos;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitDecision{" +
+                "permitido=" + permitido +
+                ", limite=" + limite +
+                ", restantes=" + restantes +
+                ", resetSegundos=" + resetSegundos +
+                ", retryAfterSegundos=" + retryAfterSegundos +
+                '}';
+    }
+}
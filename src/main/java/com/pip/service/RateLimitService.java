@@ -3,140 +3,196 @@ package com.pip.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Serviço de Rate Limiting usando Redis
- * 
- * Implementa controle de taxa de requisições por API Key usando algoritmo de janela deslizante.
- * 
+ *
+ * Implementa controle de taxa de requisições por API Key usando token bucket.
+ * A verificação, o consumo e o cálculo de restantes/reset são feitos em um
+ * único script Lua atômico (uma ida ao Redis por requisição).
+ *
+ * Modos de operação (rate.limit.modo):
+ * - REDIS: cada requisição executa o script no Redis
+ * - HIBRIDO: cada nó mantém um bucket local que obtém cotas do Redis em lotes,
+ *   de forma que a maioria das requisições não acessa a rede
+ *
  * Limites padrão por plano:
  * - FREE: 100 requisições/minuto
  * - STARTER: 500 requisições/minuto
  * - BUSINESS: 2000 requisições/minuto
  * - ENTERPRISE: 10000 requisições/minuto
- * 
+ *
  * @author Luiz Gustavo Finotello
  */
 @Service
 public class RateLimitService {
 
     private static final Logger logger = LoggerFactory.getLogger(RateLimitService.class);
-    
-    private static final String RATE_LIMIT_KEY_PREFIX = "rate_limit:";
-    private static final long WINDOW_SIZE_SECONDS = 60; // 1 minuto
+
+    private static final String RATE_LIMIT_KEY_PREFIX = "rate_limit:tb:";
+
+    /**
+     * Modo de operação do rate limiter
+     */
+    public enum ModoRateLimit {
+        REDIS,
+        HIBRIDO
+    }
+
+    /**
+     * Token bucket atômico (requer Redis 5+ por usar TIME dentro do script)
+     *
+     * KEYS[1] = chave do bucket
+     * ARGV[1] = capacidade, ARGV[2] = janela de recarga em ms, ARGV[3] = tokens solicitados (0 = consulta)
+     * Retorno = {concedidos, restantes, ms até o bucket encher, ms até o próximo token}
+     */
+    private static final String SCRIPT_TOKEN_BUCKET = """
+        local capacidade = tonumber(ARGV[1])
+        local janelaMs = tonumber(ARGV[2])
+        local solicitados = tonumber(ARGV[3])
+        local tempo = redis.call('TIME')
+        local agora = tonumber(tempo[1]) * 1000 + math.floor(tonumber(tempo[2]) / 1000)
+        local taxa = capacidade / janelaMs
+        local estado = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+        local tokens = tonumber(estado[1])
+        local ts = tonumber(estado[2])
+        if tokens == nil or ts == nil then
+            tokens = capacidade
+            ts = agora
+        end
+        if agora > ts then
+            tokens = math.min(capacidade, tokens + (agora - ts) * taxa)
+        end
+        local concedidos = math.min(solicitados, math.floor(tokens))
+        tokens = tokens - concedidos
+        if solicitados > 0 then
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(agora))
+            redis.call('PEXPIRE', KEYS[1], janelaMs * 2)
+        end
+        local resetMs = math.ceil((capacidade - tokens) / taxa)
+        local esperaMs = 0
+        if concedidos == 0 and solicitados > 0 then
+            esperaMs = math.ceil((1 - tokens) / taxa)
+        end
+        return {concedidos, math.floor(tokens), resetMs, esperaMs}
+        """;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TOKEN_BUCKET = new DefaultRedisScript<>(SCRIPT_TOKEN_BUCKET, List.class);
+
+    private static final StringRedisSerializer STRING_SERIALIZER = new StringRedisSerializer();
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Value("${rate.limit.window.seconds:60}")
+    private long janelaSegundos;
+
+    @Value("${rate.limit.modo:REDIS}")
+    private ModoRateLimit modo;
+
+    @Value("${rate.limit.lease.fracao:0.05}")
+    private double fracaoLease;
+
+    @Value("${rate.limit.lease.max:100}")
+    private int leaseMaximo;
+
+    @Value("${rate.limit.lease.ttl-ms:1000}")
+    private long ttlLeaseMs;
+
+    /**
+     * Buckets locais por API Key (modo HIBRIDO)
+     */
+    private final Map<String, LeaseLocal> leases = new ConcurrentHashMap<>();
+
+    /**
+     * Verifica e consome uma requisição do limite da API Key
+     *
+     * @param apiKey Chave da API
+     * @param maxRequests Número máximo de requisições por janela
+     * @return Decisão com limite, restantes e tempo até o reset
+     */
+    public RateLimitDecision verificar(String apiKey, int maxRequests) {
+        if (modo == ModoRateLimit.HIBRIDO) {
+            return verificarHibrido(apiKey, maxRequests);
+        }
+
+        long[] resultado = executarScript(apiKey, maxRequests, 1);
+        if (resultado == null) {
+            return RateLimitDecision.semVerificacao(maxRequests);
+        }
+
+        if (resultado[0] == 0) {
+            logger.warn("Rate limit excedido para API Key: {}. Limite: {}", apiKey, maxRequests);
+            return RateLimitDecision.negada(maxRequests, emSegundos(resultado[2]), emSegundos(resultado[3]));
+        }
+
+        return RateLimitDecision.permitida(maxRequests, resultado[1], emSegundos(resultado[2]));
+    }
+
     /**
      * Verifica se a requisição está dentro do limite de taxa
-     * 
+     *
      * @param apiKey Chave da API
      * @param maxRequests Número máximo de requisições permitidas
      * @return true se dentro do limite, false se excedeu
      */
     public boolean isAllowed(String apiKey, int maxRequests) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
-        
-        try {
-            // Incrementar contador
-            Long currentCount = redisTemplate.opsForValue().increment(key);
-            
-            if (currentCount == null) {
-                logger.warn("Falha ao incrementar contador para API Key: {}", apiKey);
-                return true; // Em caso de erro, permitir requisição
-            }
-            
-            // Se é a primeira requisição, definir expiração
-            if (currentCount == 1) {
-                redisTemplate.expire(key, WINDOW_SIZE_SECONDS, TimeUnit.SECONDS);
-            }
-            
-            // Verificar se excedeu o limite
-            boolean allowed = currentCount <= maxRequests;
-            
-            if (!allowed) {
-                logger.warn("Rate limit excedido para API Key: {}. Requisições: {}/{}", 
-                    apiKey, currentCount, maxRequests);
-            }
-            
-            return allowed;
-            
-        } catch (Exception e) {
-            logger.error("Erro ao verificar rate limit para API Key {}: {}", apiKey, e.getMessage());
-            return true; // Em caso de erro, permitir requisição
-        }
+        return verificar(apiKey, maxRequests).isPermitido();
     }
 
     /**
-     * Obtém o número de requisições restantes
-     * 
+     * Obtém o número de requisições restantes sem consumir o limite
+     *
      * @param apiKey Chave da API
      * @param maxRequests Número máximo de requisições permitidas
      * @return Número de requisições restantes
      */
     public long getRemainingRequests(String apiKey, int maxRequests) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
-        
-        try {
-            Object value = redisTemplate.opsForValue().get(key);
-            
-            if (value == null) {
-                return maxRequests;
-            }
-            
-            long currentCount = Long.parseLong(value.toString());
-            long remaining = maxRequests - currentCount;
-            
-            return Math.max(0, remaining);
-            
-        } catch (Exception e) {
-            logger.error("Erro ao obter requisições restantes para API Key {}: {}", apiKey, e.getMessage());
-            return maxRequests;
-        }
+        long[] resultado = executarScript(apiKey, maxRequests, 0);
+        return resultado == null ? maxRequests : resultado[1];
     }
 
     /**
-     * Obtém o tempo até o reset do limite (em segundos)
-     * 
+     * Obtém o tempo até o bucket ser totalmente recarregado (em segundos)
+     *
      * @param apiKey Chave da API
+     * @param maxRequests Número máximo de requisições permitidas
      * @return Tempo em segundos até o reset
      */
-    public long getResetTime(String apiKey) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
-        
-        try {
-            Long ttl = redisTemplate.getExpire(key, TimeUnit.SECONDS);
-            
-            if (ttl == null || ttl < 0) {
-                return 0;
-            }
-            
-            return ttl;
-            
-        } catch (Exception e) {
-            logger.error("Erro ao obter tempo de reset para API Key {}: {}", apiKey, e.getMessage());
-            return 0;
-        }
+    public long getResetTime(String apiKey, int maxRequests) {
+        long[] resultado = executarScript(apiKey, maxRequests, 0);
+        return resultado == null ? 0 : emSegundos(resultado[2]);
     }
 
     /**
      * Reseta o contador de rate limit para uma API Key
-     * 
+     *
      * @param apiKey Chave da API
      */
     public void reset(String apiKey) {
         String key = RATE_LIMIT_KEY_PREFIX + apiKey;
-        
+
         try {
+            leases.remove(apiKey);
             redisTemplate.delete(key);
             logger.info("Rate limit resetado para API Key: {}", apiKey);
-            
+
         } catch (Exception e) {
             logger.error("Erro ao resetar rate limit para API Key {}: {}", apiKey, e.getMessage());
         }
@@ -144,7 +200,7 @@ public class RateLimitService {
 
     /**
      * Obtém o limite de requisições baseado no plano do lojista
-     * 
+     *
      * @param plano Plano do lojista
      * @return Número máximo de requisições por minuto
      */
@@ -157,4 +213,156 @@ public class RateLimitService {
             default -> 100; // Padrão: FREE
         };
     }
+
+    /**
+     * Modo híbrido: consome do bucket local e, quando esgotado, obtém um novo
+     * lote de tokens do Redis. Negativas também são mantidas localmente até o
+     * próximo token estar disponível.
+     */
+    private RateLimitDecision verificarHibrido(String apiKey, int maxRequests) {
+        LeaseLocal lease = leases.computeIfAbsent(apiKey, k -> new LeaseLocal());
+        long agora = System.currentTimeMillis();
+
+        RateLimitDecision local = lease.tentarLocal(agora, maxRequests);
+        if (local != null) {
+            return local;
+        }
+
+        lease.lock.lock();
+        try {
+            // Outra thread pode ter renovado o lease enquanto aguardávamos
+            local = lease.tentarLocal(agora, maxRequests);
+            if (local != null) {
+                return local;
+            }
+
+            long[] resultado = executarScript(apiKey, maxRequests, tamanhoLease(maxRequests));
+            if (resultado == null) {
+                return RateLimitDecision.semVerificacao(maxRequests);
+            }
+
+            long concedidos = resultado[0];
+            lease.renovar(resultado, agora, agora + ttlLeaseMs);
+
+            if (concedidos == 0) {
+                logger.warn("Rate limit excedido para API Key: {}. Limite: {}", apiKey, maxRequests);
+                return RateLimitDecision.negada(maxRequests, emSegundos(resultado[2]), emSegundos(resultado[3]));
+            }
+
+            return RateLimitDecision.permitida(maxRequests, resultado[1] + concedidos - 1, emSegundos(resultado[2]));
+
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    private int tamanhoLease(int maxRequests) {
+        return (int) Math.max(1, Math.min(leaseMaximo, Math.floor(maxRequests * fracaoLease)));
+    }
+
+    /**
+     * Executa o script do token bucket
+     *
+     * @return {concedidos, restantes, resetMs, esperaMs} ou null se o Redis falhar
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private long[] executarScript(String apiKey, int maxRequests, int solicitados) {
+        try {
+            List<Object> retorno = redisTemplate.execute(
+                TOKEN_BUCKET,
+                STRING_SERIALIZER,
+                (RedisSerializer) STRING_SERIALIZER,
+                Collections.singletonList(RATE_LIMIT_KEY_PREFIX + apiKey),
+                String.valueOf(maxRequests),
+                String.valueOf(janelaSegundos * 1000),
+                String.valueOf(solicitados)
+            );
+
+            if (retorno == null || retorno.size() < 4) {
+                logger.warn("Resposta inválida do script de rate limit para API Key: {}", apiKey);
+                return null; // Em caso de erro, permitir requisição
+            }
+
+            long[] resultado = new long[4];
+            for (int i = 0; i < 4; i++) {
+                resultado[i] = ((Number) retorno.get(i)).longValue();
+            }
+            return resultado;
+
+        } catch (Exception e) {
+            logger.error("Erro ao verificar rate limit para API Key {}: {}", apiKey, e.getMessage());
+            return null; // Em caso de erro, permitir requisição
+        }
+    }
+
+    private static long emSegundos(long millis) {
+        return (millis + 999) / 1000;
+    }
+
+    /**
+     * Remove buckets locais sem uso para não acumular API Keys inativas
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void limparLeasesExpirados() {
+        if (leases.isEmpty()) {
+            return;
+        }
+        long limite = System.currentTimeMillis() - janelaSegundos * 1000;
+        leases.entrySet().removeIf(entry -> entry.getValue().isInativo(limite));
+    }
+
+    /**
+     * Cota de tokens obtida do Redis e mantida localmente no nó
+     */
+    private static final class LeaseLocal {
+
+        private final AtomicLong tokens = new AtomicLong();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long expiraEm;
+        private volatile long bloqueadoAte;
+        private volatile long restantesRemoto;
+        private volatile long resetEm;
+        private volatile long esperaAte;
+
+        /**
+         * Tenta decidir sem acessar o Redis
+         *
+         * @return Decisão local ou null se for necessário renovar o lease
+         */
+        RateLimitDecision tentarLocal(long agora, int maxRequests) {
+            if (agora < bloqueadoAte) {
+                return RateLimitDecision.negada(maxRequests, emSegundos(resetEm - agora), emSegundos(esperaAte - agora));
+            }
+            if (agora >= expiraEm) {
+                return null;
+            }
+            long atual;
+            while ((atual = tokens.get()) > 0) {
+                if (tokens.compareAndSet(atual, atual - 1)) {
+                    return RateLimitDecision.permitida(maxRequests, restantesRemoto + atual - 1,
+                        emSegundos(resetEm - agora));
+                }
+            }
+            return null;
+        }
+
+        void renovar(long[] resultado, long agora, long novaExpiracao) {
+            long concedidos = resultado[0];
+            restantesRemoto = resultado[1];
+            resetEm = agora + resultado[2];
+            if (concedidos == 0) {
+                tokens.set(0);
+                esperaAte = agora + resultado[3];
+                bloqueadoAte = esperaAte;
+            } else {
+                // Um token é consumido pela requisição que renovou o lease
+                tokens.set(concedidos - 1);
+                expiraEm = novaExpiracao;
+            }
+        }
+
+        boolean isInativo(long limite) {
+            return expiraEm < limite && bloqueadoAte < limite;
+        }
+    }
 }
@@ -0,0 +1,314 @@
+package com.pip.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serviço de retenção de dados
+ *
+ * Remove registros antigos em lotes limitados, cada um em sua própria transação curta:
+ * - A seleção do lote segue a coluna de data (índice) e usa FOR UPDATE SKIP LOCKED,
+ *   permitindo que vários nós executem a limpeza sem conflito
+ * - Entre lotes há uma pausa configurável para não competir com o tráfego de pagamentos
+ * - A execução é interrompida ao atingir a duração máxima e continua no próximo agendamento
+ * - Opcionalmente os registros são arquivados em NDJSON compactado (gzip) antes da remoção
+ *
+ * Políticas por tabela (retencao.politicas=tabela1,tabela2):
+ * - retencao.{tabela}.dias: idade mínima dos registros removidos
+ * - retencao.{tabela}.coluna-data: coluna usada para idade e ordenação (padrão created_at)
+ * - retencao.{tabela}.filtro: condição SQL adicional (ex: status = 'SUCCESS')
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class RetencaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetencaoService.class);
+
+    private static final String PREFIXO = "retencao.";
+    private static final Pattern IDENTIFICADOR = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final DateTimeFormatter FORMATO_ARQUIVO = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int LOG_PROGRESSO_A_CADA = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${retencao.enabled:true}")
+    private boolean habilitado;
+
+    @Value("${retencao.politicas:webhook_event,log_transacao}")
+    private List<String> tabelas;
+
+    @Value("${retencao.lote:1000}")
+    private int tamanhoLote;
+
+    @Value("${retencao.pausa-ms:200}")
+    private long pausaMs;
+
+    @Value("${retencao.max-duracao-minutes:60}")
+    private long maxDuracaoMinutos;
+
+    @Value("${retencao.arquivamento.enabled:false}")
+    private boolean arquivamentoHabilitado;
+
+    @Value("${retencao.arquivamento.diretorio:./retencao-arquivo}")
+    private String diretorioArquivo;
+
+    private final List<PoliticaRetencao> politicas = new ArrayList<>();
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void iniciar() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        for (String tabela : tabelas) {
+            String nome = tabela.trim();
+            if (nome.isEmpty()) {
+                continue;
+            }
+
+            PoliticaRetencao politica = new PoliticaRetencao(
+                validarIdentificador(nome),
+                validarIdentificador(environment.getProperty(PREFIXO + nome + ".coluna-data", "created_at")),
+                environment.getProperty(PREFIXO + nome + ".filtro"),
+                environment.getProperty(PREFIXO + nome + ".dias", Integer.class, 90)
+            );
+            politicas.add(politica);
+
+            logger.info("Política de retenção: {} - {} dias (coluna: {}, filtro: {})",
+                politica.tabela, politica.dias, politica.colunaData,
+                politica.filtro != null ? politica.filtro : "nenhum");
+        }
+    }
+
+    /**
+     * Executa todas as políticas de retenção diariamente
+     */
+    @Scheduled(cron = "${retencao.cron:0 0 2 * * *}")
+    public void executar() {
+        if (!habilitado) {
+            return;
+        }
+
+        long prazo = System.nanoTime() + maxDuracaoMinutos * 60_000_000_000L;
+
+        for (PoliticaRetencao politica : politicas) {
+            try {
+                aplicar(politica, prazo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Retenção interrompida durante a tabela {}", politica.tabela);
+                return;
+            } catch (Exception e) {
+                logger.error("Erro na retenção da tabela {}: {}", politica.tabela, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Aplica uma política removendo lotes até esgotar os registros elegíveis ou o prazo
+     *
+     * @param politica Política da tabela
+     * @param prazo Instante (System.nanoTime) limite da execução
+     * @return Quantidade de registros removidos
+     */
+    long aplicar(PoliticaRetencao politica, long prazo) throws InterruptedException {
+        Timestamp dataLimite = Timestamp.from(ZonedDateTime.now().minusDays(politica.dias).toInstant());
+        Counter removidos = Counter.builder("pip.retencao.removidos")
+            .tag("tabela", politica.tabela)
+            .register(meterRegistry);
+        Timer duracaoLote = Timer.builder("pip.retencao.lote")
+            .tag("tabela", politica.tabela)
+            .register(meterRegistry);
+
+        logger.info("Iniciando retenção de {} (registros anteriores a {})", politica.tabela, dataLimite);
+
+        long total = 0;
+        int lotes = 0;
+
+        try (ArquivoRetencao arquivo = arquivamentoHabilitado ? abrirArquivo(politica.tabela) : null) {
+            while (true) {
+                Timer.Sample amostra = Timer.start(meterRegistry);
+                int quantidade = arquivo != null
+                    ? arquivarERemoverLote(politica, dataLimite, arquivo)
+                    : removerLote(politica, dataLimite);
+                amostra.stop(duracaoLote);
+
+                total += quantidade;
+                lotes++;
+                removidos.increment(quantidade);
+
+                if (lotes % LOG_PROGRESSO_A_CADA == 0) {
+                    logger.info("Retenção de {}: {} registros removidos em {} lotes", politica.tabela, total, lotes);
+                }
+
+                if (quantidade < tamanhoLote) {
+                    break;
+                }
+
+                if (System.nanoTime() >= prazo) {
+                    logger.warn("Retenção de {} interrompida pelo limite de {} minutos; continua no próximo ciclo",
+                        politica.tabela, maxDuracaoMinutos);
+                    break;
+                }
+
+                Thread.sleep(pausaMs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha no arquivo de retenção de " + politica.tabela, e);
+        }
+
+        logger.info("Retenção de {} concluída. {} registros removidos em {} lotes", politica.tabela, total, lotes);
+        return total;
+    }
+
+    /**
+     * Remove um lote com uma única instrução, sem trazer as linhas para a aplicação
+     */
+    private int removerLote(PoliticaRetencao politica, Timestamp dataLimite) {
+        String sql = "DELETE FROM " + politica.tabela + " WHERE id IN (" + politica.selecao("id") + ")";
+        Integer quantidade = transactionTemplate.execute(tx -> jdbcTemplate.update(sql, dataLimite, tamanhoLote));
+        return quantidade != null ? quantidade : 0;
+    }
+
+    /**
+     * Grava o lote no arquivo e o remove na mesma transação
+     *
+     * O arquivo é descarregado antes do commit: uma falha no DELETE pode gerar
+     * linhas repetidas no arquivo, mas nunca remove linhas não arquivadas.
+     */
+    private int arquivarERemoverLote(PoliticaRetencao politica, Timestamp dataLimite, ArquivoRetencao arquivo) {
+        Integer quantidade = transactionTemplate.execute(tx -> {
+            List<Map<String, Object>> linhas = jdbcTemplate.queryForList(politica.selecao("*"), dataLimite, tamanhoLote);
+            if (linhas.isEmpty()) {
+                return 0;
+            }
+
+            List<Object> ids = new ArrayList<>(linhas.size());
+            try {
+                for (Map<String, Object> linha : linhas) {
+                    arquivo.escritor.write(objectMapper.writeValueAsString(linha));
+                    arquivo.escritor.newLine();
+                    ids.add(linha.get("id"));
+                }
+                arquivo.escritor.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            namedParameterJdbcTemplate.update(
+                "DELETE FROM " + politica.tabela + " WHERE id IN (:ids)", Map.of("ids", ids));
+
+            Counter.builder("pip.retencao.arquivados")
+                .tag("tabela", politica.tabela)
+                .register(meterRegistry)
+                .increment(linhas.size());
+
+            return linhas.size();
+        });
+        return quantidade != null ? quantidade : 0;
+    }
+
+    private ArquivoRetencao abrirArquivo(String tabela) throws IOException {
+        Path diretorio = Paths.get(diretorioArquivo);
+        Files.createDirectories(diretorio);
+        Path caminho = diretorio.resolve(tabela + "-" + ZonedDateTime.now().format(FORMATO_ARQUIVO) + ".ndjson.gz");
+
+        logger.info("Arquivando registros de {} em {}", tabela, caminho);
+        return new ArquivoRetencao(new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(caminho), true), StandardCharsets.UTF_8)));
+    }
+
+    private static String validarIdentificador(String nome) {
+        if (!IDENTIFICADOR.matcher(nome).matches()) {
+            throw new IllegalArgumentException("Identificador inválido em política de retenção: " + nome);
+        }
+        return nome;
+    }
+
+    /**
+     * Política de retenção de uma tabela
+     */
+    static final class PoliticaRetencao {
+        private final String tabela;
+        private final String colunaData;
+        private final String filtro;
+        private final int dias;
+
+        PoliticaRetencao(String tabela, String colunaData, String filtro, int dias) {
+            this.tabela = tabela;
+            this.colunaData = colunaData;
+            this.filtro = filtro != null && !filtro.isBlank() ? filtro : null;
+            this.dias = dias;
+        }
+
+        /**
+         * Seleção do próximo lote elegível; parâmetros: data limite e tamanho do lote
+         */
+        String selecao(String colunas) {
+            return "SELECT " + colunas + " FROM " + tabela +
+                " WHERE " + colunaData + " < ?" +
+                (filtro != null ? " AND (" + filtro + ")" : "") +
+                " ORDER BY " + colunaData + " LIMIT ? FOR UPDATE SKIP LOCKED";
+        }
+    }
+
+    private static final class ArquivoRetencao implements AutoCloseable {
+        private final BufferedWriter escritor;
+
+        private ArquivoRetencao(BufferedWriter escritor) {
+            this.escritor = escritor;
+        }
+
+        @Override
+        public void close() throws IOException {
+            escritor.close();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.pip.service;
+
+import com.pip.dto.WebhookMessage;
+import com.pip.model.WebhookEvent;
+import com.pip.repository.WebhookEventRepository;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Motor de despacho paralelo de webhooks
+ *
+ * Envia webhooks concorrentemente para que um endpoint lento ou fora do ar
+ * atrase apenas os seus próprios eventos.
+ *
+ * Proteções:
+ * - Paralelismo global limitado (pool fixo com fila limitada)
+ * - Bulkhead por lojista: no máximo N envios simultâneos por lojista;
+ *   excedentes ficam pendentes para o próximo ciclo
+ * - Circuit breaker por host de destino: com o circuito aberto o evento é
+ *   reagendado sem consumir tentativa nem ocupar thread
+ *
+ * Os circuitos ficam em um registro próprio, limitado aos hosts usados mais
+ * recentemente (webhook.dispatch.circuit-breaker.max-hosts), e não no registro
+ * compartilhado: URLs de webhook são cadastradas pelos lojistas, podem carregar
+ * segredos no caminho ou na query e não podem virar nomes de circuito nem tags de
+ * métricas. Um host removido do registro volta com o circuito fechado.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class WebhookDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+    private static final String PREFIXO_CIRCUITO = "webhook:";
+    private static final String HOST_INVALIDO = "invalido";
+
+    /**
+     * Resultado de uma tentativa de envio
+     */
+    public enum ResultadoEnvio {
+        /** Entregue com sucesso */
+        SUCESSO,
+        /** Tentativa realizada e falhou */
+        FALHA,
+        /** Não tentado (circuito aberto ou limite do lojista atingido) */
+        ADIADO
+    }
+
+    @Autowired
+    private WebhookService webhookService;
+
+    @Autowired
+    private WebhookEventRepository webhookEventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.dispatch.paralelismo-global:32}")
+    private int paralelismoGlobal;
+
+    @Value("${webhook.dispatch.max-por-lojista:4}")
+    private int maxPorLojista;
+
+    @Value("${webhook.dispatch.fila-capacidade:1000}")
+    private int capacidadeFila;
+
+    @Value("${webhook.dispatch.circuit-breaker.taxa-falha:50}")
+    private float taxaFalhaCircuito;
+
+    @Value("${webhook.dispatch.circuit-breaker.janela:20}")
+    private int janelaCircuito;
+
+    @Value("${webhook.dispatch.circuit-breaker.minimo-chamadas:5}")
+    private int minimoChamadasCircuito;
+
+    @Value("${webhook.dispatch.circuit-breaker.espera-aberto-seconds:60}")
+    private long esperaAbertoSegundos;
+
+    @Value("${webhook.dispatch.circuit-breaker.max-hosts:10000}")
+    private int maxCircuitos;
+
+    private ThreadPoolExecutor executor;
+    private CircuitBreakerConfig configCircuito;
+
+    private final Map<UUID, Semaphore> bulkheads = new ConcurrentHashMap<>();
+    private Map<String, CircuitBreaker> circuitos;
+    private final ReentrantLock lockCircuitos = new ReentrantLock();
+    private final Set<UUID> emEnvio = ConcurrentHashMap.newKeySet();
+    private Semaphore bulkheadSemLojista;
+
+    private Counter contadorAdiados;
+    private Counter contadorRejeitados;
+
+    @PostConstruct
+    public void iniciar() {
+        this.executor = new ThreadPoolExecutor(
+            paralelismoGlobal,
+            paralelismoGlobal,
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(capacidadeFila),
+            new CustomizableThreadFactory("webhook-dispatch-"),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.bulkheadSemLojista = new Semaphore(maxPorLojista);
+
+        this.configCircuito = CircuitBreakerConfig.custom()
+            .failureRateThreshold(taxaFalhaCircuito)
+            .slidingWindowSize(janelaCircuito)
+            .minimumNumberOfCalls(minimoChamadasCircuito)
+            .waitDurationInOpenState(Duration.ofSeconds(esperaAbertoSegundos))
+            .permittedNumberOfCallsInHalfOpenState(1)
+            .build();
+        // LRU por acesso: o host usado há mais tempo sai quando o limite é atingido
+        this.circuitos = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CircuitBreaker> maisAntigo) {
+                return size() > maxCircuitos;
+            }
+        };
+
+        Gauge.builder("pip.webhook.dispatch.em_envio", emEnvio, Set::size)
+            .description("Webhooks em envio ou aguardando thread")
+            .register(meterRegistry);
+        Gauge.builder("pip.webhook.dispatch.circuitos", this, WebhookDispatcher::quantidadeCircuitos)
+            .description("Hosts de webhook com circuit breaker em memória")
+            .register(meterRegistry);
+        this.contadorAdiados = Counter.builder("pip.webhook.dispatch.adiados")
+            .description("Webhooks adiados por circuito aberto ou limite do lojista")
+            .register(meterRegistry);
+        this.contadorRejeitados = Counter.builder("pip.webhook.dispatch.rejeitados")
+            .description("Webhooks não aceitos por fila de despacho cheia")
+            .register(meterRegistry);
+
+        logger.info("WebhookDispatcher iniciado - paralelismo: {}, por lojista: {}, fila: {}",
+            paralelismoGlobal, maxPorLojista, capacidadeFila);
+    }
+
+    /**
+     * Submete os eventos para envio concorrente sem bloquear o chamador
+     *
+     * Eventos já em envio são ignorados; se a fila de despacho encher, os
+     * restantes permanecem pendentes para o próximo ciclo.
+     *
+     * @param eventos Eventos prontos para envio
+     * @return Quantidade de eventos submetidos
+     */
+    public int despachar(List<WebhookEvent> eventos) {
+        int submetidos = 0;
+
+        for (WebhookEvent evento : eventos) {
+            UUID id = evento.getId();
+            if (!emEnvio.add(id)) {
+                continue;
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        enviar(evento);
+                    } catch (Exception e) {
+                        logger.error("Erro ao despachar webhook {}: {}", id, e.getMessage());
+                    } finally {
+                        emEnvio.remove(id);
+                    }
+                });
+                submetidos++;
+
+            } catch (RejectedExecutionException e) {
+                emEnvio.remove(id);
+                int restantes = eventos.size() - submetidos;
+                contadorRejeitados.increment(restantes);
+                logger.warn("Fila de despacho de webhooks cheia; {} eventos ficam para o próximo ciclo", restantes);
+                break;
+            }
+        }
+
+        return submetidos;
+    }
+
+    /**
+     * Quantidade de eventos que ainda cabem na fila de despacho
+     */
+    public int capacidadeDisponivel() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * Envia um webhook aplicando circuit breaker por host e bulkhead por lojista
+     *
+     * @param evento Evento a enviar
+     * @return Resultado do envio
+     */
+    public ResultadoEnvio enviar(WebhookEvent evento) {
+        UUID lojistaId = evento.getLojista() != null ? evento.getLojista().getId() : null;
+
+        return enviarProtegido(evento.getUrl(), lojistaId, evento.getId(),
+            () -> adiar(evento),
+            () -> {
+                // Ao sair de PENDING/FAILED o evento não é mais elegível; a reserva pode ser liberada
+                liberarReserva(evento);
+                return webhookService.enviarWebhook(evento);
+            });
+    }
+
+    /**
+     * Envia um webhook a partir da mensagem da fila, sem acesso síncrono ao banco
+     *
+     * Com o circuito aberto nada é gravado: o consumer reenfileira a mensagem na
+     * fila de atraso sem consumir tentativa.
+     *
+     * @param mensagem Mensagem completa, com URL e payload assinado
+     * @return Resultado do envio
+     */
+    public ResultadoEnvio enviar(WebhookMessage mensagem) {
+        return enviarProtegido(mensagem.getUrl(), mensagem.getLojistaId(), mensagem.getWebhookEventId(),
+            contadorAdiados::increment,
+            () -> webhookService.entregarMensagem(mensagem));
+    }
+
+    private ResultadoEnvio enviarProtegido(String url, UUID lojistaId, UUID id,
+                                           Runnable aoAdiar, BooleanSupplier envio) {
+        String host = hostDe(url);
+        CircuitBreaker circuito = circuitoPara(host);
+
+        if (!circuito.tryAcquirePermission()) {
+            aoAdiar.run();
+            logger.debug("Circuito aberto para {}; webhook {} reagendado", host, id);
+            return ResultadoEnvio.ADIADO;
+        }
+
+        Semaphore bulkhead = bulkheadPara(lojistaId);
+        if (!bulkhead.tryAcquire()) {
+            circuito.releasePermission();
+            contadorAdiados.increment();
+            logger.debug("Limite de envios simultâneos atingido para o lojista do webhook {}", id);
+            return ResultadoEnvio.ADIADO;
+        }
+
+        long inicio = System.nanoTime();
+        try {
+            boolean enviado = envio.getAsBoolean();
+            long duracao = System.nanoTime() - inicio;
+
+            if (enviado) {
+                circuito.onSuccess(duracao, TimeUnit.NANOSECONDS);
+                return ResultadoEnvio.SUCESSO;
+            }
+
+            circuito.onError(duracao, TimeUnit.NANOSECONDS,
+                new IllegalStateException("Falha na entrega do webhook " + id));
+            return ResultadoEnvio.FALHA;
+
+        } catch (RuntimeException e) {
+            circuito.onError(System.nanoTime() - inicio, TimeUnit.NANOSECONDS, e);
+            throw e;
+
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Reagenda o evento para depois da janela de circuito aberto, sem consumir tentativa
+     */
+    private void adiar(WebhookEvent evento) {
+        contadorAdiados.increment();
+        evento.setProximaTentativa(ZonedDateTime.now().plusSeconds(esperaAbertoSegundos));
+        evento.setUpdatedAt(ZonedDateTime.now());
+        liberarReserva(evento);
+        webhookEventRepository.save(evento);
+    }
+
+    private void liberarReserva(WebhookEvent evento) {
+        evento.setReservadoAte(null);
+        evento.setReservadoPor(null);
+    }
+
+    private CircuitBreaker circuitoPara(String host) {
+        lockCircuitos.lock();
+        try {
+            return circuitos.computeIfAbsent(host, h -> CircuitBreaker.of(PREFIXO_CIRCUITO + h, configCircuito));
+        } finally {
+            lockCircuitos.unlock();
+        }
+    }
+
+    private double quantidadeCircuitos() {
+        lockCircuitos.lock();
+        try {
+            return circuitos.size();
+        } finally {
+            lockCircuitos.unlock();
+        }
+    }
+
+    /**
+     * Host (e porta, se explícita) da URL; caminho, query e credenciais são descartados
+     */
+    static String hostDe(String url) {
+        if (url == null) {
+            return HOST_INVALIDO;
+        }
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() == null) {
+                return HOST_INVALIDO;
+            }
+            String host = uri.getHost().toLowerCase(Locale.ROOT);
+            return uri.getPort() != -1 ? host + ":" + uri.getPort() : host;
+        } catch (IllegalArgumentException e) {
+            return HOST_INVALIDO;
+        }
+    }
+
+    private Semaphore bulkheadPara(UUID lojistaId) {
+        if (lojistaId == null) {
+            return bulkheadSemLojista;
+        }
+        return bulkheads.computeIfAbsent(lojistaId, id -> new Semaphore(maxPorLojista));
+    }
+
+    /**
+     * Aguarda os envios em andamento no desligamento da aplicação
+     */
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -2,15 +2,21 @@ package com.pip.service;
 
 import com.pip.model.WebhookEvent;
 import com.pip.repository.WebhookEventRepository;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.lang.management.ManagementFactory;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Scheduler para processamento de webhooks pendentes e reenvio
@@ -18,7 +24,17 @@ import java.util.Map;
  * Executa verificações periódicas para:
  * - Enviar webhooks pendentes
  * - Reenviar webhooks falhados que estão agendados para nova tentativa
- * - Limpar webhooks antigos
+ *
+ * A limpeza de webhooks antigos é feita pelo RetencaoService.
+ *
+ * Eventos novos pertencem à fila desde a criação: o WebhookService os grava com o
+ * prazo da fila em proxima_tentativa, o relay, o consumer e o WebhookStatusWriter
+ * mantêm esse prazo, e o scheduler só os seleciona depois que ele vence, como
+ * varredura dos eventos cuja mensagem se perdeu.
+ *
+ * Com vários nós ativos, cada ciclo reserva lotes limitados de eventos
+ * (FOR UPDATE SKIP LOCKED + reserva com prazo), ordenados por proxima_tentativa,
+ * e cada nó envia apenas os eventos que reservou.
  * 
  * @author Luiz Gustavo Finotello
  */
@@ -31,7 +47,37 @@ public class WebhookScheduler {
     private WebhookEventRepository webhookEventRepository;
 
     @Autowired
-    private WebhookService webhookService;
+    private WebhookDispatcher webhookDispatcher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${webhook.polling.lote:200}")
+    private int tamanhoLote;
+
+    @Value("${webhook.polling.max-lotes-por-ciclo:10}")
+    private int maxLotesPorCiclo;
+
+    @Value("${webhook.polling.reserva-seconds:120}")
+    private long reservaSegundos;
+
+    @Value("${webhook.polling.no-id:}")
+    private String identificadorNo;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void iniciar() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        if (identificadorNo == null || identificadorNo.isBlank()) {
+            // pid@host: único por processo
+            identificadorNo = ManagementFactory.getRuntimeMXBean().getName();
+        }
+
+        logger.info("Polling de webhooks por reserva - nó: {}, lote: {}, reserva: {}s",
+            identificadorNo, tamanhoLote, reservaSegundos);
+    }
 
     /**
      * Processa webhooks pendentes a cada 30 segundos
@@ -41,37 +87,14 @@ public class WebhookScheduler {
         logger.debug("Verificando webhooks pendentes para envio");
 
         try {
-            // Buscar webhooks pendentes que estão prontos para envio
-            List<WebhookEvent> webhooksPendentes = webhookEventRepository.findByStatusAndProximaTentativaBefore(
-                "PENDING",
-                ZonedDateTime.now()
-            );
+            int despachados = processarFila("PENDING");
 
-            if (webhooksPendentes.isEmpty()) {
+            if (despachados == 0) {
                 logger.debug("Nenhum webhook pendente para processar");
                 return;
             }
 
-            logger.info("Encontrados {} webhooks pendentes para processar", webhooksPendentes.size());
-
-            int sucessos = 0;
-            int falhas = 0;
-
-            for (WebhookEvent webhook : webhooksPendentes) {
-                try {
-                    boolean enviado = webhookService.enviarWebhook(webhook);
-                    if (enviado) {
-                        sucessos++;
-                    } else {
-                        falhas++;
-                    }
-                } catch (Exception e) {
-                    logger.error("Erro ao processar webhook {}: {}", webhook.getId(), e.getMessage());
-                    falhas++;
-                }
-            }
-
-            logger.info("Processamento concluído. Sucessos: {}, Falhas: {}", sucessos, falhas);
+            logger.info("Despacho iniciado. Webhooks pendentes submetidos: {}", despachados);
 
         } catch (Exception e) {
             logger.error("Erro ao processar webhooks pendentes: {}", e.getMessage(), e);
@@ -86,40 +109,14 @@ public class WebhookScheduler {
         logger.debug("Verificando webhooks para retry");
 
         try {
-            // Buscar webhooks falhados que estão agendados para nova tentativa
-            List<WebhookEvent> webhooksParaRetry = webhookEventRepository.findByStatusAndProximaTentativaBefore(
-                "FAILED",
-                ZonedDateTime.now()
-            );
+            int despachados = processarFila("FAILED");
 
-            if (webhooksParaRetry.isEmpty()) {
+            if (despachados == 0) {
                 logger.debug("Nenhum webhook para retry");
                 return;
             }
 
-            logger.info("Encontrados {} webhooks para retry", webhooksParaRetry.size());
-
-            for (WebhookEvent webhook : webhooksParaRetry) {
-                try {
-                    // Verificar se ainda não atingiu número máximo de tentativas
-                    if (webhook.getTentativas() < webhook.getMaxTentativas()) {
-                        webhookService.enviarWebhook(webhook);
-                    } else {
-                        // Marcar como falha definitiva
-                        webhook.setStatus("FAILED");
-                        webhook.setProximaTentativa(null);
-                        webhook.setErrorMessage("Número máximo de tentativas excedido");
-                        webhook.setUpdatedAt(ZonedDateTime.now());
-                        webhookEventRepository.save(webhook);
-                        
-                        logger.warn("Webhook {} falhou definitivamente após {} tentativas",
-                            webhook.getId(), webhook.getTentativas());
-                    }
-                } catch (Exception e) {
-                    logger.error("Erro ao processar retry do webhook {}: {}", 
-                        webhook.getId(), e.getMessage());
-                }
-            }
+            logger.info("Despacho iniciado. Webhooks para retry submetidos: {}", despachados);
 
         } catch (Exception e) {
             logger.error("Erro ao processar webhooks para retry: {}", e.getMessage(), e);
@@ -127,36 +124,64 @@ public class WebhookScheduler {
     }
 
     /**
-     * Limpa webhooks antigos (mais de 30 dias) a cada dia
+     * Reserva e despacha lotes de eventos vencidos até esvaziar a fila, encher o
+     * dispatcher ou atingir o limite de lotes do ciclo
+     *
+     * @param status Status dos eventos a processar
+     * @return Quantidade de eventos submetidos ao dispatcher
      */
-    @Scheduled(cron = "0 0 2 * * *") // Todos os dias às 2h da manhã
-    public void limparWebhooksAntigos() {
-        logger.info("Iniciando limpeza de webhooks antigos");
-
-        try {
-            ZonedDateTime dataLimite = ZonedDateTime.now().minusDays(30);
-            
-            // Buscar webhooks antigos com sucesso
-            List<WebhookEvent> webhooksAntigos = webhookEventRepository.findByStatusAndCreatedAtBefore(
-                "SUCCESS",
-                dataLimite
-            );
+    private int processarFila(String status) {
+        int total = 0;
+
+        for (int lote = 0; lote < maxLotesPorCiclo; lote++) {
+            int limite = Math.min(tamanhoLote, webhookDispatcher.capacidadeDisponivel());
+            if (limite <= 0) {
+                logger.debug("Dispatcher de webhooks sem capacidade; reserva adiada para o próximo ciclo");
+                break;
+            }
 
-            if (webhooksAntigos.isEmpty()) {
-                logger.info("Nenhum webhook antigo para limpar");
-                return;
+            List<WebhookEvent> reservados = reservarLote(status, limite);
+            if (reservados.isEmpty()) {
+                break;
             }
 
-            logger.info("Encontrados {} webhooks antigos para limpar", webhooksAntigos.size());
+            int submetidos = webhookDispatcher.despachar(reservados);
+            total += submetidos;
+
+            // Lote incompleto: fila esvaziada. Nenhum submetido: eventos já em envio neste nó
+            if (reservados.size() < limite || submetidos == 0) {
+                break;
+            }
+        }
 
-            // Deletar webhooks antigos
-            webhookEventRepository.deleteAll(webhooksAntigos);
+        return total;
+    }
 
-            logger.info("Limpeza concluída. {} webhooks removidos", webhooksAntigos.size());
+    /**
+     * Reserva um lote de eventos para este nó
+     *
+     * A seleção usa FOR UPDATE SKIP LOCKED, de modo que nós concorrentes recebem
+     * lotes disjuntos. A reserva é gravada na mesma transação curta e vale até
+     * reservado_ate, cobrindo o envio assíncrono feito após o commit.
+     */
+    private List<WebhookEvent> reservarLote(String status, int limite) {
+        ZonedDateTime agora = ZonedDateTime.now();
+        ZonedDateTime reservadoAte = agora.plusSeconds(reservaSegundos);
+
+        List<UUID> ids = transactionTemplate.execute(tx -> {
+            List<UUID> selecionados = webhookEventRepository.selecionarParaReserva(
+                status, agora, identificadorNo, limite);
+            if (!selecionados.isEmpty()) {
+                webhookEventRepository.reservar(selecionados, reservadoAte, identificadorNo);
+            }
+            return selecionados;
+        });
 
-        } catch (Exception e) {
-            logger.error("Erro ao limpar webhooks antigos: {}", e.getMessage(), e);
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
         }
+
+        return webhookEventRepository.findReservados(ids);
     }
 
     /**
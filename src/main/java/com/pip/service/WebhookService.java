@@ -1,32 +1,42 @@
 package com.pip.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.pip.messaging.WebhookProducer;
+import com.pip.config.RabbitMQConfig;
+import com.pip.dto.WebhookMessage;
 import com.pip.model.Lojista;
 import com.pip.model.Transacao;
 import com.pip.model.WebhookEvent;
+import com.pip.model.WebhookOutbox;
+import com.pip.repository.LojistaRepository;
 import com.pip.repository.WebhookEventRepository;
+import com.pip.repository.WebhookOutboxRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestTemplate;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Serviço de gerenciamento e envio de webhooks
  * 
  * Implementa:
- * - Criação de webhooks para eventos de transação
+ * - Criação de webhooks para eventos de transação (com entrada no outbox,
+ *   publicada no RabbitMQ pelo WebhookOutboxRelay após o commit)
  * - Envio com assinatura HMAC-SHA256
+ * - Entrega a partir da mensagem da fila, com gravação de status assíncrona em lote
  * - Retry com backoff exponencial
  * - Registro de tentativas e respostas
  * 
@@ -48,15 +58,33 @@ public class WebhookService {
     private ObjectMapper objectMapper;
 
     @Autowired
-    private WebhookProducer webhookProducer;
+    private WebhookOutboxRepository webhookOutboxRepository;
+
+    @Autowired
+    private LojistaRepository lojistaRepository;
+
+    @Autowired
+    private WebhookStatusWriter webhookStatusWriter;
+
+    @Value("${webhook.retry.jitter:0.2}")
+    private double jitterRetry;
+
+    @Value("${webhook.retry.folga-fila-seconds:300}")
+    private long folgaFilaSegundos;
 
     /**
      * Cria webhook para evento de transação
      * 
+     * O evento e a sua entrada no outbox são gravados na mesma transação (a do
+     * pagamento, se houver): nenhuma chamada ao broker ocorre neste caminho. O
+     * evento já é gravado com o prazo da fila em proxima_tentativa, de modo que o
+     * WebhookScheduler não o entregue antes ou durante a publicação pelo relay.
+     * 
      * @param lojista Lojista destinatário
      * @param transacao Transação que gerou o evento
      * @param evento Tipo do evento
      */
+    @Transactional
     public WebhookEvent criarWebhook(Lojista lojista, Transacao transacao, String evento) {
         logger.info("Criando webhook para evento {} da transação {}", evento, transacao.getTransactionId());
 
@@ -97,18 +125,16 @@ public class WebhookService {
         webhookEvent.setMaxTentativas(5);
         webhookEvent.setCreatedAt(ZonedDateTime.now());
 
+        // O evento nasce com a fila: o polling só o seleciona se a mensagem se perder
+        webhookEvent.setProximaTentativa(calcularPrazoFila(1));
+
         // Salvar webhook event
         webhookEvent = webhookEventRepository.save(webhookEvent);
 
         logger.info("Webhook event criado com ID: {}", webhookEvent.getId());
 
-        // Enviar para fila RabbitMQ para processamento assíncrono
-        try {
-            webhookProducer.sendWebhook(webhookEvent.getId());
-            logger.info("Webhook {} enviado para fila RabbitMQ", webhookEvent.getId());
-        } catch (Exception e) {
-            logger.error("Erro ao enviar webhook para fila: {}", e.getMessage(), e);
-        }
+        // Publicação no RabbitMQ fica com o relay do outbox, após o commit
+        webhookOutboxRepository.save(new WebhookOutbox(webhookEvent.getId()));
 
         return webhookEvent;
     }
@@ -140,29 +166,8 @@ public class WebhookService {
         webhookEventRepository.save(webhook);
 
         try {
-            // Preparar requisição
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Adicionar assinatura se disponível
-            if (webhook.getSignature() != null) {
-                headers.set("X-Webhook-Signature", webhook.getSignature());
-            }
-            
-            // Adicionar headers adicionais
-            headers.set("X-Webhook-Event", webhook.getEvento());
-            headers.set("X-Webhook-Id", webhook.getId().toString());
-            headers.set("X-Webhook-Attempt", String.valueOf(webhook.getTentativas()));
-
-            HttpEntity<String> entity = new HttpEntity<>(webhook.getPayload(), headers);
-
-            // Enviar webhook
-            ResponseEntity<String> response = restTemplate.exchange(
-                webhook.getUrl(),
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
+            ResponseEntity<String> response = postar(webhook.getId(), webhook.getUrl(), webhook.getPayload(),
+                webhook.getSignature(), webhook.getEvento(), webhook.getTentativas());
 
             // Processar resposta
             webhook.setHttpStatus(response.getStatusCode().value());
@@ -212,16 +217,122 @@ public class WebhookService {
         }
     }
 
+    /**
+     * Entrega um webhook a partir da mensagem da fila, sem acessar o banco
+     * 
+     * A mensagem já traz URL, payload assinado e assinatura. O resultado (sucesso,
+     * nova tentativa agendada ou falha definitiva) é gravado de forma assíncrona e em
+     * lote pelo {@link WebhookStatusWriter}; o estado intermediário SENDING não é gravado.
+     * Em caso de falha o retry é feito pela fila de atraso, e o evento fica PENDING com
+     * o prazo da fila em proxima_tentativa, fora do alcance do scheduler.
+     * 
+     * @param mensagem Mensagem completa (ver {@link WebhookMessage#isCompleta()})
+     * @return true se enviado com sucesso, false caso contrário
+     */
+    public boolean entregarMensagem(WebhookMessage mensagem) {
+        UUID id = mensagem.getWebhookEventId();
+        int tentativa = mensagem.getAttemptNumber();
+        ZonedDateTime enviadoAt = ZonedDateTime.now();
+
+        Integer httpStatus = null;
+        String responseBody = null;
+        String erro;
+
+        try {
+            ResponseEntity<String> response = postar(id, mensagem.getUrl(), mensagem.getPayload(),
+                mensagem.getSignature(), mensagem.getEvento(), tentativa);
+
+            httpStatus = response.getStatusCode().value();
+            responseBody = response.getBody();
+
+            if (response.getStatusCode().is2xxSuccessful()) {
+                webhookStatusWriter.registrar(
+                    WebhookStatusWriter.AtualizacaoWebhook.sucesso(id, tentativa, enviadoAt, httpStatus, responseBody));
+
+                logger.info("Webhook {} enviado com sucesso. Status: {}", id, response.getStatusCode());
+                return true;
+            }
+
+            erro = "HTTP Status: " + response.getStatusCode();
+
+        } catch (Exception e) {
+            logger.error("Erro ao enviar webhook {}: {}", id, e.getMessage());
+            erro = e.getMessage();
+        }
+
+        ZonedDateTime prazoFila = tentativa < mensagem.getMaxAttempts()
+            ? calcularPrazoFila(tentativa + 1) : null;
+        webhookStatusWriter.registrar(WebhookStatusWriter.AtualizacaoWebhook.falha(
+            id, tentativa, enviadoAt, httpStatus, responseBody, erro, prazoFila));
+
+        logger.warn("Webhook {} falhou: {}. Tentativa {}/{}", id, erro, tentativa, mensagem.getMaxAttempts());
+        return false;
+    }
+
+    /**
+     * Registra o reenfileiramento de uma mensagem adiada (circuito aberto ou limite do lojista)
+     * 
+     * Nada é enviado e a tentativa não é consumida; apenas o prazo da fila é estendido
+     * até a saída da mensagem da fila de atraso.
+     * 
+     * @param mensagem Mensagem reenfileirada com o mesmo número de tentativa
+     */
+    public void adiarMensagem(WebhookMessage mensagem) {
+        webhookStatusWriter.registrar(WebhookStatusWriter.AtualizacaoWebhook.adiamento(
+            mensagem.getWebhookEventId(), calcularPrazoFila(mensagem.getAttemptNumber())));
+    }
+
+    /**
+     * Prazo até o qual a fila responde pela tentativa informada
+     * 
+     * Atraso máximo da faixa (com o jitter positivo) mais a folga configurada. O
+     * scheduler só volta a selecionar o evento depois desse prazo, isto é, se a
+     * mensagem tiver se perdido no caminho da fila.
+     * 
+     * @param tentativa Número da tentativa a cargo da fila (a primeira é 1)
+     */
+    public ZonedDateTime calcularPrazoFila(int tentativa) {
+        long atrasoMaximoMs = Math.round(RabbitMQConfig.FaixaRetry.paraTentativa(tentativa).getAtrasoMs()
+            * (1 + Math.max(0, jitterRetry)));
+        return ZonedDateTime.now().plus(Duration.ofMillis(atrasoMaximoMs)).plusSeconds(folgaFilaSegundos);
+    }
+
+    /**
+     * Envia o POST do webhook com os headers de assinatura e identificação
+     */
+    private ResponseEntity<String> postar(UUID id, String url, String payload, String signature,
+                                          String evento, int tentativa) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        // Adicionar assinatura se disponível
+        if (signature != null) {
+            headers.set("X-Webhook-Signature", signature);
+        }
+
+        // Adicionar headers adicionais
+        headers.set("X-Webhook-Event", evento);
+        headers.set("X-Webhook-Id", id.toString());
+        headers.set("X-Webhook-Attempt", String.valueOf(tentativa));
+
+        HttpEntity<String> entity = new HttpEntity<>(payload, headers);
+
+        return restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+    }
+
     /**
      * Agenda próxima tentativa de envio com backoff exponencial
      * 
+     * Usado apenas no envio feito pelo polling ({@link #enviarWebhook}), que só
+     * recebe eventos cuja mensagem a fila abandonou: o scheduler passa a responder
+     * pelo retry e nada é publicado no RabbitMQ. Retries de entregas originadas na
+     * fila ficam com as filas de atraso (ver {@link #calcularPrazoFila(int)}).
+     * 
      * @param webhook Webhook que falhou
      */
     private void agendarProximaTentativa(WebhookEvent webhook) {
         if (webhook.getTentativas() < webhook.getMaxTentativas()) {
-            // Backoff exponencial: 1min, 2min, 4min, 8min, 16min
-            long minutosEspera = (long) Math.pow(2, webhook.getTentativas() - 1);
-            ZonedDateTime proximaTentativa = ZonedDateTime.now().plusMinutes(minutosEspera);
+            ZonedDateTime proximaTentativa = calcularProximaTentativa(webhook.getTentativas());
             
             webhook.setProximaTentativa(proximaTentativa);
             webhook.setStatus("PENDING");
@@ -237,6 +348,17 @@ public class WebhookService {
         }
     }
 
+    /**
+     * Backoff por faixas com jitter: 10s, 1min, 5min, 30min, 2h
+     * 
+     * @param tentativasRealizadas Tentativas já realizadas
+     */
+    private ZonedDateTime calcularProximaTentativa(int tentativasRealizadas) {
+        long atrasoMs = RabbitMQConfig.FaixaRetry.paraTentativa(tentativasRealizadas + 1)
+            .atrasoComJitterMs(jitterRetry);
+        return ZonedDateTime.now().plus(Duration.ofMillis(atrasoMs));
+    }
+
     /**
      * Cria payload do webhook
      */
@@ -346,11 +468,17 @@ public class WebhookService {
     /**
      * Cria webhook para transação (busca lojista automaticamente)
      * 
+     * O lojista é lido pelo lojistaId: a transação pode vir de fora de uma sessão
+     * (controllers de notificação dos gateways, sem open-in-view), e a associação
+     * lazy não seria inicializável.
+     * 
      * @param transacao Transação que gerou o evento
      * @param evento Tipo do evento
      */
     public WebhookEvent criarWebhookParaTransacao(Transacao transacao, String evento) {
-        Lojista lojista = transacao.getLojista();
+        Lojista lojista = transacao.getLojistaId() != null
+            ? lojistaRepository.findById(transacao.getLojistaId()).orElse(null)
+            : null;
         if (lojista == null) {
             logger.warn("Transação {} não tem lojista associado", transacao.getId());
             return null;
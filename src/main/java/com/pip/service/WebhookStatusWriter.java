@@ -0,0 +1,452 @@
+package com.pip.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escritor assíncrono e em lote das transições de status de webhooks
+ *
+ * As entregas feitas a partir da fila não gravam o evento na thread do consumer:
+ * o resultado é enfileirado aqui e gravado por uma thread dedicada com um único
+ * UPDATE em lote (JDBC batch) por flush. Várias transições do mesmo evento no
+ * mesmo lote são reduzidas à última.
+ *
+ * O UPDATE nunca sobrescreve um evento já entregue (status SUCCESS) nem reduz o
+ * número de tentativas, de modo que gravações fora de ordem entre o consumer e o
+ * scheduler não regridem o evento. Com o buffer cheio, a gravação é feita de forma
+ * síncrona na thread chamadora.
+ *
+ * Enquanto a fila responde pelo evento, proxima_tentativa guarda o prazo da fila
+ * (ver {@link WebhookService#calcularPrazoFila(int)}), e não o instante do retry:
+ * o scheduler só assume o evento se a mensagem se perder. Adiamentos gravam apenas
+ * a extensão desse prazo.
+ *
+ * Falhas de conexão ou transitórias do banco são repetidas com backoff exponencial;
+ * se persistirem, as transições voltam para a frente do próximo lote (antes das mais
+ * novas, preservando a redução à última). Erros não recuperáveis gravam o lote
+ * registro a registro, descartando apenas a transição inválida.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@Service
+public class WebhookStatusWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookStatusWriter.class);
+
+    private static final int TAMANHO_MAXIMO_ERRO = 500;
+
+    private static final String SQL_ATUALIZACAO =
+        "UPDATE webhook_event SET status = ?, tentativas = GREATEST(tentativas, ?), http_status = ?, " +
+        "response_body = ?, error_message = ?, proxima_tentativa = ?, enviado_at = ?, " +
+        "sucesso_at = COALESCE(?, sucesso_at), updated_at = ?, reservado_ate = NULL, reservado_por = NULL " +
+        "WHERE id = ? AND status <> 'SUCCESS'";
+
+    private static final String SQL_PRAZO =
+        "UPDATE webhook_event SET proxima_tentativa = GREATEST(proxima_tentativa, ?), updated_at = ? " +
+        "WHERE id = ? AND status = 'PENDING'";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.status.buffer.capacidade:10000}")
+    private int capacidadeBuffer;
+
+    @Value("${webhook.status.flush.tamanho:500}")
+    private int tamanhoLote;
+
+    @Value("${webhook.status.flush.intervalo-ms:200}")
+    private long intervaloFlushMs;
+
+    @Value("${webhook.status.retry.max-tentativas:3}")
+    private int maxTentativas;
+
+    @Value("${webhook.status.retry.espera-inicial-ms:100}")
+    private long esperaInicialMs;
+
+    @Value("${webhook.status.retry.espera-maxima-ms:2000}")
+    private long esperaMaximaMs;
+
+    private ArrayBlockingQueue<AtualizacaoWebhook> buffer;
+    private ArrayBlockingQueue<AtualizacaoWebhook> reenvio;
+    private Thread threadEscrita;
+    private volatile boolean ativo;
+
+    private Counter contadorGravados;
+    private Counter contadorFalhas;
+    private Counter contadorRetentativas;
+    private Counter contadorReenfileirados;
+
+    @PostConstruct
+    public void iniciar() {
+        this.buffer = new ArrayBlockingQueue<>(capacidadeBuffer);
+        this.reenvio = new ArrayBlockingQueue<>(capacidadeBuffer);
+
+        Gauge.builder("pip.webhook.status.buffer.tamanho", buffer, ArrayBlockingQueue::size)
+            .description("Transições de status de webhook aguardando gravação")
+            .register(meterRegistry);
+        this.contadorGravados = Counter.builder("pip.webhook.status.gravados")
+            .description("Transições de status de webhook gravadas em lote")
+            .register(meterRegistry);
+        this.contadorFalhas = Counter.builder("pip.webhook.status.falhas")
+            .description("Transições de status de webhook descartadas após falha na gravação")
+            .register(meterRegistry);
+        this.contadorRetentativas = Counter.builder("pip.webhook.status.retentativas")
+            .description("Novas tentativas de gravação de lote após falha transitória do banco")
+            .register(meterRegistry);
+        this.contadorReenfileirados = Counter.builder("pip.webhook.status.reenfileirados")
+            .description("Transições de status de webhook devolvidas ao próximo lote após falha persistente")
+            .register(meterRegistry);
+
+        this.ativo = true;
+        this.threadEscrita = new Thread(this::loopEscrita, "webhook-status-writer");
+        this.threadEscrita.setDaemon(true);
+        this.threadEscrita.start();
+
+        logger.info("WebhookStatusWriter iniciado - capacidade: {}, lote: {}, intervalo: {}ms",
+            capacidadeBuffer, tamanhoLote, intervaloFlushMs);
+    }
+
+    /**
+     * Registra uma transição de status para gravação assíncrona
+     *
+     * @param atualizacao Resultado da tentativa de entrega
+     */
+    public void registrar(AtualizacaoWebhook atualizacao) {
+        if (!buffer.offer(atualizacao)) {
+            gravarLote(List.of(atualizacao));
+        }
+    }
+
+    /**
+     * Laço da thread de escrita: começa pelas transições devolvidas por falha, aguarda
+     * a primeira transição nova até o intervalo de flush e drena o buffer até o tamanho do lote
+     */
+    private void loopEscrita() {
+        List<AtualizacaoWebhook> lote = new ArrayList<>(tamanhoLote);
+
+        while (ativo) {
+            try {
+                reenvio.drainTo(lote, tamanhoLote);
+                if (lote.isEmpty()) {
+                    AtualizacaoWebhook primeira = buffer.poll(intervaloFlushMs, TimeUnit.MILLISECONDS);
+                    if (primeira == null) {
+                        continue;
+                    }
+                    lote.add(primeira);
+                }
+
+                buffer.drainTo(lote, tamanhoLote - lote.size());
+
+                gravarLote(lote);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Erro inesperado no escritor de status de webhooks: {}", e.getMessage(), e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Grava o lote com um único UPDATE em lote, mantendo apenas a última transição de cada evento
+     *
+     * Um adiamento posterior a uma transição completa do mesmo evento não a substitui:
+     * apenas estende o seu prazo.
+     */
+    void gravarLote(List<AtualizacaoWebhook> lote) {
+        Map<UUID, AtualizacaoWebhook> ultimas = new LinkedHashMap<>();
+        for (AtualizacaoWebhook atualizacao : lote) {
+            ultimas.merge(atualizacao.id, atualizacao, AtualizacaoWebhook::combinar);
+        }
+
+        try {
+            comRetentativa(ultimas.values());
+            contadorGravados.increment(ultimas.size());
+        } catch (Exception e) {
+            if (recuperavel(e)) {
+                logger.error("Falha persistente ao gravar lote de {} status de webhook, devolvendo ao próximo lote: {}",
+                    ultimas.size(), e.getMessage());
+                reenfileirar(ultimas.values());
+            } else {
+                logger.error("Falha ao gravar lote de {} status de webhook, gravando individualmente: {}",
+                    ultimas.size(), e.getMessage());
+                gravarIndividualmente(ultimas.values());
+            }
+        }
+    }
+
+    /**
+     * Executa o lote repetindo-o com backoff exponencial (com jitter) enquanto o erro for recuperável
+     */
+    private void comRetentativa(Collection<AtualizacaoWebhook> atualizacoes) {
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                executar(atualizacoes);
+                return;
+            } catch (RuntimeException e) {
+                if (!recuperavel(e) || tentativa >= maxTentativas) {
+                    throw e;
+                }
+
+                long espera = backoff(tentativa);
+                contadorRetentativas.increment();
+                logger.debug("Falha transitória ao gravar status de webhook ({}); nova tentativa {} em {} ms",
+                    e.getClass().getSimpleName(), tentativa + 1, espera);
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Devolve as transições para a frente do próximo lote; sem espaço, são descartadas
+     */
+    private void reenfileirar(Collection<AtualizacaoWebhook> atualizacoes) {
+        int descartadas = 0;
+        for (AtualizacaoWebhook atualizacao : atualizacoes) {
+            if (reenvio.offer(atualizacao)) {
+                contadorReenfileirados.increment();
+            } else {
+                descartadas++;
+            }
+        }
+        if (descartadas > 0) {
+            contadorFalhas.increment(descartadas);
+            logger.error("{} transições de status de webhook descartadas: fila de reenvio cheia", descartadas);
+        }
+    }
+
+    /**
+     * Grava registro a registro para não perder o lote inteiro por causa de uma transição inválida
+     */
+    private void gravarIndividualmente(Collection<AtualizacaoWebhook> atualizacoes) {
+        for (AtualizacaoWebhook atualizacao : atualizacoes) {
+            try {
+                executar(List.of(atualizacao));
+                contadorGravados.increment();
+            } catch (Exception e) {
+                contadorFalhas.increment();
+                logger.error("Status do webhook {} descartado após falha na gravação: {}",
+                    atualizacao.id, e.getMessage());
+            }
+        }
+    }
+
+    private void executar(Collection<AtualizacaoWebhook> atualizacoes) {
+        List<Object[]> parametros = new ArrayList<>(atualizacoes.size());
+        List<Object[]> prazos = new ArrayList<>();
+        for (AtualizacaoWebhook a : atualizacoes) {
+            if (a.isAdiamento()) {
+                prazos.add(new Object[] {offset(a.proximaTentativa), offset(a.updatedAt), a.id});
+                continue;
+            }
+            parametros.add(new Object[] {
+                a.status, a.tentativas, a.httpStatus, a.responseBody, truncar(a.errorMessage),
+                offset(a.proximaTentativa), offset(a.enviadoAt), offset(a.sucessoAt), offset(a.updatedAt), a.id
+            });
+        }
+
+        if (!parametros.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_ATUALIZACAO, parametros, new int[] {
+                Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+                Types.TIMESTAMP_WITH_TIMEZONE, Types.TIMESTAMP_WITH_TIMEZONE, Types.TIMESTAMP_WITH_TIMEZONE,
+                Types.TIMESTAMP_WITH_TIMEZONE, Types.OTHER
+            });
+        }
+        if (!prazos.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_PRAZO, prazos, new int[] {
+                Types.TIMESTAMP_WITH_TIMEZONE, Types.TIMESTAMP_WITH_TIMEZONE, Types.OTHER
+            });
+        }
+    }
+
+    /**
+     * Banco fora do ar, conexão indisponível ou erro transitório (timeout, deadlock)
+     */
+    private static boolean recuperavel(Throwable erro) {
+        return erro instanceof TransientDataAccessException
+            || erro instanceof RecoverableDataAccessException
+            || erro instanceof DataAccessResourceFailureException;
+    }
+
+    private long backoff(int tentativa) {
+        long teto = Math.min(esperaMaximaMs, esperaInicialMs << Math.min(tentativa - 1, 20));
+        return ThreadLocalRandom.current().nextLong(teto / 2, teto + 1);
+    }
+
+    private static OffsetDateTime offset(ZonedDateTime data) {
+        return data != null ? data.toOffsetDateTime() : null;
+    }
+
+    private static String truncar(String mensagem) {
+        return mensagem != null && mensagem.length() > TAMANHO_MAXIMO_ERRO
+            ? mensagem.substring(0, TAMANHO_MAXIMO_ERRO) : mensagem;
+    }
+
+    /**
+     * Drena o buffer no desligamento da aplicação
+     */
+    @PreDestroy
+    public void encerrar() {
+        logger.info("Encerrando WebhookStatusWriter - {} transições pendentes", buffer.size());
+
+        ativo = false;
+        threadEscrita.interrupt();
+        try {
+            threadEscrita.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Uma única passada: o que voltar para a fila de reenvio a partir daqui é descartado
+        List<AtualizacaoWebhook> lote = new ArrayList<>(tamanhoLote);
+        reenvio.drainTo(lote);
+        while (buffer.drainTo(lote, tamanhoLote) > 0 || !lote.isEmpty()) {
+            gravarLote(lote);
+            lote.clear();
+        }
+
+        int perdidas = reenvio.size();
+        if (perdidas > 0) {
+            reenvio.clear();
+            contadorFalhas.increment(perdidas);
+            logger.error("{} transições de status de webhook não gravadas no desligamento", perdidas);
+        }
+
+        logger.info("WebhookStatusWriter encerrado");
+    }
+
+    /**
+     * Retorna o número de transições aguardando gravação
+     */
+    public int getPendentes() {
+        return buffer.size() + reenvio.size();
+    }
+
+    /**
+     * Resultado de uma tentativa de entrega a ser gravado no webhook_event
+     */
+    public static final class AtualizacaoWebhook {
+        private final UUID id;
+        private final String status;
+        private final int tentativas;
+        private final Integer httpStatus;
+        private final String responseBody;
+        private final String errorMessage;
+        private final ZonedDateTime proximaTentativa;
+        private final ZonedDateTime enviadoAt;
+        private final ZonedDateTime sucessoAt;
+        private final ZonedDateTime updatedAt;
+
+        private AtualizacaoWebhook(UUID id, String status, int tentativas, Integer httpStatus, String responseBody,
+                                   String errorMessage, ZonedDateTime proximaTentativa, ZonedDateTime enviadoAt,
+                                   ZonedDateTime sucessoAt) {
+            this.id = id;
+            this.status = status;
+            this.tentativas = tentativas;
+            this.httpStatus = httpStatus;
+            this.responseBody = responseBody;
+            this.errorMessage = errorMessage;
+            this.proximaTentativa = proximaTentativa;
+            this.enviadoAt = enviadoAt;
+            this.sucessoAt = sucessoAt;
+            this.updatedAt = ZonedDateTime.now();
+        }
+
+        public static AtualizacaoWebhook sucesso(UUID id, int tentativa, ZonedDateTime enviadoAt,
+                                                 Integer httpStatus, String responseBody) {
+            return new AtualizacaoWebhook(id, "SUCCESS", tentativa, httpStatus, responseBody,
+                null, null, enviadoAt, ZonedDateTime.now());
+        }
+
+        /**
+         * @param proximaTentativa Prazo da fila para a próxima tentativa (status PENDING), ou
+         *                         null se as tentativas se esgotaram (status FAILED)
+         */
+        public static AtualizacaoWebhook falha(UUID id, int tentativa, ZonedDateTime enviadoAt, Integer httpStatus,
+                                               String responseBody, String errorMessage,
+                                               ZonedDateTime proximaTentativa) {
+            return new AtualizacaoWebhook(id, proximaTentativa != null ? "PENDING" : "FAILED", tentativa,
+                httpStatus, responseBody, errorMessage, proximaTentativa, enviadoAt, null);
+        }
+
+        /**
+         * Mensagem reenfileirada sem tentativa (circuito aberto ou limite do lojista):
+         * apenas estende o prazo da fila de um evento ainda PENDING
+         */
+        public static AtualizacaoWebhook adiamento(UUID id, ZonedDateTime prazoFila) {
+            return new AtualizacaoWebhook(id, null, 0, null, null, null, prazoFila, null, null);
+        }
+
+        /**
+         * Combina duas transições do mesmo evento no lote, na ordem de chegada
+         */
+        static AtualizacaoWebhook combinar(AtualizacaoWebhook anterior, AtualizacaoWebhook nova) {
+            if (!nova.isAdiamento() || anterior.isAdiamento()) {
+                return nova;
+            }
+            if (!"PENDING".equals(anterior.status)) {
+                return anterior;
+            }
+            ZonedDateTime prazo = nova.proximaTentativa.isAfter(anterior.proximaTentativa)
+                ? nova.proximaTentativa : anterior.proximaTentativa;
+            return new AtualizacaoWebhook(anterior.id, anterior.status, anterior.tentativas, anterior.httpStatus,
+                anterior.responseBody, anterior.errorMessage, prazo, anterior.enviadoAt, anterior.sucessoAt);
+        }
+
+        boolean isAdiamento() {
+            return status == null;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public int getTentativas() {
+            return tentativas;
+        }
+
+        public ZonedDateTime getProximaTentativa() {
+            return proximaTentativa;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+-- Migration V11: Reserva (lease) de eventos de webhook para polling concorrente entre nós
+-- Autor: Luiz Gustavo Finotello
+
+ALTER TABLE webhook_event ADD COLUMN IF NOT EXISTS reservado_ate TIMESTAMP WITH TIME ZONE;
+ALTER TABLE webhook_event ADD COLUMN IF NOT EXISTS reservado_por VARCHAR(100);
+
+-- Índice da fila: busca ordenada por proxima_tentativa apenas entre eventos elegíveis
+CREATE INDEX IF NOT EXISTS idx_webhook_event_fila
+    ON webhook_event(status, proxima_tentativa, id)
+    WHERE status IN ('PENDING', 'FAILED');
+
+COMMENT ON COLUMN webhook_event.reservado_ate IS 'Fim da reserva do evento por um nó do scheduler';
+COMMENT ON COLUMN webhook_event.reservado_por IS 'Identificador do nó que reservou o evento';
+COMMENT ON INDEX idx_webhook_event_fila IS 'Índice parcial para reserva de lotes de webhooks com FOR UPDATE SKIP LOCKED';
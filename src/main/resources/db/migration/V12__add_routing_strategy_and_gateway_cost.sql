@@ -0,0 +1,14 @@
+-- Migration V12: Estratégia de roteamento por lojista e custo por gateway
+-- Autor: Luiz Gustavo Finotello
+
+ALTER TABLE lojista ADD COLUMN IF NOT EXISTS estrategia_roteamento VARCHAR(30);
+
+ALTER TABLE gateway ADD COLUMN IF NOT EXISTS custo_percentual INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE gateway ADD COLUMN IF NOT EXISTS custo_fixo BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE gateway ADD CONSTRAINT chk_gateway_custo_percentual CHECK (custo_percentual >= 0);
+ALTER TABLE gateway ADD CONSTRAINT chk_gateway_custo_fixo CHECK (custo_fixo >= 0);
+
+COMMENT ON COLUMN lojista.estrategia_roteamento IS 'Estratégia de seleção de gateway: MAIOR_SCORE, PESO, P2C, CUSTO (nula = padrão da plataforma)';
+COMMENT ON COLUMN gateway.custo_percentual IS 'Custo percentual por transação em basis points';
+COMMENT ON COLUMN gateway.custo_fixo IS 'Custo fixo por transação em centavos';
@@ -0,0 +1,14 @@
+-- Migration V13: Identificação de transações criadas por autorização em lote
+-- Autor: Luiz Gustavo Finotello
+
+ALTER TABLE transacao ADD COLUMN IF NOT EXISTS lote_id VARCHAR(100);
+ALTER TABLE transacao ADD COLUMN IF NOT EXISTS lote_indice INTEGER;
+
+-- Cada item do lote gera no máximo uma transação; permite retomar o lote sem duplicar cobranças
+CREATE UNIQUE INDEX IF NOT EXISTS idx_transacao_lote
+    ON transacao(lojista_id, lote_id, lote_indice)
+    WHERE lote_id IS NOT NULL;
+
+COMMENT ON COLUMN transacao.lote_id IS 'ID do lote informado em /api/payments/batch (nulo para autorizações avulsas)';
+COMMENT ON COLUMN transacao.lote_indice IS 'Posição do item no lote, a partir de 0';
+COMMENT ON INDEX idx_transacao_lote IS 'Índice único parcial para retomada de lotes de autorização';
@@ -0,0 +1,17 @@
+-- Migration V14: Outbox transacional de webhooks
+-- Autor: Luiz Gustavo Finotello
+
+-- Gravada na mesma transação do webhook_event; o relay publica no RabbitMQ e remove a linha
+CREATE TABLE IF NOT EXISTS webhook_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    webhook_event_id UUID NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT fk_webhook_outbox_event FOREIGN KEY (webhook_event_id) REFERENCES webhook_event(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_webhook_outbox_event ON webhook_outbox(webhook_event_id);
+
+COMMENT ON TABLE webhook_outbox IS 'Mensagens de webhook aguardando publicação no RabbitMQ (outbox transacional)';
+COMMENT ON COLUMN webhook_outbox.id IS 'Sequencial; define a ordem de publicação';
+COMMENT ON COLUMN webhook_outbox.webhook_event_id IS 'Evento de webhook a ser publicado';
@@ -0,0 +1,40 @@
+-- Migration V15: Tokenização por envelope (DEKs locais cifradas por uma KEK do Key Vault)
+-- Autor: Luiz Gustavo Finotello
+
+-- Chaves de dados (DEK) cifradas pela KEK; o valor em claro só existe na memória dos nós
+CREATE TABLE IF NOT EXISTS chave_dados_tokenizacao (
+    id UUID PRIMARY KEY,
+    chave_cifrada BYTEA NOT NULL,
+    kek_versao VARCHAR(64) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'ACTIVE',
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    rewrapped_at TIMESTAMP WITH TIME ZONE,
+
+    CONSTRAINT chk_chave_dados_status CHECK (status IN ('ACTIVE', 'RETIRED'))
+);
+
+CREATE INDEX IF NOT EXISTS idx_chave_dados_status ON chave_dados_tokenizacao(status, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_chave_dados_kek_versao ON chave_dados_tokenizacao(kek_versao);
+
+-- Dados de cartão cifrados com AES-256-GCM sob uma DEK, indexados pelo token
+CREATE TABLE IF NOT EXISTS token_cartao (
+    token VARCHAR(80) PRIMARY KEY,
+    merchant_id VARCHAR(100) NOT NULL,
+    chave_dados_id UUID NOT NULL,
+    iv BYTEA NOT NULL,
+    dados_cifrados BYTEA NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP WITH TIME ZONE,
+
+    CONSTRAINT fk_token_cartao_chave_dados FOREIGN KEY (chave_dados_id) REFERENCES chave_dados_tokenizacao(id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_token_cartao_chave_dados ON token_cartao(chave_dados_id);
+CREATE INDEX IF NOT EXISTS idx_token_cartao_expires_at ON token_cartao(expires_at);
+
+COMMENT ON TABLE chave_dados_tokenizacao IS 'Chaves de dados (DEK) da tokenização, cifradas pela KEK do Key Vault';
+COMMENT ON COLUMN chave_dados_tokenizacao.chave_cifrada IS 'IV (12 bytes) || DEK cifrada com AES-256-GCM sob a KEK';
+COMMENT ON COLUMN chave_dados_tokenizacao.kek_versao IS 'Versão do secret da KEK usada para cifrar a DEK';
+COMMENT ON COLUMN chave_dados_tokenizacao.rewrapped_at IS 'Última recifragem da DEK após rotação da KEK';
+COMMENT ON TABLE token_cartao IS 'Dados de cartão tokenizados (cifrados por envelope)';
+COMMENT ON COLUMN token_cartao.dados_cifrados IS 'JSON do cartão cifrado com AES-256-GCM (AAD = token|merchant_id)';
@@ -0,0 +1,115 @@
+package com.pip.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para AuditEventPublisher
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class AuditEventPublisherTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Mock
+    private AuditSegmentStore auditSegmentStore;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private AuditEventPublisher auditEventPublisher;
+
+    @TempDir
+    Path diretorioSpool;
+
+    private final byte[] evento = "{\"eventId\":\"evt-1\"}".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(auditEventPublisher, "topico", "security-events");
+        ReflectionTestUtils.setField(auditEventPublisher, "capacidadeBuffer", 100);
+        ReflectionTestUtils.setField(auditEventPublisher, "tamanhoLote", 10);
+        ReflectionTestUtils.setField(auditEventPublisher, "intervaloFlushMs", 10L);
+        ReflectionTestUtils.setField(auditEventPublisher, "diretorioSpool", diretorioSpool.toString());
+        ReflectionTestUtils.setField(auditEventPublisher, "tamanhoMaximoSpoolMb", 1L);
+        ReflectionTestUtils.setField(auditEventPublisher, "pausaAposFalhaMs", 60_000L);
+        ReflectionTestUtils.setField(auditEventPublisher, "timeoutReenvioMs", 1000L);
+        auditEventPublisher.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        auditEventPublisher.encerrar();
+    }
+
+    @Test
+    void testEnviar_BrokerForaGravaNoSpoolSemNovasTentativas() {
+        // Arrange
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker indisponível")));
+
+        // Act
+        auditEventPublisher.enviar("evt-1", evento);
+        auditEventPublisher.enviar("evt-2", evento);
+
+        // Assert - o segundo evento vai direto para o spool durante a pausa
+        verify(kafkaTemplate, times(1)).send(anyString(), anyString(), any(byte[].class));
+        assertEquals(2.0, meterRegistry.counter("pip.audit.spool.gravados").count());
+        assertTrue(meterRegistry.get("pip.audit.spool.bytes").gauge().value() > 0);
+    }
+
+    @Test
+    void testReenviarSpool_ReenviaEventosERemoveArquivo() throws Exception {
+        // Arrange - evento no spool após uma falha do broker
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker indisponível")));
+        auditEventPublisher.enviar("evt-1", evento);
+
+        ReflectionTestUtils.setField(auditEventPublisher, "brokerIndisponivelAte", 0L);
+        SendResult<String, byte[]> confirmacao = mock(SendResult.class);
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+            .thenReturn(CompletableFuture.completedFuture(confirmacao));
+
+        // Act
+        auditEventPublisher.reenviarSpool();
+
+        // Assert
+        verify(kafkaTemplate, times(2)).send(eq("security-events"), eq("evt-1"), aryEq(evento));
+        verify(kafkaTemplate).flush();
+        assertEquals(1.0, meterRegistry.counter("pip.audit.spool.reenviados").count());
+        assertEquals(0.0, meterRegistry.get("pip.audit.spool.bytes").gauge().value());
+        try (var arquivos = Files.list(diretorioSpool)) {
+            assertEquals(0, arquivos.count());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.pip.audit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para AuditSegmentStore e AuditVerifier
+ *
+ * @author Luiz Gustavo Finotello
+ */
+class AuditSegmentStoreTest {
+
+    @TempDir
+    Path diretorio;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AuditSegmentStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = novoStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.encerrar();
+    }
+
+    @Test
+    void testAnexar_EncadeiaEntreSegmentosEReiniciosEConsultaPorMerchant() throws Exception {
+        // Arrange - eventos de ~4KB em segmentos de 1MB forçam a rotação
+        String payload = "{\"dados\":\"" + "x".repeat(4000) + "\"}";
+        for (int i = 0; i < 300; i++) {
+            store.anexar("merchant-" + (i % 3), i % 2 == 0 ? "API_KEY_USAGE" : "TOKENIZATION_SUCCESS",
+                payload.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Act - reinício retoma o segmento ativo e a sequência
+        store.encerrar();
+        store = novoStore();
+        store.anexar("merchant-0", "API_KEY_USAGE", payload.getBytes(StandardCharsets.UTF_8));
+
+        AuditVerifier.ResultadoVerificacao resultado = store.verificar();
+        List<AuditSegmentStore.RegistroAuditoria> eventos = store.buscar("merchant-0", "API_KEY_USAGE",
+            Instant.now().minusSeconds(60), Instant.now().plusSeconds(60));
+
+        // Assert
+        assertTrue(resultado.isValido(), resultado.getFalhas().toString());
+        assertEquals(301, resultado.getRegistros());
+        assertTrue(resultado.getSegmentos() >= 2);
+        assertEquals(51, eventos.size());
+        assertEquals(301, eventos.get(eventos.size() - 1).getSequencia());
+        assertTrue(eventos.stream().allMatch(e -> e.getMerchantId().equals("merchant-0")));
+    }
+
+    @Test
+    void testVerificar_DetectaRegistroAlteradoEmSegmentoSelado() throws Exception {
+        // Arrange
+        String payload = "{\"resultado\":\"SUCCESS\",\"dados\":\"" + "y".repeat(4000) + "\"}";
+        for (int i = 0; i < 300; i++) {
+            store.anexar("merchant-1", "API_KEY_USAGE", payload.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path primeiro;
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            primeiro = arquivos.filter(p -> p.toString().endsWith(".seg")).sorted()
+                .collect(Collectors.toList()).get(0);
+        }
+
+        // Act - altera um byte do payload do primeiro registro
+        try (FileChannel canal = FileChannel.open(primeiro, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap("F".getBytes(StandardCharsets.UTF_8)),
+                AuditSegment.TAMANHO_CABECALHO + AuditSegment.TAMANHO_CABECALHO_REGISTRO + 40);
+        }
+        AuditVerifier.ResultadoVerificacao resultado = store.verificar();
+
+        // Assert
+        assertFalse(resultado.isValido());
+        assertTrue(resultado.getFalhas().get(0).contains("hash divergente"));
+    }
+
+    @Test
+    void testAplicarRetencao_ArquivaSeladosEMantemSoUmSegmentoMapeado() throws Exception {
+        // Arrange
+        Path arquivo = diretorio.resolve("arquivo");
+        ReflectionTestUtils.setField(store, "diretorioArquivo", arquivo.toString());
+        ReflectionTestUtils.setField(store, "maxSegmentosAbertos", 1);
+        String payload = "{\"dados\":\"" + "z".repeat(4000) + "\"}";
+        for (int i = 0; i < 600; i++) {
+            store.anexar("merchant-" + (i % 2), "API_KEY_USAGE", payload.getBytes(StandardCharsets.UTF_8));
+        }
+        long seladosAntes = contarSegmentos(diretorio) - 1;
+        assertEquals(300, store.buscar("merchant-0", null,
+            Instant.now().minusSeconds(60), Instant.now().plusSeconds(60)).size());
+        assertEquals(1, ((Map<?, ?>) ReflectionTestUtils.getField(store, "abertos")).size());
+
+        // Act
+        store.aplicarRetencao(System.currentTimeMillis() + 1000);
+        AuditVerifier.ResultadoVerificacao resultado = store.verificar();
+
+        // Assert - só o segmento ativo permanece; a cadeia restante continua válida
+        assertTrue(seladosAntes >= 2);
+        assertEquals(1, contarSegmentos(diretorio));
+        assertEquals(seladosAntes, contarSegmentos(arquivo));
+        assertTrue(resultado.isValido(), resultado.getFalhas().toString());
+        assertEquals(1, resultado.getSegmentos());
+        assertFalse(resultado.getAvisos().isEmpty());
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(store, "abertos")).isEmpty());
+    }
+
+    private long contarSegmentos(Path pasta) throws Exception {
+        try (Stream<Path> arquivos = Files.list(pasta)) {
+            return arquivos.filter(p -> p.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private AuditSegmentStore novoStore() {
+        AuditSegmentStore novo = new AuditSegmentStore();
+        ReflectionTestUtils.setField(novo, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(novo, "habilitado", true);
+        ReflectionTestUtils.setField(novo, "diretorio", diretorio.toString());
+        ReflectionTestUtils.setField(novo, "tamanhoSegmentoMb", 1);
+        ReflectionTestUtils.setField(novo, "registrosPorCheckpoint", 16);
+        novo.iniciar();
+        return novo;
+    }
+}
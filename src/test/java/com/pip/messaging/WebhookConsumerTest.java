@@ -0,0 +1,84 @@
+package com.pip.messaging;
+
+import com.pip.dto.WebhookMessage;
+import com.pip.model.WebhookEvent;
+import com.pip.repository.WebhookEventRepository;
+import com.pip.service.WebhookDispatcher;
+import com.pip.service.WebhookService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para WebhookConsumer
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class WebhookConsumerTest {
+
+    @Mock
+    private WebhookDispatcher webhookDispatcher;
+
+    @Mock
+    private WebhookEventRepository webhookEventRepository;
+
+    @Mock
+    private WebhookProducer webhookProducer;
+
+    @Mock
+    private WebhookService webhookService;
+
+    @InjectMocks
+    private WebhookConsumer webhookConsumer;
+
+    private WebhookMessage mensagem;
+
+    @BeforeEach
+    void setUp() {
+        WebhookEvent evento = new WebhookEvent();
+        evento.setId(UUID.randomUUID());
+        evento.setEvento("TRANSACTION_AUTHORIZED");
+        evento.setUrl("https://loja.com/webhook");
+        evento.setPayload("{}");
+        evento.setMaxTentativas(5);
+        mensagem = new WebhookMessage(evento, 1);
+    }
+
+    @Test
+    void testProcessWebhook_MensagemCompletaDeEventoJaEntregueNaoEReenviada() {
+        // Arrange - o polling entregou o evento antes da mensagem chegar
+        when(webhookEventRepository.buscarStatus(mensagem.getWebhookEventId())).thenReturn(Optional.of("SUCCESS"));
+
+        // Act
+        webhookConsumer.processWebhook(mensagem);
+
+        // Assert
+        verify(webhookDispatcher, never()).enviar(any(WebhookMessage.class));
+        verifyNoInteractions(webhookProducer);
+    }
+
+    @Test
+    void testProcessWebhook_MensagemCompletaPendenteEEntregueSemCarregarOEvento() {
+        // Arrange
+        when(webhookEventRepository.buscarStatus(mensagem.getWebhookEventId())).thenReturn(Optional.of("PENDING"));
+        when(webhookDispatcher.enviar(mensagem)).thenReturn(WebhookDispatcher.ResultadoEnvio.SUCESSO);
+
+        // Act
+        webhookConsumer.processWebhook(mensagem);
+
+        // Assert
+        verify(webhookDispatcher).enviar(mensagem);
+        verify(webhookEventRepository, never()).findById(any());
+        verifyNoInteractions(webhookProducer);
+    }
+}
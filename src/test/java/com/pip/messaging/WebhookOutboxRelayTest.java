@@ -0,0 +1,171 @@
+package com.pip.messaging;
+
+import com.pip.config.RabbitMQConfig;
+import com.pip.dto.WebhookMessage;
+import com.pip.model.WebhookEvent;
+import com.pip.model.WebhookOutbox;
+import com.pip.repository.WebhookEventRepository;
+import com.pip.repository.WebhookOutboxRepository;
+import com.pip.service.WebhookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para WebhookOutboxRelay
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class WebhookOutboxRelayTest {
+
+    @Mock
+    private WebhookOutboxRepository webhookOutboxRepository;
+
+    @Mock
+    private WebhookEventRepository webhookEventRepository;
+
+    @Mock
+    private WebhookService webhookService;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private WebhookOutboxRelay webhookOutboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(webhookOutboxRelay, "tamanhoLote", 500);
+        ReflectionTestUtils.setField(webhookOutboxRelay, "maxLotesPorCiclo", 20);
+        ReflectionTestUtils.setField(webhookOutboxRelay, "timeoutConfirmacaoMs", 5000L);
+        webhookOutboxRelay.iniciar();
+    }
+
+    @Test
+    void testPublicarPendentes_RemoveEntradasConfirmadas() {
+        // Arrange
+        List<WebhookOutbox> lote = List.of(entrada(1L), entrada(2L));
+        when(webhookOutboxRepository.selecionarLote(500)).thenReturn(lote);
+
+        // Act
+        webhookOutboxRelay.publicarPendentes();
+
+        // Assert - lote incompleto: um único lote no ciclo
+        verify(rabbitTemplate, times(1)).invoke(any());
+        verify(webhookOutboxRepository).removerPublicadas(List.of(1L, 2L));
+        assertEquals(2.0, meterRegistry.counter("pip.webhook.outbox.publicadas").count());
+    }
+
+    @Test
+    void testPublicarLote_EventosPublicadosFicamComAFila() {
+        // Arrange
+        WebhookOutbox entrada = entrada(1L);
+        WebhookEvent evento = evento(entrada, "PENDING");
+        ZonedDateTime prazo = ZonedDateTime.now().plusMinutes(5);
+        when(webhookOutboxRepository.selecionarLote(500)).thenReturn(List.of(entrada));
+        when(webhookEventRepository.findAllById(anyList())).thenReturn(List.of(evento));
+        when(webhookService.calcularPrazoFila(1)).thenReturn(prazo);
+        canal();
+
+        // Act
+        webhookOutboxRelay.publicarLote();
+
+        // Assert - o prazo da fila tira o evento do polling até a mensagem se perder
+        verify(webhookEventRepository).atribuirAFila(List.of(evento.getId()), prazo);
+        verify(webhookOutboxRepository).removerPublicadas(List.of(1L));
+    }
+
+    @Test
+    void testPublicarLote_EventoJaEntreguePeloPollingNaoERepublicado() {
+        // Arrange - o scheduler reservou e entregou o primeiro evento antes do relay publicá-lo
+        WebhookOutbox entregue = entrada(1L);
+        WebhookOutbox pendente = entrada(2L);
+        WebhookEvent eventoEntregue = evento(entregue, "SUCCESS");
+        WebhookEvent eventoPendente = evento(pendente, "PENDING");
+        ZonedDateTime prazo = ZonedDateTime.now().plusMinutes(5);
+        when(webhookOutboxRepository.selecionarLote(500)).thenReturn(List.of(entregue, pendente));
+        when(webhookEventRepository.findAllById(anyList())).thenReturn(List.of(eventoEntregue, eventoPendente));
+        when(webhookService.calcularPrazoFila(1)).thenReturn(prazo);
+        RabbitOperations operacoes = canal();
+
+        // Act
+        webhookOutboxRelay.publicarLote();
+
+        // Assert - só o evento pendente vai para a fila; as duas entradas saem do outbox
+        verify(operacoes, times(1)).convertAndSend(eq(RabbitMQConfig.WEBHOOK_EXCHANGE),
+            eq(RabbitMQConfig.WEBHOOK_ROUTING_KEY),
+            argThat((WebhookMessage mensagem) -> eventoPendente.getId().equals(mensagem.getWebhookEventId())));
+        verify(webhookEventRepository).atribuirAFila(List.of(eventoPendente.getId()), prazo);
+        verify(webhookOutboxRepository).removerPublicadas(List.of(1L, 2L));
+    }
+
+    @Test
+    void testPublicarPendentes_SemConfirmacaoMantemEntradasNoOutbox() {
+        // Arrange
+        when(webhookOutboxRepository.selecionarLote(500)).thenReturn(List.of(entrada(1L)));
+        when(rabbitTemplate.invoke(any())).thenThrow(new AmqpTimeoutException("Sem confirmação do broker"));
+
+        // Act
+        webhookOutboxRelay.publicarPendentes();
+
+        // Assert - a transação é desfeita e o lote volta no próximo ciclo
+        verify(webhookOutboxRepository, never()).removerPublicadas(anyList());
+        verify(transactionManager).rollback(any());
+        assertEquals(1.0, meterRegistry.counter("pip.webhook.outbox.falhas").count());
+    }
+
+    /**
+     * Executa o callback do canal de publicação sobre um RabbitOperations simulado
+     */
+    private RabbitOperations canal() {
+        RabbitOperations operacoes = mock(RabbitOperations.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocacao ->
+            invocacao.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operacoes));
+        return operacoes;
+    }
+
+    private WebhookEvent evento(WebhookOutbox entrada, String status) {
+        WebhookEvent evento = new WebhookEvent();
+        evento.setId(entrada.getWebhookEventId());
+        evento.setStatus(status);
+        evento.setEvento("TRANSACTION_AUTHORIZED");
+        evento.setUrl("https://loja.com/webhook");
+        evento.setPayload("{}");
+        return evento;
+    }
+
+    private WebhookOutbox entrada(Long id) {
+        WebhookOutbox entrada = new WebhookOutbox(UUID.randomUUID());
+        entrada.setId(id);
+        return entrada;
+    }
+}
@@ -0,0 +1,64 @@
+package com.pip.messaging;
+
+import com.pip.config.RabbitMQConfig;
+import com.pip.dto.WebhookMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para WebhookProducer
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class WebhookProducerTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @InjectMocks
+    private WebhookProducer webhookProducer;
+
+    @Test
+    void testFaixaRetry_AtrasoCresceComATentativa() {
+        assertEquals(RabbitMQConfig.FaixaRetry.S10, RabbitMQConfig.FaixaRetry.paraTentativa(1));
+        assertEquals(RabbitMQConfig.FaixaRetry.S10, RabbitMQConfig.FaixaRetry.paraTentativa(2));
+        assertEquals(RabbitMQConfig.FaixaRetry.M1, RabbitMQConfig.FaixaRetry.paraTentativa(3));
+        assertEquals(RabbitMQConfig.FaixaRetry.M30, RabbitMQConfig.FaixaRetry.paraTentativa(5));
+        assertEquals(RabbitMQConfig.FaixaRetry.H2, RabbitMQConfig.FaixaRetry.paraTentativa(50));
+    }
+
+    @Test
+    void testSendWebhookToRetry_UsaFilaDaFaixaComExpiracaoComJitter() {
+        // Arrange
+        ReflectionTestUtils.setField(webhookProducer, "jitter", 0.2);
+        ArgumentCaptor<MessagePostProcessor> processador = ArgumentCaptor.forClass(MessagePostProcessor.class);
+
+        // Act - quarta tentativa (terceiro retry): faixa de 5 minutos
+        webhookProducer.sendWebhookToRetry(UUID.randomUUID(), 4);
+
+        // Assert
+        verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.WEBHOOK_RETRY_EXCHANGE),
+            eq("webhook.retry.5m"), any(WebhookMessage.class), processador.capture());
+
+        Message mensagem = processador.getValue().postProcessMessage(new Message(new byte[0], new MessageProperties()));
+        long expiracao = Long.parseLong(mensagem.getMessageProperties().getExpiration());
+        assertTrue(expiracao >= 240_000L && expiracao <= 360_000L);
+    }
+}
@@ -0,0 +1,129 @@
+package com.pip.routing;
+
+import com.pip.model.Gateway;
+import com.pip.model.HealthStatus;
+import com.pip.model.Lojista;
+import com.pip.service.GatewayRoutingTable;
+import com.pip.service.GatewayStatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para as estratégias de roteamento
+ *
+ * @author Luiz Gustavo Finotello
+ */
+class RoutingStrategyTest {
+
+    private GatewayStatsService gatewayStatsService;
+    private Lojista lojista;
+    private Gateway rapido;
+    private Gateway lento;
+
+    @BeforeEach
+    void setUp() {
+        gatewayStatsService = new GatewayStatsService();
+        ReflectionTestUtils.setField(gatewayStatsService, "alfaEwma", 0.5);
+        ReflectionTestUtils.setField(gatewayStatsService, "minimoAmostras", 1L);
+
+        lojista = new Lojista();
+        lojista.setId(UUID.randomUUID());
+
+        rapido = criarGateway("RAPIDO", 1, 80);
+        lento = criarGateway("LENTO", 2, 20);
+    }
+
+    @Test
+    void testP2C_DesviaDoGatewayComMaisCarga() {
+        // Arrange - mesmo histórico, mas o gateway de maior score acumula chamadas em andamento
+        for (Gateway gateway : Arrays.asList(rapido, lento)) {
+            gatewayStatsService.iniciarChamada(gateway);
+            gatewayStatsService.concluirChamada(gateway, true, 0L, 200L);
+        }
+        for (int i = 0; i < 10; i++) {
+            gatewayStatsService.iniciarChamada(rapido);
+        }
+
+        P2CRoutingStrategy estrategia = new P2CRoutingStrategy();
+        ReflectionTestUtils.setField(estrategia, "gatewayStatsService", gatewayStatsService);
+        GatewayRoutingTable tabela = GatewayRoutingTable.construir(Arrays.asList(rapido, lento), g -> g == rapido ? 2.0 : 1.0);
+
+        // Act
+        int indice = estrategia.selecionar(tabela, lojista, 1000L);
+
+        // Assert
+        assertEquals("LENTO", tabela.getGateway(indice).getCodigo());
+    }
+
+    @Test
+    void testPeso_IgnoraGatewayComPesoZero() {
+        // Arrange
+        lento.setPesoRoteamento(0);
+        PesoRoutingStrategy estrategia = new PesoRoutingStrategy();
+        GatewayRoutingTable tabela = GatewayRoutingTable.construir(Arrays.asList(lento, rapido), g -> 1.0);
+
+        // Act & Assert
+        for (int i = 0; i < 100; i++) {
+            int indice = estrategia.selecionar(tabela, lojista, 1000L);
+            assertEquals("RAPIDO", tabela.getGateway(indice).getCodigo());
+        }
+    }
+
+    @Test
+    void testCusto_EscolheMaisBaratoDentroDaTolerancia() {
+        // Arrange
+        rapido.setCustoPercentual(300);
+        lento.setCustoPercentual(150);
+        CustoRoutingStrategy estrategia = new CustoRoutingStrategy();
+        ReflectionTestUtils.setField(estrategia, "toleranciaScore", 0.10);
+
+        GatewayRoutingTable proximos = GatewayRoutingTable.construir(Arrays.asList(rapido, lento), g -> g == rapido ? 100.0 : 95.0);
+        GatewayRoutingTable distantes = GatewayRoutingTable.construir(Arrays.asList(rapido, lento), g -> g == rapido ? 100.0 : 50.0);
+
+        // Act & Assert
+        assertEquals("LENTO", proximos.getGateway(estrategia.selecionar(proximos, lojista, 10000L)).getCodigo());
+        assertEquals("RAPIDO", distantes.getGateway(estrategia.selecionar(distantes, lojista, 10000L)).getCodigo());
+    }
+
+    @Test
+    void testLimiteDiario_UsaVolumeEmMemoriaSemRepublicarTabela() {
+        // Arrange - a entidade continua com volume 0; só o volume em memória avança
+        rapido.setLimiteDiario(10000L);
+        GatewayRoutingTable tabela = GatewayRoutingTable.construir(Arrays.asList(rapido, lento),
+            g -> g == rapido ? 2.0 : 1.0, gatewayStatsService::estatisticasRoteamento);
+        assertEquals("RAPIDO", tabela.getGateway(tabela.selecionarMelhor(5000L)).getCodigo());
+
+        // Act
+        gatewayStatsService.registrar(rapido, true, 8000L, 100L);
+
+        // Assert
+        assertEquals(0L, rapido.getVolumeProcessadoHoje());
+        assertFalse(tabela.podeProcessar(0, 5000L));
+        assertEquals("LENTO", tabela.getGateway(tabela.selecionarMelhor(5000L)).getCodigo());
+
+        gatewayStatsService.zerarVolumesDiarios();
+        assertTrue(tabela.podeProcessar(0, 5000L));
+    }
+
+    private Gateway criarGateway(String codigo, int prioridade, int peso) {
+        Gateway gateway = new Gateway();
+        gateway.setId(UUID.randomUUID());
+        gateway.setCodigo(codigo);
+        gateway.setNome(codigo);
+        gateway.setPrioridade(prioridade);
+        gateway.setPesoRoteamento(peso);
+        gateway.setTaxaSucesso(99.0);
+        gateway.setTempoRespostaMedio(200L);
+        gateway.setLimiteDiario(10000000L);
+        gateway.setVolumeProcessadoHoje(0L);
+        gateway.ativar();
+        gateway.atualizarHealthCheck(HealthStatus.UP);
+        return gateway;
+    }
+}
@@ -0,0 +1,191 @@
+package com.pip.security;
+
+import com.azure.security.keyvault.secrets.SecretClient;
+import com.azure.security.keyvault.secrets.models.KeyVaultSecret;
+import com.azure.security.keyvault.secrets.models.SecretProperties;
+import com.pip.exception.SecurityException;
+import com.pip.model.ChaveDadosTokenizacao;
+import com.pip.repository.ChaveDadosTokenizacaoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para EnvelopeEncryptionService
+ *
+ * O Key Vault é substituído por um SecretClient local com versões em memória e o
+ * repositório de DEKs por um mapa.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class EnvelopeEncryptionServiceTest {
+
+    private static final String NOME_KEK = "pip-tokenization-kek";
+
+    @Mock
+    private SecretClient secretClient;
+
+    @Mock
+    private ChaveDadosTokenizacaoRepository chaveDadosRepository;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<String, String> versoesKek = new LinkedHashMap<>();
+    private final Map<UUID, ChaveDadosTokenizacao> chavesDados = new ConcurrentHashMap<>();
+    private String versaoAtual;
+
+    private final byte[] cartao = "{\"pan\":\"4111111111111111\",\"cvv\":\"123\"}".getBytes(StandardCharsets.UTF_8);
+    private final byte[] aad = "tkn_live_abc|merchant-1".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    void setUp() {
+        versoesKek.put("v1", EnvelopeEncryptionService.gerarValorKek());
+        versaoAtual = "v1";
+
+        lenient().when(secretClient.getSecret(NOME_KEK)).thenAnswer(inv -> segredo(versaoAtual));
+        lenient().when(secretClient.getSecret(eq(NOME_KEK), anyString())).thenAnswer(inv -> {
+            String versao = inv.getArgument(1);
+            return versoesKek.containsKey(versao) ? segredo(versao) : null;
+        });
+        lenient().when(chaveDadosRepository.save(any(ChaveDadosTokenizacao.class))).thenAnswer(inv -> {
+            ChaveDadosTokenizacao registro = inv.getArgument(0);
+            chavesDados.put(registro.getId(), registro);
+            return registro;
+        });
+        lenient().when(chaveDadosRepository.findById(any(UUID.class)))
+            .thenAnswer(inv -> Optional.ofNullable(chavesDados.get(inv.<UUID>getArgument(0))));
+        lenient().when(chaveDadosRepository.findAtivaMaisRecente()).thenReturn(Optional.empty());
+        lenient().when(chaveDadosRepository.findPendentesDeRecifragem(anyString())).thenAnswer(inv ->
+            chavesDados.values().stream()
+                .filter(c -> !c.getKekVersao().equals(inv.getArgument(0)))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testCifrar_EmRegimeNaoConsultaOCofre() {
+        // Arrange
+        EnvelopeEncryptionService servico = novoServico();
+
+        // Act
+        EnvelopeEncryptionService.DadosCifrados primeiro = servico.cifrar(cartao, aad);
+        EnvelopeEncryptionService.DadosCifrados segundo = servico.cifrar(cartao, aad);
+        byte[] claro = servico.decifrar(segundo.getChaveDadosId(), segundo.getIv(), segundo.getDados(), aad);
+
+        // Assert
+        assertArrayEquals(cartao, claro);
+        assertEquals(primeiro.getChaveDadosId(), segundo.getChaveDadosId());
+        assertFalse(new String(segundo.getDados(), StandardCharsets.ISO_8859_1).contains("4111111111111111"));
+        verify(secretClient, times(1)).getSecret(NOME_KEK);
+        verify(secretClient, never()).getSecret(eq(NOME_KEK), anyString());
+        assertEquals(1, chavesDados.size());
+    }
+
+    @Test
+    void testReenvelopar_RotacaoDaKekRecifraDeksSemTocarNosDados() {
+        // Arrange
+        EnvelopeEncryptionService.DadosCifrados cifrado = novoServico().cifrar(cartao, aad);
+        versoesKek.put("v2", EnvelopeEncryptionService.gerarValorKek());
+        versaoAtual = "v2";
+
+        // Act
+        int recifradas = novoServico().reenvelopar();
+        versoesKek.remove("v1");
+        byte[] claro = novoServico().decifrar(cifrado.getChaveDadosId(), cifrado.getIv(), cifrado.getDados(), aad);
+
+        // Assert - após a recifragem a KEK antiga não é mais necessária
+        assertEquals(1, recifradas);
+        assertEquals("v2", chavesDados.get(cifrado.getChaveDadosId()).getKekVersao());
+        assertNotNull(chavesDados.get(cifrado.getChaveDadosId()).getRewrappedAt());
+        assertArrayEquals(cartao, claro);
+    }
+
+    @Test
+    void testDecifrar_AadDeOutroMerchantFalha() {
+        // Arrange
+        EnvelopeEncryptionService servico = novoServico();
+        EnvelopeEncryptionService.DadosCifrados cifrado = servico.cifrar(cartao, aad);
+        byte[] outroMerchant = "tkn_live_abc|merchant-2".getBytes(StandardCharsets.UTF_8);
+
+        // Act & Assert
+        assertThrows(SecurityException.class, () ->
+            servico.decifrar(cifrado.getChaveDadosId(), cifrado.getIv(), cifrado.getDados(), outroMerchant));
+    }
+
+    @Test
+    void testDecifrar_CargasConcorrentesDaMesmaDekLeemOCofreUmaVez() throws Exception {
+        // Arrange - nó recém-iniciado, sem DEKs em memória
+        EnvelopeEncryptionService.DadosCifrados cifrado = novoServico().cifrar(cartao, aad);
+        EnvelopeEncryptionService servico = novoServico();
+        clearInvocations(secretClient, chaveDadosRepository);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<byte[]>> leituras = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            leituras.add(executor.submit(() -> {
+                largada.await();
+                return servico.decifrar(cifrado.getChaveDadosId(), cifrado.getIv(), cifrado.getDados(), aad);
+            }));
+        }
+
+        // Act
+        largada.countDown();
+        try {
+            for (Future<byte[]> leitura : leituras) {
+                assertArrayEquals(cartao, leitura.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        verify(chaveDadosRepository, times(1)).findById(cifrado.getChaveDadosId());
+        verify(secretClient, times(1)).getSecret(NOME_KEK, "v1");
+        assertEquals(1.0, meterRegistry.get("pip.tokenization.dek.carregamentos").counter().count());
+    }
+
+    private EnvelopeEncryptionService novoServico() {
+        EnvelopeEncryptionService servico = new EnvelopeEncryptionService();
+        ReflectionTestUtils.setField(servico, "secretClient", secretClient);
+        ReflectionTestUtils.setField(servico, "chaveDadosRepository", chaveDadosRepository);
+        ReflectionTestUtils.setField(servico, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(servico, "nomeKek", NOME_KEK);
+        ReflectionTestUtils.setField(servico, "maxIdadeDekHoras", 720L);
+        servico.init();
+        return servico;
+    }
+
+    private KeyVaultSecret segredo(String versao) {
+        SecretProperties propriedades = mock(SecretProperties.class);
+        lenient().when(propriedades.getVersion()).thenReturn(versao);
+        KeyVaultSecret secret = mock(KeyVaultSecret.class);
+        lenient().when(secret.getValue()).thenReturn(versoesKek.get(versao));
+        lenient().when(secret.getProperties()).thenReturn(propriedades);
+        return secret;
+    }
+}
@@ -0,0 +1,168 @@
+package com.pip.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.audit.SecurityAuditLogger;
+import com.pip.dto.TokenizationRequest;
+import com.pip.model.TokenCartao;
+import com.pip.repository.TokenCartaoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para LoteTokenizacaoService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class LoteTokenizacaoServiceTest {
+
+    @Mock
+    private TokenizationService tokenizationService;
+
+    @Mock
+    private TokenCartaoRepository tokenCartaoRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private SecurityAuditLogger auditLogger;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private LoteTokenizacaoService loteTokenizacaoService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(loteTokenizacaoService, "tamanhoBloco", 100);
+        ReflectionTestUtils.setField(loteTokenizacaoService, "tamanhoEscrita", 250);
+        ReflectionTestUtils.setField(loteTokenizacaoService, "paralelismo", 4);
+        ReflectionTestUtils.setField(loteTokenizacaoService, "maxItens", 1000);
+        ReflectionTestUtils.setField(loteTokenizacaoService, "maxTentativas", 3);
+        ReflectionTestUtils.setField(loteTokenizacaoService, "esperaInicialMs", 1L);
+        ReflectionTestUtils.setField(loteTokenizacaoService, "esperaMaximaMs", 5L);
+        loteTokenizacaoService.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        loteTokenizacaoService.encerrar();
+    }
+
+    @Test
+    void testTokenizarLote_RejeitaLuhnInvalidoERepeteGravacaoSobrecarregada() throws Exception {
+        // Arrange
+        AtomicInteger sequencia = new AtomicInteger();
+        when(tokenizationService.validateCard(any(TokenizationRequest.class))).thenCallRealMethod();
+        when(tokenizationService.calculateExpirationTime()).thenCallRealMethod();
+        when(tokenizationService.generateSecureToken(anyBoolean()))
+            .thenAnswer(inv -> "tkn_test_" + sequencia.incrementAndGet());
+        when(tokenizationService.encryptCard(any(TokenizationRequest.class), anyString(), any(Instant.class)))
+            .thenAnswer(inv -> new TokenCartao(inv.getArgument(1), inv.<TokenizationRequest>getArgument(0).getMerchantId(),
+                UUID.randomUUID(), new byte[12], new byte[64], inv.<Instant>getArgument(2).atZone(ZoneOffset.UTC)));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class)))
+            .thenThrow(new QueryTimeoutException("statement timeout"))
+            .thenReturn(new int[] {1, 1});
+
+        String entrada = """
+            {"pan":"4111111111111111","cvv":"123","expiryDate":"12/30","merchantId":"outro"}
+            {"pan":"4111111111111112","cvv":"123","expiryDate":"12/30"}
+            {"pan":"5555555555554444","cvv":"456","expiryDate":"01/29"}
+            """;
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        // Act
+        int itens = loteTokenizacaoService.tokenizarLote("merchant-1", "LOTE-1",
+            new ByteArrayInputStream(entrada.getBytes(StandardCharsets.UTF_8)), saida);
+
+        // Assert
+        List<JsonNode> linhas = linhas(saida);
+        assertEquals(3, itens);
+        assertEquals(3, linhas.size());
+        assertTrue(linhas.get(0).get("success").asBoolean());
+        assertEquals("tkn_test_1", linhas.get(0).get("token").asText());
+        assertEquals("VALIDATION_ERROR", linhas.get(1).get("errorCode").asText());
+        assertEquals("Invalid PAN checksum", linhas.get(1).get("errorMessage").asText());
+        assertTrue(linhas.get(2).get("success").asBoolean());
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyList(), any(int[].class));
+        assertEquals(1.0, meterRegistry.get("pip.tokenization.lote.retentativas").counter().count());
+        verify(auditLogger).logBatchTokenization(eq("LOTE-1"), eq("merchant-1"), eq(3), eq(2),
+            eq(Map.of("VALIDATION_ERROR", 1)), anyLong());
+        verifyNoMoreInteractions(auditLogger);
+    }
+
+    @Test
+    void testDestokenizarLote_NaoAbreTokenDeOutroLojista() throws Exception {
+        // Arrange - tkn_live_c não está em token_cartao (token legado ou inexistente)
+        TokenCartao proprio = new TokenCartao("tkn_live_a", "merchant-1", UUID.randomUUID(), new byte[12], new byte[64], null);
+        TokenCartao alheio = new TokenCartao("tkn_live_b", "merchant-2", UUID.randomUUID(), new byte[12], new byte[64], null);
+        when(tokenizationService.isTokenFormat(anyString())).thenCallRealMethod();
+        when(tokenCartaoRepository.findAllById(anyList())).thenReturn(new ArrayList<>(List.of(proprio, alheio)));
+        when(tokenizationService.decryptEnvelope(proprio)).thenReturn(TokenizationService.TokenizedData.builder()
+            .pan("4111111111111111").cvv("123").expiryDate("12/30").merchantId("merchant-1").build());
+
+        String entrada = "[{\"token\":\"tkn_live_a\"},{\"token\":\"tkn_live_b\"},{\"token\":\"tkn_live_c\"},{\"token\":\"abc\"}]";
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        // Act
+        loteTokenizacaoService.destokenizarLote("merchant-1", "LOTE-2", "MIGRACAO",
+            new ByteArrayInputStream(entrada.getBytes(StandardCharsets.UTF_8)), saida);
+
+        // Assert
+        List<JsonNode> linhas = linhas(saida);
+        assertEquals("4111111111111111", linhas.get(0).get("pan").asText());
+        assertEquals("UNAUTHORIZED", linhas.get(1).get("errorCode").asText());
+        assertEquals("TOKEN_NOT_FOUND", linhas.get(2).get("errorCode").asText());
+        assertEquals("VALIDATION_ERROR", linhas.get(3).get("errorCode").asText());
+
+        verify(tokenizationService, never()).decryptEnvelope(alheio);
+        verify(auditLogger).logBatchDetokenization(eq("LOTE-2"), eq("merchant-1"), eq("MIGRACAO"), eq(4), eq(1),
+            eq(Map.of("UNAUTHORIZED", 1, "TOKEN_NOT_FOUND", 1, "VALIDATION_ERROR", 1)), anyLong());
+        verifyNoMoreInteractions(auditLogger);
+    }
+
+    private List<JsonNode> linhas(ByteArrayOutputStream saida) throws Exception {
+        List<JsonNode> linhas = new ArrayList<>();
+        for (String linha : saida.toString(StandardCharsets.UTF_8).split("\n")) {
+            linhas.add(objectMapper.readTree(linha));
+        }
+        return linhas;
+    }
+}
@@ -0,0 +1,182 @@
+package com.pip.service;
+
+import com.pip.gateway.GatewayAdapter;
+import com.pip.gateway.GatewayAdapterFactory;
+import com.pip.model.Gateway;
+import com.pip.model.HealthStatus;
+import com.pip.repository.GatewayRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para GatewayHealthProbeService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class GatewayHealthProbeServiceTest {
+
+    @Mock
+    private GatewayRepository gatewayRepository;
+
+    @Mock
+    private GatewayAdapterFactory gatewayAdapterFactory;
+
+    @Mock
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Mock
+    private GatewayStatsService gatewayStatsService;
+
+    @Mock
+    private GatewayAdapter adapter;
+
+    @Mock
+    private GatewayAdapter adapterTravado;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private GatewayHealthProbeService healthProbeService;
+
+    private Gateway gateway1;
+    private Gateway gateway2;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(healthProbeService, "timeoutSondaMs", 1000L);
+        ReflectionTestUtils.setField(healthProbeService, "jitterMs", 0L);
+        ReflectionTestUtils.setField(healthProbeService, "threads", 2);
+        ReflectionTestUtils.setField(healthProbeService, "limiarPiora", 2);
+        ReflectionTestUtils.setField(healthProbeService, "limiarMelhora", 3);
+        ReflectionTestUtils.setField(healthProbeService, "taxaDegradado", 90.0);
+        ReflectionTestUtils.setField(healthProbeService, "taxaDown", 70.0);
+        ReflectionTestUtils.setField(healthProbeService, "latenciaDegradadoMs", 5000L);
+        healthProbeService.iniciar();
+
+        gateway1 = criarGateway("GATEWAY1", 95.0);
+        gateway2 = criarGateway("GATEWAY2", 90.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        healthProbeService.encerrar();
+    }
+
+    @Test
+    void testSondarGateways_SemSondaUsaMetricasPassivas() {
+        // Arrange - gateways nunca verificados, sem adaptador
+        gateway2.setTaxaSucesso(50.0);
+        List<Gateway> gateways = Arrays.asList(gateway1, gateway2);
+        when(gatewayRepository.findAll()).thenReturn(gateways);
+
+        // Act
+        healthProbeService.sondarGateways();
+
+        // Assert
+        assertEquals(HealthStatus.UP, gateway1.getHealthStatus());
+        assertEquals(HealthStatus.DOWN, gateway2.getHealthStatus());
+        verify(gatewayRepository, times(2)).atualizarHealthCheck(any(), any(HealthStatus.class), any(ZonedDateTime.class));
+        verify(gatewayRepository, never()).save(any(Gateway.class));
+        verify(gatewayRoutingService).publicarSaude(gateways);
+    }
+
+    @Test
+    void testSondarGateways_SondaFalhaExigeFalhasConsecutivas() {
+        // Arrange - gateway UP verificado recentemente
+        gateway1.atualizarHealthCheck(HealthStatus.UP);
+        when(gatewayRepository.findAll()).thenReturn(List.of(gateway1));
+        when(gatewayAdapterFactory.hasAdapter("GATEWAY1")).thenReturn(true);
+        when(gatewayAdapterFactory.getAdapter("GATEWAY1")).thenReturn(adapter);
+        when(adapter.healthCheck(gateway1)).thenReturn(false);
+
+        // Act & Assert - uma falha isolada não derruba o gateway
+        healthProbeService.sondarGateways();
+        assertEquals(HealthStatus.UP, gateway1.getHealthStatus());
+
+        healthProbeService.sondarGateways();
+        assertEquals(HealthStatus.DOWN, gateway1.getHealthStatus());
+
+        // Recuperação exige três sondas bem-sucedidas seguidas
+        when(adapter.healthCheck(gateway1)).thenReturn(true);
+        healthProbeService.sondarGateways();
+        healthProbeService.sondarGateways();
+        assertEquals(HealthStatus.DOWN, gateway1.getHealthStatus());
+
+        healthProbeService.sondarGateways();
+        assertEquals(HealthStatus.UP, gateway1.getHealthStatus());
+    }
+
+    @Test
+    void testSondarGateways_SondaTravadaECanceladaSemPrenderAsDemais() throws Exception {
+        // Arrange - executor com 2 threads; GATEWAY1 aceita a conexão e nunca responde
+        ReflectionTestUtils.setField(healthProbeService, "timeoutSondaMs", 200L);
+        gateway1.atualizarHealthCheck(HealthStatus.UP);
+        gateway2.atualizarHealthCheck(HealthStatus.UP);
+        when(gatewayRepository.findAll()).thenReturn(List.of(gateway1, gateway2));
+        when(gatewayAdapterFactory.hasAdapter(anyString())).thenReturn(true);
+        when(gatewayAdapterFactory.getAdapter("GATEWAY1")).thenReturn(adapterTravado);
+        when(gatewayAdapterFactory.getAdapter("GATEWAY2")).thenReturn(adapter);
+        when(adapter.healthCheck(gateway2)).thenReturn(true);
+
+        CountDownLatch interrompidas = new CountDownLatch(4);
+        when(adapterTravado.healthCheck(gateway1)).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(60_000);
+                return true;
+            } catch (InterruptedException e) {
+                interrompidas.countDown();
+                return false;
+            }
+        });
+
+        // Act - sem o cancelamento, as duas threads estariam presas a partir do 2º ciclo
+        long inicio = System.currentTimeMillis();
+        for (int ciclo = 0; ciclo < 4; ciclo++) {
+            healthProbeService.sondarGateways();
+        }
+        long duracao = System.currentTimeMillis() - inicio;
+
+        // Assert
+        assertEquals(HealthStatus.DOWN, gateway1.getHealthStatus());
+        assertEquals(HealthStatus.UP, gateway2.getHealthStatus());
+        verify(adapter, times(4)).healthCheck(gateway2);
+        verify(adapterTravado, times(4)).healthCheck(gateway1);
+        assertTrue(duracao < 10_000, "Ciclos presos ao timeout do adaptador: " + duracao + " ms");
+        assertEquals(4.0, meterRegistry.counter("pip.gateway.sonda.timeouts", "gateway", "GATEWAY1").count());
+        assertTrue(interrompidas.await(1, TimeUnit.SECONDS), "Sondas travadas não foram interrompidas");
+    }
+
+    private Gateway criarGateway(String codigo, double taxaSucesso) {
+        Gateway gateway = new Gateway();
+        gateway.setId(UUID.randomUUID());
+        gateway.setCodigo(codigo);
+        gateway.setApiKey("api-key");
+        gateway.setTaxaSucesso(taxaSucesso);
+        gateway.setTempoRespostaMedio(1000L);
+        gateway.ativar();
+        return gateway;
+    }
+}
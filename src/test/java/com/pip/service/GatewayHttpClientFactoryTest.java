@@ -0,0 +1,196 @@
+package com.pip.service;
+
+import com.pip.config.GatewayHttpClientFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para GatewayHttpClientFactory
+ *
+ * Os clientes são criados de verdade (sem rede, exceto pelo servidor local que
+ * aceita a conexão e não responde).
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class GatewayHttpClientFactoryTest {
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private RestTemplateBuilder restTemplateBuilder = new RestTemplateBuilder();
+
+    @Spy
+    private MockEnvironment environment = new MockEnvironment();
+
+    @InjectMocks
+    private GatewayHttpClientFactory httpClientFactory;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(httpClientFactory, "maxConexoesTotal", 200);
+        ReflectionTestUtils.setField(httpClientFactory, "maxConexoesPorRota", 50);
+        ReflectionTestUtils.setField(httpClientFactory, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(httpClientFactory, "readTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(httpClientFactory, "poolTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(httpClientFactory, "idleEvictionSeconds", 30L);
+        ReflectionTestUtils.setField(httpClientFactory, "ttlConexaoSeconds", 300L);
+        ReflectionTestUtils.setField(httpClientFactory, "tlsSessionCacheSize", 1000);
+        ReflectionTestUtils.setField(httpClientFactory, "tlsSessionTimeoutSeconds", 3600);
+        ReflectionTestUtils.setField(httpClientFactory, "http2", false);
+        ReflectionTestUtils.setField(httpClientFactory, "timeoutSondaMs", 200L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientFactory.encerrar();
+    }
+
+    @Test
+    void testObterRestTemplate_UmPoolPorGatewayReutilizadoEntreChamadas() {
+        // Act
+        RestTemplate cielo = httpClientFactory.obterRestTemplate("CIELO");
+        RestTemplate cieloNormalizado = httpClientFactory.obterRestTemplate(" cielo ");
+        RestTemplate stone = httpClientFactory.obterRestTemplate("STONE");
+        RestTemplate padrao = httpClientFactory.obterRestTemplate(null);
+
+        // Assert
+        assertSame(cielo, cieloNormalizado);
+        assertNotSame(cielo, stone);
+        Map<String, CloseableHttpClient> pools = clientesPool();
+        assertEquals(3, pools.size());
+        assertNotSame(pools.get("cielo"), pools.get("stone"));
+        assertTrue(pools.containsKey(GatewayHttpClientFactory.CLIENTE_PADRAO));
+    }
+
+    @Test
+    void testObterRestTemplate_LimitesDoPoolSobrescritosPorGateway() {
+        // Arrange
+        environment.setProperty("gateway.http.cielo.max-conexoes-por-rota", "7");
+        environment.setProperty("gateway.http.cielo.max-conexoes-total", "20");
+
+        // Act
+        httpClientFactory.obterRestTemplate("CIELO");
+        httpClientFactory.obterRestTemplate("STONE");
+
+        // Assert - métricas do pool etiquetadas por gateway
+        assertEquals(7.0, meterRegistry.get("httpcomponents.httpclient.pool.route.max.default")
+            .tag("gateway", "cielo").gauge().value());
+        assertEquals(20.0, meterRegistry.get("httpcomponents.httpclient.pool.total.max")
+            .tag("gateway", "cielo").gauge().value());
+        assertEquals(50.0, meterRegistry.get("httpcomponents.httpclient.pool.route.max.default")
+            .tag("gateway", "stone").gauge().value());
+    }
+
+    @Test
+    void testCriarSslContext_InstanciaPropriaPorGatewayComCacheDeSessao() {
+        // Arrange
+        environment.setProperty("gateway.http.cielo.tls-session-cache-size", "50");
+
+        // Act
+        SSLContext cielo = ReflectionTestUtils.invokeMethod(httpClientFactory, "criarSslContext", "cielo");
+        SSLContext stone = ReflectionTestUtils.invokeMethod(httpClientFactory, "criarSslContext", "stone");
+
+        // Assert - o contexto padrão da JVM não é alterado nem compartilhado
+        assertNotSame(cielo, stone);
+        assertEquals(50, cielo.getClientSessionContext().getSessionCacheSize());
+        assertEquals(1000, stone.getClientSessionContext().getSessionCacheSize());
+        assertEquals(3600, stone.getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    void testObterRestTemplate_Http2PorGatewayRegistraRequisicoesAtivas() {
+        // Arrange
+        environment.setProperty("gateway.http.pix.http2", "true");
+
+        // Act
+        httpClientFactory.obterRestTemplate("PIX");
+        httpClientFactory.obterRestTemplate("CIELO");
+
+        // Assert
+        assertEquals(0.0, meterRegistry.get("pip.gateway.http2.requisicoes.ativas")
+            .tag("gateway", "pix").gauge().value());
+        assertFalse(clientesPool().containsKey("pix"));
+        assertTrue(clientesPool().containsKey("cielo"));
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(httpClientFactory, "clientesHttp2")).containsKey("pix"));
+    }
+
+    @Test
+    void testObterRestTemplateSonda_CompartilhaPoolDoGateway() {
+        // Act
+        RestTemplate sonda = httpClientFactory.obterRestTemplateSonda("CIELO");
+        RestTemplate principal = httpClientFactory.obterRestTemplate("CIELO");
+
+        // Assert
+        assertNotSame(principal, sonda);
+        assertEquals(1, clientesPool().size());
+        HttpComponentsClientHttpRequestFactory fabrica = (HttpComponentsClientHttpRequestFactory) sonda.getRequestFactory();
+        assertSame(clientesPool().get("cielo"), fabrica.getHttpClient());
+    }
+
+    @Test
+    void testObterRestTemplateSonda_GatewayQueNaoRespondeExpiraNoTimeoutDaSonda() throws Exception {
+        // Arrange - servidor que aceita a conexão e nunca responde
+        try (ServerSocket servidor = new ServerSocket(0)) {
+            Thread aceitador = new Thread(() -> {
+                try (Socket socket = servidor.accept()) {
+                    Thread.sleep(5000);
+                } catch (Exception ignorada) {
+                    // encerrado pelo teste
+                }
+            });
+            aceitador.setDaemon(true);
+            aceitador.start();
+
+            RestTemplate sonda = httpClientFactory.obterRestTemplateSonda("CIELO");
+            long inicio = System.nanoTime();
+
+            // Act & Assert - limitado ao timeout da sonda, não ao read timeout de 30s
+            assertThrows(ResourceAccessException.class, () ->
+                sonda.getForObject("http://localhost:" + servidor.getLocalPort() + "/health", String.class));
+            assertTrue((System.nanoTime() - inicio) / 1_000_000 < 3000);
+            aceitador.interrupt();
+        }
+    }
+
+    @Test
+    void testEncerrar_FechaPoolsERecriaNaProximaChamada() {
+        // Arrange
+        RestTemplate antes = httpClientFactory.obterRestTemplate("CIELO");
+
+        // Act
+        httpClientFactory.encerrar();
+        RestTemplate depois = httpClientFactory.obterRestTemplate("CIELO");
+
+        // Assert
+        assertNotSame(antes, depois);
+        assertEquals(1, clientesPool().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, CloseableHttpClient> clientesPool() {
+        return (Map<String, CloseableHttpClient>) ReflectionTestUtils.getField(httpClientFactory, "clientesPool");
+    }
+}
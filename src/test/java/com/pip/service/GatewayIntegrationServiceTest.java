@@ -0,0 +1,129 @@
+package com.pip.service;
+
+import com.pip.config.GatewayHttpClientFactory;
+import com.pip.dto.AuthorizationRequest;
+import com.pip.model.Gateway;
+import com.pip.model.HealthStatus;
+import com.pip.model.Transacao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para GatewayIntegrationService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class GatewayIntegrationServiceTest {
+
+    @Mock
+    private GatewayHttpClientFactory httpClientFactory;
+
+    @Mock
+    private GatewayRoutingService routingService;
+
+    @Mock
+    private GatewayLimitService gatewayLimitService;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Spy
+    private GatewayStatsService gatewayStatsService = new GatewayStatsService();
+
+    @InjectMocks
+    private GatewayIntegrationService gatewayIntegrationService;
+
+    private Gateway principal;
+    private Gateway reserva;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(gatewayStatsService, "alfaEwma", 0.1);
+        principal = criarGateway("PRINCIPAL");
+        reserva = criarGateway("RESERVA");
+    }
+
+    @Test
+    void testExecutarAutorizacao_VolumeAprovadoExcluiGatewayNoLimiteDiario() {
+        // Arrange - a entidade persistida segue com volume 0 durante todo o teste
+        principal.setLimiteDiario(10000L);
+        GatewayRoutingTable tabela = GatewayRoutingTable.construir(List.of(principal, reserva),
+            g -> g == principal ? 2.0 : 1.0, gatewayStatsService::estatisticasRoteamento);
+        when(httpClientFactory.obterRestTemplate("PRINCIPAL")).thenReturn(restTemplate);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+            .thenReturn(ResponseEntity.<Map>ok(Map.of("status", "APPROVED")));
+
+        // Act - duas autorizações aprovadas somam exatamente o limite diário
+        gatewayIntegrationService.executarAutorizacao(principal, requisicao(6000L), transacao(6000L));
+        assertEquals("PRINCIPAL", tabela.getGateway(tabela.selecionarMelhor(4000L)).getCodigo());
+        gatewayIntegrationService.executarAutorizacao(principal, requisicao(4000L), transacao(4000L));
+
+        // Assert
+        assertEquals(10000L, gatewayStatsService.obter(principal).getVolumeDiario());
+        assertFalse(tabela.podeProcessar(0, 1L));
+        assertEquals("RESERVA", tabela.getGateway(tabela.selecionarMelhor(1L)).getCodigo());
+    }
+
+    @Test
+    void testExecutarAutorizacao_FalhaNaoSomaVolume() {
+        // Arrange
+        when(httpClientFactory.obterRestTemplate("PRINCIPAL")).thenReturn(restTemplate);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+            .thenThrow(new IllegalStateException("Connection reset"));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () ->
+            gatewayIntegrationService.executarAutorizacao(principal, requisicao(6000L), transacao(6000L)));
+        assertEquals(0L, gatewayStatsService.obter(principal).getVolumeDiario());
+    }
+
+    private AuthorizationRequest requisicao(Long valor) {
+        AuthorizationRequest request = new AuthorizationRequest();
+        request.setAmount(valor);
+        request.setCurrency("BRL");
+        request.setCardToken("tkn_test_abc");
+        request.setInstallments(1);
+        return request;
+    }
+
+    private Transacao transacao(Long valor) {
+        Transacao transacao = new Transacao();
+        transacao.setTransactionId("TXN-" + UUID.randomUUID());
+        transacao.setValor(valor);
+        return transacao;
+    }
+
+    private Gateway criarGateway(String codigo) {
+        Gateway gateway = new Gateway();
+        gateway.setId(UUID.randomUUID());
+        gateway.setCodigo(codigo);
+        gateway.setNome(codigo);
+        gateway.setUrlSandbox("https://" + codigo.toLowerCase() + ".sandbox.local");
+        gateway.setTaxaSucesso(99.0);
+        gateway.setTempoRespostaMedio(200L);
+        gateway.setLimiteDiario(10000000L);
+        gateway.setVolumeProcessadoHoje(0L);
+        gateway.ativar();
+        gateway.atualizarHealthCheck(HealthStatus.UP);
+        return gateway;
+    }
+}
@@ -0,0 +1,83 @@
+package com.pip.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para GatewayLimit
+ *
+ * @author Luiz Gustavo Finotello
+ */
+class GatewayLimitTest {
+
+    @Test
+    void testTentarAdquirir_RejeitaAcimaDoLimite() {
+        // Arrange
+        GatewayLimit limite = new GatewayLimit(2, 1, 10, 1.5, 0.9, 0.2, 0.05);
+
+        // Act & Assert
+        assertTrue(limite.tentarAdquirir());
+        assertTrue(limite.tentarAdquirir());
+        assertFalse(limite.tentarAdquirir());
+        assertEquals(2, limite.getEmAndamento());
+    }
+
+    @Test
+    void testLiberar_TimeoutsReduzemLimiteAteOMinimo() {
+        // Arrange
+        GatewayLimit limite = new GatewayLimit(50, 2, 100, 1.5, 0.5, 0.2, 0.05);
+
+        // Act - sequência de timeouts (brown-out)
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limite.tentarAdquirir());
+            limite.liberar(30000, true);
+        }
+
+        // Assert
+        assertEquals(2, limite.getLimite());
+        assertEquals(0, limite.getEmAndamento());
+    }
+
+    @Test
+    void testLiberar_LatenciaEstavelSobCargaAumentaLimite() {
+        // Arrange
+        GatewayLimit limite = new GatewayLimit(10, 2, 100, 1.5, 0.9, 0.2, 0.05);
+
+        // Act - limite ocupado com latência constante
+        for (int rodada = 0; rodada < 20; rodada++) {
+            int adquiridas = 0;
+            while (limite.tentarAdquirir()) {
+                adquiridas++;
+            }
+            for (int i = 0; i < adquiridas; i++) {
+                limite.liberar(100, false);
+            }
+        }
+
+        // Assert
+        assertTrue(limite.getLimite() > 10);
+    }
+
+    @Test
+    void testLiberar_LatenciaSubindoReduzLimite() {
+        // Arrange
+        GatewayLimit limite = new GatewayLimit(40, 2, 100, 1.5, 0.9, 0.2, 0.05);
+        for (int i = 0; i < 40; i++) {
+            limite.tentarAdquirir();
+        }
+        for (int i = 0; i < 20; i++) {
+            limite.liberar(100, false);
+        }
+        int antes = limite.getLimite();
+
+        // Act - latência 10x maior com o gateway ainda carregado
+        for (int i = 0; i < 20; i++) {
+            limite.tentarAdquirir();
+            limite.liberar(1000, false);
+        }
+
+        // Assert
+        assertTrue(limite.getLimite() < antes);
+    }
+}
@@ -1,9 +1,10 @@
 package com.pip.service;
 
 import com.pip.model.Gateway;
+import com.pip.model.GatewayAlteradoEvent;
+import com.pip.model.HealthStatus;
 import com.pip.model.Lojista;
 import com.pip.repository.GatewayRepository;
-import com.pip.repository.LogTransacaoRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,8 +14,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -29,7 +34,10 @@ class GatewayRoutingServiceTest {
     private GatewayRepository gatewayRepository;
 
     @Mock
-    private LogTransacaoRepository logTransacaoRepository;
+    private LogTransacaoWriter logTransacaoWriter;
+
+    @Mock
+    private GatewayStatsService gatewayStatsService;
 
     @InjectMocks
     private GatewayRoutingService gatewayRoutingService;
@@ -91,6 +99,23 @@ class GatewayRoutingServiceTest {
         verify(gatewayRepository, times(1)).findAll();
     }
 
+    @Test
+    void testSelecionarMelhorGateway_UsaTabelaEmMemoria() {
+        // Arrange
+        gateway1.atualizarHealthCheck(com.pip.model.HealthStatus.UP);
+        gateway2.atualizarHealthCheck(com.pip.model.HealthStatus.UP);
+        when(gatewayRepository.findAll()).thenReturn(Arrays.asList(gateway2, gateway1));
+
+        // Act
+        Gateway primeira = gatewayRoutingService.selecionarMelhorGateway(lojista, 100000L);
+        Gateway segunda = gatewayRoutingService.selecionarMelhorGateway(lojista, 100000L);
+
+        // Assert - tabela construída uma única vez e ordenada por score
+        assertEquals("GATEWAY1", primeira.getCodigo());
+        assertSame(primeira, segunda);
+        verify(gatewayRepository, times(1)).findAll();
+    }
+
     @Test
     void testSelecionarMelhorGateway_SemGatewaysDisponiveis() {
         // Arrange
@@ -117,17 +142,19 @@ class GatewayRoutingServiceTest {
     }
 
     @Test
-    void testVerificarSaudeGateways() {
+    void testPublicarSaude_ApenasGatewaysRoteaveisEntramNaTabela() {
         // Arrange
-        List<Gateway> gateways = Arrays.asList(gateway1, gateway2);
-        when(gatewayRepository.findAll()).thenReturn(gateways);
+        gateway1.atualizarHealthCheck(HealthStatus.UP);
+        gateway2.atualizarHealthCheck(HealthStatus.DOWN);
 
         // Act
-        gatewayRoutingService.verificarSaudeGateways();
+        gatewayRoutingService.publicarSaude(Arrays.asList(gateway1, gateway2));
+        GatewayRoutingTable tabela = gatewayRoutingService.obterTabelaRoteamento();
 
-        // Assert
-        verify(gatewayRepository, times(1)).findAll();
-        verify(gatewayRepository, atLeast(2)).save(any(Gateway.class));
+        // Assert - tabela publicada sem nova consulta ao banco
+        assertEquals(1, tabela.tamanho());
+        assertEquals("GATEWAY1", tabela.getGateway(0).getCodigo());
+        verify(gatewayRepository, never()).findAll();
     }
 
     @Test
@@ -157,4 +184,55 @@ class GatewayRoutingServiceTest {
         // Assert
         verify(gatewayRepository, times(1)).findAll();
     }
+
+    @Test
+    void testRebalancearGateways_NaoSuprimeEventosDeOutrasThreads() {
+        // Arrange - gateway1 com performance ruim tem a prioridade ajustada dentro do lote
+        gateway1.setTaxaSucesso(80.0);
+        List<Gateway> gateways = Arrays.asList(gateway1, gateway2);
+        when(gatewayRepository.findAll()).thenReturn(gateways);
+        when(gatewayRepository.atualizarPrioridade(any(), anyInt(), any())).thenAnswer(inv -> {
+            // Evento da própria thread do lote: suprimido
+            gatewayRoutingService.onGatewayAlterado(new GatewayAlteradoEvent(null, "GATEWAY1"));
+            // Alteração concorrente de outra thread: republica normalmente
+            Thread outra = new Thread(() ->
+                gatewayRoutingService.onGatewayAlterado(new GatewayAlteradoEvent(null, "GATEWAY2")));
+            outra.start();
+            outra.join();
+            return 1;
+        });
+
+        // Act
+        gatewayRoutingService.rebalancearGateways();
+
+        // Assert - carga do rebalanceamento + republicação pedida pela outra thread
+        verify(gatewayRepository).atualizarPrioridade(any(), eq(6), any());
+        verify(gatewayRepository, times(2)).findAll();
+    }
+
+    @Test
+    void testRecalcularScores_NaoSobrescrevePublicacaoConcorrente() {
+        // Arrange - tabela vigente com os dois gateways
+        gateway1.atualizarHealthCheck(HealthStatus.UP);
+        gateway2.atualizarHealthCheck(HealthStatus.UP);
+        gatewayRoutingService.publicarSaude(Arrays.asList(gateway1, gateway2));
+
+        // gateway1 é desativado pelo admin enquanto o scheduler recalcula a tabela antiga
+        when(gatewayRepository.findAll()).thenReturn(List.of(gateway2));
+        AtomicBoolean alterado = new AtomicBoolean();
+        when(gatewayStatsService.snapshotRoteamento(any())).thenAnswer(inv -> {
+            if (alterado.compareAndSet(false, true)) {
+                gatewayRoutingService.onGatewayAlterado(new GatewayAlteradoEvent(null, "GATEWAY1"));
+            }
+            return null;
+        });
+
+        // Act
+        gatewayRoutingService.recalcularScores();
+
+        // Assert - vale a tabela publicada pela alteração, sem o gateway desativado
+        GatewayRoutingTable tabela = gatewayRoutingService.obterTabelaRoteamento();
+        assertEquals(1, tabela.tamanho());
+        assertEquals("GATEWAY2", tabela.getGateway(0).getCodigo());
+    }
 }
@@ -0,0 +1,84 @@
+package com.pip.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para GatewayStats
+ *
+ * @author Luiz Gustavo Finotello
+ */
+class GatewayStatsTest {
+
+    private static final long AGORA = 1_700_000_000_000L;
+
+    @Test
+    void testSnapshot_ConsideraApenasJanelasDoPeriodo() {
+        // Arrange
+        GatewayStats stats = new GatewayStats(0.5);
+        stats.registrar(false, 0L, 100L, AGORA - Duration.ofMinutes(10).toMillis());
+        stats.registrar(true, 0L, 100L, AGORA - Duration.ofMinutes(3).toMillis());
+        stats.registrar(true, 0L, 100L, AGORA);
+
+        // Act
+        GatewayStats.Snapshot ultimoMinuto = stats.snapshot(GatewayStats.JANELA_1M, AGORA);
+        GatewayStats.Snapshot cincoMinutos = stats.snapshot(GatewayStats.JANELA_5M, AGORA);
+        GatewayStats.Snapshot quinzeMinutos = stats.snapshot(GatewayStats.JANELA_15M, AGORA);
+
+        // Assert
+        assertEquals(1, ultimoMinuto.getTotal());
+        assertEquals(2, cincoMinutos.getTotal());
+        assertEquals(100.0, cincoMinutos.getTaxaSucesso(), 0.001);
+        assertEquals(3, quinzeMinutos.getTotal());
+        assertEquals(66.67, quinzeMinutos.getTaxaSucesso(), 0.01);
+    }
+
+    @Test
+    void testSnapshot_PercentisComErroRelativoLimitado() {
+        // Arrange
+        GatewayStats stats = new GatewayStats(0.1);
+        for (long latencia = 1; latencia <= 1000; latencia++) {
+            stats.registrar(true, 0L, latencia, AGORA);
+        }
+
+        // Act
+        GatewayStats.Snapshot snapshot = stats.snapshot(GatewayStats.JANELA_1M, AGORA);
+
+        // Assert
+        assertEquals(500.5, snapshot.getLatenciaMedia(), 0.001);
+        assertEquals(500, snapshot.getPercentil(50), 500 * 0.07);
+        assertEquals(950, snapshot.getPercentil(95), 950 * 0.07);
+        assertEquals(990, snapshot.getPercentil(99), 990 * 0.07);
+    }
+
+    @Test
+    void testRetirarPendentes_ZeraContadoresAposFlush() {
+        // Arrange
+        GatewayStats stats = new GatewayStats(0.1);
+        stats.registrar(true, 1000L, 50L);
+        stats.registrar(false, 2000L, 70L);
+
+        // Act
+        long[] primeiro = stats.retirarPendentes();
+        long[] segundo = stats.retirarPendentes();
+
+        // Assert
+        assertArrayEquals(new long[] {2, 1, 1, 3000}, primeiro);
+        assertArrayEquals(new long[] {0, 0, 0, 0}, segundo);
+        assertEquals(52.0, stats.getLatenciaEwma(), 0.001);
+    }
+
+    @Test
+    void testIndiceHistograma_LimiteSuperiorCobreValor() {
+        for (long valor = 0; valor < 200_000; valor += 37) {
+            int indice = GatewayStats.indiceHistograma(valor);
+            if (indice < GatewayStats.TAMANHO_HISTOGRAMA - 1) {
+                assertTrue(GatewayStats.limiteSuperior(indice) >= valor);
+                assertTrue(indice == 0 || GatewayStats.limiteSuperior(indice - 1) < valor);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.pip.service;
+
+import com.pip.dto.AuthorizationRequest;
+import com.pip.dto.PaymentResponse;
+import com.pip.dto.VoidRequest;
+import com.pip.model.Gateway;
+import com.pip.model.Lojista;
+import com.pip.model.Transacao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para HedgedAuthorizationService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class HedgedAuthorizationServiceTest {
+
+    @Mock
+    private GatewayIntegrationService gatewayIntegrationService;
+
+    @Mock
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Mock
+    private GatewayStatsService gatewayStatsService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private HedgedAuthorizationService hedgedAuthorizationService;
+
+    private Gateway primario;
+    private Gateway backup;
+    private Transacao transacao;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(hedgedAuthorizationService, "habilitado", true);
+        ReflectionTestUtils.setField(hedgedAuthorizationService, "atrasoPadraoMs", 50L);
+        ReflectionTestUtils.setField(hedgedAuthorizationService, "atrasoMinimoMs", 10L);
+        ReflectionTestUtils.setField(hedgedAuthorizationService, "atrasoMaximoMs", 1000L);
+        ReflectionTestUtils.setField(hedgedAuthorizationService, "maxThreads", 4);
+        hedgedAuthorizationService.iniciar();
+
+        primario = criarGateway("CIELO");
+        backup = criarGateway("REDE");
+
+        transacao = new Transacao();
+        transacao.setTransactionId("txn_hedge");
+        transacao.setLojista(new Lojista());
+        transacao.setValor(10000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hedgedAuthorizationService.encerrar();
+    }
+
+    @Test
+    void testAutorizar_CapturaImediataNaoUsaHedge() {
+        // Arrange
+        AuthorizationRequest request = new AuthorizationRequest();
+        request.setCapture(true);
+        when(gatewayIntegrationService.authorize(primario, request, transacao)).thenReturn(aprovada("gw-1"));
+
+        // Act
+        HedgedAuthorizationService.ResultadoAutorizacao resultado =
+            hedgedAuthorizationService.autorizar(primario, request, transacao);
+
+        // Assert
+        assertSame(primario, resultado.getGateway());
+        verify(gatewayIntegrationService, never()).executarAutorizacao(any(), any(), any());
+        verifyNoInteractions(gatewayRoutingService);
+    }
+
+    @Test
+    void testAutorizar_PrimarioLentoBackupVenceECancelaDuplicada() throws Exception {
+        // Arrange
+        AuthorizationRequest request = new AuthorizationRequest();
+        request.setCapture(false);
+        when(gatewayRoutingService.selecionarGatewayFallback(any(), eq(primario), eq(10000L))).thenReturn(backup);
+        when(gatewayIntegrationService.executarAutorizacao(eq(primario), any(), any())).thenAnswer(inv -> {
+            Thread.sleep(300);
+            return aprovada("gw-lento");
+        });
+        when(gatewayIntegrationService.executarAutorizacao(eq(backup), any(), any())).thenReturn(aprovada("gw-rapido"));
+        when(gatewayIntegrationService.voidTransaction(eq(primario), any(VoidRequest.class), any()))
+            .thenReturn(aprovada("gw-lento"));
+
+        // Act
+        HedgedAuthorizationService.ResultadoAutorizacao resultado =
+            hedgedAuthorizationService.autorizar(primario, request, transacao);
+
+        // Assert - backup vence e a autorização tardia do primário é cancelada
+        assertSame(backup, resultado.getGateway());
+        assertEquals("gw-rapido", resultado.getResponse().getGatewayTransactionId());
+        verify(gatewayIntegrationService, timeout(2000)).voidTransaction(eq(primario), any(VoidRequest.class),
+            argThat(t -> "gw-lento".equals(t.getGatewayTransactionId())));
+    }
+
+    private Gateway criarGateway(String codigo) {
+        Gateway gateway = new Gateway();
+        gateway.setId(UUID.randomUUID());
+        gateway.setCodigo(codigo);
+        return gateway;
+    }
+
+    private PaymentResponse aprovada(String gatewayTransactionId) {
+        PaymentResponse response = new PaymentResponse();
+        response.setSuccess(true);
+        response.setGatewayTransactionId(gatewayTransactionId);
+        return response;
+    }
+}
@@ -0,0 +1,197 @@
+package com.pip.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.dto.CaptureRequest;
+import com.pip.dto.PaymentResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para IdempotenciaService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class IdempotenciaServiceTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private IdempotenciaService idempotenciaService;
+
+    private final UUID lojistaId = UUID.randomUUID();
+    private CaptureRequest request;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(idempotenciaService, "ttlHoras", 24L);
+        ReflectionTestUtils.setField(idempotenciaService, "lockTtlMs", 120000L);
+        ReflectionTestUtils.setField(idempotenciaService, "esperaMaxMs", 5000L);
+        ReflectionTestUtils.setField(idempotenciaService, "intervaloEsperaMs", 10L);
+        ReflectionTestUtils.setField(idempotenciaService, "maxEntradasCache", 100);
+        idempotenciaService.init();
+
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        request = new CaptureRequest();
+        request.setAmount(new BigDecimal("10.00"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotenciaService.encerrar();
+    }
+
+    @Test
+    void testExecutar_RetryComMesmaChaveDevolveRespostaArmazenada() {
+        // Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        AtomicInteger execucoes = new AtomicInteger();
+
+        // Act
+        ResponseEntity<PaymentResponse> primeira = idempotenciaService.executar(lojistaId, "chave-1",
+            "capture:TXN-1", request, () -> aprovada(execucoes));
+        ResponseEntity<PaymentResponse> retry = idempotenciaService.executar(lojistaId, "chave-1",
+            "capture:TXN-1", request, () -> aprovada(execucoes));
+
+        // Assert - o retry é atendido pelo near-cache, sem nova execução nem Redis
+        assertEquals(1, execucoes.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals("TXN-1", retry.getBody().getTransactionId());
+        assertNull(primeira.getHeaders().getFirst(IdempotenciaService.HEADER_REPLAY));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotenciaService.HEADER_REPLAY));
+        verify(valueOperations, times(1)).setIfAbsent(anyString(), anyString(), any(Duration.class));
+        verify(valueOperations).set(anyString(), anyString(), eq(Duration.ofHours(24)));
+    }
+
+    @Test
+    void testExecutar_DuplicatasConcorrentesExecutamUmaVez() throws Exception {
+        // Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        AtomicInteger execucoes = new AtomicInteger();
+        CountDownLatch emExecucao = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        CompletableFuture<ResponseEntity<PaymentResponse>> primeira = CompletableFuture.supplyAsync(() ->
+            idempotenciaService.executar(lojistaId, "chave-2", "capture:TXN-1", request, () -> {
+                emExecucao.countDown();
+                aguardar(liberar);
+                return aprovada(execucoes);
+            }));
+        assertTrue(emExecucao.await(5, TimeUnit.SECONDS));
+
+        // Act - a duplicata chega enquanto a primeira está no gateway
+        CompletableFuture<ResponseEntity<PaymentResponse>> duplicata = CompletableFuture.supplyAsync(() ->
+            idempotenciaService.executar(lojistaId, "chave-2", "capture:TXN-1", request, () -> aprovada(execucoes)));
+        Thread.sleep(50);
+        liberar.countDown();
+
+        // Assert
+        assertEquals(HttpStatus.OK, primeira.get(5, TimeUnit.SECONDS).getStatusCode());
+        ResponseEntity<PaymentResponse> coalescida = duplicata.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK, coalescida.getStatusCode());
+        assertEquals("true", coalescida.getHeaders().getFirst(IdempotenciaService.HEADER_REPLAY));
+        assertEquals(1, execucoes.get());
+    }
+
+    @Test
+    void testExecutar_ChaveReutilizadaComOutraRequisicaoRetorna422() throws Exception {
+        // Arrange - chave concluída em outro nó para a captura de outra transação
+        IdempotenciaService.Registro registro = IdempotenciaService.Registro.concluido(
+            "hash-de-outra-requisicao", 200, new PaymentResponse());
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        when(valueOperations.get(anyString())).thenReturn(objectMapper.writeValueAsString(registro));
+        AtomicInteger execucoes = new AtomicInteger();
+
+        // Act
+        ResponseEntity<PaymentResponse> resposta = idempotenciaService.executar(lojistaId, "chave-3",
+            "capture:TXN-2", request, () -> aprovada(execucoes));
+
+        // Assert
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, resposta.getStatusCode());
+        assertEquals("IDEMPOTENCY_KEY_REUSED", resposta.getBody().getErrorCode());
+        assertEquals(0, execucoes.get());
+    }
+
+    @Test
+    void testExecutar_OperacaoMaisLongaQueOTtlRenovaATrava() {
+        // Arrange - trava de 90 ms, operação de 300 ms no gateway
+        ReflectionTestUtils.setField(idempotenciaService, "lockTtlMs", 90L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(1L);
+        AtomicInteger execucoes = new AtomicInteger();
+
+        // Act
+        ResponseEntity<PaymentResponse> resposta = idempotenciaService.executar(lojistaId, "chave-4",
+            "capture:TXN-1", request, () -> {
+                aguardar(new CountDownLatch(1), 300);
+                return aprovada(execucoes);
+            });
+
+        // Assert - renovada a cada 30 ms com o mesmo valor gravado pelo SET NX
+        assertEquals(HttpStatus.OK, resposta.getStatusCode());
+        ArgumentCaptor<String> trava = ArgumentCaptor.forClass(String.class);
+        verify(valueOperations).setIfAbsent(anyString(), trava.capture(), eq(Duration.ofMillis(90)));
+        verify(stringRedisTemplate, atLeast(3)).execute(any(RedisScript.class), anyList(), eq(trava.getValue()), eq("90"));
+        verify(valueOperations).set(anyString(), anyString(), eq(Duration.ofHours(24)));
+    }
+
+    private ResponseEntity<PaymentResponse> aprovada(AtomicInteger execucoes) {
+        execucoes.incrementAndGet();
+        PaymentResponse response = new PaymentResponse();
+        response.setSuccess(true);
+        response.setTransactionId("TXN-1");
+        return ResponseEntity.ok(response);
+    }
+
+    private static void aguardar(CountDownLatch latch) {
+        aguardar(latch, 5000);
+    }
+
+    private static void aguardar(CountDownLatch latch, long ms) {
+        try {
+            latch.await(ms, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
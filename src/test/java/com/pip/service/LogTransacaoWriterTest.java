@@ -0,0 +1,119 @@
+package com.pip.service;
+
+import com.pip.model.LogTransacao;
+import com.pip.repository.LogTransacaoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para LogTransacaoWriter
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class LogTransacaoWriterTest {
+
+    @Mock
+    private LogTransacaoRepository logTransacaoRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private LogTransacaoWriter logTransacaoWriter;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(logTransacaoWriter, "capacidadeBuffer", 2);
+        ReflectionTestUtils.setField(logTransacaoWriter, "tamanhoLote", 100);
+        ReflectionTestUtils.setField(logTransacaoWriter, "intervaloFlushMs", 50L);
+        ReflectionTestUtils.setField(logTransacaoWriter, "politicaBufferCheio", LogTransacaoWriter.PoliticaBufferCheio.DESCARTAR);
+        ReflectionTestUtils.setField(logTransacaoWriter, "bloqueioMaxMs", 10L);
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @AfterEach
+    void tearDown() {
+        logTransacaoWriter.encerrar();
+    }
+
+    @Test
+    void testEncerrar_DrenaBufferEmLote() {
+        // Arrange
+        when(logTransacaoRepository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        logTransacaoWriter.iniciar();
+
+        // Act
+        logTransacaoWriter.registrar(new LogTransacao());
+        logTransacaoWriter.registrar(new LogTransacao());
+        logTransacaoWriter.encerrar();
+
+        // Assert
+        assertEquals(0, logTransacaoWriter.getPendentes());
+        assertEquals(2.0, meterRegistry.counter("pip.log_transacao.gravados").count());
+        verify(logTransacaoRepository, never()).save(any());
+    }
+
+    @Test
+    void testEncerrar_AguardaLoteEmGravacaoSemInterromper() throws InterruptedException {
+        // Arrange - saveAll lento; uma interrupção faria o lote cair no fallback registro a registro
+        CountDownLatch gravando = new CountDownLatch(1);
+        when(logTransacaoRepository.saveAll(anyList())).thenAnswer(inv -> {
+            gravando.countDown();
+            Thread.sleep(300);
+            return inv.getArgument(0);
+        });
+        logTransacaoWriter.iniciar();
+        logTransacaoWriter.registrar(new LogTransacao());
+        assertTrue(gravando.await(2, TimeUnit.SECONDS));
+
+        // Act
+        logTransacaoWriter.encerrar();
+
+        // Assert
+        assertEquals(1.0, meterRegistry.counter("pip.log_transacao.gravados").count());
+        assertEquals(0.0, meterRegistry.counter("pip.log_transacao.falhas").count());
+        verify(logTransacaoRepository, never()).save(any());
+    }
+
+    @Test
+    void testRegistrar_BufferCheioDescarta() throws InterruptedException {
+        // Arrange
+        logTransacaoWriter.iniciar();
+        // Parar a thread de escrita para manter o buffer cheio
+        ReflectionTestUtils.setField(logTransacaoWriter, "ativo", false);
+        Thread thread = (Thread) ReflectionTestUtils.getField(logTransacaoWriter, "threadEscrita");
+        thread.join(1000);
+
+        // Act
+        List.of(new LogTransacao(), new LogTransacao(), new LogTransacao())
+            .forEach(logTransacaoWriter::registrar);
+
+        // Assert
+        assertEquals(2, logTransacaoWriter.getPendentes());
+        assertEquals(1.0, meterRegistry.counter("pip.log_transacao.descartados").count());
+    }
+}
@@ -0,0 +1,167 @@
+package com.pip.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.dto.AuthorizationRequest;
+import com.pip.dto.PaymentResponse;
+import com.pip.model.Gateway;
+import com.pip.model.Lojista;
+import com.pip.model.Transacao;
+import com.pip.repository.TransacaoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para LoteAutorizacaoService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class LoteAutorizacaoServiceTest {
+
+    @Mock
+    private PagamentoService pagamentoService;
+
+    @Mock
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Mock
+    private HedgedAuthorizationService hedgedAuthorizationService;
+
+    @Mock
+    private TransacaoRepository transacaoRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private Validator validator;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private LoteAutorizacaoService loteAutorizacaoService;
+
+    private Lojista lojista;
+    private Gateway gateway;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(loteAutorizacaoService, "tamanhoBloco", 100);
+        ReflectionTestUtils.setField(loteAutorizacaoService, "paralelismo", 4);
+        ReflectionTestUtils.setField(loteAutorizacaoService, "maxPorGateway", 2);
+        ReflectionTestUtils.setField(loteAutorizacaoService, "maxItens", 1000);
+        loteAutorizacaoService.iniciar();
+
+        lojista = new Lojista();
+        lojista.setId(UUID.randomUUID());
+
+        gateway = new Gateway();
+        gateway.setId(UUID.randomUUID());
+        gateway.setCodigo("CIELO");
+    }
+
+    @AfterEach
+    void tearDown() {
+        loteAutorizacaoService.encerrar();
+    }
+
+    @Test
+    void testProcessarLote_RetomaItensJaProcessadosSemNovaCobranca() throws Exception {
+        // Arrange - item 0 já foi autorizado em uma execução anterior do lote
+        Transacao anterior = new Transacao();
+        anterior.setTransactionId("TXN-anterior");
+        anterior.setStatus("AUTHORIZED");
+        anterior.setLoteId("LOTE-1");
+        anterior.setLoteIndice(0);
+        when(transacaoRepository.findByLojistaIdAndLoteIdAndLoteIndiceBetween(lojista.getId(), "LOTE-1", 0, 1))
+            .thenReturn(List.of(anterior));
+
+        when(validator.validate(any(AuthorizationRequest.class))).thenReturn(Set.of());
+        when(gatewayRoutingService.selecionarMelhorGateway(eq(lojista), eq(2000L))).thenReturn(gateway);
+        when(pagamentoService.novaTransacao(any(), eq(lojista))).thenReturn(new Transacao());
+
+        PaymentResponse aprovada = new PaymentResponse();
+        aprovada.setSuccess(true);
+        when(hedgedAuthorizationService.autorizar(eq(gateway), any(), any()))
+            .thenReturn(new HedgedAuthorizationService.ResultadoAutorizacao(gateway, aprovada));
+        doAnswer(inv -> {
+            inv.<Transacao>getArgument(0).setStatus("AUTHORIZED");
+            return null;
+        }).when(pagamentoService).aplicarRespostaAutorizacao(any(), eq(aprovada));
+
+        String entrada = "{\"amount\":1000,\"currency\":\"BRL\",\"cardToken\":\"tok_1\"}\n"
+            + "{\"amount\":2000,\"currency\":\"BRL\",\"cardToken\":\"tok_2\"}\n";
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        // Act
+        int itens = loteAutorizacaoService.processarLote(lojista, "LOTE-1",
+            new ByteArrayInputStream(entrada.getBytes(StandardCharsets.UTF_8)), saida);
+
+        // Assert
+        String[] linhas = saida.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, itens);
+        assertEquals(2, linhas.length);
+
+        JsonNode primeira = objectMapper.readTree(linhas[0]);
+        assertEquals(0, primeira.get("index").asInt());
+        assertTrue(primeira.get("resumed").asBoolean());
+        assertEquals("TXN-anterior", primeira.get("transactionId").asText());
+
+        JsonNode segunda = objectMapper.readTree(linhas[1]);
+        assertEquals(1, segunda.get("index").asInt());
+        assertFalse(segunda.get("resumed").asBoolean());
+        assertTrue(segunda.get("success").asBoolean());
+
+        verify(transacaoRepository).saveAll(anyList());
+        verify(hedgedAuthorizationService, times(1)).autorizar(any(), any(), any());
+    }
+
+    @Test
+    void testProcessarLote_AceitaArrayJsonEInterrompeEmJsonInvalido() throws Exception {
+        // Arrange
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        String entrada = "[{\"amount\":1000,\"currency\":\"BRL\",\"cardToken\":\"tok_1\"}, {\"amount\": ]";
+        when(validator.validate(any(AuthorizationRequest.class))).thenReturn(Set.of());
+        when(gatewayRoutingService.selecionarMelhorGateway(any(), any())).thenThrow(new RuntimeException("Nenhum gateway"));
+
+        // Act
+        loteAutorizacaoService.processarLote(lojista, "LOTE-2",
+            new ByteArrayInputStream(entrada.getBytes(StandardCharsets.UTF_8)), saida);
+
+        // Assert - o primeiro item é processado e o fluxo para no JSON inválido
+        String[] linhas = saida.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, linhas.length);
+        assertEquals("ROUTING_ERROR", objectMapper.readTree(linhas[0]).get("errorCode").asText());
+        assertEquals("INVALID_JSON", objectMapper.readTree(linhas[1]).get("errorCode").asText());
+        verify(transacaoRepository, never()).saveAll(anyList());
+    }
+}
@@ -0,0 +1,197 @@
+package com.pip.service;
+
+import com.pip.dto.AuthorizationRequest;
+import com.pip.dto.PaymentResponse;
+import com.pip.model.Gateway;
+import com.pip.model.Lojista;
+import com.pip.model.Transacao;
+import com.pip.repository.TransacaoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para PagamentoService
+ *
+ * A autorização deve executar um único insert antes da chamada ao gateway e
+ * um único update depois dela, sem recarregar a transação.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class PagamentoServiceTest {
+
+    @Mock
+    private TransacaoRepository transacaoRepository;
+
+    @Mock
+    private LogTransacaoWriter logTransacaoWriter;
+
+    @Mock
+    private GatewayRoutingService gatewayRoutingService;
+
+    @Mock
+    private GatewayIntegrationService gatewayIntegrationService;
+
+    @Mock
+    private HedgedAuthorizationService hedgedAuthorizationService;
+
+    @Mock
+    private WebhookService webhookService;
+
+    @InjectMocks
+    private PagamentoService pagamentoService;
+
+    private Lojista lojista;
+    private Gateway principal;
+    private AuthorizationRequest request;
+    private List<String> statusNoInsert;
+
+    @BeforeEach
+    void setUp() {
+        lojista = new Lojista();
+        lojista.setId(UUID.randomUUID());
+        lojista.setNomeFantasia("Loja Teste");
+
+        principal = criarGateway("PRINCIPAL");
+
+        request = new AuthorizationRequest();
+        request.setAmount(10000L);
+        request.setCurrency("BRL");
+        request.setCardToken("tkn_test_abc");
+        request.setInstallments(1);
+
+        // O status é capturado no momento do insert: a entidade continua sendo alterada depois
+        statusNoInsert = new ArrayList<>();
+        lenient().when(transacaoRepository.save(any(Transacao.class))).thenAnswer(inv -> {
+            Transacao transacao = inv.getArgument(0);
+            statusNoInsert.add(transacao.getStatus());
+            transacao.setId(UUID.randomUUID());
+            return transacao;
+        });
+        lenient().when(transacaoRepository.atualizarResultadoAutorizacao(any(), anyString(), any(), any(), any(),
+            any(), any(), any(), any(), any(), any())).thenReturn(1);
+    }
+
+    @Test
+    void testAutorizarPagamento_UmInsertAntesEUmUpdateDepoisDoGateway() {
+        // Arrange
+        when(gatewayRoutingService.selecionarMelhorGateway(lojista, 10000L)).thenReturn(principal);
+        when(hedgedAuthorizationService.autorizar(eq(principal), eq(request), any(Transacao.class)))
+            .thenReturn(new HedgedAuthorizationService.ResultadoAutorizacao(principal, aprovada()));
+
+        // Act
+        PaymentResponse response = pagamentoService.autorizarPagamento(request, lojista);
+
+        // Assert
+        assertTrue(response.isSuccess());
+        assertEquals(List.of("PENDING"), statusNoInsert);
+
+        InOrder ordem = inOrder(transacaoRepository, hedgedAuthorizationService, webhookService);
+        ordem.verify(transacaoRepository).save(any(Transacao.class));
+        ordem.verify(hedgedAuthorizationService).autorizar(eq(principal), eq(request), any(Transacao.class));
+        ordem.verify(transacaoRepository).atualizarResultadoAutorizacao(any(UUID.class), eq("AUTHORIZED"),
+            eq(principal), eq("GW-123"), eq("AUTH-1"), eq("NSU-1"), eq("TID-1"), notNull(), isNull(), isNull(), notNull());
+        ordem.verify(webhookService).criarWebhook(eq(lojista), any(Transacao.class), eq("TRANSACTION_AUTHORIZED"));
+
+        verify(transacaoRepository, times(1)).save(any(Transacao.class));
+        verify(transacaoRepository, never()).findById(any());
+        verify(transacaoRepository, never()).findByTransactionId(anyString());
+    }
+
+    @Test
+    void testAutorizarPagamento_RespostaDoHedgeGravaGatewayDeBackup() {
+        // Arrange
+        Gateway reserva = criarGateway("RESERVA");
+        when(gatewayRoutingService.selecionarMelhorGateway(lojista, 10000L)).thenReturn(principal);
+        when(hedgedAuthorizationService.autorizar(eq(principal), eq(request), any(Transacao.class)))
+            .thenReturn(new HedgedAuthorizationService.ResultadoAutorizacao(reserva, aprovada()));
+
+        // Act
+        pagamentoService.autorizarPagamento(request, lojista);
+
+        // Assert
+        verify(transacaoRepository).atualizarResultadoAutorizacao(any(UUID.class), eq("AUTHORIZED"), eq(reserva),
+            any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testAutorizarPagamento_RecusaGravaFalhaSemWebhook() {
+        // Arrange
+        PaymentResponse recusada = new PaymentResponse();
+        recusada.setSuccess(false);
+        recusada.setErrorCode("51");
+        recusada.setErrorMessage("Saldo insuficiente");
+        when(gatewayRoutingService.selecionarMelhorGateway(lojista, 10000L)).thenReturn(principal);
+        when(hedgedAuthorizationService.autorizar(eq(principal), eq(request), any(Transacao.class)))
+            .thenReturn(new HedgedAuthorizationService.ResultadoAutorizacao(principal, recusada));
+
+        // Act
+        PaymentResponse response = pagamentoService.autorizarPagamento(request, lojista);
+
+        // Assert
+        assertFalse(response.isSuccess());
+        verify(transacaoRepository).atualizarResultadoAutorizacao(any(UUID.class), eq("FAILED"), eq(principal),
+            isNull(), isNull(), isNull(), isNull(), isNull(), eq("51"), eq("Saldo insuficiente"), notNull());
+        verifyNoInteractions(webhookService);
+    }
+
+    @Test
+    void testAutorizarPagamento_ErroNoGatewayGravaFalhaComUpdate() {
+        // Arrange
+        when(gatewayRoutingService.selecionarMelhorGateway(lojista, 10000L)).thenReturn(principal);
+        when(hedgedAuthorizationService.autorizar(eq(principal), eq(request), any(Transacao.class)))
+            .thenThrow(new IllegalStateException("Connection reset"));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> pagamentoService.autorizarPagamento(request, lojista));
+        verify(transacaoRepository, times(1)).save(any(Transacao.class));
+        verify(transacaoRepository).atualizarResultadoAutorizacao(any(UUID.class), eq("FAILED"), eq(principal),
+            any(), any(), any(), any(), any(), any(), eq("Connection reset"), any());
+        verifyNoInteractions(webhookService);
+    }
+
+    @Test
+    void testAutorizarPagamento_SemGatewayNaoChamaGatewayNemAtualiza() {
+        // Arrange
+        when(gatewayRoutingService.selecionarMelhorGateway(lojista, 10000L))
+            .thenThrow(new IllegalStateException("Nenhum gateway disponível"));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> pagamentoService.autorizarPagamento(request, lojista));
+        assertEquals(List.of("FAILED"), statusNoInsert);
+        verifyNoInteractions(hedgedAuthorizationService);
+        verify(transacaoRepository, never()).atualizarResultadoAutorizacao(any(), anyString(), any(), any(), any(),
+            any(), any(), any(), any(), any(), any());
+    }
+
+    private PaymentResponse aprovada() {
+        PaymentResponse response = new PaymentResponse();
+        response.setSuccess(true);
+        response.setGatewayTransactionId("GW-123");
+        response.setAuthorizationCode("AUTH-1");
+        response.setNsu("NSU-1");
+        response.setTid("TID-1");
+        return response;
+    }
+
+    private Gateway criarGateway(String codigo) {
+        Gateway gateway = new Gateway();
+        gateway.setId(UUID.randomUUID());
+        gateway.setCodigo(codigo);
+        gateway.setNome(codigo);
+        return gateway;
+    }
+}
@@ -1,15 +1,19 @@
 package com.pip.service;
 
-import com.pip.model.Lojista;
-import com.pip.model.PlanoLojista;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -17,151 +21,104 @@ import static org.mockito.Mockito.*;
 
 /**
  * Testes unitários para RateLimitService
- * 
+ *
+ * O script Lua do token bucket é simulado pelo retorno do RedisTemplate:
+ * {concedidos, restantes, ms até o bucket encher, ms até o próximo token}.
+ *
  * @author Luiz Gustavo Finotello
  */
+@ExtendWith(MockitoExtension.class)
 class RateLimitServiceTest {
 
-    @Mock
-    private RedisTemplate<String, Object> redisTemplate;
+    private static final String API_KEY = "pk_test_abc";
 
     @Mock
-    private ValueOperations<String, Object> valueOperations;
+    private RedisTemplate<String, Object> redisTemplate;
 
+    @InjectMocks
     private RateLimitService rateLimitService;
 
     @BeforeEach
     void setUp() {
-        MockitoAnnotations.openMocks(this);
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        
-        rateLimitService = new RateLimitService(redisTemplate);
+        ReflectionTestUtils.setField(rateLimitService, "janelaSegundos", 60L);
+        ReflectionTestUtils.setField(rateLimitService, "modo", RateLimitService.ModoRateLimit.REDIS);
+        ReflectionTestUtils.setField(rateLimitService, "fracaoLease", 0.05);
+        ReflectionTestUtils.setField(rateLimitService, "leaseMaximo", 100);
+        ReflectionTestUtils.setField(rateLimitService, "ttlLeaseMs", 1000L);
     }
 
     @Test
-    void testIsAllowed_FirstRequest() {
-        // Configurar mock
-        when(valueOperations.get(anyString())).thenReturn(null);
-        when(valueOperations.increment(anyString())).thenReturn(1L);
-
-        // Criar lojista com plano FREE (100 req/min)
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
-
-        // Verificar se primeira requisição é permitida
-        assertTrue(rateLimitService.isAllowed(lojista));
-
-        // Verificar se Redis foi chamado
-        verify(valueOperations).get(anyString());
-        verify(valueOperations).increment(anyString());
-        verify(redisTemplate).expire(anyString(), eq(60L), eq(TimeUnit.SECONDS));
+    void testVerificar_DentroDoLimitePermiteEConsomeUmToken() {
+        // Arrange
+        quandoScript().thenReturn(List.of(1L, 99L, 600L, 0L));
+
+        // Act
+        RateLimitDecision decisao = rateLimitService.verificar(API_KEY, 100);
+
+        // Assert
+        assertTrue(decisao.isPermitido());
+        assertEquals(100, decisao.getLimite());
+        assertEquals(99L, decisao.getRestantes());
+        assertEquals(1L, decisao.getResetSegundos());
+        verify(redisTemplate).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+            eq(List.of("rate_limit:tb:" + API_KEY)), eq("100"), eq("60000"), eq("1"));
     }
 
     @Test
-    void testIsAllowed_WithinLimit() {
-        // Configurar mock - 50 requisições de 100 permitidas
-        when(valueOperations.get(anyString())).thenReturn(50L);
-        when(valueOperations.increment(anyString())).thenReturn(51L);
-
-        // Criar lojista com plano FREE (100 req/min)
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
-
-        // Verificar se requisição é permitida
-        assertTrue(rateLimitService.isAllowed(lojista));
+    void testVerificar_BucketVazioNegaComRetryAfter() {
+        // Arrange - nenhum token concedido; próximo token em 600 ms
+        quandoScript().thenReturn(List.of(0L, 0L, 60000L, 600L));
+
+        // Act
+        RateLimitDecision decisao = rateLimitService.verificar(API_KEY, 100);
+
+        // Assert
+        assertFalse(decisao.isPermitido());
+        assertEquals(0L, decisao.getRestantes());
+        assertEquals(60L, decisao.getResetSegundos());
+        assertEquals(1L, decisao.getRetryAfterSegundos());
     }
 
     @Test
-    void testIsAllowed_ExceedsLimit() {
-        // Configurar mock - 100 requisições (limite atingido)
-        when(valueOperations.get(anyString())).thenReturn(100L);
-
-        // Criar lojista com plano FREE (100 req/min)
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
+    void testVerificar_RedisIndisponivelPermiteSemVerificacao() {
+        // Arrange
+        quandoScript().thenThrow(new RedisConnectionFailureException("Connection refused"));
 
-        // Verificar se requisição é bloqueada
-        assertFalse(rateLimitService.isAllowed(lojista));
+        // Act
+        RateLimitDecision decisao = rateLimitService.verificar(API_KEY, 100);
 
-        // Verificar que increment não foi chamado
-        verify(valueOperations, never()).increment(anyString());
+        // Assert
+        assertTrue(decisao.isPermitido());
+        assertEquals(100, decisao.getLimite());
     }
 
     @Test
-    void testGetRemainingRequests() {
-        // Configurar mock - 30 requisições de 100
-        when(valueOperations.get(anyString())).thenReturn(30L);
-
-        // Criar lojista com plano FREE (100 req/min)
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
-
-        // Verificar requisições restantes
-        long remaining = rateLimitService.getRemainingRequests(lojista);
-        assertEquals(70L, remaining);
+    void testVerificar_ModoHibridoConsomeLoteLocalSemNovaIdaAoRedis() {
+        // Arrange - lote de 5 tokens (5% de 100)
+        ReflectionTestUtils.setField(rateLimitService, "modo", RateLimitService.ModoRateLimit.HIBRIDO);
+        quandoScript().thenReturn(List.of(5L, 95L, 3000L, 0L));
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimitService.verificar(API_KEY, 100).isPermitido());
+        }
+
+        // Assert
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), any(RedisSerializer.class),
+            any(RedisSerializer.class), anyList(), eq("100"), eq("60000"), eq("5"));
     }
 
     @Test
-    void testGetRemainingRequests_NoRequests() {
-        // Configurar mock - nenhuma requisição ainda
-        when(valueOperations.get(anyString())).thenReturn(null);
-
-        // Criar lojista com plano FREE (100 req/min)
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
-
-        // Verificar requisições restantes
-        long remaining = rateLimitService.getRemainingRequests(lojista);
-        assertEquals(100L, remaining);
+    void testGetLimitByPlan() {
+        assertEquals(100, rateLimitService.getLimitByPlan("FREE"));
+        assertEquals(500, rateLimitService.getLimitByPlan("starter"));
+        assertEquals(2000, rateLimitService.getLimitByPlan("BUSINESS"));
+        assertEquals(10000, rateLimitService.getLimitByPlan("ENTERPRISE"));
+        assertEquals(100, rateLimitService.getLimitByPlan("DESCONHECIDO"));
     }
 
-    @Test
-    void testGetResetTime() {
-        // Configurar mock - 30 segundos restantes
-        when(redisTemplate.getExpire(anyString(), eq(TimeUnit.SECONDS))).thenReturn(30L);
-
-        // Criar lojista
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
-
-        // Verificar tempo de reset
-        long resetTime = rateLimitService.getResetTime(lojista);
-        assertEquals(30L, resetTime);
-    }
-
-    @Test
-    void testGetResetTime_NoExpiration() {
-        // Configurar mock - sem expiração definida
-        when(redisTemplate.getExpire(anyString(), eq(TimeUnit.SECONDS))).thenReturn(-1L);
-
-        // Criar lojista
-        Lojista lojista = new Lojista();
-        lojista.setPlano(PlanoLojista.FREE);
-
-        // Verificar tempo de reset (deve retornar 60 segundos por padrão)
-        long resetTime = rateLimitService.getResetTime(lojista);
-        assertEquals(60L, resetTime);
-    }
-
-    @Test
-    void testDifferentPlans() {
-        // Configurar mock
-        when(valueOperations.get(anyString())).thenReturn(null);
-        when(valueOperations.increment(anyString())).thenReturn(1L);
-
-        // Testar plano STARTER (500 req/min)
-        Lojista lojistaStarter = new Lojista();
-        lojistaStarter.setPlano(PlanoLojista.STARTER);
-        assertTrue(rateLimitService.isAllowed(lojistaStarter));
-
-        // Testar plano BUSINESS (2000 req/min)
-        Lojista lojistaBusiness = new Lojista();
-        lojistaBusiness.setPlano(PlanoLojista.BUSINESS);
-        assertTrue(rateLimitService.isAllowed(lojistaBusiness));
-
-        // Testar plano ENTERPRISE (10000 req/min)
-        Lojista lojistaEnterprise = new Lojista();
-        lojistaEnterprise.setPlano(PlanoLojista.ENTERPRISE);
-        assertTrue(rateLimitService.isAllowed(lojistaEnterprise));
+    private OngoingStubbing<Object> quandoScript() {
+        return when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class),
+            any(RedisSerializer.class), anyList(), anyString(), anyString(), anyString()));
     }
 }
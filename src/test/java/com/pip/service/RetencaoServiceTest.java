@@ -0,0 +1,193 @@
+package com.pip.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.service.RetencaoService.PoliticaRetencao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para RetencaoService
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class RetencaoServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private MockEnvironment environment = new MockEnvironment();
+
+    @InjectMocks
+    private RetencaoService retencaoService;
+
+    @TempDir
+    Path diretorioArquivo;
+
+    private final PoliticaRetencao politica = new PoliticaRetencao("webhook_event", "created_at", null, 30);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(retencaoService, "habilitado", true);
+        ReflectionTestUtils.setField(retencaoService, "tabelas", List.of("webhook_event"));
+        ReflectionTestUtils.setField(retencaoService, "tamanhoLote", 2);
+        ReflectionTestUtils.setField(retencaoService, "pausaMs", 0L);
+        ReflectionTestUtils.setField(retencaoService, "maxDuracaoMinutos", 60L);
+        ReflectionTestUtils.setField(retencaoService, "arquivamentoHabilitado", false);
+        ReflectionTestUtils.setField(retencaoService, "diretorioArquivo", diretorioArquivo.toString());
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    void testAplicar_EncerraNoPrimeiroLoteIncompleto() throws Exception {
+        // Arrange
+        retencaoService.iniciar();
+        when(jdbcTemplate.update(anyString(), any(Timestamp.class), anyInt())).thenReturn(2, 2, 1);
+
+        // Act
+        long removidos = retencaoService.aplicar(politica, System.nanoTime() + 60_000_000_000L);
+
+        // Assert
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(3)).update(sql.capture(), any(Timestamp.class), eq(2));
+        assertEquals(5, removidos);
+        assertEquals("DELETE FROM webhook_event WHERE id IN (" + politica.selecao("id") + ")", sql.getValue());
+        assertEquals(5.0, meterRegistry.get("pip.retencao.removidos").tag("tabela", "webhook_event").counter().count());
+        verifyNoInteractions(namedParameterJdbcTemplate);
+    }
+
+    @Test
+    void testAplicar_InterrompeAoAtingirOPrazo() throws Exception {
+        // Arrange - lotes sempre cheios, mas o prazo já passou
+        retencaoService.iniciar();
+        when(jdbcTemplate.update(anyString(), any(Timestamp.class), anyInt())).thenReturn(2);
+
+        // Act
+        long removidos = retencaoService.aplicar(politica, System.nanoTime());
+
+        // Assert - o lote em andamento termina e a execução para
+        verify(jdbcTemplate, times(1)).update(anyString(), any(Timestamp.class), anyInt());
+        assertEquals(2, removidos);
+    }
+
+    @Test
+    void testIniciar_RejeitaIdentificadoresInvalidos() {
+        // Arrange
+        ReflectionTestUtils.setField(retencaoService, "tabelas", List.of("webhook_event; DROP TABLE lojista"));
+
+        // Act & Assert
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class, retencaoService::iniciar);
+        assertTrue(erro.getMessage().contains("webhook_event; DROP TABLE lojista"));
+
+        // Coluna de data configurada também é validada
+        RetencaoService outro = new RetencaoService();
+        ReflectionTestUtils.setField(outro, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(outro, "environment",
+            new MockEnvironment().withProperty("retencao.log_transacao.coluna-data", "created_at DESC"));
+        ReflectionTestUtils.setField(outro, "tabelas", List.of("log_transacao"));
+        assertThrows(IllegalArgumentException.class, outro::iniciar);
+    }
+
+    @Test
+    void testSelecao_ComESemFiltro() {
+        // Arrange
+        PoliticaRetencao comFiltro = new PoliticaRetencao("webhook_event", "updated_at", "status = 'SUCCESS'", 30);
+        PoliticaRetencao filtroEmBranco = new PoliticaRetencao("log_transacao", "created_at", "  ", 90);
+
+        // Act & Assert
+        assertEquals("SELECT id FROM webhook_event WHERE updated_at < ? AND (status = 'SUCCESS') "
+            + "ORDER BY updated_at LIMIT ? FOR UPDATE SKIP LOCKED", comFiltro.selecao("id"));
+        assertEquals("SELECT * FROM log_transacao WHERE created_at < ? "
+            + "ORDER BY created_at LIMIT ? FOR UPDATE SKIP LOCKED", filtroEmBranco.selecao("*"));
+    }
+
+    @Test
+    void testAplicar_ArquivaAntesDeRemover() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(retencaoService, "arquivamentoHabilitado", true);
+        retencaoService.iniciar();
+        when(jdbcTemplate.queryForList(anyString(), any(Timestamp.class), eq(2)))
+            .thenReturn(List.of(Map.of("id", 10L, "status", "SUCCESS")));
+
+        // Act
+        long removidos = retencaoService.aplicar(politica, System.nanoTime() + 60_000_000_000L);
+
+        // Assert - leitura do lote, gravação no arquivo e só então o DELETE dos ids arquivados
+        InOrder ordem = inOrder(jdbcTemplate, objectMapper, namedParameterJdbcTemplate);
+        ordem.verify(jdbcTemplate).queryForList(eq(politica.selecao("*")), any(Timestamp.class), eq(2));
+        ordem.verify(objectMapper).writeValueAsString(any());
+        ordem.verify(namedParameterJdbcTemplate)
+            .update("DELETE FROM webhook_event WHERE id IN (:ids)", Map.of("ids", List.of(10L)));
+        verify(jdbcTemplate, never()).update(anyString(), any(Timestamp.class), anyInt());
+        assertEquals(1, removidos);
+
+        List<JsonNode> arquivadas = lerArquivo();
+        assertEquals(1, arquivadas.size());
+        assertEquals(10L, arquivadas.get(0).get("id").asLong());
+    }
+
+    private List<JsonNode> lerArquivo() throws Exception {
+        Path arquivo;
+        try (Stream<Path> arquivos = Files.list(diretorioArquivo)) {
+            arquivo = arquivos.filter(p -> p.getFileName().toString().startsWith("webhook_event-"))
+                .findFirst().orElseThrow();
+        }
+        try (BufferedReader leitor = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(arquivo)), StandardCharsets.UTF_8))) {
+            return leitor.lines().map(linha -> {
+                try {
+                    return new ObjectMapper().readTree(linha);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.pip.service;
+
+import com.pip.model.WebhookEvent;
+import com.pip.repository.WebhookEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para WebhookScheduler
+ *
+ * Dois nós compartilham uma tabela em memória. As respostas de
+ * selecionarParaReserva reproduzem o filtro da consulta nativa (status, vencimento,
+ * tentativas e reserva vigente de outro nó); o SKIP LOCKED não é exercitado aqui.
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class WebhookSchedulerTest {
+
+    private static final String NO_A = "no-a";
+    private static final String NO_B = "no-b";
+
+    @Mock
+    private WebhookEventRepository webhookEventRepository;
+
+    @Mock
+    private WebhookDispatcher dispatcherA;
+
+    @Mock
+    private WebhookDispatcher dispatcherB;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<UUID, WebhookEvent> tabela = new LinkedHashMap<>();
+
+    private WebhookScheduler noA;
+    private WebhookScheduler noB;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        lenient().when(webhookEventRepository.selecionarParaReserva(anyString(), any(ZonedDateTime.class),
+            anyString(), anyInt())).thenAnswer(inv -> selecionar(inv.getArgument(0), inv.getArgument(1),
+                inv.getArgument(2), inv.getArgument(3)));
+        lenient().when(webhookEventRepository.reservar(anyList(), any(ZonedDateTime.class), anyString()))
+            .thenAnswer(inv -> {
+                List<UUID> ids = inv.getArgument(0);
+                ids.forEach(id -> {
+                    tabela.get(id).setReservadoAte(inv.getArgument(1));
+                    tabela.get(id).setReservadoPor(inv.getArgument(2));
+                });
+                return ids.size();
+            });
+        lenient().when(webhookEventRepository.findReservados(anyList()))
+            .thenAnswer(inv -> ((List<UUID>) inv.getArgument(0)).stream().map(tabela::get).toList());
+
+        for (WebhookDispatcher dispatcher : List.of(dispatcherA, dispatcherB)) {
+            lenient().when(dispatcher.capacidadeDisponivel()).thenReturn(100);
+            lenient().when(dispatcher.despachar(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+        }
+
+        noA = criarNo(NO_A, dispatcherA);
+        noB = criarNo(NO_B, dispatcherB);
+    }
+
+    @Test
+    void testProcessarWebhooksPendentes_ReservaApenasEventosVencidosParaONo() {
+        // Arrange
+        WebhookEvent vencido1 = inserir("PENDING", ZonedDateTime.now().minusMinutes(2), 0);
+        WebhookEvent vencido2 = inserir("PENDING", ZonedDateTime.now().minusMinutes(1), 0);
+        WebhookEvent futuro = inserir("PENDING", ZonedDateTime.now().plusMinutes(5), 0);
+        WebhookEvent esgotado = inserir("PENDING", ZonedDateTime.now().minusMinutes(3), 5);
+        WebhookEvent falhado = inserir("FAILED", ZonedDateTime.now().minusMinutes(3), 1);
+
+        // Act
+        noA.processarWebhooksPendentes();
+
+        // Assert
+        assertEquals(List.of(vencido1, vencido2), despachados(dispatcherA));
+        assertEquals(NO_A, vencido1.getReservadoPor());
+        assertTrue(vencido1.getReservadoAte().isAfter(ZonedDateTime.now().plusSeconds(100)));
+        for (WebhookEvent naoReservado : List.of(futuro, esgotado, falhado)) {
+            assertNull(naoReservado.getReservadoPor());
+        }
+    }
+
+    @Test
+    void testProcessarWebhooksPendentes_NosConcorrentesRecebemLotesDisjuntos() {
+        // Arrange - um lote de 2 por ciclo
+        for (WebhookScheduler no : List.of(noA, noB)) {
+            ReflectionTestUtils.setField(no, "tamanhoLote", 2);
+            ReflectionTestUtils.setField(no, "maxLotesPorCiclo", 1);
+        }
+        WebhookEvent e1 = inserir("PENDING", ZonedDateTime.now().minusMinutes(3), 0);
+        WebhookEvent e2 = inserir("PENDING", ZonedDateTime.now().minusMinutes(2), 0);
+        WebhookEvent e3 = inserir("PENDING", ZonedDateTime.now().minusMinutes(1), 0);
+
+        // Act
+        noA.processarWebhooksPendentes();
+        noB.processarWebhooksPendentes();
+        noB.processarWebhooksPendentes();
+
+        // Assert - o nó B não reassume os eventos com reserva vigente do nó A
+        assertEquals(List.of(e1, e2), despachados(dispatcherA));
+        verify(dispatcherB, times(2)).despachar(List.of(e3));
+        assertEquals(NO_B, e3.getReservadoPor());
+    }
+
+    @Test
+    void testProcessarWebhooksPendentes_ReservaExpiradaEReassumidaPorOutroNo() {
+        // Arrange - o nó A reserva e para de responder antes de entregar
+        WebhookEvent evento = inserir("PENDING", ZonedDateTime.now().minusMinutes(1), 0);
+        noA.processarWebhooksPendentes();
+        noB.processarWebhooksPendentes();
+        verify(dispatcherB, never()).despachar(anyList());
+
+        // Act - a reserva vence
+        evento.setReservadoAte(ZonedDateTime.now().minusSeconds(1));
+        noB.processarWebhooksPendentes();
+
+        // Assert
+        verify(dispatcherB).despachar(List.of(evento));
+        assertEquals(NO_B, evento.getReservadoPor());
+        assertTrue(evento.getReservadoAte().isAfter(ZonedDateTime.now()));
+    }
+
+    @Test
+    void testProcessarWebhooksParaRetry_NoReassumeSuaPropriaReservaVigente() {
+        // Arrange - evento adiado pelo dispatcher continua reservado para o mesmo nó
+        WebhookEvent evento = inserir("FAILED", ZonedDateTime.now().minusMinutes(1), 1);
+        noA.processarWebhooksParaRetry();
+
+        // Act
+        noA.processarWebhooksParaRetry();
+
+        // Assert
+        verify(dispatcherA, times(2)).despachar(List.of(evento));
+        assertEquals(NO_A, evento.getReservadoPor());
+    }
+
+    @Test
+    void testProcessarWebhooksPendentes_DispatcherSemCapacidadeNaoReserva() {
+        // Arrange
+        inserir("PENDING", ZonedDateTime.now().minusMinutes(1), 0);
+        when(dispatcherA.capacidadeDisponivel()).thenReturn(0);
+
+        // Act
+        noA.processarWebhooksPendentes();
+
+        // Assert
+        verify(webhookEventRepository, never()).selecionarParaReserva(anyString(), any(), anyString(), anyInt());
+        verify(dispatcherA, never()).despachar(anyList());
+    }
+
+    private WebhookScheduler criarNo(String identificador, WebhookDispatcher dispatcher) {
+        WebhookScheduler scheduler = new WebhookScheduler();
+        ReflectionTestUtils.setField(scheduler, "webhookEventRepository", webhookEventRepository);
+        ReflectionTestUtils.setField(scheduler, "webhookDispatcher", dispatcher);
+        ReflectionTestUtils.setField(scheduler, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(scheduler, "tamanhoLote", 200);
+        ReflectionTestUtils.setField(scheduler, "maxLotesPorCiclo", 10);
+        ReflectionTestUtils.setField(scheduler, "reservaSegundos", 120L);
+        ReflectionTestUtils.setField(scheduler, "identificadorNo", identificador);
+        scheduler.iniciar();
+        return scheduler;
+    }
+
+    /**
+     * Mesmo filtro e ordenação de WebhookEventRepository.selecionarParaReserva
+     */
+    private List<UUID> selecionar(String status, ZonedDateTime agora, String no, int limite) {
+        return tabela.values().stream()
+            .filter(w -> w.getStatus().equals(status))
+            .filter(w -> w.getTentativas() < w.getMaxTentativas())
+            .filter(w -> w.getProximaTentativa() == null || !w.getProximaTentativa().isAfter(agora))
+            .filter(w -> w.getReservadoAte() == null || w.getReservadoAte().isBefore(agora)
+                || Objects.equals(w.getReservadoPor(), no))
+            .sorted(Comparator.comparing(WebhookEvent::getProximaTentativa,
+                Comparator.nullsFirst(Comparator.naturalOrder())))
+            .limit(limite)
+            .map(WebhookEvent::getId)
+            .toList();
+    }
+
+    private WebhookEvent inserir(String status, ZonedDateTime proximaTentativa, int tentativas) {
+        WebhookEvent evento = new WebhookEvent();
+        evento.setId(UUID.randomUUID());
+        evento.setEvento("TRANSACTION_AUTHORIZED");
+        evento.setUrl("https://loja.com/webhook");
+        evento.setStatus(status);
+        evento.setTentativas(tentativas);
+        evento.setMaxTentativas(5);
+        evento.setProximaTentativa(proximaTentativa);
+        tabela.put(evento.getId(), evento);
+        return evento;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<WebhookEvent> despachados(WebhookDispatcher dispatcher) {
+        ArgumentCaptor<List<WebhookEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(dispatcher, atLeastOnce()).despachar(captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+}
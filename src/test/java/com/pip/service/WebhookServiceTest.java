@@ -1,10 +1,13 @@
 package com.pip.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pip.dto.WebhookMessage;
 import com.pip.model.Lojista;
 import com.pip.model.Transacao;
 import com.pip.model.WebhookEvent;
+import com.pip.model.WebhookOutbox;
 import com.pip.repository.WebhookEventRepository;
+import com.pip.repository.WebhookOutboxRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,6 +16,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.ZonedDateTime;
@@ -34,6 +39,12 @@ class WebhookServiceTest {
     @Mock
     private WebhookEventRepository webhookEventRepository;
 
+    @Mock
+    private WebhookOutboxRepository webhookOutboxRepository;
+
+    @Mock
+    private WebhookStatusWriter webhookStatusWriter;
+
     @Mock
     private RestTemplate restTemplate;
 
@@ -87,7 +98,12 @@ class WebhookServiceTest {
         assertEquals("TRANSACTION_AUTHORIZED", webhook.getEvento());
         assertEquals(lojista.getWebhookUrl(), webhook.getUrl());
         assertNotNull(webhook.getSignature());
+        // Nasce com o prazo da fila: o polling não o seleciona antes ou durante a publicação do relay
+        assertNotNull(webhook.getProximaTentativa());
+        assertTrue(webhook.getProximaTentativa().isAfter(ZonedDateTime.now()));
         verify(webhookEventRepository, times(1)).save(any(WebhookEvent.class));
+        verify(webhookOutboxRepository, times(1)).save(argThat((WebhookOutbox entrada) ->
+            webhook.getId().equals(entrada.getWebhookEventId())));
     }
 
     @Test
@@ -147,6 +163,32 @@ class WebhookServiceTest {
         verify(restTemplate, never()).exchange(anyString(), any(), any(), eq(String.class));
     }
 
+    @Test
+    void testEntregarMensagem_FalhaAgendaRetrySemAcessarBanco() {
+        // Arrange
+        WebhookEvent webhook = new WebhookEvent(lojista, transacao, "TRANSACTION_AUTHORIZED",
+            lojista.getWebhookUrl(), "{\"event\":\"TRANSACTION_AUTHORIZED\"}");
+        webhook.setId(UUID.randomUUID());
+        WebhookMessage mensagem = new WebhookMessage(webhook, 2);
+        ReflectionTestUtils.setField(webhookService, "folgaFilaSegundos", 300L);
+        ZonedDateTime retryDaFila = ZonedDateTime.now().plusMinutes(1);
+
+        when(restTemplate.exchange(anyString(), any(), any(), eq(String.class)))
+            .thenThrow(new ResourceAccessException("Connection refused"));
+
+        // Act
+        boolean enviado = webhookService.entregarMensagem(mensagem);
+
+        // Assert - status gravado em lote pelo writer; o prazo da fila (retry de 1m + folga)
+        // mantém o evento fora do scheduler enquanto a fila de atraso faz a 3ª tentativa
+        assertFalse(enviado);
+        verify(webhookStatusWriter).registrar(argThat((WebhookStatusWriter.AtualizacaoWebhook atualizacao) ->
+            "PENDING".equals(atualizacao.getStatus())
+                && atualizacao.getTentativas() == 2
+                && atualizacao.getProximaTentativa().isAfter(retryDaFila.plusSeconds(299))));
+        verifyNoInteractions(webhookEventRepository);
+    }
+
     @Test
     void testVerificarAssinatura() {
         // Act
@@ -0,0 +1,173 @@
+package com.pip.service;
+
+import com.pip.service.WebhookStatusWriter.AtualizacaoWebhook;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testes unitários para WebhookStatusWriter
+ *
+ * @author Luiz Gustavo Finotello
+ */
+@ExtendWith(MockitoExtension.class)
+class WebhookStatusWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private WebhookStatusWriter webhookStatusWriter;
+
+    private final UUID eventoA = UUID.randomUUID();
+    private final UUID eventoB = UUID.randomUUID();
+    private final ZonedDateTime agora = ZonedDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(webhookStatusWriter, "capacidadeBuffer", 100);
+        ReflectionTestUtils.setField(webhookStatusWriter, "tamanhoLote", 100);
+        ReflectionTestUtils.setField(webhookStatusWriter, "intervaloFlushMs", 10_000L);
+        ReflectionTestUtils.setField(webhookStatusWriter, "maxTentativas", 3);
+        ReflectionTestUtils.setField(webhookStatusWriter, "esperaInicialMs", 1L);
+        ReflectionTestUtils.setField(webhookStatusWriter, "esperaMaximaMs", 5L);
+        webhookStatusWriter.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        webhookStatusWriter.encerrar();
+    }
+
+    @Test
+    void testGravarLote_ReduzAUltimaTransicaoSemSobrescreverSucesso() {
+        // Arrange - falha seguida de sucesso do mesmo evento no mesmo lote
+        List<AtualizacaoWebhook> lote = List.of(
+            AtualizacaoWebhook.falha(eventoA, 1, agora, 500, "erro", "HTTP 500", agora.plusMinutes(5)),
+            AtualizacaoWebhook.sucesso(eventoA, 2, agora, 200, "ok"),
+            AtualizacaoWebhook.falha(eventoB, 5, agora, 500, "erro", "HTTP 500", null));
+
+        // Act
+        webhookStatusWriter.gravarLote(lote);
+
+        // Assert
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        List<Object[]> linhas = capturarLinhas(sql, 1).get(0);
+
+        assertTrue(sql.getValue().contains("WHERE id = ? AND status <> 'SUCCESS'"));
+        assertTrue(sql.getValue().contains("tentativas = GREATEST(tentativas, ?)"));
+        assertEquals(2, linhas.size());
+        assertEquals("SUCCESS", linhas.get(0)[0]);
+        assertEquals(2, linhas.get(0)[1]);
+        assertEquals(eventoA, linhas.get(0)[9]);
+        assertEquals("FAILED", linhas.get(1)[0]);
+        assertEquals(eventoB, linhas.get(1)[9]);
+        assertEquals(2.0, meterRegistry.counter("pip.webhook.status.gravados").count());
+    }
+
+    @Test
+    void testGravarLote_AdiamentoApenasEstendePrazo() {
+        // Arrange - adiamento após a falha do mesmo evento e adiamento isolado de outro evento
+        ZonedDateTime prazoFalha = agora.plusMinutes(5);
+        ZonedDateTime prazoAdiado = agora.plusMinutes(10);
+        List<AtualizacaoWebhook> lote = List.of(
+            AtualizacaoWebhook.falha(eventoA, 1, agora, 503, "erro", "HTTP 503", prazoFalha),
+            AtualizacaoWebhook.adiamento(eventoA, prazoAdiado),
+            AtualizacaoWebhook.adiamento(eventoB, prazoAdiado));
+
+        // Act
+        webhookStatusWriter.gravarLote(lote);
+
+        // Assert
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        List<List<Object[]>> lotes = capturarLinhas(sql, 2);
+
+        assertEquals(1, lotes.get(0).size());
+        assertEquals("PENDING", lotes.get(0).get(0)[0]);
+        assertEquals(prazoAdiado.toOffsetDateTime(), lotes.get(0).get(0)[5]);
+
+        assertTrue(sql.getAllValues().get(1).contains("GREATEST(proxima_tentativa, ?)"));
+        assertTrue(sql.getAllValues().get(1).contains("status = 'PENDING'"));
+        assertEquals(1, lotes.get(1).size());
+        assertEquals(eventoB, lotes.get(1).get(0)[2]);
+    }
+
+    @Test
+    void testGravarLote_FalhaTransitoriaRepeteEDevolveAoProximoLote() {
+        // Arrange - o banco segue fora durante as três tentativas e volta depois
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class)))
+            .thenThrow(new QueryTimeoutException("statement timeout"))
+            .thenThrow(new QueryTimeoutException("statement timeout"))
+            .thenThrow(new QueryTimeoutException("statement timeout"))
+            .thenReturn(new int[] {1});
+
+        // Act
+        webhookStatusWriter.gravarLote(List.of(AtualizacaoWebhook.sucesso(eventoA, 1, agora, 200, "ok")));
+
+        // Assert - nada descartado; a transição aguarda o próximo lote
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList(), any(int[].class));
+        assertEquals(2.0, meterRegistry.counter("pip.webhook.status.retentativas").count());
+        assertEquals(1.0, meterRegistry.counter("pip.webhook.status.reenfileirados").count());
+        assertEquals(0.0, meterRegistry.counter("pip.webhook.status.falhas").count());
+        assertEquals(1, webhookStatusWriter.getPendentes());
+
+        // Act - o desligamento grava o que foi devolvido
+        webhookStatusWriter.encerrar();
+
+        // Assert
+        verify(jdbcTemplate, times(4)).batchUpdate(anyString(), anyList(), any(int[].class));
+        assertEquals(1.0, meterRegistry.counter("pip.webhook.status.gravados").count());
+        assertEquals(0, webhookStatusWriter.getPendentes());
+    }
+
+    @Test
+    void testGravarLote_ErroNaoRecuperavelDescartaApenasATransicaoInvalida() {
+        // Arrange - lote rejeitado; individualmente só o segundo evento falha
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), any(int[].class)))
+            .thenThrow(new DataIntegrityViolationException("value too long"))
+            .thenReturn(new int[] {1})
+            .thenThrow(new DataIntegrityViolationException("value too long"));
+
+        // Act
+        webhookStatusWriter.gravarLote(List.of(
+            AtualizacaoWebhook.sucesso(eventoA, 1, agora, 200, "ok"),
+            AtualizacaoWebhook.sucesso(eventoB, 1, agora, 200, "ok")));
+
+        // Assert
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList(), any(int[].class));
+        assertEquals(1.0, meterRegistry.counter("pip.webhook.status.gravados").count());
+        assertEquals(1.0, meterRegistry.counter("pip.webhook.status.falhas").count());
+        assertEquals(0.0, meterRegistry.counter("pip.webhook.status.retentativas").count());
+        assertEquals(0, webhookStatusWriter.getPendentes());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Object[]>> capturarLinhas(ArgumentCaptor<String> sql, int chamadas) {
+        ArgumentCaptor<List<Object[]>> linhas = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(chamadas)).batchUpdate(sql.capture(), linhas.capture(), any(int[].class));
+        return linhas.getAllValues();
+    }
+}